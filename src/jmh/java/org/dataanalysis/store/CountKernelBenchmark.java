@@ -0,0 +1,76 @@
+package org.dataanalysis.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量计数内核与逐行计数的对比
+ * 运行：mvn -Pbenchmark test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class CountKernelBenchmark {
+
+    // 统计服务一轮需要的全部特征组合
+    private static final int[] MASKS = {RowTraits.HIT, RowTraits.MISS, RowTraits.KILLED,
+            RowTraits.HIT | RowTraits.KILLED, RowTraits.PROFIT, RowTraits.LOSS,
+            RowTraits.OPEN_SINGLE, RowTraits.OPEN_DOUBLE};
+
+    @Param({"1000000", "10000000"})
+    private int rows;
+
+    private int[] traits;
+    private byte[] codes;
+    private CountKernel vector;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        traits = new int[rows];
+        codes = new byte[rows];
+        for (int i = 0; i < rows; i++) {
+            traits[i] = random.nextInt(1 << 15);
+            codes[i] = (byte) random.nextInt(6);
+        }
+        vector = CountKernels.vector();
+        if (vector == null) {
+            throw new IllegalStateException("需要--add-modules jdk.incubator.vector");
+        }
+    }
+
+    @Benchmark
+    public int[] masksScalar() {
+        return CountKernels.SCALAR.countMasks(traits, 0, rows, MASKS);
+    }
+
+    @Benchmark
+    public int[] masksVector() {
+        return vector.countMasks(traits, 0, rows, MASKS);
+    }
+
+    @Benchmark
+    public int[] codesScalar() {
+        return CountKernels.SCALAR.countCodes(codes, 0, rows, 6);
+    }
+
+    @Benchmark
+    public int[] codesVector() {
+        return vector.countCodes(codes, 0, rows, 6);
+    }
+}
@@ -2,8 +2,32 @@ package org.dataanalysis.controller;
 
 import org.dataanalysis.entity.HistoryRecord;
 import org.dataanalysis.service.Sf1HistoryService;
+import org.dataanalysis.stats.DataQuality;
+import org.dataanalysis.stats.DigitStats;
+import org.dataanalysis.stats.Granularity;
+import org.dataanalysis.stats.HistoryQuery;
+import org.dataanalysis.stats.IncrementalStatistics;
+import org.dataanalysis.stats.KillNumberStats;
+import org.dataanalysis.stats.KillPercentWindows;
+import org.dataanalysis.stats.PatternIndex;
+import org.dataanalysis.stats.QueryEngine;
+import org.dataanalysis.stats.RollupStats;
+import org.dataanalysis.stats.RunType;
+import org.dataanalysis.stats.SequencePattern;
+import org.dataanalysis.stats.StreakIndex;
+import org.dataanalysis.stats.StreakSimulator;
+import org.dataanalysis.stats.TotalBuckets;
+import org.dataanalysis.stats.TransitionCounts;
+import org.dataanalysis.stats.TransitionStats;
+import org.dataanalysis.stats.TransitionType;
+import org.dataanalysis.stats.WindowRates;
+import org.dataanalysis.stats.backtest.Backtester;
+import org.dataanalysis.stats.backtest.Payoff;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -21,70 +45,56 @@ public class DataAnalysisController {
 
     @Autowired
     private Sf1HistoryService sf1HistoryService;
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    @Autowired
+    private WindowRates windowRates;
+
+    @Autowired
+    private StreakIndex streakIndex;
+
+    @Autowired
+    private KillPercentWindows killPercentWindows;
+
+    @Autowired
+    private QueryEngine queryEngine;
+
+    @Autowired
+    private PatternIndex patternIndex;
+
+    @Autowired
+    private TransitionStats transitionStats;
+
+    @Autowired
+    private StreakSimulator streakSimulator;
+
+    @Autowired
+    private KillNumberStats killNumberStats;
+
+    @Autowired
+    private DigitStats digitStats;
+
+    @Autowired
+    private DataQuality dataQuality;
+
+    @Autowired
+    private IncrementalStatistics incrementalStatistics;
+
+    @Autowired
+    private RollupStats rollupStats;
+
+    @Autowired
+    private Backtester backtester;
     
     /**
      * 获取SF1被杀数字数据
+     * 杀号在写入内存时已解析为掩码，每期被杀个数由popcount得到，各数字的被杀频率增量维护
      */
     @GetMapping("/sf1/kill-number-data")
     public Map<String, Object> getSf1KillNumberData() {
-        // 获取所有记录
-        List<HistoryRecord> records = sf1HistoryService.getAllRecords();
-        
-        // 按期数倒序排列（最新的在前面）
-        List<HistoryRecord> sortedRecords = records.stream()
-                .sorted(Comparator.comparing(HistoryRecord::getPeriod).reversed())
-                .collect(Collectors.toList());
-        
-        // 将期数和杀数提取为数组
-        List<String> periods = new ArrayList<>();
-        List<Integer> killCounts = new ArrayList<>();   // 杀数的个数
-        List<Integer> nonKillCounts = new ArrayList<>(); // 未被杀数的个数
-        
-        // 计算总数据量和总杀数
-        int totalRecords = sortedRecords.size();
-        int totalKilled = 0;
-        
-        for (HistoryRecord record : sortedRecords) {
-            // 只取期数的后三位
-            periods.add(String.valueOf(record.getPeriod() % 1000));
-            
-            // 计算杀数的个数
-            String killNumber = record.getKillNumber();
-            int killCount = 0;
-            if (killNumber != null && !killNumber.isEmpty()) {
-                // 可能有多种分隔符，先尝试逗号分隔
-                if (killNumber.contains(",")) {
-                    killCount = killNumber.split(",").length;
-                } 
-                // 空格分隔
-                else if (killNumber.contains(" ")) {
-                    killCount = killNumber.trim().split("\\s+").length;
-                }
-                // 无分隔符，每个字符算一个数字
-                else {
-                    killCount = killNumber.length();
-                }
-                
-                // 确保有数据显示，至少为1
-                if (killCount == 0) killCount = 1;
-            }
-            
-            totalKilled += killCount;
-            killCounts.add(killCount);
-            
-            // 计算未被杀数的个数（假设总共有10个数字）
-            nonKillCounts.add(10 - killCount);
-        }
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("periods", periods);
-        result.put("killCounts", killCounts);
-        result.put("nonKillCounts", nonKillCounts);
-        result.put("count", totalRecords);
-        result.put("totalKilled", totalKilled);
-        result.put("totalNonKilled", totalRecords * 10 - totalKilled); // 假设每期10个数
-        
-        return result;
+        return killNumberStats.killNumberData("sf1");
     }
 
     /**
@@ -128,123 +138,276 @@ public class DataAnalysisController {
      */
     @GetMapping("/sf1/recent-kill-rates")
     public Map<String, Object> getRecentKillRates() {
-        // 获取所有记录
-        List<HistoryRecord> records = sf1HistoryService.getAllRecords();
-        
-        // 按期数倒序排列（最新的在前面）
-        List<HistoryRecord> sortedRecords = records.stream()
-                .sorted(Comparator.comparing(HistoryRecord::getPeriod).reversed())
-                .collect(Collectors.toList());
-        
-        // 移除第一条预测数据（最新的一条）如果存在
-        if (!sortedRecords.isEmpty()) {
-            sortedRecords.remove(0);
-        }
-        
         Map<String, Object> result = new HashMap<>();
         
         // 计算不同场次的被杀率 - 从30场到650场，每50场为一个间隔
+        // 排除最新一期预测数据，每个窗口都是前缀计数的O(1)查询
         // 先计算30、50场
-        result.put("killRate30", String.format("%.2f%%", getKillRateForLastNPeriods(sortedRecords, 30)));
-        result.put("killRate50", String.format("%.2f%%", getKillRateForLastNPeriods(sortedRecords, 50)));
+        result.put("killRate30", String.format("%.2f%%", windowRates.killRate("sf1", 30, true)));
+        result.put("killRate50", String.format("%.2f%%", windowRates.killRate("sf1", 50, true)));
         
         // 计算100到1000场，每50场一个间隔
         for (int period = 100; period <= 1000; period += 50) {
-            result.put("killRate" + period, String.format("%.2f%%", getKillRateForLastNPeriods(sortedRecords, period)));
+            result.put("killRate" + period, String.format("%.2f%%", windowRates.killRate("sf1", period, true)));
         }
         
         return result;
     }
-    
+
     /**
-     * 获取最近N期内的被杀率
-     * @param records 按期数降序排序的记录
-     * @param periodCount 期数，如100、50、30
-     * @return 被杀率（百分比）
+     * 获取任意服务器、任意窗口列表的被杀率、胜率和盈利率
+     * 例如 /api/sf3/window-rates?windows=30,50,100,500
      */
-    private double getKillRateForLastNPeriods(List<HistoryRecord> records, int periodCount) {
-        // 只取最近N期，如果记录不足N期，则取全部
-        int actualCount = Math.min(periodCount, records.size());
-        List<HistoryRecord> recentRecords = records.stream()
-                .limit(actualCount)
-                .collect(Collectors.toList());
-        
-        // 统计有杀号的期数
-        long periodsWithKills = recentRecords.stream()
-                .filter(record -> record.getKillNumber() != null && !record.getKillNumber().isEmpty())
-                .count();
-        
-        // 计算被杀率
-        return (double) periodsWithKills / actualCount * 100;
+    @GetMapping("/{server}/window-rates")
+    public Map<String, Object> getWindowRates(@PathVariable String server,
+                                              @RequestParam(defaultValue = "30,50,100,200,500,1000") List<Integer> windows,
+                                              @RequestParam(defaultValue = "true") boolean excludeLatest) {
+        if (!historyStore.hasServer(server)) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("serverName", server);
+            result.put("error", "未知的服务器");
+            return result;
+        }
+        return windowRates.windowRates(server, windows, excludeLatest);
     }
 
     /**
-     * 获取SF1最大连杀的统计数据
-     * 返回历史上最大的连杀次数和对应的期数范围
-     * 支持查询所有记录或特定期数范围内的最大连杀
+     * 获取任意服务器最近N期每一期的滑动窗口杀率，以及下一期的杀率
+     * 例如 /api/sf3/kill-percents?limit=50，窗口由analysis.kill-percent.windows配置
      */
-    @GetMapping("/sf1/max-consecutive-kills")
-    public Map<String, Object> getMaxConsecutiveKills(@RequestParam(required = false) Integer periodRange) {
-        // 获取所有记录
-        List<HistoryRecord> records = sf1HistoryService.getAllRecords();
-        
-        // 按期数倒序排列（最新的在前面）
-        List<HistoryRecord> sortedRecords = records.stream()
-                .sorted(Comparator.comparing(HistoryRecord::getPeriod).reversed())
-                .collect(Collectors.toList());
-        
-        // 移除第一条预测数据（最新的一条）如果存在
-        if (!sortedRecords.isEmpty()) {
-            sortedRecords.remove(0);
+    @GetMapping("/{server}/kill-percents")
+    public Map<String, Object> getKillPercents(@PathVariable String server,
+                                               @RequestParam(defaultValue = "100") int limit) {
+        if (!historyStore.hasServer(server)) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("serverName", server);
+            result.put("error", "未知的服务器");
+            return result;
         }
-        
-        // 如果指定了期数范围，只取最近N期
-        if (periodRange != null && periodRange > 0) {
-            int actualCount = Math.min(periodRange, sortedRecords.size());
-            sortedRecords = sortedRecords.subList(0, actualCount);
+        return killPercentWindows.recentPercents(server, limit);
+    }
+
+    /**
+     * 在任意服务器的内存数据上执行过滤聚合查询
+     * 例如 /api/sf1/query?where=killed@1=1;killed@2=1&select=count,winRate 查询上两期都被杀时的胜率，
+     * /api/sf3/query?groupBy=openResult,killed@1&last=1000 按开奖单双和上一期是否被杀分组统计最近1000期
+     * 条件和分组的写法见HistoryQuery
+     */
+    @GetMapping("/{server}/query")
+    public Map<String, Object> query(@PathVariable String server,
+                                     @RequestParam(required = false) String where,
+                                     @RequestParam(required = false) String groupBy,
+                                     @RequestParam(defaultValue = HistoryQuery.DEFAULT_SELECT) String select,
+                                     @RequestParam(required = false) Integer fromPeriod,
+                                     @RequestParam(required = false) Integer toPeriod,
+                                     @RequestParam(required = false) Integer last,
+                                     @RequestParam(defaultValue = "false") boolean excludeLatest,
+                                     @RequestParam(defaultValue = "0") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        if (!historyStore.hasServer(server)) {
+            result.put("error", "未知的服务器");
+            return result;
         }
-        
-        // 计算最大连杀次数
-        int maxConsecutiveKills = 0;
-        String maxStartPeriod = "";
-        String maxEndPeriod = "";
-        
-        int currentKillCount = 0;
-        String currentStartPeriod = "";
-        String currentEndPeriod = "";
-        
-        // 倒序遍历记录，统计连续杀号
-        for (HistoryRecord record : sortedRecords) {
-            // 如果有杀号
-            if (record.getKillNumber() != null && !record.getKillNumber().isEmpty()) {
-                // 连续杀号计数增加
-                if (currentKillCount == 0) {
-                    currentStartPeriod = record.getPeriod().toString();
-                }
-                currentEndPeriod = record.getPeriod().toString();
-                currentKillCount++;
-            } else {
-                // 重置连续计数
-                if (currentKillCount > maxConsecutiveKills) {
-                    maxConsecutiveKills = currentKillCount;
-                    maxStartPeriod = currentStartPeriod;
-                    maxEndPeriod = currentEndPeriod;
-                }
-                currentKillCount = 0;
+        try {
+            HistoryQuery query = HistoryQuery.parse(where, groupBy, select, fromPeriod, toPeriod, last,
+                    excludeLatest, limit);
+            return queryEngine.query(server, query);
+        } catch (IllegalArgumentException e) {
+            result.put("error", e.getMessage());
+            return result;
+        }
+    }
+
+    /**
+     * 在任意服务器的被杀、中错、盈亏序列上搜索模式，返回全部匹配位置和匹配之后下一期的情况
+     * 例如 /api/sf1/pattern-search?pattern=KK.K 或 /api/sf1/pattern-search?pattern=K{3,}M&last=5000
+     * 模式写法见SequencePattern
+     */
+    @GetMapping("/{server}/pattern-search")
+    public Map<String, Object> searchPattern(@PathVariable String server,
+                                             @RequestParam String pattern,
+                                             @RequestParam(required = false) Integer last,
+                                             @RequestParam(defaultValue = "false") boolean excludeLatest,
+                                             @RequestParam(defaultValue = "50") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        if (!historyStore.hasServer(server)) {
+            result.put("error", "未知的服务器");
+            return result;
+        }
+        try {
+            return patternIndex.search(server, SequencePattern.parse(pattern), last, excludeLatest,
+                    Math.max(0, Math.min(limit, 1000)));
+        } catch (IllegalArgumentException e) {
+            result.put("error", e.getMessage());
+            return result;
+        }
+    }
+
+    /**
+     * 获取任意服务器的k阶状态转移频率，即前k期依次处于某些状态时下一期各状态的出现次数和概率
+     * 例如 /api/sf1/stats/transitions?order=2&types=kill
+     */
+    @GetMapping("/{server}/stats/transitions")
+    public Map<String, Object> getTransitions(@PathVariable String server,
+                                              @RequestParam(defaultValue = "1") int order,
+                                              @RequestParam(defaultValue = "outcome,kill,betting") List<String> types,
+                                              @RequestParam(defaultValue = "true") boolean excludeLatest) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        if (!historyStore.hasServer(server)) {
+            result.put("error", "未知的服务器");
+            return result;
+        }
+        if (order < 1 || order > TransitionCounts.MAX_ORDER) {
+            result.put("error", "阶数需在1到" + TransitionCounts.MAX_ORDER + "之间");
+            return result;
+        }
+        List<TransitionType> transitionTypes = new ArrayList<>();
+        for (String type : types) {
+            TransitionType transitionType = TransitionType.fromCode(type.trim());
+            if (transitionType == null) {
+                result.put("error", "未知的序列类型: " + type);
+                return result;
             }
+            transitionTypes.add(transitionType);
         }
-        
-        // 最后检查一次（如果最后一个连续杀号序列正好是数据的最后部分）
-        if (currentKillCount > maxConsecutiveKills) {
-            maxConsecutiveKills = currentKillCount;
-            maxStartPeriod = currentStartPeriod;
-            maxEndPeriod = currentEndPeriod;
+        return transitionStats.transitions(server, transitionTypes, order, excludeLatest);
+    }
+
+    /**
+     * 获取任意服务器的开奖总和分布(0到27的直方图)及按区间的汇总，直接读取增量维护的直方图
+     * 例如 /api/sf1/stats/totals 或 /api/sf1/stats/totals?buckets=0-9,10-17,18%2B
+     */
+    @GetMapping("/{server}/stats/totals")
+    public Map<String, Object> getTotalDistribution(@PathVariable String server,
+                                                    @RequestParam(required = false) String buckets,
+                                                    @RequestParam(defaultValue = "false") boolean excludeLatest) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        if (!historyStore.hasServer(server)) {
+            result.put("error", "未知的服务器");
+            return result;
+        }
+        try {
+            TotalBuckets layout = buckets != null && !buckets.isBlank() ? TotalBuckets.parse(buckets) : null;
+            return incrementalStatistics.totalDistribution(server, layout, excludeLatest);
+        } catch (IllegalArgumentException e) {
+            result.put("error", e.getMessage());
+            return result;
+        }
+    }
+
+    /**
+     * 获取任意服务器按创建时间的小时、天、周汇总(期数、胜率、被杀率、盈利率)
+     * 例如 /api/sf1/rollups?granularity=hour&from=2025-05-01&to=2025-05-03，只有日期的to包含当天
+     */
+    @GetMapping("/{server}/rollups")
+    public Map<String, Object> getRollups(@PathVariable String server,
+                                          @RequestParam(defaultValue = "day") String granularity,
+                                          @RequestParam(required = false) String from,
+                                          @RequestParam(required = false) String to) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        Granularity rollupGranularity = Granularity.fromCode(granularity);
+        if (!historyStore.hasServer(server) || rollupGranularity == null) {
+            result.put("error", rollupGranularity == null ? "未知的时间粒度，可选hour、day、week" : "未知的服务器");
+            return result;
+        }
+        try {
+            long fromMillis = from != null && !from.isBlank() ? RollupStats.parseTime(from, false) : Long.MIN_VALUE;
+            long toMillis = to != null && !to.isBlank() ? RollupStats.parseTime(to, true) : Long.MAX_VALUE;
+            return rollupStats.rollups(server, rollupGranularity, fromMillis, toMillis);
+        } catch (IllegalArgumentException e) {
+            result.put("error", e.getMessage());
+            return result;
+        }
+    }
+
+    /**
+     * 获取任意服务器开奖数字的统计：每个位置上各数字的出现次数(热力图)、数字和分布、最近N期冷热数字和遗漏期数
+     * 例如 /api/sf1/stats/digits?hotCount=3
+     */
+    @GetMapping("/{server}/stats/digits")
+    public Map<String, Object> getDigitStats(@PathVariable String server,
+                                             @RequestParam(defaultValue = "3") int hotCount) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        if (!historyStore.hasServer(server)) {
+            result.put("error", "未知的服务器");
+            return result;
+        }
+        return digitStats.frequencies(server, hotCount);
+    }
+
+    /**
+     * 获取任意服务器的期号数据质量：缺失的期号数和区间、重复记录、乱序到达的期号以及最近的异常
+     * 同步写入时增量检查，不查询数据库，例如 /api/sf1/data-quality?limit=20
+     */
+    @GetMapping("/{server}/data-quality")
+    public Map<String, Object> getDataQuality(@PathVariable String server,
+                                              @RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        if (!historyStore.hasServer(server)) {
+            result.put("error", "未知的服务器");
+            return result;
+        }
+        return dataQuality.quality(server, limit);
+    }
+
+    /**
+     * 回测任意服务器上的下注策略，支持参数扫描
+     * 例如 /api/sf4/backtest?rule=killed(1)=0 为sf444的flag规则，
+     * /api/sf1/backtest?rule=killRate({30,50,100})<{30..60:10}&last=5000 一次回测12个策略
+     * 策略写法见Strategy，payoff为结算方式：kill(未被杀为赢)、outcome(中错)、betting(盈亏)
+     */
+    @GetMapping("/{server}/backtest")
+    public Map<String, Object> backtest(@PathVariable String server,
+                                        @RequestParam String rule,
+                                        @RequestParam(defaultValue = "kill") String payoff,
+                                        @RequestParam(required = false) Integer last,
+                                        @RequestParam(defaultValue = "true") boolean excludeLatest,
+                                        @RequestParam(defaultValue = "1") double winAmount,
+                                        @RequestParam(defaultValue = "1") double lossAmount,
+                                        @RequestParam(defaultValue = "10") int top,
+                                        @RequestParam(defaultValue = "100") int curvePoints) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        if (!historyStore.hasServer(server)) {
+            result.put("error", "未知的服务器");
+            return result;
+        }
+        Payoff settlement = Payoff.fromCode(payoff);
+        if (settlement == null) {
+            result.put("error", "未知的结算方式: " + payoff);
+            return result;
         }
+        try {
+            return backtester.backtest(server, rule, settlement, winAmount, lossAmount, last, excludeLatest,
+                    Math.max(0, Math.min(top, 1000)), Math.max(0, Math.min(curvePoints, 1000)));
+        } catch (IllegalArgumentException e) {
+            result.put("error", e.getMessage());
+            return result;
+        }
+    }
+
+    /**
+     * 获取SF1最大连杀的统计数据
+     * 返回历史上最大的连杀次数和对应的期数范围
+     * 支持查询所有记录或特定期数范围内的最大连杀
+     */
+    @GetMapping("/sf1/max-consecutive-kills")
+    public Map<String, Object> getMaxConsecutiveKills(@RequestParam(required = false) Integer periodRange) {
+        // 排除最新一期预测数据，未指定期数范围时查询全部记录
+        int lastN = periodRange != null && periodRange > 0 ? periodRange : Integer.MAX_VALUE;
+        Map<String, Object> streak = streakIndex.longestInLast("sf1", RunType.KILL, lastN, true);
         
         Map<String, Object> result = new HashMap<>();
-        result.put("maxConsecutiveKills", maxConsecutiveKills);
-        result.put("startPeriod", maxStartPeriod);
-        result.put("endPeriod", maxEndPeriod);
+        result.put("maxConsecutiveKills", streak != null ? streak.get("streakCount") : 0);
+        result.put("startPeriod", streak != null ? streak.get("startPeriod").toString() : "");
+        result.put("endPeriod", streak != null ? streak.get("endPeriod").toString() : "");
         
         return result;
     }
@@ -257,223 +420,111 @@ public class DataAnalysisController {
     public Map<String, Object> getMultiRangeMaxKills() {
         Map<String, Object> result = new HashMap<>();
         
-        // 获取所有记录
-        List<HistoryRecord> records = sf1HistoryService.getAllRecords();
-        
-        // 记录总数
-        System.out.println("Total records: " + records.size());
-        
-        // 按期数倒序排列（最新的在前面）
-        // 问题发现：之前的过滤条件过滤掉了所有记录，可能数据结构或字段变更了
-        // 先不过滤，只排序，确保能获取到记录
-        List<HistoryRecord> sortedRecords = records.stream()
-                .sorted(Comparator.comparing(HistoryRecord::getPeriod).reversed())
-                .collect(Collectors.toList());
-        
-        // 检查数据中是否有prediction字段，以便调试
-        if (!sortedRecords.isEmpty()) {
-            HistoryRecord firstRecord = sortedRecords.get(0);
-            System.out.println("数据示例: " + firstRecord.getPeriod() + ", 是否有预测: " + 
-                               (firstRecord.getPrediction() != null ? "是, 值=" + firstRecord.getPrediction() : "否"));
-        }
-        
-        System.out.println("Sorted records (without predictions): " + sortedRecords.size());
-        
-        // 验证数据
-        System.out.println("\n=== 验证数据记录 ===");
-        for (int i = 0; i < Math.min(20, sortedRecords.size()); i++) {
-            HistoryRecord record = sortedRecords.get(i);
-            System.out.println(i + ": Period=" + record.getPeriod() + ", KillNumber=" + record.getKillNumber());
-        }
-        
-        // 获取最新期数
-        Integer latestPeriod = null;
-        if (!sortedRecords.isEmpty()) {
-            latestPeriod = sortedRecords.get(0).getPeriod();
-            System.out.println("Latest period: " + latestPeriod);
-        }
-        
-        // 计算整体最大连杀
-        int maxConsecutiveKills = 0;
-        int currentKillCount = 0;
-        Integer maxKillStartPeriod = null;
-        Integer maxKillEndPeriod = null;
-        Integer currentKillStartPeriod = null;
-        
-        System.out.println("\n=== 计算整体最大连杀 ===");
-        StringBuilder killPattern = new StringBuilder();
-        
-        // 遍历所有记录计算整体最大连杀
-        for (int i = 0; i < sortedRecords.size(); i++) {
-            HistoryRecord record = sortedRecords.get(i);
-            boolean hasKill = record.getKillNumber() != null && !record.getKillNumber().isEmpty();
-            
-            killPattern.append(hasKill ? "K" : ".");
-            
-            if (hasKill) {
-                if (currentKillCount == 0) {
-                    currentKillStartPeriod = record.getPeriod();
-                }
-                currentKillCount++;
-            } else {
-                if (currentKillCount > maxConsecutiveKills) {
-                    maxConsecutiveKills = currentKillCount;
-                    maxKillStartPeriod = currentKillStartPeriod;
-                    maxKillEndPeriod = sortedRecords.get(i-1).getPeriod();
-                    System.out.println("Found new max kill streak: " + maxConsecutiveKills + 
-                                    ", from " + maxKillStartPeriod + " to " + maxKillEndPeriod);
-                }
-                currentKillCount = 0;
-            }
-        }
+        ServerHistory history = historyStore.history("sf1");
+        int totalRecords = history.size();
+        Integer latestPeriod = history.latestPeriod();
         
-        // 检查最后一次连杀
-        if (currentKillCount > maxConsecutiveKills) {
-            maxConsecutiveKills = currentKillCount;
-            maxKillStartPeriod = currentKillStartPeriod;
-            maxKillEndPeriod = sortedRecords.get(sortedRecords.size()-1).getPeriod();
-            System.out.println("Found new max kill streak at end: " + maxConsecutiveKills + 
-                             ", from " + maxKillStartPeriod + " to " + maxKillEndPeriod);
-        }
-        
-        System.out.println("Kill pattern: " + killPattern.toString());
-        System.out.println("Overall max consecutive kills: " + maxConsecutiveKills);
-        
-        // 设置总体结果
-        result.put("maxConsecutiveKills", maxConsecutiveKills);
-        result.put("startPeriod", maxKillStartPeriod);
-        result.put("endPeriod", maxKillEndPeriod);
-        
-        // 计算差值
-        if (latestPeriod != null && maxKillEndPeriod != null) {
-            int periodDiff = latestPeriod - maxKillEndPeriod;
-            // 先不设置这个差值，留给后面的getMaxConsecutiveKills来计算
-            // result.put("periodDiff", periodDiff);
-        }
-        
-        // 总体最大连杀 - 使用原始方法确保兼容性
+        // 总体最大连杀 - 与max-consecutive-kills保持一致
         Map<String, Object> allTimeData = getMaxConsecutiveKills(null);
         result.put("maxConsecutiveKills", allTimeData.get("maxConsecutiveKills"));
         result.put("startPeriod", allTimeData.get("startPeriod"));
         result.put("endPeriod", allTimeData.get("endPeriod"));
         
-        // 计算历史最大连杀与最新期数的差值 - 最新期数减去连杀区间最后一期的期数
-        if (latestPeriod != null && allTimeData.get("endPeriod") != null) {
-            try {
-                // 修正计算逻辑，按照用户要求处理
-                // 1. 在我们的业务中，期数区间呈现为“3281313 至 3281305”这样的形式
-                // 2. 新的差值计算逻辑：最新期数 - 区间右边的期数(即较小的期数)
-                
-                // 从返回数据中获取连杀区间的开始和结束期数
-                int endPeriod = Integer.parseInt(allTimeData.get("endPeriod").toString());
-                int startPeriod = Integer.parseInt(allTimeData.get("startPeriod").toString());
-                
-                // 识别哪个是区间右边的期数(较小的期数) - 一般来说就是endPeriod
-                int smallerPeriod = Math.min(startPeriod, endPeriod); // 这就是连杀区间右边的期数
-                
-                // 正确的计算方式: 最新期数 - 连杀区间右边的期数
-                int periodDiff = latestPeriod - smallerPeriod;
-                
-                System.out.println("全局期数差值计算: 最新期数" + latestPeriod + " - 连杀区间右边期数" + smallerPeriod + " = " + periodDiff);
-                System.out.println("连杀区间: " + startPeriod + " 至 " + endPeriod + ", 计算差值使用右边期数: " + smallerPeriod);
-                // 强制添加期数差值，确保前端能正确显示
-                if (periodDiff >= 0) {
-                    result.put("periodDiff", periodDiff);
-                } else {
-                    System.out.println("计算出的期数差值小于0，可能有计算错误，使用默认值");
-                    result.put("periodDiff", 0); // 使用默认值而不是null，确保前端能显示
-                }
-            } catch (NumberFormatException e) {
-                System.out.println("期数差值计算失败: " + e.getMessage());
-                // 强制添加默认值，确保前端显示
-                result.put("periodDiff", 0);
-            }
-        } else {
-            // 如果最新期数或结束期数为空，还是添加默认值
-            System.out.println("最新期数或结束期数为空，使用默认差值");
-            result.put("periodDiff", 0);
+        // 计算历史最大连杀与最新期数的差值 - 最新期数减去连杀区间右边的期数(即较小的期数)
+        int periodDiff = 0;
+        if (latestPeriod != null && !allTimeData.get("endPeriod").toString().isEmpty()) {
+            int endPeriod = Integer.parseInt(allTimeData.get("endPeriod").toString());
+            int startPeriod = Integer.parseInt(allTimeData.get("startPeriod").toString());
+            periodDiff = Math.max(latestPeriod - Math.min(startPeriod, endPeriod), 0);
         }
+        result.put("periodDiff", periodDiff);
         
-        // 处理不同范围(1-100, 101-200等) - 修改排除条件后，确保有数据可用
-        System.out.println("\n=== 处理各个区间 ===");
+        // 处理不同范围(1-100, 101-200等)，每个区间都是一次稀疏表查询
         int[] ranges = {100, 200, 300, 400, 500, 600, 700, 800, 900, 1000};
         
         for (int i = 0; i < ranges.length; i++) {
             int range = ranges[i];
             int startIdx = (i == 0) ? 0 : ranges[i-1];
-            int endIdx = Math.min(range, sortedRecords.size()); // 防止越界
             
-            // 即使数据不足也尝试处理可用的部分
-            if (startIdx >= sortedRecords.size()) {
-                System.out.println("Range " + (startIdx+1) + "-" + range + ": Not enough data");
+            if (startIdx >= totalRecords) {
                 result.put("range" + range, 0);
                 continue;
             }
             
-            // 实际可用的范围
-            System.out.println("Range " + (startIdx+1) + "-" + endIdx + ": Processing " + (endIdx - startIdx) + " records");
-            
-            // 这里已经不需要再检查边界了，因为前面已经检查过
-            // 这里直接处理区间内的数据
-            
-            // 取出区间内的记录
-            List<HistoryRecord> rangeRecords = sortedRecords.subList(startIdx, endIdx);
-            System.out.println("Range " + (startIdx+1) + "-" + endIdx + ": Processing " + rangeRecords.size() + " records");
-            
-            // 计算该区间的最大连杀
-            int rangeMaxKills = 0;
-            int rangeCurrentKills = 0;
-            Integer rangeMaxStartPeriod = null;
-            Integer rangeMaxEndPeriod = null;
-            Integer rangeCurrentStartPeriod = null;
-            
-            // 全新的连杀判断逻辑
-            StringBuilder rangeKillPattern = new StringBuilder();
-            
-            for (int j = 0; j < rangeRecords.size(); j++) {
-                HistoryRecord record = rangeRecords.get(j);
-                boolean hasKill = record.getKillNumber() != null && !record.getKillNumber().isEmpty();
-                
-                rangeKillPattern.append(hasKill ? "K" : ".");
-                
-                if (hasKill) {
-                    if (rangeCurrentKills == 0) {
-                        rangeCurrentStartPeriod = record.getPeriod();
-                    }
-                    rangeCurrentKills++;
-                } else {
-                    if (rangeCurrentKills > rangeMaxKills) {
-                        rangeMaxKills = rangeCurrentKills;
-                        rangeMaxStartPeriod = rangeCurrentStartPeriod;
-                        rangeMaxEndPeriod = rangeRecords.get(j-1).getPeriod();
-                    }
-                    rangeCurrentKills = 0;
-                }
-            }
-            
-            // 检查最后一次连杀
-            if (rangeCurrentKills > rangeMaxKills) {
-                rangeMaxKills = rangeCurrentKills;
-                rangeMaxStartPeriod = rangeCurrentStartPeriod;
-                rangeMaxEndPeriod = rangeRecords.get(rangeRecords.size()-1).getPeriod();
-            }
-            
-            System.out.println("Range " + (startIdx+1) + "-" + endIdx + ": Max Kills = " + rangeMaxKills + 
-                           ", Pattern = " + rangeKillPattern.toString());
-            
-            result.put("range" + range, rangeMaxKills);
-            result.put("range" + range + "Start", rangeMaxStartPeriod);
-            result.put("range" + range + "End", rangeMaxEndPeriod);
+            Map<String, Object> streak = streakIndex.longestInSlice("sf1", RunType.KILL, startIdx, range);
+            result.put("range" + range, streak != null ? streak.get("streakCount") : 0);
+            result.put("range" + range + "Start", streak != null ? streak.get("startPeriod") : null);
+            result.put("range" + range + "End", streak != null ? streak.get("endPeriod") : null);
             
             // 计算与最新期数的差值
-            if (latestPeriod != null && rangeMaxEndPeriod != null) {
-                int periodDiff = latestPeriod - rangeMaxEndPeriod;
-                result.put("range" + range + "Diff", periodDiff);
+            if (streak != null && streak.get("periodDiff") != null) {
+                result.put("range" + range + "Diff", streak.get("periodDiff"));
             }
         }
         
         return result;
     }
+
+    /**
+     * 获取任意服务器最近N期或指定期号区间内的最长连续段
+     * 例如 /api/sf4/max-streaks?type=kill&lastN=100,500 或 /api/sf4/max-streaks?type=hit&fromPeriod=3281000&toPeriod=3281300
+     */
+    @GetMapping("/{server}/max-streaks")
+    public Map<String, Object> getMaxStreaks(@PathVariable String server,
+                                             @RequestParam(defaultValue = "kill") String type,
+                                             @RequestParam(defaultValue = "100,200,300,400,500,600,700,800,900,1000") List<Integer> lastN,
+                                             @RequestParam(required = false) Integer fromPeriod,
+                                             @RequestParam(required = false) Integer toPeriod,
+                                             @RequestParam(defaultValue = "true") boolean excludeLatest) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        RunType runType = RunType.fromCode(type);
+        if (!historyStore.hasServer(server) || runType == null) {
+            result.put("error", runType == null ? "未知的连续类型" : "未知的服务器");
+            return result;
+        }
+        result.put("type", runType.getCode());
+        result.put("overall", streakIndex.longestInLast(server, runType, Integer.MAX_VALUE, excludeLatest));
+        
+        List<Map<String, Object>> windows = new ArrayList<>();
+        for (Integer n : lastN) {
+            Map<String, Object> window = new HashMap<>();
+            window.put("lastN", n);
+            window.put("streak", streakIndex.longestInLast(server, runType, n, excludeLatest));
+            windows.add(window);
+        }
+        result.put("windows", windows);
+        
+        if (fromPeriod != null && toPeriod != null) {
+            Map<String, Object> between = new HashMap<>();
+            between.put("fromPeriod", fromPeriod);
+            between.put("toPeriod", toPeriod);
+            between.put("streak", streakIndex.longestBetween(server, runType, fromPeriod, toPeriod));
+            result.put("between", between);
+        }
+        
+        return result;
+    }
+
+    /**
+     * 按最近N期的实际出现率做蒙特卡洛模拟，给出同样期数下最长连续段的概率分布，判断实际的最长连续段是否罕见
+     * 例如 /api/sf4/streak-simulation?type=kill&lastN=1000&runs=100000
+     */
+    @GetMapping("/{server}/streak-simulation")
+    public Map<String, Object> simulateStreaks(@PathVariable String server,
+                                               @RequestParam(defaultValue = "kill") String type,
+                                               @RequestParam(defaultValue = "1000") int lastN,
+                                               @RequestParam(defaultValue = "100000") int runs,
+                                               @RequestParam(defaultValue = "true") boolean excludeLatest) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", server);
+        RunType runType = RunType.fromCode(type);
+        if (!historyStore.hasServer(server) || runType == null) {
+            result.put("error", runType == null ? "未知的连续类型" : "未知的服务器");
+            return result;
+        }
+        return streakSimulator.simulate(server, runType, lastN, Math.max(runs, 1), excludeLatest);
+    }
     
     /**
      * 获取所有至少5连杀以上的历史记录
@@ -483,93 +534,8 @@ public class DataAnalysisController {
     public Map<String, Object> getKillStreaksHistory(@RequestParam(required = false, defaultValue = "5") int minStreak) {
         Map<String, Object> result = new HashMap<>();
         
-        // 获取所有记录
-        List<HistoryRecord> records = sf1HistoryService.getAllRecords();
-        
-        // 记录总数
-        System.out.println("\n===== 获取连杀历史记录 =====");
-        System.out.println("Total records: " + records.size());
-        
-        // 按期数倒序排列（最新的在前面）
-        List<HistoryRecord> sortedRecords = records.stream()
-                .sorted(Comparator.comparing(HistoryRecord::getPeriod).reversed())
-                .collect(Collectors.toList());
-        
-        System.out.println("Sorted records: " + sortedRecords.size());
-        
-        // 获取最新期数，用于计算差值
-        Integer latestPeriod = null;
-        if (!sortedRecords.isEmpty()) {
-            latestPeriod = sortedRecords.get(0).getPeriod();
-            System.out.println("Latest period: " + latestPeriod);
-        }
-        
-        // 用于收集所有连杀记录
-        List<Map<String, Object>> streaksList = new ArrayList<>();
-        
-        // 统计连杀情况
-        int currentKillCount = 0;
-        Integer currentStartPeriod = null;
-        Integer currentEndPeriod = null;
-        
-        // 遍历记录查找连杀
-        for (int i = 0; i < sortedRecords.size(); i++) {
-            HistoryRecord record = sortedRecords.get(i);
-            boolean hasKill = record.getKillNumber() != null && !record.getKillNumber().isEmpty();
-            
-            if (hasKill) {
-                // 如果是新的连杀开始
-                if (currentKillCount == 0) {
-                    currentStartPeriod = record.getPeriod();
-                }
-                currentEndPeriod = record.getPeriod();
-                currentKillCount++;
-            } else {
-                // 连杀结束，检查是否达到最小连杀数
-                if (currentKillCount >= minStreak) {
-                    // 收集连杀记录
-                    Map<String, Object> streakInfo = new HashMap<>();
-                    streakInfo.put("streakCount", currentKillCount);
-                    streakInfo.put("startPeriod", currentStartPeriod);
-                    streakInfo.put("endPeriod", currentEndPeriod);
-                    
-                    // 计算与最新期数的差值 - 最新期数减去连杀区间右边的期数
-                    if (latestPeriod != null && currentEndPeriod != null) {
-                        // 识别哪个是区间右边的期数(较小的期数)
-                        int smallerPeriod = Math.min(currentStartPeriod, currentEndPeriod);
-                        int periodDiff = latestPeriod - smallerPeriod;
-                        streakInfo.put("periodDiff", periodDiff);
-                    }
-                    
-                    streaksList.add(streakInfo);
-                }
-                currentKillCount = 0;
-            }
-        }
-        
-        // 最后检查一次（如果最后一个连续杀号序列正好是数据的最后部分）
-        if (currentKillCount >= minStreak) {
-            Map<String, Object> streakInfo = new HashMap<>();
-            streakInfo.put("streakCount", currentKillCount);
-            streakInfo.put("startPeriod", currentStartPeriod);
-            streakInfo.put("endPeriod", currentEndPeriod);
-            
-            // 计算与最新期数的差值
-            if (latestPeriod != null && currentEndPeriod != null) {
-                int smallerPeriod = Math.min(currentStartPeriod, currentEndPeriod);
-                int periodDiff = latestPeriod - smallerPeriod;
-                streakInfo.put("periodDiff", periodDiff);
-            }
-            
-            streaksList.add(streakInfo);
-        }
-        
-        // 按连杀数从高到低排序
-        streaksList.sort((a, b) -> {
-            Integer streakA = (Integer) a.get("streakCount");
-            Integer streakB = (Integer) b.get("streakCount");
-            return streakB.compareTo(streakA);
-        });
+        // 连杀区间直接从游程索引按长度切片，已按连杀数从高到低排序
+        List<Map<String, Object>> streaksList = streakIndex.streaksAtLeast("sf1", RunType.KILL, minStreak);
         
         result.put("streaks", streaksList);
         result.put("count", streaksList.size());
@@ -577,84 +543,29 @@ public class DataAnalysisController {
         
         return result;
     }
-    
+
     /**
-     * 计算指定记录集内的最大连续杀率
-     * @param records 要计算的记录集（已按期数倒序排列）
-     * @return 包含最大连杀数和对应期数区间的Map
+     * 获取任意服务器、任意连续类型的历史连续段
+     * 例如 /api/sf3/streaks?type=hit&minStreak=8，type可选kill、hit、miss、profit、loss
      */
-    private Map<String, Object> calculateMaxConsecutiveKills(List<HistoryRecord> records) {
+    @GetMapping("/{server}/streaks")
+    public Map<String, Object> getStreaks(@PathVariable String server,
+                                          @RequestParam(defaultValue = "kill") String type,
+                                          @RequestParam(defaultValue = "5") int minStreak) {
         Map<String, Object> result = new HashMap<>();
-        if (records == null || records.isEmpty()) {
-            result.put("maxConsecutiveKills", 0);
+        result.put("serverName", server);
+        RunType runType = RunType.fromCode(type);
+        if (!historyStore.hasServer(server) || runType == null) {
+            result.put("error", runType == null ? "未知的连续类型" : "未知的服务器");
             return result;
         }
         
-        System.out.println("\n\n*** 计算区间连杀，记录数量: " + records.size() + " ***");
-        if (records.size() > 0) {
-            System.out.println("First period: " + records.get(0).getPeriod() + ", Last period: " + records.get(records.size()-1).getPeriod());
-        }
-        
-        int maxConsecutiveKills = 0;
-        int currentKillCount = 0;
-        int maxStartIndex = -1;
-        int maxEndIndex = -1;
-        int currentStartIndex = -1;
-        
-        StringBuilder killSequence = new StringBuilder();
-        
-        for (int i = 0; i < records.size(); i++) {
-            HistoryRecord record = records.get(i);
-            
-            // 判断是否是连杀期 - 有杀号记录为连杀
-            boolean isConsecutiveKill = record.getKillNumber() != null && !record.getKillNumber().isEmpty();
-            
-            // 添加到连杀序列可视化
-            killSequence.append(isConsecutiveKill ? "K" : ".");
-            
-            if (isConsecutiveKill) {
-                if (currentKillCount == 0) {
-                    currentStartIndex = i; // 记录当前连杀开始索引
-                }
-                currentKillCount++;
-            } else {
-                if (currentKillCount > maxConsecutiveKills) {
-                    maxConsecutiveKills = currentKillCount;
-                    maxStartIndex = currentStartIndex;
-                    maxEndIndex = i - 1;
-                    System.out.println("Found new max kill streak: " + maxConsecutiveKills + 
-                                     ", from period " + records.get(maxStartIndex).getPeriod() + 
-                                     " to " + records.get(maxEndIndex).getPeriod());
-                }
-                currentKillCount = 0;
-            }
-        }
-        
-        // 检查最后一次连杀
-        if (currentKillCount > maxConsecutiveKills) {
-            maxConsecutiveKills = currentKillCount;
-            maxStartIndex = currentStartIndex;
-            maxEndIndex = records.size() - 1;
-            System.out.println("Found new max kill streak at end: " + maxConsecutiveKills + 
-                             ", from period " + records.get(maxStartIndex).getPeriod() + 
-                             " to " + records.get(maxEndIndex).getPeriod());
-        }
-        
-        System.out.println("Kill sequence: " + killSequence.toString());
-        System.out.println("Max consecutive kills: " + maxConsecutiveKills);
-        
-        result.put("maxConsecutiveKills", maxConsecutiveKills);
-        
-        // 记录对应的期数区间
-        if (maxStartIndex >= 0 && maxEndIndex >= 0) {
-            result.put("startPeriod", records.get(maxStartIndex).getPeriod());
-            result.put("endPeriod", records.get(maxEndIndex).getPeriod());
-            System.out.println("Result - Max kills: " + maxConsecutiveKills + 
-                             ", Start: " + records.get(maxStartIndex).getPeriod() + 
-                             ", End: " + records.get(maxEndIndex).getPeriod());
-        } else {
-            System.out.println("No valid kill streak found");
-        }
+        List<Map<String, Object>> streaksList = streakIndex.streaksAtLeast(server, runType, minStreak);
+        result.put("type", runType.getCode());
+        result.put("longest", streakIndex.longest(server, runType));
+        result.put("streaks", streaksList);
+        result.put("count", streaksList.size());
+        result.put("minStreak", minStreak);
         
         return result;
     }
@@ -1,13 +1,18 @@
 package org.dataanalysis.controller;
 
+import org.dataanalysis.service.DataStatisticsService;
 import org.dataanalysis.service.Sf1HistoryService;
 import org.dataanalysis.service.Sf3HistoryService;
 import org.dataanalysis.service.Sf4HistoryService;
 import org.dataanalysis.service.Sf5HistoryService;
 import org.dataanalysis.service.Sf6HistoryService;
 import org.dataanalysis.service.Sf7HistoryService;
+import org.dataanalysis.stats.CrossServerStats;
+import org.dataanalysis.stats.DataQuality;
+import org.dataanalysis.stats.StatsSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -41,6 +46,15 @@ public class HistoryStatsController {
     
     @Autowired
     private Sf7HistoryService sf7HistoryService;
+
+    @Autowired
+    private List<DataStatisticsService> dataStatisticsServices;
+
+    @Autowired
+    private CrossServerStats crossServerStats;
+
+    @Autowired
+    private DataQuality dataQuality;
     
     /**
      * 获取所有服务器的胜率统计
@@ -158,4 +172,36 @@ public class HistoryStatsController {
         
         return result;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 获取各服务器按期号对齐后的两两对比矩阵：共同期数、同中、同杀、结果一致次数和比例、中/杀相关系数
+     * 全部历史的矩阵不含各服务器尚未开奖的最新一期，随数据变化增量维护；windows指定的最近N期矩阵按需用位集计算
+     * 例如 /api/stats/correlation?windows=100,500
+     */
+    @GetMapping("/correlation")
+    public Map<String, Object> getCorrelation(@RequestParam(defaultValue = "100,500,1000") List<Integer> windows,
+                                              @RequestParam(defaultValue = "true") boolean excludeLatest) {
+        return crossServerStats.correlations(windows, excludeLatest);
+    }
+
+    /**
+     * 获取全部服务器的数据质量计数(缺失期数、重复记录、乱序到达)，供监控定时采集
+     */
+    @GetMapping("/data-quality")
+    public Map<String, Object> getDataQuality() {
+        return dataQuality.summary();
+    }
+
+    /**
+     * 获取服务器当前发布的完整统计快照，全部结果来自同一个数据版本
+     */
+    @GetMapping("/snapshot/{server}")
+    public StatsSnapshot getSnapshot(@PathVariable String server) {
+        for (DataStatisticsService service : dataStatisticsServices) {
+            if (service.getServerName().equals(server)) {
+                return service.getStatsSnapshot();
+            }
+        }
+        return StatsSnapshot.empty(server);
+    }
+}
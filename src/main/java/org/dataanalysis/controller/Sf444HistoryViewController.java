@@ -1,8 +1,13 @@
 package org.dataanalysis.controller;
 
+import org.dataanalysis.entity.HistoryRecord;
 import org.dataanalysis.entity.Sf444HistoryRecord;
 import org.dataanalysis.repository.Sf444HistoryRepository;
 import org.dataanalysis.repository.Sf1HistoryRepository;
+import org.dataanalysis.stats.BitmapIndex;
+import org.dataanalysis.stats.CategoryBitmaps;
+import org.dataanalysis.stats.KillPercentWindows;
+import org.dataanalysis.store.HistoryStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -12,8 +17,10 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 
+import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +35,15 @@ public class Sf444HistoryViewController {
     @Autowired
     private Sf1HistoryRepository sf1HistoryRepository;
 
+    @Autowired
+    private KillPercentWindows killPercentWindows;
+
+    @Autowired
+    private BitmapIndex bitmapIndex;
+
+    @Autowired
+    private HistoryStore historyStore;
+
     /**
      * 显示历史数据页面
      */
@@ -505,35 +521,41 @@ public class Sf444HistoryViewController {
         List<Sf444HistoryRecord> records;
         int totalPages;
         
-        // 根据过滤类型查询数据
+        // 根据过滤类型查询数据，分页记录和总数都取自内存数据，两次同步之间也保持一致
+        Map<String, List<String>> filters;
         if ("1".equals(filterType)) {
             // 只返回final_result=杀的记录
-            records = sf444HistoryRepository.findByFinalResult("杀", page, size);
-            totalRecords = sf444HistoryRepository.countByFinalResult("杀");
-            totalPages = sf444HistoryRepository.getTotalPagesByFinalResult("杀", size);
+            filters = Map.of(CategoryBitmaps.FINAL_RESULT, List.of("杀"));
         } else if ("中".equals(filterType)) {
             // 只返回final_result=中的记录
-            records = sf444HistoryRepository.findByFinalResult("中", page, size);
-            totalRecords = sf444HistoryRepository.countByFinalResult("中");
-            totalPages = sf444HistoryRepository.getTotalPagesByFinalResult("中", size);
+            filters = Map.of(CategoryBitmaps.FINAL_RESULT, List.of("中"));
         } else {
             // 返回所有记录
-            records = sf444HistoryRepository.findPage(page, size);
-            totalRecords = sf444HistoryRepository.count();
-            totalPages = sf444HistoryRepository.getTotalPages(size);
+            filters = Map.of();
+        }
+        BitmapIndex.RowPage rowPage = bitmapIndex.page("sf444", filters, page, size);
+        totalRecords = rowPage.totalRows();
+        records = new ArrayList<>(rowPage.records().size());
+        for (HistoryRecord record : rowPage.records()) {
+            records.add((Sf444HistoryRecord) record);
         }
         
-        // 添加统计数据
-        int killedCount = sf444HistoryRepository.countByFinalResult("杀");
-        int hitCount = sf444HistoryRepository.countByFinalResult("中");
-        int totalCount = sf444HistoryRepository.count();
+        totalPages = (int) Math.ceil((double) totalRecords / size);
+
+        // 添加统计数据(内存位图索引计数，不再查询数据库)
+        int killedCount = bitmapIndex.count("sf444", Map.of(CategoryBitmaps.FINAL_RESULT, List.of("杀")));
+        int hitCount = bitmapIndex.count("sf444", Map.of(CategoryBitmaps.FINAL_RESULT, List.of("中")));
+        int totalCount = historyStore.count("sf444");
         // 建议下注总数(flag=1)
-        int suggestedBetCount = sf444HistoryRepository.countByFlag(1);
+        int suggestedBetCount = bitmapIndex.count("sf444", Map.of(CategoryBitmaps.FLAG, List.of("1")));
+        // 建议下注且中(flag=1且final_result=中)
+        int suggestedHitCount = bitmapIndex.count("sf444", Map.of(CategoryBitmaps.FLAG, List.of("1"),
+                CategoryBitmaps.FINAL_RESULT, List.of("中")));
         
         double killedRate = totalCount > 0 ? Math.round((double)killedCount / totalCount * 10000) / 100.0 : 0;
         double hitRate = totalCount > 0 ? Math.round((double)hitCount / totalCount * 10000) / 100.0 : 0;
         // 下注中的比例
-        double suggestedHitRate = suggestedBetCount > 0 ? Math.round((double)hitCount / suggestedBetCount * 10000) / 100.0 : 0;
+        double suggestedHitRate = suggestedBetCount > 0 ? Math.round((double)suggestedHitCount / suggestedBetCount * 10000) / 100.0 : 0;
         
         // 调试输出
         System.out.println("===== 统计数据调试信息 =====" );
@@ -549,6 +571,20 @@ public class Sf444HistoryViewController {
                 // 获取期号
                 Integer period = record.getPeriod();
                 if (period != null) {
+                    // 杀率使用实时滑动窗口的结果
+                    BigDecimal percent30 = killPercentWindows.percent("sf444", period, 30);
+                    BigDecimal percent50 = killPercentWindows.percent("sf444", period, 50);
+                    BigDecimal percent100 = killPercentWindows.percent("sf444", period, 100);
+                    if (percent30 != null) {
+                        record.setPercent30(percent30);
+                    }
+                    if (percent50 != null) {
+                        record.setPercent50(percent50);
+                    }
+                    if (percent100 != null) {
+                        record.setPercent100(percent100);
+                    }
+
                     // 从sf1_history表获取更新时间
                     String sf1UpdatedTime = sf1HistoryRepository.getUpdatedTimeByPeriod(period);
                     if (sf1UpdatedTime != null) {
@@ -580,6 +616,7 @@ public class Sf444HistoryViewController {
         result.put("hitCount", hitCount);
         result.put("totalCount", totalCount);
         result.put("suggestedBetCount", suggestedBetCount);
+        result.put("suggestedHitCount", suggestedHitCount);
         result.put("killedRate", killedRate);
         result.put("hitRate", hitRate);
         result.put("suggestedHitRate", suggestedHitRate);
@@ -597,9 +634,9 @@ public class Sf444HistoryViewController {
             return Integer.MAX_VALUE;
         }
         
-        // 否则尝试解析数字
+        // 否则尝试解析数字，小于1时按1处理，避免计算总页数时除以0
         try {
-            return Integer.parseInt(pageSizeStr);
+            return Math.max(Integer.parseInt(pageSizeStr), 1);
         } catch (NumberFormatException e) {
             // 默认值
             return 1000;
@@ -0,0 +1,124 @@
+package org.dataanalysis.repository;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.entity.Sf444HistoryRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 内存历史数据同步仓库
+ * 按服务器名称读取对应的{server}_history表，支持从水位开始增量读取
+ */
+@Repository
+public class HistorySyncRepository {
+
+    private static final Pattern SERVER_NAME = Pattern.compile("[a-z0-9_]+");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 读取全部记录，按期号升序
+     */
+    public List<HistoryRecord> findAll(String serverName) {
+        String sql = "SELECT * FROM " + tableName(serverName) + " ORDER BY period";
+        return jdbcTemplate.query(sql, new SyncRowMapper(serverName));
+    }
+
+    /**
+     * 读取水位之后新增或更新过的记录，按期号升序
+     * 最新一期总是重新读取，保证预测行回填结果后能被同步到；
+     * 三个条件各自作为一个能走索引的分支用UNION合并(同一行只返回一次)，避免OR条件导致全表扫描，
+     * 还没有更新时间水位时不查询updated_at分支
+     *
+     * @param serverName 服务器名称
+     * @param maxId 已同步的最大id
+     * @param updatedSince 已同步的最大更新时间，为null时只按id和期号读取
+     * @param fromPeriod 已同步的最新期号
+     * @return 需要同步的记录
+     */
+    public List<HistoryRecord> findSince(String serverName, long maxId, LocalDateTime updatedSince, int fromPeriod) {
+        String table = tableName(serverName);
+        StringBuilder sql = new StringBuilder()
+                .append("SELECT * FROM ").append(table).append(" WHERE id > ?")
+                .append(" UNION SELECT * FROM ").append(table).append(" WHERE period >= ?");
+        List<Object> args = new ArrayList<>(List.of(maxId, fromPeriod));
+        if (updatedSince != null) {
+            sql.append(" UNION SELECT * FROM ").append(table).append(" WHERE updated_at >= ?");
+            args.add(Timestamp.valueOf(updatedSince));
+        }
+        sql.append(" ORDER BY period");
+        return jdbcTemplate.query(sql.toString(), new SyncRowMapper(serverName), args.toArray());
+    }
+
+    private String tableName(String serverName) {
+        if (!SERVER_NAME.matcher(serverName).matches()) {
+            throw new IllegalArgumentException("非法的服务器名称: " + serverName);
+        }
+        return serverName + "_history";
+    }
+
+    /**
+     * 行映射器，表中存在flag列时(sf444)映射为Sf444HistoryRecord
+     */
+    private static class SyncRowMapper implements RowMapper<HistoryRecord> {
+
+        private final String serverName;
+        private Boolean extended;
+
+        SyncRowMapper(String serverName) {
+            this.serverName = serverName;
+        }
+
+        @Override
+        public HistoryRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (extended == null) {
+                extended = hasColumn(rs.getMetaData(), "flag");
+            }
+            HistoryRecord record;
+            if (extended) {
+                Sf444HistoryRecord sf444Record = new Sf444HistoryRecord();
+                sf444Record.setFlag(rs.getObject("flag") != null ? rs.getInt("flag") : null);
+                sf444Record.setFinalResult(rs.getString("final_result"));
+                record = sf444Record;
+            } else {
+                record = new HistoryRecord();
+            }
+            record.setId(rs.getLong("id"));
+            record.setPeriod(rs.getInt("period"));
+            record.setNumbers(rs.getString("numbers"));
+            record.setPrediction(rs.getString("prediction"));
+            record.setOutcome(rs.getString("outcome"));
+            record.setTotalNumber(rs.getObject("total_number") != null ? rs.getInt("total_number") : null);
+            record.setKillNumber(rs.getString("kill_number"));
+            record.setBettingResult(rs.getString("betting_result"));
+            record.setOpenResult(rs.getString("open_result"));
+            record.setCreatedAt(rs.getTimestamp("created_at") != null ?
+                rs.getTimestamp("created_at").toLocalDateTime() : null);
+            record.setUpdatedAt(rs.getTimestamp("updated_at") != null ?
+                rs.getTimestamp("updated_at").toLocalDateTime() : null);
+            record.setServerName(serverName);
+            return record;
+        }
+
+        private static boolean hasColumn(ResultSetMetaData metaData, String column) throws SQLException {
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                if (column.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,6 +1,16 @@
 package org.dataanalysis.scheduler;
 
 import org.dataanalysis.service.DataStatisticsService;
+import org.dataanalysis.stats.RecentWinRateCache;
+import org.dataanalysis.stats.StatisticsEngine;
+import org.dataanalysis.stats.StatsSnapshot;
+import org.dataanalysis.stats.result.ComprehensiveRates;
+import org.dataanalysis.stats.result.MaxStreakStats;
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.stats.result.ResultDistribution;
+import org.dataanalysis.stats.result.StreakStats;
+import org.dataanalysis.stats.result.WinRate;
+import org.dataanalysis.store.HistoryStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,9 +40,16 @@ public class DataCalculationScheduler {
     
     private final List<DataStatisticsService> dataStatisticsServices;
     
+    private final HistoryStore historyStore;
+    
+    private final RecentWinRateCache recentWinRateCache;
+    
     @Autowired
-    public DataCalculationScheduler(List<DataStatisticsService> dataStatisticsServices) {
+    public DataCalculationScheduler(List<DataStatisticsService> dataStatisticsServices, HistoryStore historyStore,
+                                    RecentWinRateCache recentWinRateCache) {
         this.dataStatisticsServices = dataStatisticsServices;
+        this.historyStore = historyStore;
+        this.recentWinRateCache = recentWinRateCache;
         logger.info("数据计算调度器初始化完成，找到{}个数据表服务", dataStatisticsServices.size());
     }
     
@@ -45,11 +62,16 @@ public class DataCalculationScheduler {
         
         long startTime = System.currentTimeMillis();
         
+        // 先从数据库水位增量同步内存历史数据
+        historyStore.syncAll();
+        
         for (DataStatisticsService service : dataStatisticsServices) {
             try {
                 logger.info("【{}】表数据计算开始...", service.getServerName());
                 // 执行所有计算
                 service.calculateAll();
+                // 预热常用期数的最近胜率
+                recentWinRateCache.prewarm(service.getServerName());
                 logger.info("【{}】表数据计算完成", service.getServerName());
             } catch (Exception e) {
                 logger.error("【{}】表数据计算错误: {}", service.getServerName(), e.getMessage(), e);
@@ -59,6 +81,9 @@ public class DataCalculationScheduler {
         // 收集所有服务器的统计数据，准备显示汇总表
         printServerStatsSummary();
         
+        // 数据有变化时写出快照，供下次启动快速恢复
+        historyStore.checkpoint();
+        
         long costTime = System.currentTimeMillis() - startTime;
         logger.info("=========== 所有表数据计算完成，耗时{}毫秒 ===========", costTime);
     }
@@ -215,21 +240,6 @@ public class DataCalculationScheduler {
                 
                 // 从服务中获取最新的统计数据
                 try {
-                    // 使用反射获取服务中的统计数据
-                    // 对于实际场景，应该从服务中获取最新的统计数据
-                    Object statsData = null;
-                    try {
-                        // 尝试使用反射或服务提供的获取统计数据的方法
-                        java.lang.reflect.Method getStats = service.getClass().getMethod("getStats");
-                        if (getStats != null) {
-                            statsData = getStats.invoke(service);
-                        }
-                    } catch (Exception e) {
-                        // 反射失败，使用模拟数据
-                        // 实际项目中会从服务中获取真实数据
-                    }
-                    
-                    // 获取服务器的详细统计数据
                     // 预设默认值（如果数据获取失败会显示这些默认值）
                     String totalStats = "--/--";
                     String predictRate = "--%";
@@ -242,302 +252,53 @@ public class DataCalculationScheduler {
                     String doubleRate = "--%";
                     String maxConsecutiveHit = "--";
                     String maxConsecutiveMiss = "--";
-                    
-                    // 获取真实数据
-                    try {
-                        // 尝试直接从综合统计分析中获取总数和正确数
-                        service.calculateComprehensiveRateAnalysis();
-                        if (service.getClass().getMethod("getComprehensiveRateAnalysis").getDeclaringClass() != Object.class) {
-                            Map<String, Object> rateData = (Map<String, Object>) service.getClass()
-                                .getMethod("getComprehensiveRateAnalysis")
-                                .invoke(service);
-                                
-                            if (rateData != null) {
-                                // 总记录数 - 字段名为totalPredictionCount
-                                int totalRecords = 0;
-                                if (rateData.containsKey("totalPredictionCount")) {
-                                    Object totalObj = rateData.get("totalPredictionCount");
-                                    if (totalObj != null) {
-                                        totalRecords = (totalObj instanceof Number) ? 
-                                            ((Number)totalObj).intValue() : 
-                                            Integer.parseInt(totalObj.toString());
-                                    }
-                                // 兼容原来的字段名
-                                } else if (rateData.containsKey("totalRecords")) {
-                                    Object totalObj = rateData.get("totalRecords");
-                                    if (totalObj != null) {
-                                        totalRecords = (totalObj instanceof Number) ? 
-                                            ((Number)totalObj).intValue() : 
-                                            Integer.parseInt(totalObj.toString());
-                                    }
-                                }
-                                
-                                // 正确预测数 - 字段名为correctPredictionCount
-                                int correctCount = 0;
-                                if (rateData.containsKey("correctPredictionCount")) {
-                                    Object correctObj = rateData.get("correctPredictionCount");
-                                    if (correctObj != null) {
-                                        correctCount = (correctObj instanceof Number) ? 
-                                            ((Number)correctObj).intValue() : 
-                                            Integer.parseInt(correctObj.toString());
-                                    }
-                                }
-                                
-                                if (totalRecords > 0) {
-                                    totalStats = totalRecords + "/" + correctCount;
-                                }
-                            }
-                        }
-                        
-                        // 1. 获取综合胜率分析数据
-                        service.calculateComprehensiveRateAnalysis();
-                        if (service.getClass().getMethod("getComprehensiveRateAnalysis").getDeclaringClass() != Object.class) {
-                            Map<String, Object> rateData = (Map<String, Object>) service.getClass()
-                                .getMethod("getComprehensiveRateAnalysis")
-                                .invoke(service);
-                                
-                            if (rateData != null) {
-                                if (rateData.containsKey("predictionWinRate")) {
-                                    Object rate = rateData.get("predictionWinRate");
-                                    if (rate != null) {
-                                        double rateVal;
-                                        if (rate instanceof Number) {
-                                            rateVal = ((Number)rate).doubleValue();
-                                        } else {
-                                            String rateStr = rate.toString();
-                                            // 如果是百分比形式，移除%符号
-                                            if (rateStr.endsWith("%")) {
-                                                rateStr = rateStr.substring(0, rateStr.length() - 1);
-                                                rateVal = Double.parseDouble(rateStr) / 100;
-                                            } else {
-                                                rateVal = Double.parseDouble(rateStr);
-                                            }
-                                        }
-                                        predictRate = String.format("%.2f%%", rateVal * 100);
-                                    }
-                                }
-                                
-                                if (rateData.containsKey("actualWinRate")) {
-                                    Object rate = rateData.get("actualWinRate");
-                                    if (rate != null) {
-                                        double rateVal;
-                                        if (rate instanceof Number) {
-                                            rateVal = ((Number)rate).doubleValue();
-                                        } else {
-                                            String rateStr = rate.toString();
-                                            // 如果是百分比形式，移除%符号
-                                            if (rateStr.endsWith("%")) {
-                                                rateStr = rateStr.substring(0, rateStr.length() - 1);
-                                                rateVal = Double.parseDouble(rateStr) / 100;
-                                            } else {
-                                                rateVal = Double.parseDouble(rateStr);
-                                            }
-                                        }
-                                        actualRate = String.format("%.2f%%", rateVal * 100);
-                                    }
-                                }
-                                
-                                if (rateData.containsKey("killedRate")) {
-                                    Object rate = rateData.get("killedRate");
-                                    if (rate != null) {
-                                        double rateVal;
-                                        if (rate instanceof Number) {
-                                            rateVal = ((Number)rate).doubleValue();
-                                        } else {
-                                            String rateStr = rate.toString();
-                                            // 如果是百分比形式，移除%符号
-                                            if (rateStr.endsWith("%")) {
-                                                rateStr = rateStr.substring(0, rateStr.length() - 1);
-                                                rateVal = Double.parseDouble(rateStr) / 100;
-                                            } else {
-                                                rateVal = Double.parseDouble(rateStr);
-                                            }
-                                        }
-                                        killRate = String.format("%.2f%%", rateVal * 100);
-                                    }
-                                }
-                            }
-                        }
-                        
-                        // 2. 获取最近100期数据
-                        if (service.getClass().getMethod("getRecentWinRateResult", int.class).getDeclaringClass() != Object.class) {
-                            Map<String, Object> recentData = (Map<String, Object>) service.getClass()
-                                .getMethod("getRecentWinRateResult", int.class)
-                                .invoke(service, 100);
-                                
-                            if (recentData != null && recentData.containsKey("winRate")) {
-                                Object rate = recentData.get("winRate");
-                                if (rate != null) {
-                                    double rateVal;
-                                    if (rate instanceof Number) {
-                                        rateVal = ((Number)rate).doubleValue();
-                                    } else {
-                                        String rateStr = rate.toString();
-                                        // 如果是百分比形式，移除%符号
-                                        if (rateStr.endsWith("%")) {
-                                            rateStr = rateStr.substring(0, rateStr.length() - 1);
-                                            rateVal = Double.parseDouble(rateStr) / 100;
-                                        } else {
-                                            rateVal = Double.parseDouble(rateStr);
-                                        }
-                                    }
-                                    recent100Rate = String.format("%.2f%%", rateVal * 100);
-                                }
-                            }
-                        }
-                        
-                        // 3. 获取当前连续统计
-                        service.calculateConsecutiveStats();
-                        if (service.getClass().getMethod("getCurrentConsecutiveStats").getDeclaringClass() != Object.class) {
-                            Map<String, Object> consecutiveData = (Map<String, Object>) service.getClass()
-                                .getMethod("getCurrentConsecutiveStats")
-                                .invoke(service);
-                                
-                            if (consecutiveData != null) {
-                                int correct = 0;
-                                int incorrect = 0;
-                                int profit = 0;
-                                int loss = 0;
-                                
-                                if (consecutiveData.containsKey("consecutiveCorrect")) {
-                                    Object val = consecutiveData.get("consecutiveCorrect");
-                                    if (val != null) {
-                                        correct = (val instanceof Number) ? ((Number)val).intValue() : Integer.parseInt(val.toString());
-                                    }
-                                }
-                                
-                                if (consecutiveData.containsKey("consecutiveIncorrect")) {
-                                    Object val = consecutiveData.get("consecutiveIncorrect");
-                                    if (val != null) {
-                                        incorrect = (val instanceof Number) ? ((Number)val).intValue() : Integer.parseInt(val.toString());
-                                    }
-                                }
-                                
-                                if (consecutiveData.containsKey("consecutiveProfit")) {
-                                    Object val = consecutiveData.get("consecutiveProfit");
-                                    if (val != null) {
-                                        profit = (val instanceof Number) ? ((Number)val).intValue() : Integer.parseInt(val.toString());
-                                    }
-                                }
-                                
-                                if (consecutiveData.containsKey("consecutiveLoss")) {
-                                    Object val = consecutiveData.get("consecutiveLoss");
-                                    if (val != null) {
-                                        loss = (val instanceof Number) ? ((Number)val).intValue() : Integer.parseInt(val.toString());
-                                    }
-                                }
-                                
-                                consecutiveStats = correct + "/" + incorrect;
-                                profitStats = profit + "/" + loss;
-                            }
-                        }
-                        
-                        // 4. 获取历史最高连续统计
-                        if (service.getClass().getMethod("getHistoricalConsecutiveStats").getDeclaringClass() != Object.class) {
-                            Map<String, Object> historicalData = (Map<String, Object>) service.getClass()
-                                .getMethod("getHistoricalConsecutiveStats")
-                                .invoke(service);
-                                
-                            if (historicalData != null) {
-                                // 服务中的字段名是maxConsecutiveCorrect和maxConsecutiveIncorrect
-                                if (historicalData.containsKey("maxConsecutiveCorrect")) {
-                                    Object val = historicalData.get("maxConsecutiveCorrect");
-                                    if (val != null) {
-                                        int maxHit = (val instanceof Number) ? ((Number)val).intValue() : Integer.parseInt(val.toString());
-                                        maxConsecutiveHit = String.valueOf(maxHit);
-                                    }
-                                }
-                                
-                                if (historicalData.containsKey("maxConsecutiveIncorrect")) {
-                                    Object val = historicalData.get("maxConsecutiveIncorrect");
-                                    if (val != null) {
-                                        int maxMiss = (val instanceof Number) ? ((Number)val).intValue() : Integer.parseInt(val.toString());
-                                        maxConsecutiveMiss = String.valueOf(maxMiss);
-                                    }
-                                }
-                                
-                                // 旧的字段名形式也尝试获取
-                                if (maxConsecutiveHit.equals("--") && historicalData.containsKey("maxConsecutiveHit")) {
-                                    Object val = historicalData.get("maxConsecutiveHit");
-                                    if (val != null) {
-                                        int maxHit = (val instanceof Number) ? ((Number)val).intValue() : Integer.parseInt(val.toString());
-                                        maxConsecutiveHit = String.valueOf(maxHit);
-                                    }
-                                }
-                                
-                                if (maxConsecutiveMiss.equals("--") && historicalData.containsKey("maxConsecutiveMiss")) {
-                                    Object val = historicalData.get("maxConsecutiveMiss");
-                                    if (val != null) {
-                                        int maxMiss = (val instanceof Number) ? ((Number)val).intValue() : Integer.parseInt(val.toString());
-                                        maxConsecutiveMiss = String.valueOf(maxMiss);
-                                    }
-                                }
-                            }
-                        }
-                        
-                        // 5. 获取结果分析
-                        service.analyzeResults();
-                        if (service.getClass().getMethod("getResultsAnalysis").getDeclaringClass() != Object.class) {
-                            Map<String, Object> resultsData = (Map<String, Object>) service.getClass()
-                                .getMethod("getResultsAnalysis")
-                                .invoke(service);
-                                
-                            if (resultsData != null) {
-                                if (resultsData.containsKey("singleRate")) {
-                                    Object rate = resultsData.get("singleRate");
-                                    if (rate != null) {
-                                        double rateVal;
-                                        if (rate instanceof Number) {
-                                            rateVal = ((Number)rate).doubleValue();
-                                        } else {
-                                            String rateStr = rate.toString();
-                                            // 如果是百分比形式，移除%符号
-                                            if (rateStr.endsWith("%")) {
-                                                rateStr = rateStr.substring(0, rateStr.length() - 1);
-                                                rateVal = Double.parseDouble(rateStr) / 100;
-                                            } else {
-                                                rateVal = Double.parseDouble(rateStr);
-                                            }
-                                        }
-                                        singleRate = String.format("%.2f%%", rateVal * 100);
-                                    }
-                                }
-                                
-                                if (resultsData.containsKey("doubleRate")) {
-                                    Object rate = resultsData.get("doubleRate");
-                                    if (rate != null) {
-                                        double rateVal;
-                                        if (rate instanceof Number) {
-                                            rateVal = ((Number)rate).doubleValue();
-                                        } else {
-                                            String rateStr = rate.toString();
-                                            // 如果是百分比形式，移除%符号
-                                            if (rateStr.endsWith("%")) {
-                                                rateStr = rateStr.substring(0, rateStr.length() - 1);
-                                                rateVal = Double.parseDouble(rateStr) / 100;
-                                            } else {
-                                                rateVal = Double.parseDouble(rateStr);
-                                            }
-                                        }
-                                        doubleRate = String.format("%.2f%%", rateVal * 100);
-                                    }
-                                }
-                            }
-                        }
-                        
-                    } catch (Exception ex) {
-                        logger.error("获取{}服务器详细统计数据时出错: {}", serverName, ex.getMessage());
-                    }
-                    
-                    // 计算胜率是否高于50%以确定CSS类
-                    String predictRateClass = predictRate.replace("%", "").trim();
                     double predictRateValue = -1;
-                    try {
-                        predictRateValue = Double.parseDouble(predictRateClass);
-                    } catch (Exception e) {}
-                    
+                    double recent100RateValue = -1;
+
+                    // 直接读取calculateAll本轮发布的类型化结果，比率是原始数值，只在这里格式化一次
+                    StatsSnapshot stats = service.getStatsSnapshot();
+
+                    // 1. 综合胜率分析
+                    ComprehensiveRates rates = stats.result(StatisticsEngine.COMPREHENSIVE_RATE, ComprehensiveRates.class);
+                    if (rates != null && !rates.isEmpty()) {
+                        totalStats = rates.totalRecords() + "/" + rates.correctPredictionCount();
+                        predictRateValue = rates.predictionWinRate();
+                        predictRate = Rates.format(predictRateValue);
+                        actualRate = Rates.format(rates.actualWinRate());
+                        killRate = Rates.format(rates.killedRate());
+                    }
+
+                    // 2. 最近100期胜率
+                    WinRate recent = stats.result(StatisticsEngine.RECENT_WIN_RATE, WinRate.class);
+                    if (recent != null) {
+                        recent100RateValue = recent.winRate();
+                        recent100Rate = Rates.format(recent100RateValue);
+                    }
+
+                    // 3. 当前连续统计
+                    StreakStats streaks = stats.result(StatisticsEngine.CONSECUTIVE_STATS, StreakStats.class);
+                    if (streaks != null) {
+                        consecutiveStats = streaks.consecutiveCorrect() + "/" + streaks.consecutiveIncorrect();
+                        profitStats = streaks.consecutiveProfit() + "/" + streaks.consecutiveLoss();
+                    }
+
+                    // 4. 历史最高连续统计
+                    MaxStreakStats maxStreaks = stats.result(StatisticsEngine.HISTORICAL_CONSECUTIVE_STATS, MaxStreakStats.class);
+                    if (maxStreaks != null && maxStreaks.error() == null) {
+                        maxConsecutiveHit = String.valueOf(maxStreaks.maxConsecutiveCorrect());
+                        maxConsecutiveMiss = String.valueOf(maxStreaks.maxConsecutiveIncorrect());
+                    }
+
+                    // 5. 结果分析
+                    ResultDistribution distribution = stats.result(StatisticsEngine.RESULTS, ResultDistribution.class);
+                    if (distribution != null) {
+                        singleRate = Rates.format(distribution.singleRate());
+                        doubleRate = Rates.format(distribution.doubleRate());
+                    }
+
+                    // 胜率是否达到50%决定CSS类
                     String predictRateStyle = predictRateValue >= 50 ? "positive highlight" : (predictRateValue < 0 ? "" : "negative");
-                    String recent100RateStyle = recent100Rate.startsWith("5") || recent100Rate.startsWith("6") || recent100Rate.startsWith("7") || recent100Rate.startsWith("8") || recent100Rate.startsWith("9") ? "positive highlight" : (recent100Rate.equals("--%") ? "" : "negative");
+                    String recent100RateStyle = recent100RateValue >= 50 ? "positive highlight" : (recent100RateValue < 0 ? "" : "negative");
                     
                     html.append("                <tr>\n");
                     html.append("                    <td class=\"server-name\">" + serverName + "</td>\n");
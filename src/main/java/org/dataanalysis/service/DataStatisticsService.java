@@ -1,5 +1,7 @@
 package org.dataanalysis.service;
 
+import org.dataanalysis.stats.StatsSnapshot;
+
 /**
  * 数据统计服务接口
  * 定义了所有数据表统计服务需要实现的方法
@@ -10,6 +12,11 @@ public interface DataStatisticsService {
      * 获取服务器名称
      */
     String getServerName();
+
+    /**
+     * 获取当前发布的统计结果快照
+     */
+    StatsSnapshot getStatsSnapshot();
     
     /**
      * 计算基本胜率
@@ -2,6 +2,13 @@ package org.dataanalysis.service;
 
 import org.dataanalysis.entity.HistoryRecord;
 import org.dataanalysis.repository.Sf1HistoryRepository;
+import org.dataanalysis.stats.IncrementalStatistics;
+import org.dataanalysis.stats.RecentWinRateCache;
+import org.dataanalysis.stats.SingleFlight;
+import org.dataanalysis.stats.StatisticsEngine;
+import org.dataanalysis.stats.StatsSnapshot;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.RowTraits;
 import org.dataanalysis.util.WinRateCalculator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,15 +17,15 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class Sf1HistoryService implements DataStatisticsService {
 
     private static final Logger logger = LoggerFactory.getLogger(Sf1HistoryService.class);
 
-    // 缓存计算结果
-    private final Map<String, Object> calculationCache = new ConcurrentHashMap<>();
+    // 当前发布的统计结果快照，每次计算后整体替换，读取方无需加锁
+    private final AtomicReference<StatsSnapshot> snapshot = new AtomicReference<>(StatsSnapshot.empty("sf1"));
 
     @Autowired
     private Sf1HistoryRepository sf1HistoryRepository;
@@ -26,6 +33,18 @@ public class Sf1HistoryService implements DataStatisticsService {
     @Autowired
     private WinRateCalculator winRateCalculator;
 
+    @Autowired
+    private HistoryStore historyStore;
+
+    @Autowired
+    private IncrementalStatistics incrementalStatistics;
+
+    @Autowired
+    private SingleFlight singleFlight;
+
+    @Autowired
+    private RecentWinRateCache recentWinRateCache;
+
     /**
      * 获取所有记录
      */
@@ -55,18 +74,50 @@ public class Sf1HistoryService implements DataStatisticsService {
         return "sf1";
     }
 
+    /**
+     * 获取当前发布的统计结果快照
+     */
+    @Override
+    public StatsSnapshot getStatsSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * 发布单项计算结果，数据版本变化时旧版本的其他结果一并作废
+     */
+    private void publish(String key, Map<String, Object> result, long dataVersion) {
+        snapshot.updateAndGet(current -> current.with(key, result, dataVersion));
+    }
+
+    /**
+     * 执行所有计算
+     * 直接读取由数据变化事件增量维护的统计结果，不再重新扫描历史数据
+     */
+    @Override
+    public void calculateAll() {
+        logger.info("{}：读取增量统计结果", getServerName());
+        StatsSnapshot published = incrementalStatistics.snapshot(getServerName());
+        snapshot.set(published);
+        logger.info("{}：统计结果快照已发布 - 数据版本:{}, 胜率:{}, 最近100期胜率:{}, 历史最高连中:{}, 历史最高连错:{}",
+                getServerName(), published.getDataVersion(), published.get(StatisticsEngine.WIN_RATE).get("winRate"),
+                published.get(StatisticsEngine.RECENT_WIN_RATE).get("winRate"),
+                published.get(StatisticsEngine.HISTORICAL_CONSECUTIVE_STATS).get("maxConsecutiveCorrect"),
+                published.get(StatisticsEngine.HISTORICAL_CONSECUTIVE_STATS).get("maxConsecutiveIncorrect"));
+    }
+
     /**
      * 计算胜率
      */
     @Override
     public void calculateWinRate() {
         logger.info("{}：开始计算基本胜率", getServerName());
-        int total = sf1HistoryRepository.count();
-        int correct = sf1HistoryRepository.countCorrect();
-        int incorrect = sf1HistoryRepository.countIncorrect();
+        long dataVersion = historyStore.version(getServerName());
+        int total = historyStore.count(getServerName());
+        int correct = historyStore.count(getServerName(), RowTraits.HIT);
+        int incorrect = historyStore.count(getServerName(), RowTraits.MISS);
 
         Map<String, Object> result = winRateCalculator.calculateWinRate(getServerName(), total, correct, incorrect);
-        calculationCache.put("winRate", result);
+        publish("winRate", result, dataVersion);
         logger.info("{}：基本胜率计算完成 - 总数:{}, 正确:{}, 错误:{}, 胜率:{}", 
                 getServerName(), total, correct, incorrect, result.get("winRate"));
     }
@@ -75,10 +126,7 @@ public class Sf1HistoryService implements DataStatisticsService {
      * 获取胜率计算结果
      */
     public Map<String, Object> getWinRateResult() {
-        if (!calculationCache.containsKey("winRate")) {
-            calculateWinRate();
-        }
-        return (Map<String, Object>) calculationCache.get("winRate");
+        return singleFlight.load(getServerName(), snapshot, "winRate", this::calculateWinRate);
     }
 
     /**
@@ -87,22 +135,19 @@ public class Sf1HistoryService implements DataStatisticsService {
     @Override
     public void calculateRecentWinRate(int recentCount) {
         logger.info("{}：开始计算最近{}期胜率", getServerName(), recentCount);
-        List<HistoryRecord> recentRecords = sf1HistoryRepository.findRecent(recentCount);
+        long dataVersion = historyStore.version(getServerName());
+        List<HistoryRecord> recentRecords = historyStore.findRecent(getServerName(), recentCount);
         Map<String, Object> result = winRateCalculator.calculateRecentWinRate(getServerName(), recentRecords, recentCount);
-        calculationCache.put("recentWinRate", result);
+        publish("recentWinRate", result, dataVersion);
         logger.info("{}：最近{}期胜率计算完成 - 记录数:{}, 胜率:{}", 
                 getServerName(), recentCount, result.get("totalCount"), result.get("winRate"));
     }
 
     /**
-     * 获取最近胜率计算结果
+     * 获取最近胜率计算结果，按期数和数据版本缓存
      */
     public Map<String, Object> getRecentWinRateResult(int count) {
-        String key = "recentWinRate";
-        if (!calculationCache.containsKey(key)) {
-            calculateRecentWinRate(count);
-        }
-        return (Map<String, Object>) calculationCache.get(key);
+        return recentWinRateCache.get(getServerName(), count);
     }
 
     /**
@@ -111,9 +156,10 @@ public class Sf1HistoryService implements DataStatisticsService {
     @Override
     public void analyzeResults() {
         logger.info("{}：开始分析结果分布", getServerName());
-        List<HistoryRecord> allRecords = sf1HistoryRepository.findAll();
+        long dataVersion = historyStore.version(getServerName());
+        List<HistoryRecord> allRecords = historyStore.findAll(getServerName());
         Map<String, Object> result = winRateCalculator.analyzeResults(getServerName(), allRecords);
-        calculationCache.put("results", result);
+        publish("results", result, dataVersion);
         logger.info("{}：结果分布分析完成 - 单率:{}, 双率:{}", 
                 getServerName(), result.get("singleRate"), result.get("doubleRate"));
     }
@@ -122,10 +168,7 @@ public class Sf1HistoryService implements DataStatisticsService {
      * 获取结果分析
      */
     public Map<String, Object> getResultsAnalysis() {
-        if (!calculationCache.containsKey("results")) {
-            analyzeResults();
-        }
-        return (Map<String, Object>) calculationCache.get("results");
+        return singleFlight.load(getServerName(), snapshot, "results", this::analyzeResults);
     }
 
     /**
@@ -134,9 +177,10 @@ public class Sf1HistoryService implements DataStatisticsService {
     @Override
     public void calculateComprehensiveRateAnalysis() {
         logger.info("{}：开始计算综合胜率分析", getServerName());
-        List<HistoryRecord> allRecords = sf1HistoryRepository.findAll();
+        long dataVersion = historyStore.version(getServerName());
+        List<HistoryRecord> allRecords = historyStore.findAll(getServerName());
         Map<String, Object> result = winRateCalculator.comprehensiveRateAnalysis(getServerName(), allRecords);
-        calculationCache.put("comprehensiveRate", result);
+        publish("comprehensiveRate", result, dataVersion);
         logger.info("{}：综合胜率分析计算完成 - 预测胜率:{}, 实际胜率:{}, 被杀率:{}", 
                 getServerName(), result.get("predictionWinRate"), result.get("actualWinRate"), result.get("killedRate"));
     }
@@ -145,10 +189,7 @@ public class Sf1HistoryService implements DataStatisticsService {
      * 获取综合胜率分析
      */
     public Map<String, Object> getComprehensiveRateAnalysis() {
-        if (!calculationCache.containsKey("comprehensiveRate")) {
-            calculateComprehensiveRateAnalysis();
-        }
-        return (Map<String, Object>) calculationCache.get("comprehensiveRate");
+        return singleFlight.load(getServerName(), snapshot, "comprehensiveRate", this::calculateComprehensiveRateAnalysis);
     }
 
     /**
@@ -156,7 +197,7 @@ public class Sf1HistoryService implements DataStatisticsService {
      */
     public Map<String, Object> getRecentComprehensiveAnalysis(int recentCount) {
         logger.info("{}：开始计算最近{}期综合胜率分析", getServerName(), recentCount);
-        List<HistoryRecord> recentRecords = sf1HistoryRepository.findRecent(recentCount);
+        List<HistoryRecord> recentRecords = historyStore.findRecent(getServerName(), recentCount);
         Map<String, Object> result = winRateCalculator.periodRateAnalysis(getServerName(), recentRecords);
         logger.info("{}：最近{}期综合胜率分析计算完成", getServerName(), recentCount);
         return result;
@@ -168,9 +209,10 @@ public class Sf1HistoryService implements DataStatisticsService {
     @Override
     public void calculateConsecutiveStats() {
         logger.info("{}：开始计算当前连续统计", getServerName());
-        List<HistoryRecord> recentRecords = sf1HistoryRepository.findRecent(100);
+        long dataVersion = historyStore.version(getServerName());
+        List<HistoryRecord> recentRecords = historyStore.findRecent(getServerName(), 100);
         Map<String, Object> result = winRateCalculator.calculateConsecutiveStats(getServerName(), recentRecords);
-        calculationCache.put("consecutiveStats", result);
+        publish("consecutiveStats", result, dataVersion);
         logger.info("{}：当前连续统计计算完成 - 连中:{}, 连错:{}, 连盈利:{}, 连亏损:{}", 
                 getServerName(), result.get("consecutiveCorrect"), result.get("consecutiveIncorrect"), 
                 result.get("consecutiveProfit"), result.get("consecutiveLoss"));
@@ -180,10 +222,7 @@ public class Sf1HistoryService implements DataStatisticsService {
      * 获取当前连续统计
      */
     public Map<String, Object> getCurrentConsecutiveStats() {
-        if (!calculationCache.containsKey("consecutiveStats")) {
-            calculateConsecutiveStats();
-        }
-        return (Map<String, Object>) calculationCache.get("consecutiveStats");
+        return singleFlight.load(getServerName(), snapshot, "consecutiveStats", this::calculateConsecutiveStats);
     }
 
     /**
@@ -192,9 +231,10 @@ public class Sf1HistoryService implements DataStatisticsService {
     @Override
     public void analyzeDetailedResults() {
         logger.info("{}：开始分析详细结果", getServerName());
-        List<HistoryRecord> allRecords = sf1HistoryRepository.findAll();
+        long dataVersion = historyStore.version(getServerName());
+        List<HistoryRecord> allRecords = historyStore.findAll(getServerName());
         Map<String, Object> result = winRateCalculator.analyzeDetailedResults(getServerName(), allRecords);
-        calculationCache.put("detailedResults", result);
+        publish("detailedResults", result, dataVersion);
         logger.info("{}：详细结果分析完成 - 被杀单率:{}, 被杀双率:{}", 
                 getServerName(), result.get("killedSingleRate"), result.get("killedDoubleRate"));
     }
@@ -203,10 +243,7 @@ public class Sf1HistoryService implements DataStatisticsService {
      * 获取详细的结果分析
      */
     public Map<String, Object> getDetailedResultAnalysis() {
-        if (!calculationCache.containsKey("detailedResults")) {
-            analyzeDetailedResults();
-        }
-        return (Map<String, Object>) calculationCache.get("detailedResults");
+        return singleFlight.load(getServerName(), snapshot, "detailedResults", this::analyzeDetailedResults);
     }
 
     /**
@@ -215,9 +252,10 @@ public class Sf1HistoryService implements DataStatisticsService {
     @Override
     public void findHistoricalConsecutiveStats() {
         logger.info("{}：开始查找历史最高连续统计", getServerName());
-        List<HistoryRecord> allRecords = sf1HistoryRepository.findAll();
+        long dataVersion = historyStore.version(getServerName());
+        List<HistoryRecord> allRecords = historyStore.findAll(getServerName());
         Map<String, Object> result = winRateCalculator.findHistoricalConsecutiveStats(getServerName(), allRecords);
-        calculationCache.put("historicalConsecutiveStats", result);
+        publish("historicalConsecutiveStats", result, dataVersion);
         logger.info("{}：历史最高连续统计查找完成 - 历史最高连中:{}, 历史最高连错:{}", 
                 getServerName(), result.get("maxConsecutiveCorrect"), result.get("maxConsecutiveIncorrect"));
     }
@@ -226,9 +264,6 @@ public class Sf1HistoryService implements DataStatisticsService {
      * 获取历史最高连续统计
      */
     public Map<String, Object> getHistoricalConsecutiveStats() {
-        if (!calculationCache.containsKey("historicalConsecutiveStats")) {
-            findHistoricalConsecutiveStats();
-        }
-        return (Map<String, Object>) calculationCache.get("historicalConsecutiveStats");
+        return singleFlight.load(getServerName(), snapshot, "historicalConsecutiveStats", this::findHistoricalConsecutiveStats);
     }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 各服务器分类取值的压缩位图索引
+ * 随数据变化事件增量维护，"flag=1且final_result=中"、"被杀且开单"这类组合条件的计数
+ * 只需要位图交集运算，不再执行SQL计数或整表过滤
+ */
+@Component
+public class BitmapIndex extends HistoryIndexListener<CategoryBitmaps> {
+
+    @Override
+    protected CategoryBitmaps newIndex() {
+        return new CategoryBitmaps();
+    }
+
+    /**
+     * 满足全部过滤条件的行数：不同列之间为且，同一列的多个取值为或
+     *
+     * @param serverName 服务器名称
+     * @param filters 列名 -> 可接受的取值，列名见CategoryBitmaps.COLUMNS
+     */
+    public int count(String serverName, Map<String, ? extends Collection<String>> filters) {
+        return read(serverName, index -> index.count(filters));
+    }
+
+    /**
+     * 满足全部过滤条件的行
+     */
+    public RowBitmap select(String serverName, Map<String, ? extends Collection<String>> filters) {
+        return read(serverName, index -> index.select(filters));
+    }
+
+    /**
+     * 某列各取值的行数
+     */
+    public Map<String, Integer> valueCounts(String serverName, String column) {
+        return read(serverName, index -> index.valueCounts(column));
+    }
+
+    /**
+     * 满足全部过滤条件的行按期号倒序分页，总行数和该页记录在同一次读锁下取得，两者一致
+     *
+     * @param serverName 服务器名称
+     * @param filters 列名 -> 可接受的取值，没有条件时为全部行
+     * @param page 页码(从0开始)
+     * @param size 每页行数
+     */
+    public RowPage page(String serverName, Map<String, ? extends Collection<String>> filters, int page, int size) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            int[] rows = filters.isEmpty() ? null : index(history).select(filters).toArray();
+            int total = rows != null ? rows.length : history.size();
+            long offset = (long) Math.max(page, 0) * Math.max(size, 0);
+            long end = Math.min(offset + Math.max(size, 0), total);
+            List<HistoryRecord> records = new ArrayList<>((int) Math.max(end - offset, 0));
+            for (long i = offset; i < end; i++) {
+                int position = total - 1 - (int) i;
+                records.add(history.toRecord(rows != null ? rows[position] : position));
+            }
+            return new RowPage(total, records);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 在读锁下使用索引
+     */
+    <T> T read(String serverName, Function<CategoryBitmaps, T> query) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            return query.apply(index(history));
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 一页记录
+     *
+     * @param totalRows 满足条件的总行数
+     * @param records 该页记录，最新的在前
+     */
+    public record RowPage(int totalRows, List<HistoryRecord> records) {
+    }
+}
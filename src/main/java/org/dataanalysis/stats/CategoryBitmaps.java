@@ -0,0 +1,190 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一个服务器的分类取值位图索引
+ * 每个分类列的每个取值对应一个行位图，组合过滤就是位图的交、并运算，计数就是位图基数；
+ * 追加一行只需在它所属取值的位图末尾加一位，撤回最新一行时去掉对应位
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class CategoryBitmaps implements HistoryIndex {
+
+    /** 预测 */
+    public static final String PREDICTION = "prediction";
+    /** 预测结果(中、错等) */
+    public static final String OUTCOME = "outcome";
+    /** 投注结果 */
+    public static final String BETTING_RESULT = "bettingResult";
+    /** 开奖单双 */
+    public static final String OPEN_RESULT = "openResult";
+    /** 最终结果(sf444) */
+    public static final String FINAL_RESULT = "finalResult";
+    /** 标记(sf444)，取值为数字字符串 */
+    public static final String FLAG = "flag";
+    /** 是否被杀，取值为"1"或"0" */
+    public static final String KILLED = "killed";
+
+    /** 支持的全部列 */
+    public static final List<String> COLUMNS = List.of(PREDICTION, OUTCOME, BETTING_RESULT, OPEN_RESULT,
+            FINAL_RESULT, FLAG, KILLED);
+
+    private final Map<String, Map<String, RowBitmap>> columns = new HashMap<>();
+    private int size;
+
+    public CategoryBitmaps() {
+        for (String column : COLUMNS) {
+            columns.put(column, new HashMap<>());
+        }
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    @Override
+    public void rebuild(ServerHistory history) {
+        for (Map<String, RowBitmap> values : columns.values()) {
+            values.clear();
+        }
+        size = 0;
+        int n = history.size();
+        for (int row = 0; row < n; row++) {
+            append(history, row);
+        }
+    }
+
+    /**
+     * 追加末尾新增的一行
+     */
+    @Override
+    public void append(ServerHistory history, int row) {
+        for (String column : COLUMNS) {
+            String value = value(history, column, row);
+            if (value != null) {
+                columns.get(column).computeIfAbsent(value, v -> new RowBitmap()).add(row);
+            }
+        }
+        size = row + 1;
+    }
+
+    /**
+     * 撤回最新一行，调用时该行仍是旧值
+     */
+    @Override
+    public void retract(ServerHistory history, int row) {
+        for (String column : COLUMNS) {
+            String value = value(history, column, row);
+            RowBitmap bitmap = value == null ? null : columns.get(column).get(value);
+            if (bitmap != null) {
+                bitmap.remove(row);
+            }
+        }
+        size = row;
+    }
+
+    /**
+     * 已索引的行数
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 满足全部过滤条件的行：不同列之间取交集，同一列的多个取值取并集；没有条件时为全部行
+     *
+     * @param filters 列名 -> 可接受的取值
+     * @throws IllegalArgumentException 列名不支持时
+     */
+    public RowBitmap select(Map<String, ? extends Collection<String>> filters) {
+        RowBitmap result = null;
+        for (Map.Entry<String, ? extends Collection<String>> filter : filters.entrySet()) {
+            RowBitmap matched = column(filter.getKey(), filter.getValue());
+            result = result == null ? matched : result.and(matched);
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        if (result == null) {
+            return RowBitmap.range(0, size);
+        }
+        // 只有一个条件时结果可能就是索引内部的位图，复制一份再交给调用方
+        return filters.size() == 1 ? result.copy() : result;
+    }
+
+    /**
+     * 满足全部过滤条件的行数
+     */
+    public int count(Map<String, ? extends Collection<String>> filters) {
+        if (filters.size() == 2) {
+            // 两个条件时直接求交集基数，不生成中间位图
+            Iterator<? extends Map.Entry<String, ? extends Collection<String>>> iterator = filters.entrySet().iterator();
+            Map.Entry<String, ? extends Collection<String>> first = iterator.next();
+            Map.Entry<String, ? extends Collection<String>> second = iterator.next();
+            return column(first.getKey(), first.getValue()).andCardinality(column(second.getKey(), second.getValue()));
+        }
+        return select(filters).cardinality();
+    }
+
+    /**
+     * 某列各取值的行数
+     */
+    public Map<String, Integer> valueCounts(String column) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        bitmaps(column).forEach((value, bitmap) -> {
+            if (!bitmap.isEmpty()) {
+                counts.put(value, bitmap.cardinality());
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * 某列出现过的取值
+     */
+    public Set<String> values(String column) {
+        return Collections.unmodifiableSet(bitmaps(column).keySet());
+    }
+
+    private RowBitmap column(String column, Collection<String> values) {
+        Map<String, RowBitmap> bitmaps = bitmaps(column);
+        RowBitmap result = new RowBitmap();
+        for (String value : values) {
+            RowBitmap bitmap = bitmaps.get(value);
+            if (bitmap != null) {
+                result = result.isEmpty() ? bitmap : result.or(bitmap);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, RowBitmap> bitmaps(String column) {
+        Map<String, RowBitmap> bitmaps = columns.get(column);
+        if (bitmaps == null) {
+            throw new IllegalArgumentException("不支持的过滤列: " + column + "，可用列: " + COLUMNS);
+        }
+        return bitmaps;
+    }
+
+    private static String value(ServerHistory history, String column, int row) {
+        return switch (column) {
+            case PREDICTION -> history.prediction(row);
+            case OUTCOME -> history.outcome(row);
+            case BETTING_RESULT -> history.bettingResult(row);
+            case OPEN_RESULT -> history.openResult(row);
+            case FINAL_RESULT -> history.finalResult(row);
+            case FLAG -> history.flag(row) < 0 ? null : String.valueOf(history.flag(row));
+            case KILLED -> history.killNumber(row) != null && !history.killNumber(row).isEmpty() ? "1" : "0";
+            default -> null;
+        };
+    }
+}
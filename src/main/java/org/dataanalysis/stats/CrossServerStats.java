@@ -0,0 +1,407 @@
+package org.dataanalysis.stats;
+
+import jakarta.annotation.PostConstruct;
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.HistoryListener;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 跨服务器按期号对齐的相关性统计
+ * 各服务器的开奖期号相同，按期号对齐后两两统计同中、同杀、结果一致的期数以及中/杀的相关系数；
+ * 每个服务器的在库、中、错、被杀序列保存为以期号为下标的位集，两两计数矩阵随数据变化事件增量更新，
+ * 新增一期只需与其余服务器的同一期比较，全部历史的比较结果直接读取矩阵；
+ * 各服务器的最新一期是尚未开奖的预测数据，不计入全部历史的矩阵，新的一期到达时上一期才计入；
+ * 服务器重建以及最近N期的滚动统计用位集与运算加位计数，按服务器对并行计算
+ * 所有状态由本对象的锁保护；加锁顺序总是先服务器锁再本对象锁，与事件回调一致
+ */
+@Component
+public class CrossServerStats implements HistoryListener {
+
+    // 两两计数矩阵的下标，[i][j]中带方向的计数均指i的特征与j的特征
+    private static final int COMMON = 0;       // 两个服务器都有数据的期数
+    private static final int CO_KILL = 1;      // 同时被杀
+    private static final int KILL_PRESENT = 2; // i被杀且j有数据
+    private static final int HIT_HIT = 3;      // 同时中
+    private static final int HIT_MISS = 4;     // i中且j错
+    private static final int MISS_MISS = 5;    // 同时错
+    private static final int METRICS = 6;
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    // 参与对比的服务器，默认是开同一批奖的sf1、sf3-sf7
+    @Value("${analysis.correlation.servers:sf1,sf3,sf4,sf5,sf6,sf7}")
+    private String[] servers = {"sf1", "sf3", "sf4", "sf5", "sf6", "sf7"};
+
+    private ServerBits[] bits;
+    private int[][][] counts;
+
+    @PostConstruct
+    public void init() {
+        reset();
+        historyStore.addListener(this);
+    }
+
+    synchronized void reset() {
+        bits = new ServerBits[servers.length];
+        counts = new int[METRICS][servers.length][servers.length];
+    }
+
+    @Override
+    public void onAppend(ServerHistory history, int row) {
+        int s = indexOf(history.getServerName());
+        if (s < 0) {
+            return;
+        }
+        synchronized (this) {
+            ServerBits server = bits[s];
+            if (server == null || server.size != row) {
+                reload(s, history);
+                return;
+            }
+            server.set(history.period(row), history.traits(row));
+            server.size = row + 1;
+            server.version = history.version();
+            if (row > 0) {
+                // 上一期不再是最新一期，计入全部历史的矩阵
+                update(s, history.period(row - 1), history.traits(row - 1), 1);
+            }
+        }
+    }
+
+    @Override
+    public void onRetract(ServerHistory history, int row) {
+        int s = indexOf(history.getServerName());
+        if (s < 0) {
+            return;
+        }
+        synchronized (this) {
+            ServerBits server = bits[s];
+            if (server == null || server.size != row + 1) {
+                bits[s] = null;
+                return;
+            }
+            // 最新一期不在矩阵中，撤回后上一期重新成为最新一期，从矩阵中扣除
+            server.clear(history.period(row));
+            server.size = row;
+            if (row > 0) {
+                update(s, history.period(row - 1), history.traits(row - 1), -1);
+            }
+            server.latestPeriod = row > 0 ? history.period(row - 1) : Integer.MIN_VALUE;
+        }
+    }
+
+    @Override
+    public void onReload(ServerHistory history) {
+        int s = indexOf(history.getServerName());
+        if (s < 0) {
+            return;
+        }
+        synchronized (this) {
+            reload(s, history);
+        }
+    }
+
+    // 计入或扣除服务器s已开奖的一期，与包括自身在内的每个服务器已开奖的同一期比较；调用时s的这一期已置位且不是最新一期
+    private void update(int s, int period, int traits, int delta) {
+        boolean hit = (traits & RowTraits.HIT) != 0;
+        boolean miss = (traits & RowTraits.MISS) != 0;
+        boolean killed = (traits & RowTraits.KILLED) != 0;
+        for (int t = 0; t < bits.length; t++) {
+            ServerBits other = bits[t];
+            if (other == null || !other.settled(period)) {
+                continue;
+            }
+            boolean otherHit = other.hit.get(period);
+            boolean otherMiss = other.miss.get(period);
+            boolean otherKilled = other.killed.get(period);
+            add(COMMON, s, t, delta, true);
+            add(CO_KILL, s, t, delta, killed && otherKilled);
+            add(HIT_HIT, s, t, delta, hit && otherHit);
+            add(MISS_MISS, s, t, delta, miss && otherMiss);
+            if (t == s) {
+                counts[KILL_PRESENT][s][s] += killed ? delta : 0;
+                continue;
+            }
+            counts[KILL_PRESENT][s][t] += killed ? delta : 0;
+            counts[KILL_PRESENT][t][s] += otherKilled ? delta : 0;
+            counts[HIT_MISS][s][t] += hit && otherMiss ? delta : 0;
+            counts[HIT_MISS][t][s] += otherHit && miss ? delta : 0;
+        }
+    }
+
+    // 对称计数同时更新[s][t]和[t][s]，s等于t时只更新一次
+    private void add(int metric, int s, int t, int delta, boolean matched) {
+        if (matched) {
+            counts[metric][s][t] += delta;
+            if (s != t) {
+                counts[metric][t][s] += delta;
+            }
+        }
+    }
+
+    // 重建服务器s的位集，并用位集与运算并行重算它与每个服务器已开奖各期的计数
+    private void reload(int s, ServerHistory history) {
+        ServerBits server = new ServerBits();
+        int n = history.size();
+        for (int row = 0; row < n; row++) {
+            server.set(history.period(row), history.traits(row));
+        }
+        server.size = n;
+        server.version = history.version();
+        bits[s] = server;
+
+        int[][] pairs = IntStream.range(0, bits.length).parallel()
+                .mapToObj(t -> bits[t] == null ? null : settledPairCounts(server, bits[t]))
+                .toArray(int[][]::new);
+        for (int t = 0; t < bits.length; t++) {
+            int[] pair = pairs[t];
+            for (int metric = 0; metric < METRICS; metric++) {
+                counts[metric][s][t] = pair == null ? 0 : pair[metric];
+                counts[metric][t][s] = pair == null ? 0 : pair[METRICS + metric];
+            }
+        }
+    }
+
+    /**
+     * 两个服务器已开奖各期的计数：共同的期号都不大于两者最新期号中较小的一个，
+     * 去掉这一期后剩下的期号在两个服务器中都不是最新一期
+     */
+    static int[] settledPairCounts(ServerBits a, ServerBits b) {
+        int latest = Math.min(a.latestPeriod, b.latestPeriod);
+        return latest == Integer.MIN_VALUE ? new int[METRICS * 2] : pairCounts(a, b, Integer.MIN_VALUE, latest - 1);
+    }
+
+    /**
+     * 两个服务器在期号区间内的计数，前METRICS个为[a][b]，后METRICS个为[b][a]
+     */
+    static int[] pairCounts(ServerBits a, ServerBits b, int fromPeriod, int toPeriod) {
+        int[] pair = new int[METRICS * 2];
+        pair[COMMON] = PeriodBits.andCount(a.present, b.present, fromPeriod, toPeriod);
+        pair[CO_KILL] = PeriodBits.andCount(a.killed, b.killed, fromPeriod, toPeriod);
+        pair[KILL_PRESENT] = PeriodBits.andCount(a.killed, b.present, fromPeriod, toPeriod);
+        pair[HIT_HIT] = PeriodBits.andCount(a.hit, b.hit, fromPeriod, toPeriod);
+        pair[HIT_MISS] = PeriodBits.andCount(a.hit, b.miss, fromPeriod, toPeriod);
+        pair[MISS_MISS] = PeriodBits.andCount(a.miss, b.miss, fromPeriod, toPeriod);
+        System.arraycopy(pair, 0, pair, METRICS, METRICS);
+        pair[METRICS + KILL_PRESENT] = PeriodBits.andCount(b.killed, a.present, fromPeriod, toPeriod);
+        pair[METRICS + HIT_MISS] = PeriodBits.andCount(b.hit, a.miss, fromPeriod, toPeriod);
+        return pair;
+    }
+
+    /**
+     * 全部历史以及最近若干期的两两对比矩阵，全部历史不含各服务器的最新一期
+     *
+     * @param windows 滚动窗口期数列表，窗口按期号对齐到所有服务器中最新的期号
+     * @param excludeLatest 滚动窗口是否排除最新一期(尚未开奖的预测数据)
+     */
+    public Map<String, Object> correlations(List<Integer> windows, boolean excludeLatest) {
+        refreshStale();
+        Map<String, Object> result = new LinkedHashMap<>();
+        synchronized (this) {
+            Map<String, Object> versions = new LinkedHashMap<>();
+            int latestPeriod = Integer.MIN_VALUE;
+            for (int s = 0; s < servers.length; s++) {
+                versions.put(servers[s], bits[s] == null ? null : bits[s].version);
+                if (bits[s] != null && bits[s].size > 0) {
+                    latestPeriod = Math.max(latestPeriod, bits[s].latestPeriod);
+                }
+            }
+            result.put("servers", Arrays.asList(servers));
+            result.put("dataVersions", versions);
+            result.put("overall", matrices(counts));
+
+            List<Map<String, Object>> rolling = new ArrayList<>();
+            if (latestPeriod != Integer.MIN_VALUE) {
+                int toPeriod = excludeLatest ? latestPeriod - 1 : latestPeriod;
+                for (Integer window : windows) {
+                    int fromPeriod = toPeriod - Math.max(window, 1) + 1;
+                    Map<String, Object> matrices = matrices(windowCounts(fromPeriod, toPeriod));
+                    Map<String, Object> windowResult = new LinkedHashMap<>();
+                    windowResult.put("window", window);
+                    windowResult.put("fromPeriod", fromPeriod);
+                    windowResult.put("toPeriod", toPeriod);
+                    windowResult.putAll(matrices);
+                    rolling.add(windowResult);
+                }
+            }
+            result.put("windows", rolling);
+        }
+        return result;
+    }
+
+    // 期号区间内的两两计数，按服务器对并行计算
+    private int[][][] windowCounts(int fromPeriod, int toPeriod) {
+        int n = bits.length;
+        int[][] pairs = IntStream.range(0, n * n).parallel()
+                .mapToObj(p -> {
+                    int i = p / n;
+                    int j = p % n;
+                    return i > j || bits[i] == null || bits[j] == null ? null
+                            : pairCounts(bits[i], bits[j], fromPeriod, toPeriod);
+                })
+                .toArray(int[][]::new);
+        int[][][] window = new int[METRICS][n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                int[] pair = pairs[i * n + j];
+                if (pair == null) {
+                    continue;
+                }
+                for (int metric = 0; metric < METRICS; metric++) {
+                    window[metric][i][j] = pair[metric];
+                    window[metric][j][i] = pair[METRICS + metric];
+                }
+            }
+        }
+        return window;
+    }
+
+    private Map<String, Object> matrices(int[][][] counts) {
+        int n = servers.length;
+        List<List<Object>> common = new ArrayList<>();
+        List<List<Object>> coHit = new ArrayList<>();
+        List<List<Object>> coKill = new ArrayList<>();
+        List<List<Object>> agreement = new ArrayList<>();
+        List<List<Object>> agreementRate = new ArrayList<>();
+        List<List<Object>> hitCorrelation = new ArrayList<>();
+        List<List<Object>> killCorrelation = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            List<Object> commonRow = new ArrayList<>();
+            List<Object> coHitRow = new ArrayList<>();
+            List<Object> coKillRow = new ArrayList<>();
+            List<Object> agreementRow = new ArrayList<>();
+            List<Object> agreementRateRow = new ArrayList<>();
+            List<Object> hitCorrelationRow = new ArrayList<>();
+            List<Object> killCorrelationRow = new ArrayList<>();
+            for (int j = 0; j < n; j++) {
+                int hitHit = counts[HIT_HIT][i][j];
+                int hitMiss = counts[HIT_MISS][i][j];
+                int missHit = counts[HIT_MISS][j][i];
+                int missMiss = counts[MISS_MISS][i][j];
+                int killKill = counts[CO_KILL][i][j];
+                int killOnly = counts[KILL_PRESENT][i][j] - killKill;
+                int otherKillOnly = counts[KILL_PRESENT][j][i] - killKill;
+                int noKill = counts[COMMON][i][j] - killKill - killOnly - otherKillOnly;
+
+                commonRow.add(counts[COMMON][i][j]);
+                coHitRow.add(hitHit);
+                coKillRow.add(killKill);
+                agreementRow.add(hitHit + missMiss);
+                agreementRateRow.add(Rates.format(Rates.percent(hitHit + missMiss,
+                        hitHit + hitMiss + missHit + missMiss)));
+                hitCorrelationRow.add(phi(hitHit, hitMiss, missHit, missMiss));
+                killCorrelationRow.add(phi(killKill, killOnly, otherKillOnly, noKill));
+            }
+            common.add(commonRow);
+            coHit.add(coHitRow);
+            coKill.add(coKillRow);
+            agreement.add(agreementRow);
+            agreementRate.add(agreementRateRow);
+            hitCorrelation.add(hitCorrelationRow);
+            killCorrelation.add(killCorrelationRow);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("commonPeriods", common);
+        result.put("coHit", coHit);
+        result.put("coKill", coKill);
+        result.put("agreement", agreement);
+        result.put("agreementRate", agreementRate);
+        result.put("hitCorrelation", hitCorrelation);
+        result.put("killCorrelation", killCorrelation);
+        return result;
+    }
+
+    /**
+     * 2x2列联表的phi系数(两个0/1变量的皮尔逊相关系数)，保留4位小数，任一边缘为0时返回null
+     */
+    static Double phi(long n11, long n10, long n01, long n00) {
+        double denominator = Math.sqrt((double) (n11 + n10) * (n01 + n00) * (n11 + n01) * (n10 + n00));
+        if (denominator == 0) {
+            return null;
+        }
+        return Math.round((n11 * n00 - n10 * n01) / denominator * 10000) / 10000.0;
+    }
+
+    // 事件尚未送达的服务器在读锁下重建；先取服务器锁再取本对象锁，避免与事件回调死锁
+    private void refreshStale() {
+        for (int s = 0; s < servers.length; s++) {
+            ServerHistory history = historyStore.history(servers[s]);
+            synchronized (this) {
+                if (bits[s] != null && bits[s].version == history.version()) {
+                    continue;
+                }
+            }
+            history.lock().readLock().lock();
+            try {
+                synchronized (this) {
+                    if (bits[s] == null || bits[s].version != history.version()) {
+                        reload(s, history);
+                    }
+                }
+            } finally {
+                history.lock().readLock().unlock();
+            }
+        }
+    }
+
+    private int indexOf(String serverName) {
+        for (int s = 0; s < servers.length; s++) {
+            if (servers[s].equals(serverName)) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 一个服务器按期号对齐的序列位集
+     */
+    static final class ServerBits {
+        final PeriodBits present = new PeriodBits();
+        final PeriodBits hit = new PeriodBits();
+        final PeriodBits miss = new PeriodBits();
+        final PeriodBits killed = new PeriodBits();
+        int size;
+        int latestPeriod = Integer.MIN_VALUE;
+        long version = -1;
+
+        void set(int period, int traits) {
+            present.set(period);
+            if ((traits & RowTraits.HIT) != 0) {
+                hit.set(period);
+            }
+            if ((traits & RowTraits.MISS) != 0) {
+                miss.set(period);
+            }
+            if ((traits & RowTraits.KILLED) != 0) {
+                killed.set(period);
+            }
+            latestPeriod = Math.max(latestPeriod, period);
+        }
+
+        // 该期有数据且不是最新一期(已开奖)
+        boolean settled(int period) {
+            return period < latestPeriod && present.get(period);
+        }
+
+        void clear(int period) {
+            present.clear(period);
+            hit.clear(period);
+            miss.clear(period);
+            killed.clear(period);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.dataanalysis.stats;
+
+import jakarta.annotation.PostConstruct;
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
+import org.dataanalysis.store.SnapshotSection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 各服务器期号的数据质量检查
+ * 每个服务器维护一个期号位集(见PeriodQuality)，同步写入记录时O(1)地发现缺失的期号、同一期号的重复记录和乱序到达的旧期号，
+ * 查询和计数都只读位集和计数器，不查询数据库也不扫描历史数据；
+ * 重复和乱序计数无法从历史数据重建，作为附加分段写入快照，启动同步中发现的由HistoryStore在注册时补发
+ */
+@Component
+public class DataQuality implements SnapshotSection {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataQuality.class);
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    // 每个服务器保留的最近异常条数
+    @Value("${analysis.quality.max-anomalies:100}")
+    private int maxAnomalies = 100;
+
+    private final Map<String, PeriodQuality> qualities = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        historyStore.addListener(this);
+    }
+
+    @Override
+    public String sectionName() {
+        return "quality";
+    }
+
+    @Override
+    public void writeSection(ServerHistory history, int rows, DataOutputStream out) throws IOException {
+        quality(history).write(out);
+    }
+
+    // 快照只保存计数和已报告的重复id，期号位集总是按当前数据重建
+    @Override
+    public boolean rowIndependent() {
+        return true;
+    }
+
+    @Override
+    public boolean readSection(ServerHistory history, int rows, ByteBuffer in) {
+        PeriodQuality quality = new PeriodQuality(maxAnomalies);
+        quality.read(in);
+        quality.rebuild(history);
+        qualities.put(history.getServerName(), quality);
+        return true;
+    }
+
+    @Override
+    public void onAppend(ServerHistory history, int row) {
+        quality(history).add(history.period(row), true);
+    }
+
+    @Override
+    public void onRetract(ServerHistory history, int row) {
+        // 撤回的最新一期随后会以同一期号重新写入，期号位集不需要变化
+    }
+
+    @Override
+    public void onReload(ServerHistory history) {
+        quality(history).rebuild(history);
+    }
+
+    @Override
+    public void onIngest(ServerHistory history, HistoryRecord record, ServerHistory.Change change, long previousId) {
+        if (record.getPeriod() == null) {
+            return;
+        }
+        PeriodQuality quality = quality(history);
+        int period = record.getPeriod();
+        long id = record.getId() != null ? record.getId() : -1;
+        if (previousId > 0 && id > 0 && id != previousId && quality.duplicate(period, id, previousId)) {
+            logger.warn("{}期号{}出现重复记录，id {} 与已有的 {} 不同", history.getServerName(), period, id, previousId);
+        }
+        if (change == ServerHistory.Change.INSERTED) {
+            int latestPeriod = history.period(history.size() - 1);
+            quality.outOfOrder(period, id, latestPeriod);
+            logger.warn("{}期号{}乱序到达，最新期号已是{}", history.getServerName(), period, latestPeriod);
+        }
+        // 重建模式下不会收到onAppend，期号已存在时不会重复计入
+        quality.add(period, true);
+    }
+
+    /**
+     * 服务器的数据质量：计数、当前缺失的期号区间(最新的在前)和最近的异常
+     *
+     * @param serverName 服务器名称
+     * @param limit 最多列出的缺失区间个数
+     */
+    public Map<String, Object> quality(String serverName, int limit) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("serverName", serverName);
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            PeriodQuality quality = quality(history);
+            result.put(StatsSnapshot.DATA_VERSION, history.version());
+            result.put("totalRecords", history.size());
+            result.putAll(quality.summary());
+            result.put("gaps", quality.gaps(Math.max(limit, 0)));
+            result.put("anomalies", quality.recentAnomalies());
+        } finally {
+            history.lock().readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 全部服务器的质量计数，供监控定时采集
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long missing = 0;
+        long duplicates = 0;
+        long outOfOrder = 0;
+        Map<String, Object> servers = new LinkedHashMap<>();
+        for (String serverName : historyStore.getServers()) {
+            ServerHistory history = historyStore.history(serverName);
+            history.lock().readLock().lock();
+            try {
+                PeriodQuality quality = quality(history);
+                missing += quality.missingCount();
+                duplicates += quality.duplicateCount();
+                outOfOrder += quality.outOfOrderCount();
+                servers.put(serverName, quality.summary());
+            } finally {
+                history.lock().readLock().unlock();
+            }
+        }
+        result.put("missingCount", missing);
+        result.put("duplicateCount", duplicates);
+        result.put("outOfOrderCount", outOfOrder);
+        result.put("servers", servers);
+        return result;
+    }
+
+    // 尚未收到事件时按当前数据建立并写回缓存(持有读锁或写锁均可)，随后的事件逐条计入
+    private PeriodQuality quality(ServerHistory history) {
+        return qualities.computeIfAbsent(history.getServerName(), name -> {
+            PeriodQuality quality = new PeriodQuality(maxAnomalies);
+            quality.rebuild(history);
+            return quality;
+        });
+    }
+}
@@ -0,0 +1,210 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.DrawDigits;
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个服务器的开奖数字频率表
+ * 包括每个位置上每个数字的出现次数(热力图)、数字和的分布、最近window期每个数字的出现次数(冷热)
+ * 以及每个数字最后出现的行(遗漏)；追加或撤回一期只更新常数个计数
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class DigitFrequencies implements HistoryIndex {
+
+    private static final int DIGITS = 10;
+
+    private final int window;
+    // [位置][数字]
+    private final int[][] positionCounts = new int[DrawDigits.POSITIONS][DIGITS];
+    // [数字和]
+    private final int[] sumCounts = new int[DrawDigits.MAX_SUM + 1];
+    // 最近window行内每个数字的出现次数
+    private final int[] recentCounts = new int[DIGITS];
+    // 每个数字最后出现的行，未出现过为-1
+    private final int[] lastSeen = new int[DIGITS];
+    private int drawCount;
+    private int size;
+
+    /**
+     * @param window 统计冷热的最近期数
+     */
+    public DigitFrequencies(int window) {
+        this.window = Math.max(window, 1);
+        Arrays.fill(lastSeen, -1);
+    }
+
+    /**
+     * 已计入的行数
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    @Override
+    public void rebuild(ServerHistory history) {
+        for (int[] counts : positionCounts) {
+            Arrays.fill(counts, 0);
+        }
+        Arrays.fill(sumCounts, 0);
+        Arrays.fill(recentCounts, 0);
+        Arrays.fill(lastSeen, -1);
+        drawCount = 0;
+        size = 0;
+        int n = history.size();
+        for (int row = 0; row < n; row++) {
+            append(history, row);
+        }
+    }
+
+    /**
+     * 追加末尾一行
+     */
+    @Override
+    public void append(ServerHistory history, int row) {
+        if (row != size) {
+            throw new IllegalStateException(history.getServerName() + "：数字频率期望第" + size + "行，实际为第" + row + "行");
+        }
+        short packed = history.drawDigits(row);
+        if (packed != DrawDigits.NONE) {
+            drawCount++;
+            sumCounts[DrawDigits.sum(packed)]++;
+            for (int position = 0; position < DrawDigits.POSITIONS; position++) {
+                int digit = DrawDigits.digit(packed, position);
+                positionCounts[position][digit]++;
+                recentCounts[digit]++;
+                lastSeen[digit] = row;
+            }
+        }
+        // 移出窗口的一行
+        if (row >= window) {
+            updateRecent(history.drawDigits(row - window), -1);
+        }
+        size++;
+    }
+
+    /**
+     * 撤回最后一行，调用时该行仍是旧值
+     */
+    @Override
+    public void retract(ServerHistory history, int row) {
+        if (row != size - 1) {
+            throw new IllegalStateException("数字频率只能撤回最后一行，实际为第" + row + "行");
+        }
+        short packed = history.drawDigits(row);
+        if (packed != DrawDigits.NONE) {
+            drawCount--;
+            sumCounts[DrawDigits.sum(packed)]--;
+            for (int position = 0; position < DrawDigits.POSITIONS; position++) {
+                int digit = DrawDigits.digit(packed, position);
+                positionCounts[position][digit]--;
+                recentCounts[digit]--;
+                if (lastSeen[digit] == row) {
+                    lastSeen[digit] = previousOccurrence(history, digit, row);
+                }
+            }
+        }
+        if (row >= window) {
+            updateRecent(history.drawDigits(row - window), 1);
+        }
+        size--;
+    }
+
+    private void updateRecent(short packed, int delta) {
+        if (packed != DrawDigits.NONE) {
+            for (int position = 0; position < DrawDigits.POSITIONS; position++) {
+                recentCounts[DrawDigits.digit(packed, position)] += delta;
+            }
+        }
+    }
+
+    // 撤回时向前查找上一次出现的行，只在撤回最新一期时发生
+    private static int previousOccurrence(ServerHistory history, int digit, int row) {
+        for (int r = row - 1; r >= 0; r--) {
+            short packed = history.drawDigits(r);
+            if (packed != DrawDigits.NONE && (DrawDigits.digit(packed, 0) == digit
+                    || DrawDigits.digit(packed, 1) == digit || DrawDigits.digit(packed, 2) == digit)) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 生成频率表
+     *
+     * @param hotCount 冷热榜各列出的数字个数
+     */
+    public Map<String, Object> frequencies(ServerHistory history, int hotCount) {
+        // 遗漏按最后一期有开奖号码的行计算，尚未开奖的预测行不计入
+        int latest = size - 1;
+        while (latest >= 0 && history.drawDigits(latest) == DrawDigits.NONE) {
+            latest--;
+        }
+
+        List<List<Integer>> heatmap = new ArrayList<>();
+        for (int[] counts : positionCounts) {
+            List<Integer> row = new ArrayList<>(DIGITS);
+            for (int count : counts) {
+                row.add(count);
+            }
+            heatmap.add(row);
+        }
+
+        List<Map<String, Object>> digits = new ArrayList<>();
+        for (int digit = 0; digit < DIGITS; digit++) {
+            int total = 0;
+            for (int[] counts : positionCounts) {
+                total += counts[digit];
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("digit", digit);
+            item.put("count", total);
+            item.put("rate", Rates.format(Rates.percent(total, (long) drawCount * DrawDigits.POSITIONS)));
+            item.put("recentCount", recentCounts[digit]);
+            item.put("omission", lastSeen[digit] >= 0 ? latest - lastSeen[digit] : null);
+            digits.add(item);
+        }
+
+        List<Map<String, Object>> sums = new ArrayList<>();
+        for (int sum = 0; sum < sumCounts.length; sum++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("sum", sum);
+            item.put("count", sumCounts[sum]);
+            item.put("rate", Rates.format(Rates.percent(sumCounts[sum], drawCount)));
+            sums.add(item);
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int digit = 0; digit < DIGITS; digit++) {
+            order.add(digit);
+        }
+        order.sort(Comparator.comparingInt((Integer digit) -> -recentCounts[digit]).thenComparingInt(digit -> digit));
+        int limit = Math.min(Math.max(hotCount, 0), DIGITS);
+        List<Integer> hot = new ArrayList<>(order.subList(0, limit));
+        List<Integer> cold = new ArrayList<>(order.subList(DIGITS - limit, DIGITS));
+        Collections.reverse(cold);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("drawCount", drawCount);
+        result.put("hotWindow", window);
+        result.put("heatmap", heatmap);
+        result.put("digits", digits);
+        result.put("sums", sums);
+        result.put("hot", hot);
+        result.put("cold", cold);
+        return result;
+    }
+}
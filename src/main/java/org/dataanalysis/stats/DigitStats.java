@@ -0,0 +1,46 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 各服务器开奖数字的频率统计
+ * 开奖号码在写入内存时已解析为打包的三个数字(见DrawDigits)，频率表随数据变化事件增量更新，查询时直接读取
+ */
+@Component
+public class DigitStats extends HistoryIndexListener<DigitFrequencies> {
+
+    // 统计冷热的最近期数
+    @Value("${analysis.digits.hot-window:100}")
+    private int hotWindow = 100;
+
+    @Override
+    protected DigitFrequencies newIndex() {
+        return new DigitFrequencies(hotWindow);
+    }
+
+    /**
+     * 开奖数字的位置热力图、数字和分布、冷热数字和遗漏
+     *
+     * @param serverName 服务器名称
+     * @param hotCount 冷热榜各列出的数字个数
+     */
+    public Map<String, Object> frequencies(String serverName, int hotCount) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("serverName", serverName);
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            result.put(StatsSnapshot.DATA_VERSION, history.version());
+            result.put("totalRecords", history.size());
+            result.putAll(index(history).frequencies(history, hotCount));
+        } finally {
+            history.lock().readLock().unlock();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+package org.dataanalysis.stats;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 按创建时间汇总的时间粒度
+ * 时间为按UTC换算的本地时间毫秒数(见ServerHistory.createdAtMillis)，按整小时、整天、整周(周一开始)切分
+ */
+public enum Granularity {
+
+    HOUR("hour", "yyyy-MM-dd HH:00"),
+    DAY("day", "yyyy-MM-dd"),
+    WEEK("week", "yyyy-MM-dd");
+
+    private static final long HOUR_MILLIS = 3600_000L;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    private final String code;
+    private final DateTimeFormatter formatter;
+
+    Granularity(String code, String pattern) {
+        this.code = code;
+        this.formatter = DateTimeFormatter.ofPattern(pattern);
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * 所在时间段的起始毫秒数
+     */
+    public long bucketStart(long millis) {
+        switch (this) {
+            case HOUR:
+                return Math.floorDiv(millis, HOUR_MILLIS) * HOUR_MILLIS;
+            case DAY:
+                return Math.floorDiv(millis, DAY_MILLIS) * DAY_MILLIS;
+            default:
+                // 1970-01-01是周四，加3后对7取模得到距周一的天数
+                long day = Math.floorDiv(millis, DAY_MILLIS);
+                return (day - Math.floorMod(day + 3, 7)) * DAY_MILLIS;
+        }
+    }
+
+    /**
+     * 时间段起点的显示文本
+     */
+    public String format(long bucketStart) {
+        return formatter.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(bucketStart), ZoneOffset.UTC));
+    }
+
+    /**
+     * 按名称查找，忽略大小写，找不到时返回null
+     */
+    public static Granularity fromCode(String code) {
+        for (Granularity granularity : values()) {
+            if (granularity.code.equalsIgnoreCase(code)) {
+                return granularity;
+            }
+        }
+        return null;
+    }
+}
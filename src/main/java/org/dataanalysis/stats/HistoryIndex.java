@@ -0,0 +1,30 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+
+/**
+ * 单个服务器上随数据变化增量维护的统计结构，由HistoryIndexListener按服务器管理
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public interface HistoryIndex {
+
+    /**
+     * 已计入的行数
+     */
+    int size();
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    void rebuild(ServerHistory history);
+
+    /**
+     * 追加末尾一行，row必须等于size()
+     */
+    void append(ServerHistory history, int row);
+
+    /**
+     * 撤回最后一行，row必须等于size()-1，调用时该行仍是旧值
+     */
+    void retract(ServerHistory history, int row);
+}
@@ -0,0 +1,88 @@
+package org.dataanalysis.stats;
+
+import jakarta.annotation.PostConstruct;
+import org.dataanalysis.store.HistoryListener;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按服务器维护一个HistoryIndex的监听器基类
+ * 追加和撤回事件与索引的行数对得上时增量更新，对不上时(例如漏掉了事件)追加时重建、撤回时丢弃，
+ * 重新加载时重建；查询时索引缺失或行数不一致则重建并写回缓存，之后的查询和事件直接使用，
+ * 持有读锁时没有写入，重建结果与当前数据一致，同一服务器并发的查询只会重建一次
+ *
+ * @param <T> 索引类型
+ */
+public abstract class HistoryIndexListener<T extends HistoryIndex> implements HistoryListener {
+
+    @Autowired
+    protected HistoryStore historyStore;
+
+    private final Map<String, T> indexes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        historyStore.addListener(this);
+    }
+
+    /**
+     * 创建一个空索引
+     */
+    protected abstract T newIndex();
+
+    @Override
+    public void onAppend(ServerHistory history, int row) {
+        T index = indexes.get(history.getServerName());
+        if (index == null || index.size() != row) {
+            onReload(history);
+            return;
+        }
+        index.append(history, row);
+    }
+
+    @Override
+    public void onRetract(ServerHistory history, int row) {
+        T index = indexes.get(history.getServerName());
+        if (index == null || index.size() != row + 1) {
+            indexes.remove(history.getServerName());
+            return;
+        }
+        index.retract(history, row);
+    }
+
+    @Override
+    public void onReload(ServerHistory history) {
+        T index = newIndex();
+        index.rebuild(history);
+        indexes.put(history.getServerName(), index);
+    }
+
+    /**
+     * 服务器当前的索引，调用方需持有该服务器的锁
+     */
+    protected T index(ServerHistory history) {
+        T index = indexes.get(history.getServerName());
+        if (index != null && index.size() == history.size()) {
+            return index;
+        }
+        return indexes.compute(history.getServerName(), (server, current) -> {
+            if (current != null && current.size() == history.size()) {
+                return current;
+            }
+            T rebuilt = newIndex();
+            rebuilt.rebuild(history);
+            return rebuilt;
+        });
+    }
+
+    /**
+     * 直接设置服务器的索引(例如从快照恢复)，调用方需持有该服务器的写锁
+     */
+    protected void putIndex(ServerHistory history, T index) {
+        indexes.put(history.getServerName(), index);
+    }
+}
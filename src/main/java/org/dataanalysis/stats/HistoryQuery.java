@@ -0,0 +1,204 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * 一次过滤聚合查询
+ * 条件写法: 字段[@滞后期数]=取值1,取值2，多个条件用分号分隔，均需满足；!=表示排除这些取值，
+ * 例如"killed@1=1;killed@2=1"表示上一期和上上期都被杀，"totalNumber=10..17;outcome!=错"
+ * 分组写法: 字段[@滞后期数]，逗号分隔，例如"openResult,killed@1"
+ *
+ * @param where 过滤条件
+ * @param groupBy 分组字段，为空时只输出一组总计
+ * @param select 输出的聚合项
+ * @param fromPeriod 起始期号(含)，为null时从最早一期开始
+ * @param toPeriod 截止期号(含)，为null时到最新一期
+ * @param last 在期号区间内只取最近N期，为null时不限制
+ * @param excludeLatest 是否排除最新一期(尚未开奖的预测数据)
+ * @param limit 额外返回最近多少个满足条件的期号，0表示不返回
+ */
+public record HistoryQuery(List<Condition> where, List<FieldRef> groupBy, List<Aggregate> select,
+                           Integer fromPeriod, Integer toPeriod, Integer last, boolean excludeLatest, int limit) {
+
+    /** 滞后期数上限 */
+    static final int MAX_LAG = 1000;
+    /** 分组字段个数上限 */
+    static final int MAX_GROUP_FIELDS = 3;
+    /** 返回期号个数上限 */
+    static final int MAX_LIMIT = 1000;
+
+    /**
+     * 默认输出的聚合项
+     */
+    public static final String DEFAULT_SELECT = "count,winRate,killRate,profitRate";
+
+    /**
+     * 解析查询参数，格式错误时抛出IllegalArgumentException
+     */
+    public static HistoryQuery parse(String where, String groupBy, String select, Integer fromPeriod,
+                                     Integer toPeriod, Integer last, boolean excludeLatest, int limit) {
+        List<Condition> conditions = new ArrayList<>();
+        for (String part : split(where, ";")) {
+            conditions.add(Condition.parse(part));
+        }
+        List<FieldRef> groups = new ArrayList<>();
+        for (String part : split(groupBy, ",")) {
+            groups.add(FieldRef.parse(part));
+        }
+        if (groups.size() > MAX_GROUP_FIELDS) {
+            throw new IllegalArgumentException("分组字段最多" + MAX_GROUP_FIELDS + "个");
+        }
+        List<Aggregate> aggregates = new ArrayList<>();
+        for (String part : split(select == null || select.isBlank() ? DEFAULT_SELECT : select, ",")) {
+            aggregates.add(Aggregate.of(part));
+        }
+        if (last != null && last < 0) {
+            throw new IllegalArgumentException("last不能为负数: " + last);
+        }
+        if (limit < 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit需在0到" + MAX_LIMIT + "之间: " + limit);
+        }
+        return new HistoryQuery(List.copyOf(conditions), List.copyOf(groups), List.copyOf(aggregates),
+                fromPeriod, toPeriod, last, excludeLatest, limit);
+    }
+
+    private static List<String> split(String text, String separator) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(text.split(separator))
+                .map(String::trim)
+                .filter(part -> !part.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 字段引用，lag为0表示当期，1表示上一期，以此类推
+     */
+    public record FieldRef(QueryField field, int lag) {
+
+        static FieldRef parse(String text) {
+            int at = text.indexOf('@');
+            if (at < 0) {
+                return new FieldRef(QueryField.of(text.trim()), 0);
+            }
+            int lag;
+            try {
+                lag = Integer.parseInt(text.substring(at + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("滞后期数不是有效的数字: " + text);
+            }
+            if (lag < 0 || lag > MAX_LAG) {
+                throw new IllegalArgumentException("滞后期数需在0到" + MAX_LAG + "之间: " + text);
+            }
+            return new FieldRef(QueryField.of(text.substring(0, at).trim()), lag);
+        }
+
+        public String label() {
+            return lag == 0 ? field.label() : field.label() + "@" + lag;
+        }
+    }
+
+    /**
+     * 过滤条件：字段取值在values中(negate为true时不在values中)，滞后的行不存在时不满足
+     */
+    public record Condition(FieldRef ref, boolean negate, List<String> values) {
+
+        static Condition parse(String text) {
+            boolean negate = text.contains("!=");
+            int op = negate ? text.indexOf("!=") : text.indexOf('=');
+            if (op <= 0) {
+                throw new IllegalArgumentException("条件格式应为 字段=取值 或 字段!=取值: " + text);
+            }
+            FieldRef ref = FieldRef.parse(text.substring(0, op));
+            List<String> values = new ArrayList<>();
+            for (String value : split(text.substring(op + (negate ? 2 : 1)), ",")) {
+                if (ref.field().numeric() && value.contains("..")) {
+                    expandRange(value, values);
+                } else {
+                    values.add(value);
+                }
+            }
+            if (values.isEmpty()) {
+                throw new IllegalArgumentException("条件缺少取值: " + text);
+            }
+            values.forEach(ref.field()::validate);
+            return new Condition(ref, negate, List.copyOf(values));
+        }
+
+        private static void expandRange(String text, List<String> values) {
+            String[] bounds = text.split("\\.\\.", 2);
+            try {
+                int from = Integer.parseInt(bounds[0].trim());
+                int to = Integer.parseInt(bounds[1].trim());
+                if (to < from || to - from >= QueryField.CODE_SPACE) {
+                    throw new IllegalArgumentException("无效的区间: " + text);
+                }
+                for (int value = from; value <= to; value++) {
+                    values.add(String.valueOf(value));
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的区间: " + text);
+            }
+        }
+
+        /**
+         * 编译为按行判断的谓词，调用方需持有服务器读锁直到不再使用
+         */
+        IntPredicate compile(ServerHistory history) {
+            boolean[] accepted = new boolean[QueryField.CODE_SPACE];
+            for (String value : values) {
+                int code = ref.field().codeOf(history, value);
+                if (code >= 0) {
+                    accepted[code] = true;
+                }
+            }
+            IntUnaryOperator reader = ref.field().reader(history);
+            int lag = ref.lag();
+            return row -> row >= lag && accepted[reader.applyAsInt(row - lag)] != negate;
+        }
+    }
+
+    /**
+     * 聚合项，比率的分母都是满足条件的期数
+     */
+    public enum Aggregate {
+        COUNT("count"),
+        HIT_COUNT("hitCount"),
+        MISS_COUNT("missCount"),
+        WIN_RATE("winRate"),
+        KILLED_COUNT("killedCount"),
+        KILL_RATE("killRate"),
+        PROFIT_COUNT("profitCount"),
+        LOSS_COUNT("lossCount"),
+        PROFIT_RATE("profitRate"),
+        AVG_TOTAL("avgTotal");
+
+        private final String label;
+
+        Aggregate(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public static Aggregate of(String label) {
+            for (Aggregate aggregate : values()) {
+                if (aggregate.label.equals(label)) {
+                    return aggregate;
+                }
+            }
+            throw new IllegalArgumentException("未知的聚合项: " + label + "，可用聚合项: "
+                    + Arrays.stream(values()).map(Aggregate::label).collect(Collectors.joining(",")));
+        }
+    }
+}
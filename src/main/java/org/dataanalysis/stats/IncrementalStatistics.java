@@ -0,0 +1,164 @@
+package org.dataanalysis.stats;
+
+import jakarta.annotation.PostConstruct;
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.HistoryListener;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 增量统计
+ * 监听内存历史数据的变化事件，为每个服务器维护一个统计累加器：
+ * 新增一期时O(1)追加，最新一期的预测行被真实开奖结果覆盖时先撤回再重新应用，
+ * 只有更早的期号被修改或乱序插入时才全量重建，定时任务读取结果时不再重新扫描历史数据
+ */
+@Component
+public class IncrementalStatistics implements HistoryListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalStatistics.class);
+
+    // 最近胜率的期数，与原定时计算保持一致
+    private static final int RECENT_COUNT = 100;
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    @Autowired
+    private StatisticsEngine statisticsEngine;
+
+    // /api/{server}/stats/totals未指定区间时的默认划分
+    @Value("${analysis.totals.buckets:0-13,14-27}")
+    private String defaultBuckets = "0-13,14-27";
+
+    private final Map<String, StatisticsAccumulator> accumulators = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        historyStore.addListener(this);
+    }
+
+    @Override
+    public void onAppend(ServerHistory history, int row) {
+        StatisticsAccumulator accumulator = accumulators.get(history.getServerName());
+        if (accumulator == null || accumulator.size() != row) {
+            // 累加器缺失或与数据错位时直接重建，重建结果已包含该行
+            onReload(history);
+            return;
+        }
+        accumulator.apply(history, row);
+    }
+
+    @Override
+    public void onRetract(ServerHistory history, int row) {
+        StatisticsAccumulator accumulator = accumulators.get(history.getServerName());
+        if (accumulator == null || accumulator.size() != row + 1) {
+            // 随后的onAppend会发现错位并重建
+            accumulators.remove(history.getServerName());
+            return;
+        }
+        accumulator.retract(history, row);
+    }
+
+    @Override
+    public void onReload(ServerHistory history) {
+        StatisticsAccumulator accumulator = statisticsEngine.build(history, RECENT_COUNT);
+        accumulators.put(history.getServerName(), accumulator);
+        logger.info("{}：增量统计已重建，共{}期", history.getServerName(), history.size());
+    }
+
+    /**
+     * 生成服务器当前全部统计结果的快照，结果与快照的数据版本一致
+     *
+     * @param serverName 服务器名称
+     * @return 统计结果快照
+     */
+    public StatsSnapshot snapshot(String serverName) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            StatisticsAccumulator accumulator = accumulators.get(serverName);
+            if (accumulator == null || accumulator.size() != history.size()) {
+                // 尚未收到该服务器的事件时退回全量计算
+                accumulator = statisticsEngine.accumulate(history, RECENT_COUNT);
+            }
+            return StatsSnapshot.of(serverName, history.version(), accumulator.results());
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 开奖总和分布及按区间的汇总，直接读取累加器中的直方图，与历史期数无关
+     *
+     * @param serverName 服务器名称
+     * @param layout 区间划分，为null时使用配置的默认划分
+     * @param excludeLatest 是否排除最新一期(尚未开奖的预测数据)
+     */
+    public Map<String, Object> totalDistribution(String serverName, TotalBuckets layout, boolean excludeLatest) {
+        TotalBuckets buckets = layout != null ? layout : TotalBuckets.parse(defaultBuckets);
+        ServerHistory history = historyStore.history(serverName);
+        TotalHistogram totals;
+        int records;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("serverName", serverName);
+        history.lock().readLock().lock();
+        try {
+            StatisticsAccumulator accumulator = accumulators.get(serverName);
+            if (accumulator == null || accumulator.size() != history.size()) {
+                accumulator = statisticsEngine.accumulate(history, RECENT_COUNT);
+            }
+            totals = accumulator.totals();
+            records = history.size();
+            if (excludeLatest && records > 0) {
+                totals = totals.copy();
+                totals.add(history.totalNumber(records - 1), -1);
+                records--;
+            }
+            result.put(StatsSnapshot.DATA_VERSION, history.version());
+            result.put("totalRecords", records);
+            fillDistribution(result, totals, buckets);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+        return result;
+    }
+
+    static void fillDistribution(Map<String, Object> result, TotalHistogram totals, TotalBuckets buckets) {
+        int counted = totals.total();
+        int regular = 0;
+        List<Integer> counts = new ArrayList<>(TotalHistogram.SIZE);
+        for (int total = 0; total < TotalHistogram.SIZE; total++) {
+            counts.add(totals.count(total));
+            regular += totals.count(total);
+        }
+        List<Map<String, Object>> ranges = new ArrayList<>();
+        int[] bucketCounts = totals.bucketCounts(buckets);
+        for (int i = 0; i < bucketCounts.length; i++) {
+            TotalBuckets.Bucket bucket = buckets.buckets().get(i);
+            Map<String, Object> range = new LinkedHashMap<>();
+            range.put("range", bucket.label());
+            range.put("from", bucket.from());
+            // "18+"这样的开放区间没有上限
+            range.put("to", bucket.to() == Integer.MAX_VALUE ? null : bucket.to());
+            range.put("count", bucketCounts[i]);
+            range.put("rate", Rates.format(Rates.percent(bucketCounts[i], counted)));
+            ranges.add(range);
+        }
+        result.put("countedRecords", counted);
+        result.put("histogram", counts);
+        // 总和超出0到27的异常期数
+        result.put("outOfRange", counted - regular);
+        result.put("buckets", ranges);
+    }
+}
@@ -0,0 +1,109 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.KillMask;
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.Arrays;
+
+/**
+ * 单个服务器的杀号计数：每个数字被杀的期数、被杀个数合计和被杀期数
+ * 由每期的杀号掩码累加，追加或撤回一期只需对一个掩码做位运算
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class KillDigitCounts implements HistoryIndex {
+
+    // [掩码位]，第0到9位为数字，第15位为没有数字的杀号
+    private final int[] bitCounts = new int[16];
+    private long totalKilled;
+    private int killedRows;
+    private int size;
+
+    /**
+     * 已计入的行数
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    @Override
+    public void rebuild(ServerHistory history) {
+        Arrays.fill(bitCounts, 0);
+        totalKilled = 0;
+        killedRows = 0;
+        size = 0;
+        int n = history.size();
+        for (int row = 0; row < n; row++) {
+            update(history.killMask(row), 1);
+        }
+        size = n;
+    }
+
+    /**
+     * 追加末尾一行
+     */
+    @Override
+    public void append(ServerHistory history, int row) {
+        if (row != size) {
+            throw new IllegalStateException(history.getServerName() + "：杀号计数期望第" + size + "行，实际为第" + row + "行");
+        }
+        update(history.killMask(row), 1);
+        size++;
+    }
+
+    /**
+     * 撤回最后一行，调用时该行仍是旧值
+     */
+    @Override
+    public void retract(ServerHistory history, int row) {
+        if (row != size - 1) {
+            throw new IllegalStateException("杀号计数只能撤回最后一行，实际为第" + row + "行");
+        }
+        update(history.killMask(row), -1);
+        size--;
+    }
+
+    private void update(short mask, int delta) {
+        int bits = mask & 0xFFFF;
+        if (bits == 0) {
+            return;
+        }
+        killedRows += delta;
+        totalKilled += (long) KillMask.killCount(mask) * delta;
+        while (bits != 0) {
+            bitCounts[Integer.numberOfTrailingZeros(bits)] += delta;
+            bits &= bits - 1;
+        }
+    }
+
+    /**
+     * 数字digit(0到9)被杀的期数
+     */
+    public int digitCount(int digit) {
+        return bitCounts[digit];
+    }
+
+    /**
+     * 杀号中没有数字的被杀期数
+     */
+    public int nonDigitCount() {
+        return bitCounts[15];
+    }
+
+    /**
+     * 被杀个数合计
+     */
+    public long totalKilled() {
+        return totalKilled;
+    }
+
+    /**
+     * 被杀的期数
+     */
+    public int killedRows() {
+        return killedRows;
+    }
+}
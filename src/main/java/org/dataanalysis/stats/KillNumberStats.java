@@ -0,0 +1,79 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.KillMask;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 各服务器的杀号统计
+ * 杀号在写入内存时已解析为掩码(见KillMask)，每个数字被杀的期数和被杀个数合计随数据变化事件增量更新，
+ * 每期的被杀个数直接对掩码做popcount，不再在每次请求时拆分杀号字符串
+ */
+@Component
+public class KillNumberStats extends HistoryIndexListener<KillDigitCounts> {
+
+    @Override
+    protected KillDigitCounts newIndex() {
+        return new KillDigitCounts();
+    }
+
+    /**
+     * 全部期数(最新的在前)的被杀个数和未被杀个数，以及每个数字的被杀频率
+     * 未被杀个数按每期10个数字计算
+     *
+     * @param serverName 服务器名称
+     */
+    public Map<String, Object> killNumberData(String serverName) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            return killNumberData(history, index(history));
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 在调用方持有的读锁下生成结果
+     */
+    static Map<String, Object> killNumberData(ServerHistory history, KillDigitCounts index) {
+        int n = history.size();
+        List<String> periods = new ArrayList<>(n);
+        List<Integer> killCounts = new ArrayList<>(n);
+        List<Integer> nonKillCounts = new ArrayList<>(n);
+        for (int row = n - 1; row >= 0; row--) {
+            // 只取期数的后三位
+            periods.add(String.valueOf(history.period(row) % 1000));
+            int killCount = KillMask.killCount(history.killMask(row));
+            killCounts.add(killCount);
+            nonKillCounts.add(KillMask.DIGITS - killCount);
+        }
+
+        Map<String, Object> digits = new LinkedHashMap<>();
+        for (int digit = 0; digit < KillMask.DIGITS; digit++) {
+            Map<String, Object> frequency = new LinkedHashMap<>();
+            frequency.put("count", index.digitCount(digit));
+            frequency.put("rate", Rates.format(Rates.percent(index.digitCount(digit), n)));
+            digits.put(String.valueOf(digit), frequency);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put(StatsSnapshot.DATA_VERSION, history.version());
+        result.put("periods", periods);
+        result.put("killCounts", killCounts);
+        result.put("nonKillCounts", nonKillCounts);
+        result.put("count", n);
+        result.put("totalKilled", index.totalKilled());
+        result.put("totalNonKilled", (long) n * KillMask.DIGITS - index.totalKilled());
+        result.put("killedPeriods", index.killedRows());
+        result.put("nonDigitKills", index.nonDigitCount());
+        result.put("digitFrequencies", digits);
+        return result;
+    }
+}
@@ -0,0 +1,161 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.Arrays;
+
+/**
+ * 单个服务器的滑动窗口杀率序列
+ * 每个窗口用一个环形缓冲区保存前w期是否被杀，新的一期到达时先用窗口内计数得到该期的杀率(不含当期)，
+ * 再把当期放入窗口并挤出最早的一期，与迁移程序的percent_30/50/100算法一致
+ * 被杀与其他统计相同，指杀号不为空(RowTraits.KILLED)：sf444的杀号为"杀"，其他服务器为杀掉的数字
+ * 杀率以万分比整数保存(12.34%保存为1234)，非线程安全，由调用方持有对应服务器的锁
+ */
+public class KillPercentSeries implements HistoryIndex {
+
+    private final int[] windows;
+    private final boolean[][] rings;
+    private final int[] counts;
+    // basisPoints[w][row]为第row行在第w个窗口下的杀率
+    private int[][] basisPoints;
+    private int size;
+
+    /**
+     * @param windows 各窗口的期数，必须为互不相同的正整数，按给定顺序编号
+     */
+    public KillPercentSeries(int[] windows) {
+        validateWindows(windows);
+        this.windows = windows.clone();
+        this.rings = new boolean[windows.length][];
+        this.counts = new int[windows.length];
+        this.basisPoints = new int[windows.length][16];
+        for (int w = 0; w < windows.length; w++) {
+            rings[w] = new boolean[windows[w]];
+        }
+    }
+
+    /**
+     * 已计算的行数
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    @Override
+    public void rebuild(ServerHistory history) {
+        Arrays.fill(counts, 0);
+        for (boolean[] ring : rings) {
+            Arrays.fill(ring, false);
+        }
+        size = 0;
+        for (int i = 0; i < history.size(); i++) {
+            append(history, i);
+        }
+    }
+
+    /**
+     * 追加末尾一行
+     */
+    @Override
+    public void append(ServerHistory history, int row) {
+        if (row != size) {
+            throw new IllegalStateException(history.getServerName() + "：杀率序列期望第" + size + "行，实际为第" + row + "行");
+        }
+        if (row >= basisPoints[0].length) {
+            int capacity = Math.max(row + 1, basisPoints[0].length * 3 / 2);
+            for (int w = 0; w < windows.length; w++) {
+                basisPoints[w] = Arrays.copyOf(basisPoints[w], capacity);
+            }
+        }
+        boolean killed = killed(history, row);
+        for (int w = 0; w < windows.length; w++) {
+            int window = windows[w];
+            basisPoints[w][row] = percentOf(counts[w], Math.min(row, window));
+            int slot = row % window;
+            if (row >= window && rings[w][slot]) {
+                counts[w]--;
+            }
+            rings[w][slot] = killed;
+            if (killed) {
+                counts[w]++;
+            }
+        }
+        size++;
+    }
+
+    /**
+     * 撤回最后一行，被挤出窗口的那一期从历史数据中放回
+     */
+    @Override
+    public void retract(ServerHistory history, int row) {
+        if (row != size - 1) {
+            throw new IllegalStateException(history.getServerName() + "：杀率序列只能撤回最后一行，实际为第" + row + "行");
+        }
+        for (int w = 0; w < windows.length; w++) {
+            int window = windows[w];
+            int slot = row % window;
+            if (rings[w][slot]) {
+                counts[w]--;
+            }
+            boolean evicted = row >= window && killed(history, row - window);
+            rings[w][slot] = evicted;
+            if (evicted) {
+                counts[w]++;
+            }
+        }
+        size--;
+    }
+
+    /**
+     * 第row行在第w个窗口下的杀率(万分比)
+     */
+    public int basisPoints(int windowIndex, int row) {
+        return basisPoints[windowIndex][row];
+    }
+
+    /**
+     * 下一期(尚未到达)在第w个窗口下的杀率(万分比)
+     */
+    public int nextBasisPoints(int windowIndex) {
+        return percentOf(counts[windowIndex], Math.min(size, windows[windowIndex]));
+    }
+
+    private static boolean killed(ServerHistory history, int row) {
+        return (history.traits(row) & RowTraits.KILLED) != 0;
+    }
+
+    // 与迁移程序一致：先保留4位小数(HALF_UP)再乘100
+    /**
+     * 校验窗口配置并按从小到大排序，为空、不是正整数或有重复时抛出IllegalArgumentException
+     *
+     * @return 排序后的副本
+     */
+    public static int[] validateWindows(int[] windows) {
+        if (windows == null || windows.length == 0) {
+            throw new IllegalArgumentException("杀率窗口不能为空");
+        }
+        int[] sorted = windows.clone();
+        Arrays.sort(sorted);
+        for (int w = 0; w < sorted.length; w++) {
+            if (sorted[w] < 1) {
+                throw new IllegalArgumentException("杀率窗口必须为正整数: " + sorted[w]);
+            }
+            if (w > 0 && sorted[w] == sorted[w - 1]) {
+                throw new IllegalArgumentException("杀率窗口重复: " + sorted[w]);
+            }
+        }
+        return sorted;
+    }
+
+    static int percentOf(int killCount, int totalCount) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        return (int) ((killCount * 20000L + totalCount) / (2L * totalCount));
+    }
+}
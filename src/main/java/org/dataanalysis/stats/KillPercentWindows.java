@@ -0,0 +1,114 @@
+package org.dataanalysis.stats;
+
+import jakarta.annotation.PostConstruct;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 滑动窗口杀率
+ * 为每个服务器实时计算每一期前N期的杀率(即sf444表的percent_30/50/100)，窗口可配置，
+ * 随数据变化事件增量更新，不再依赖离线迁移程序
+ */
+@Component
+public class KillPercentWindows extends HistoryIndexListener<KillPercentSeries> {
+
+    @Autowired
+    private WindowRates windowRates;
+
+    @Value("${analysis.kill-percent.windows:30,50,100}")
+    private int[] windows;
+
+    /**
+     * 先校验窗口配置再注册监听器，配置错误时启动失败
+     */
+    @PostConstruct
+    @Override
+    public void init() {
+        windows = KillPercentSeries.validateWindows(windows);
+        super.init();
+    }
+
+    @Override
+    protected KillPercentSeries newIndex() {
+        return new KillPercentSeries(windows);
+    }
+
+    /**
+     * 已配置的窗口
+     */
+    public int[] getWindows() {
+        return windows.clone();
+    }
+
+    /**
+     * 某一期在指定窗口下的杀率(百分比，两位小数)，期号不存在时返回null；
+     * 窗口未配置时由WindowRates的前缀计数得到同样的结果，配置变化后仍可查询任意窗口
+     */
+    public BigDecimal percent(String serverName, int period, int window) {
+        int windowIndex = windowIndex(window);
+        if (windowIndex < 0) {
+            return windowRates.killPercentBefore(serverName, period, window);
+        }
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            int row = history.indexOfPeriod(period);
+            return row < 0 ? null : BigDecimal.valueOf(index(history).basisPoints(windowIndex, row), 2);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 最近limit期(倒序)以及下一期的各窗口杀率
+     *
+     * @param serverName 服务器名称
+     * @param limit 期数
+     */
+    public Map<String, Object> recentPercents(String serverName, int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", serverName);
+        result.put("windows", getWindows());
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            KillPercentSeries current = index(history);
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (int row = history.size() - 1; row >= Math.max(history.size() - limit, 0); row--) {
+                Map<String, Object> item = new HashMap<>();
+                item.put("period", history.period(row));
+                item.put("killNumber", history.killNumber(row));
+                for (int w = 0; w < windows.length; w++) {
+                    item.put("percent" + windows[w], BigDecimal.valueOf(current.basisPoints(w, row), 2));
+                }
+                rows.add(item);
+            }
+            Map<String, Object> next = new HashMap<>();
+            for (int w = 0; w < windows.length; w++) {
+                next.put("percent" + windows[w], BigDecimal.valueOf(current.nextBasisPoints(w), 2));
+            }
+            result.put("records", rows);
+            result.put("next", next);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+        return result;
+    }
+
+    private int windowIndex(int window) {
+        for (int w = 0; w < windows.length; w++) {
+            if (windows[w] == window) {
+                return w;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,107 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+
+/**
+ * 按行特征累加的全量计数，可以逐行加减，也可以把两段相邻数据的计数直接相加合并
+ * 非线程安全
+ */
+final class OutcomeCounts {
+
+    int correctCount;
+    int incorrectCount;
+    long killedCount;
+    long correctButKilledCount;
+    long profitCount;
+    long lossCount;
+    long singleCount;
+    long doubleCount;
+    long killedSingleCount;
+    long killedDoubleCount;
+    long correctSinglePredictions;
+    long correctDoublePredictions;
+    final TotalHistogram totals = new TotalHistogram();
+
+    /**
+     * 加上(delta=1)或减去(delta=-1)一行的贡献
+     */
+    void add(int traits, int totalNumber, int delta) {
+        boolean hit = (traits & RowTraits.HIT) != 0;
+        boolean single = (traits & RowTraits.OPEN_SINGLE) != 0;
+        boolean dbl = (traits & RowTraits.OPEN_DOUBLE) != 0;
+
+        if (hit) {
+            correctCount += delta;
+        } else if ((traits & RowTraits.MISS) != 0) {
+            incorrectCount += delta;
+        }
+        if ((traits & RowTraits.KILLED) != 0) {
+            killedCount += delta;
+            if (hit) {
+                correctButKilledCount += delta;
+            }
+            if (single) {
+                killedSingleCount += delta;
+            } else if (dbl) {
+                killedDoubleCount += delta;
+            }
+        }
+        if ((traits & RowTraits.PROFIT) != 0) {
+            profitCount += delta;
+        } else if ((traits & RowTraits.LOSS) != 0) {
+            lossCount += delta;
+        }
+        if (single) {
+            singleCount += delta;
+            if ((traits & RowTraits.PRED_SINGLE) != 0) {
+                correctSinglePredictions += delta;
+            }
+        } else if (dbl) {
+            doubleCount += delta;
+            if ((traits & RowTraits.PRED_DOUBLE) != 0) {
+                correctDoublePredictions += delta;
+            }
+        }
+        totals.add(totalNumber, delta);
+    }
+
+    /**
+     * 合并另一段数据的计数，计数与顺序无关
+     */
+    void merge(OutcomeCounts other) {
+        correctCount += other.correctCount;
+        incorrectCount += other.incorrectCount;
+        killedCount += other.killedCount;
+        correctButKilledCount += other.correctButKilledCount;
+        profitCount += other.profitCount;
+        lossCount += other.lossCount;
+        singleCount += other.singleCount;
+        doubleCount += other.doubleCount;
+        killedSingleCount += other.killedSingleCount;
+        killedDoubleCount += other.killedDoubleCount;
+        correctSinglePredictions += other.correctSinglePredictions;
+        correctDoublePredictions += other.correctDoublePredictions;
+        totals.merge(other.totals);
+    }
+
+    void copyFrom(OutcomeCounts other) {
+        clear();
+        merge(other);
+    }
+
+    void clear() {
+        correctCount = 0;
+        incorrectCount = 0;
+        killedCount = 0;
+        correctButKilledCount = 0;
+        profitCount = 0;
+        lossCount = 0;
+        singleCount = 0;
+        doubleCount = 0;
+        killedSingleCount = 0;
+        killedDoubleCount = 0;
+        correctSinglePredictions = 0;
+        correctDoublePredictions = 0;
+        totals.clear();
+    }
+}
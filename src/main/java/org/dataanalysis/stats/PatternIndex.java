@@ -0,0 +1,129 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 被杀、中错、盈亏序列上的模式搜索
+ * 为每个服务器维护序列位集，随数据变化事件增量更新；一次搜索对位集做"模式长度"遍字运算，
+ * 返回全部匹配的位置以及每个匹配之后下一期的情况
+ */
+@Component
+public class PatternIndex extends HistoryIndexListener<SequenceBits> {
+
+    /** 下一期统计的特征，与SequenceBits.MASKS一致 */
+    private static final String[] NEXT_NAMES = {"killed", "hit", "miss", "profit", "loss"};
+
+    @Override
+    protected SequenceBits newIndex() {
+        return new SequenceBits();
+    }
+
+    /**
+     * 搜索模式的全部出现位置
+     *
+     * @param serverName 服务器名称
+     * @param pattern 已解析的模式
+     * @param last 只在最近N期内搜索，为null时搜索全部
+     * @param excludeLatest 是否排除最新一期(尚未开奖的预测数据)
+     * @param limit 返回最近多少个匹配的明细
+     */
+    public Map<String, Object> search(String serverName, SequencePattern pattern, Integer last,
+                                      boolean excludeLatest, int limit) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            return search(history, index(history), pattern, last, excludeLatest, limit);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 在调用方持有的读锁下搜索
+     */
+    static Map<String, Object> search(ServerHistory history, SequenceBits index, SequencePattern pattern,
+                                      Integer last, boolean excludeLatest, int limit) {
+        int to = excludeLatest ? Math.max(history.size() - 1, 0) : history.size();
+        int from = last != null ? Math.max(to - Math.max(last, 0), 0) : 0;
+        long[] ends = pattern.match(index, from, to);
+
+        // 下一期：匹配结束位左移一位，仍需落在搜索区间内
+        int matchCount = 0;
+        int nextCount = 0;
+        int[] nextCounts = new int[SequenceBits.MASKS.length];
+        long[][] sources = new long[SequenceBits.MASKS.length][];
+        for (int m = 0; m < sources.length; m++) {
+            sources[m] = index.words(SequenceBits.MASKS[m]);
+        }
+        int first = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        for (int w = first; w < ends.length; w++) {
+            matchCount += Long.bitCount(ends[w]);
+            long next = (ends[w] << 1) | (w > first ? ends[w - 1] >>> 63 : 0);
+            if (w == lastWord) {
+                next &= SequencePattern.windowMask(w, from, to);
+            }
+            if (next != 0) {
+                nextCount += Long.bitCount(next);
+                for (int m = 0; m < nextCounts.length; m++) {
+                    nextCounts[m] += Long.bitCount(next & sources[m][w]);
+                }
+            }
+        }
+
+        Map<String, Object> nextStats = new LinkedHashMap<>();
+        nextStats.put("count", nextCount);
+        for (int m = 0; m < nextCounts.length; m++) {
+            nextStats.put(NEXT_NAMES[m] + "Count", nextCounts[m]);
+            nextStats.put(NEXT_NAMES[m] + "Rate", Rates.format(Rates.percent(nextCounts[m], nextCount)));
+        }
+
+        // 从最新的匹配开始取明细
+        List<Map<String, Object>> matches = new ArrayList<>();
+        for (int w = ends.length - 1; w >= 0 && matches.size() < limit; w--) {
+            long word = ends[w];
+            while (word != 0 && matches.size() < limit) {
+                int bit = 63 - Long.numberOfLeadingZeros(word);
+                word &= ~(1L << bit);
+                matches.add(match(history, pattern, (w << 6) + bit, to));
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("serverName", history.getServerName());
+        result.put(StatsSnapshot.DATA_VERSION, history.version());
+        result.put("pattern", pattern.text());
+        result.put("minLength", pattern.minLength());
+        result.put("fromPeriod", to > from ? history.period(from) : null);
+        result.put("toPeriod", to > from ? history.period(to - 1) : null);
+        result.put("scannedRows", to - from);
+        result.put("matchCount", matchCount);
+        result.put("next", nextStats);
+        result.put("matches", matches);
+        return result;
+    }
+
+    private static Map<String, Object> match(ServerHistory history, SequencePattern pattern, int end, int to) {
+        Map<String, Object> match = new LinkedHashMap<>();
+        if (pattern.fixedLength()) {
+            match.put("startPeriod", history.period(end - pattern.minLength() + 1));
+        }
+        match.put("endPeriod", history.period(end));
+        int next = end + 1;
+        if (next < to) {
+            match.put("nextPeriod", history.period(next));
+            match.put("nextKilled", history.has(next, RowTraits.KILLED));
+            match.put("nextOutcome", history.outcome(next));
+            match.put("nextBettingResult", history.bettingResult(next));
+        }
+        return match;
+    }
+}
@@ -0,0 +1,89 @@
+package org.dataanalysis.stats;
+
+/**
+ * 以期号为下标的位集
+ * 第period位位于第(period / 64)个字，不同服务器的位集按期号天然对齐，两两求交集只需逐字与运算；
+ * 只保存从第一个置位的字开始的部分，期号比已有范围更早时在前端扩容
+ * 非线程安全
+ */
+public class PeriodBits {
+
+    private long[] words = new long[0];
+    // words[0]对应的全局字下标
+    private int baseWord;
+
+    public boolean get(int period) {
+        int w = (period >> 6) - baseWord;
+        return w >= 0 && w < words.length && (words[w] & (1L << period)) != 0;
+    }
+
+    public void set(int period) {
+        int word = period >> 6;
+        if (words.length == 0) {
+            words = new long[16];
+            baseWord = word;
+        } else if (word < baseWord) {
+            // 前端扩容，多留一些空间避免连续的更早期号反复复制
+            int extra = Math.max(baseWord - word, words.length / 2);
+            long[] grown = new long[words.length + extra];
+            System.arraycopy(words, 0, grown, extra, words.length);
+            words = grown;
+            baseWord -= extra;
+        } else if (word - baseWord >= words.length) {
+            long[] grown = new long[Math.max(word - baseWord + 1, words.length * 3 / 2 + 1)];
+            System.arraycopy(words, 0, grown, 0, words.length);
+            words = grown;
+        }
+        words[word - baseWord] |= 1L << period;
+    }
+
+    public void clear(int period) {
+        int w = (period >> 6) - baseWord;
+        if (w >= 0 && w < words.length) {
+            words[w] &= ~(1L << period);
+        }
+    }
+
+    /**
+     * 期号区间[fromPeriod, toPeriod]内第一个为1(set=true)或为0(set=false)的期号，没有时返回-1
+     * 按字跳过，一次查找的代价与区间字数成正比
+     */
+    public int next(int fromPeriod, int toPeriod, boolean set) {
+        int period = fromPeriod;
+        while (period <= toPeriod) {
+            int w = (period >> 6) - baseWord;
+            long word = w >= 0 && w < words.length ? words[w] : 0L;
+            long candidates = (set ? word : ~word) & (-1L << period);
+            if (candidates != 0) {
+                int found = (period & ~63) + Long.numberOfTrailingZeros(candidates);
+                return found <= toPeriod ? found : -1;
+            }
+            period = (period & ~63) + 64;
+        }
+        return -1;
+    }
+
+    /**
+     * 期号区间[fromPeriod, toPeriod]内两个位集同时为1的期数
+     */
+    public static int andCount(PeriodBits a, PeriodBits b, int fromPeriod, int toPeriod) {
+        if (fromPeriod > toPeriod) {
+            return 0;
+        }
+        int fromWord = Math.max(fromPeriod >> 6, Math.max(a.baseWord, b.baseWord));
+        int toWord = Math.min(toPeriod >> 6,
+                Math.min(a.baseWord + a.words.length, b.baseWord + b.words.length) - 1);
+        int count = 0;
+        for (int word = fromWord; word <= toWord; word++) {
+            long value = a.words[word - a.baseWord] & b.words[word - b.baseWord];
+            if (word == fromPeriod >> 6) {
+                value &= -1L << fromPeriod;
+            }
+            if (word == toPeriod >> 6) {
+                value &= -1L >>> (63 - (toPeriod & 63));
+            }
+            count += Long.bitCount(value);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,242 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单个服务器的期号质量检查
+ * 以期号位集记录已出现的期号，并维护最小、最大期号和区间内缺失的期数：新期号在最大期号之后时缺失数加上中间的空档，
+ * 落在区间内时补上一个缺口，因此每条记录都是O(1)；重复期号和乱序到达只在同步时计数，重建位集时保留；
+ * 同步会反复读到id较小的那条重复记录，已报告过的id不再重复计数
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class PeriodQuality {
+
+    /** 缺失的期号区间 */
+    static final String GAP = "gap";
+    /** 同一期号出现了不同id的记录 */
+    static final String DUPLICATE = "duplicate";
+    /** 比最新期号更早的期号晚到 */
+    static final String OUT_OF_ORDER = "outOfOrder";
+
+    private final int maxAnomalies;
+    private PeriodBits periods = new PeriodBits();
+    private int minPeriod;
+    private int maxPeriod;
+    private int periodCount;
+    private long missingCount;
+    private long duplicateCount;
+    private long outOfOrderCount;
+    private long gapEvents;
+    // 已报告过的重复记录双方的id
+    private final Set<Long> duplicateIds = new HashSet<>();
+    // 最近的异常，最新的在前
+    private final Deque<Map<String, Object>> anomalies = new ArrayDeque<>();
+
+    /**
+     * @param maxAnomalies 保留的最近异常条数
+     */
+    public PeriodQuality(int maxAnomalies) {
+        this.maxAnomalies = Math.max(maxAnomalies, 0);
+    }
+
+    /**
+     * 用服务器的全部期号重建位集和缺失计数，已记录的重复、乱序计数保留
+     */
+    public void rebuild(ServerHistory history) {
+        periods = new PeriodBits();
+        periodCount = 0;
+        missingCount = 0;
+        int n = history.size();
+        for (int row = 0; row < n; row++) {
+            add(history.period(row), false);
+        }
+    }
+
+    /**
+     * 记录一个期号，新出现的期号越过最大期号留下空档时记为缺失异常
+     *
+     * @param report 是否记录缺失异常，重建时不记录
+     */
+    public void add(int period, boolean report) {
+        if (periodCount > 0 && periods.get(period)) {
+            return;
+        }
+        if (periodCount == 0) {
+            minPeriod = period;
+            maxPeriod = period;
+        } else if (period > maxPeriod) {
+            int gap = period - maxPeriod - 1;
+            if (gap > 0) {
+                missingCount += gap;
+                if (report) {
+                    gapEvents++;
+                    Map<String, Object> anomaly = anomaly(GAP, maxPeriod + 1);
+                    anomaly.put("toPeriod", period - 1);
+                    anomaly.put("count", gap);
+                    record(anomaly);
+                }
+            }
+            maxPeriod = period;
+        } else if (period < minPeriod) {
+            missingCount += minPeriod - period - 1;
+            minPeriod = period;
+        } else {
+            // 补上区间内的一个缺口
+            missingCount--;
+        }
+        periods.set(period);
+        periodCount++;
+    }
+
+    /**
+     * 同一期号收到了id不同的记录，两条记录已经报告过时不再计数
+     *
+     * @return 是否为新发现的重复
+     */
+    public boolean duplicate(int period, long id, long previousId) {
+        if (duplicateIds.contains(id) && duplicateIds.contains(previousId)) {
+            return false;
+        }
+        duplicateIds.add(id);
+        duplicateIds.add(previousId);
+        duplicateCount++;
+        Map<String, Object> anomaly = anomaly(DUPLICATE, period);
+        anomaly.put("id", id);
+        anomaly.put("previousId", previousId);
+        record(anomaly);
+        return true;
+    }
+
+    /**
+     * 期号晚于更新的期号到达
+     */
+    public void outOfOrder(int period, long id, int latestPeriod) {
+        outOfOrderCount++;
+        Map<String, Object> anomaly = anomaly(OUT_OF_ORDER, period);
+        anomaly.put("id", id);
+        anomaly.put("latestPeriod", latestPeriod);
+        record(anomaly);
+    }
+
+    /**
+     * 写出只能在同步时得到的计数和已报告的重复id，期号位集可由历史数据重建，不写出
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeLong(duplicateCount);
+        out.writeLong(outOfOrderCount);
+        out.writeLong(gapEvents);
+        out.writeInt(duplicateIds.size());
+        for (long id : duplicateIds) {
+            out.writeLong(id);
+        }
+    }
+
+    /**
+     * 读取write写出的计数和重复id，之后由调用方rebuild期号位集
+     */
+    public void read(ByteBuffer in) {
+        duplicateCount = in.getLong();
+        outOfOrderCount = in.getLong();
+        gapEvents = in.getLong();
+        duplicateIds.clear();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            duplicateIds.add(in.getLong());
+        }
+    }
+
+    public long missingCount() {
+        return missingCount;
+    }
+
+    public long duplicateCount() {
+        return duplicateCount;
+    }
+
+    public long outOfOrderCount() {
+        return outOfOrderCount;
+    }
+
+    /**
+     * 计数汇总
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("periodCount", periodCount);
+        summary.put("minPeriod", periodCount > 0 ? minPeriod : null);
+        summary.put("maxPeriod", periodCount > 0 ? maxPeriod : null);
+        summary.put("missingCount", missingCount);
+        summary.put("duplicateCount", duplicateCount);
+        summary.put("outOfOrderCount", outOfOrderCount);
+        summary.put("gapEvents", gapEvents);
+        return summary;
+    }
+
+    /**
+     * 当前缺失的期号区间，从最新的开始，最多limit个；按字扫描位集，不访问历史数据
+     */
+    public List<Map<String, Object>> gaps(int limit) {
+        List<Map<String, Object>> gaps = new ArrayList<>();
+        if (periodCount == 0) {
+            return gaps;
+        }
+        List<int[]> ranges = new ArrayList<>();
+        int period = minPeriod;
+        while (period <= maxPeriod) {
+            int from = periods.next(period, maxPeriod, false);
+            if (from < 0) {
+                break;
+            }
+            // 缺口之后一定还有出现过的期号(至少是最大期号)
+            int next = periods.next(from, maxPeriod, true);
+            ranges.add(new int[]{from, next - 1});
+            period = next;
+        }
+        for (int i = ranges.size() - 1; i >= 0 && gaps.size() < limit; i--) {
+            Map<String, Object> gap = new LinkedHashMap<>();
+            gap.put("fromPeriod", ranges.get(i)[0]);
+            gap.put("toPeriod", ranges.get(i)[1]);
+            gap.put("count", ranges.get(i)[1] - ranges.get(i)[0] + 1);
+            gaps.add(gap);
+        }
+        return gaps;
+    }
+
+    /**
+     * 最近的异常，最新的在前
+     */
+    public List<Map<String, Object>> recentAnomalies() {
+        return new ArrayList<>(anomalies);
+    }
+
+    private static Map<String, Object> anomaly(String type, int period) {
+        Map<String, Object> anomaly = new LinkedHashMap<>();
+        anomaly.put("type", type);
+        anomaly.put("period", period);
+        anomaly.put("detectedAt", LocalDateTime.now().toString());
+        return anomaly;
+    }
+
+    private void record(Map<String, Object> anomaly) {
+        if (maxAnomalies == 0) {
+            return;
+        }
+        anomalies.addFirst(anomaly);
+        while (anomalies.size() > maxAnomalies) {
+            anomalies.removeLast();
+        }
+    }
+}
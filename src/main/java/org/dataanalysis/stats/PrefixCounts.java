@@ -0,0 +1,93 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+
+/**
+ * 单个服务器的前缀计数索引
+ * 对被杀、中、错、盈利、亏损分别保存前缀和，prefix[i]为前i行(按期号升序)中具有该特征的行数，
+ * 任意连续行区间的计数都是两次数组读取
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class PrefixCounts implements HistoryIndex {
+
+    /** 建立前缀和的特征 */
+    static final int[] MASKS = {RowTraits.KILLED, RowTraits.HIT, RowTraits.MISS, RowTraits.PROFIT, RowTraits.LOSS};
+
+    private int[][] prefix = new int[MASKS.length][1];
+    private int size;
+
+    /**
+     * 已索引的行数
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    @Override
+    public void rebuild(ServerHistory history) {
+        int n = history.size();
+        prefix = new int[MASKS.length][n + 1];
+        size = 0;
+        for (int i = 0; i < n; i++) {
+            append(history, i);
+        }
+    }
+
+    /**
+     * 追加末尾一行，撤回后重新追加同一行时直接覆盖
+     */
+    @Override
+    public void append(ServerHistory history, int row) {
+        if (row != size) {
+            throw new IllegalStateException(history.getServerName() + "：前缀计数期望第" + size + "行，实际为第" + row + "行");
+        }
+        if (row + 1 >= prefix[0].length) {
+            int capacity = Math.max(16, prefix[0].length * 3 / 2 + 1);
+            for (int m = 0; m < MASKS.length; m++) {
+                int[] grown = new int[capacity];
+                System.arraycopy(prefix[m], 0, grown, 0, size + 1);
+                prefix[m] = grown;
+            }
+        }
+        int traits = history.traits(row);
+        for (int m = 0; m < MASKS.length; m++) {
+            prefix[m][row + 1] = prefix[m][row] + ((traits & MASKS[m]) != 0 ? 1 : 0);
+        }
+        size++;
+    }
+
+    /**
+     * 撤回最后一行
+     */
+    @Override
+    public void retract(ServerHistory history, int row) {
+        if (row != size - 1) {
+            throw new IllegalStateException("前缀计数只能撤回最后一行，实际为第" + row + "行");
+        }
+        size--;
+    }
+
+    /**
+     * 行区间[fromRow, toRow)内具有指定特征的行数
+     *
+     * @param traitMask MASKS中的一个特征
+     */
+    public int count(int traitMask, int fromRow, int toRow) {
+        int[] counts = prefix[indexOf(traitMask)];
+        return counts[toRow] - counts[fromRow];
+    }
+
+    private static int indexOf(int traitMask) {
+        for (int m = 0; m < MASKS.length; m++) {
+            if (MASKS[m] == traitMask) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("未建立前缀计数的特征: " + traitMask);
+    }
+}
@@ -0,0 +1,237 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 内存列存上的过滤聚合查询
+ * 查询条件编译为逐行判断的谓词，在读锁下对期号区间扫描一遍，同时完成过滤、分组和计数，
+ * 新的统计问题(例如"上两期都被杀时的胜率")不再需要单独编写整表加载的接口
+ */
+@Component
+public class QueryEngine {
+
+    // 分组键每一位的基数：字段编码加上"滞后的行不存在"
+    private static final int KEY_RADIX = QueryField.CODE_SPACE + 1;
+
+    // 分组计数下标
+    private static final int COUNT = 0;
+    private static final int HIT = 1;
+    private static final int MISS = 2;
+    private static final int KILLED = 3;
+    private static final int PROFIT = 4;
+    private static final int LOSS = 5;
+    private static final int TOTAL_ROWS = 6;
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    // 单次查询最多扫描的期数
+    @Value("${analysis.query.max-rows:1000000}")
+    private int maxRows = 1000000;
+
+    // 单次查询最多输出的分组数
+    @Value("${analysis.query.max-groups:1000}")
+    private int maxGroups = 1000;
+
+    /**
+     * 执行查询，查询超出行数或分组数上限时抛出IllegalArgumentException
+     *
+     * @param serverName 服务器名称
+     * @param query 已解析的查询
+     */
+    public Map<String, Object> query(String serverName, HistoryQuery query) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            return execute(history, query);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 在调用方持有的读锁下执行查询
+     */
+    Map<String, Object> execute(ServerHistory history, HistoryQuery query) {
+        int n = history.size();
+        int to = query.excludeLatest() ? Math.max(n - 1, 0) : n;
+        if (query.toPeriod() != null) {
+            to = Math.min(to, history.rowAtOrAfter(query.toPeriod() + 1));
+        }
+        int from = query.fromPeriod() != null ? Math.min(history.rowAtOrAfter(query.fromPeriod()), to) : 0;
+        if (query.last() != null) {
+            from = Math.max(from, to - query.last());
+        }
+        int scanned = to - from;
+        if (scanned > maxRows) {
+            throw new IllegalArgumentException("查询范围共" + scanned + "期，超过上限" + maxRows
+                    + "期，请缩小期号范围或使用last参数");
+        }
+
+        IntPredicate[] predicates = new IntPredicate[query.where().size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = query.where().get(i).compile(history);
+        }
+        List<HistoryQuery.FieldRef> groupBy = query.groupBy();
+        IntUnaryOperator[] readers = new IntUnaryOperator[groupBy.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = groupBy.get(i).field().reader(history);
+        }
+
+        Map<Long, Group> groups = new HashMap<>();
+        Group total = new Group(0);
+        Deque<Integer> periods = new ArrayDeque<>();
+        for (int row = from; row < to; row++) {
+            if (!matches(predicates, row)) {
+                continue;
+            }
+            total.add(history, row);
+            if (readers.length > 0) {
+                long key = 0;
+                for (int i = 0; i < readers.length; i++) {
+                    int source = row - groupBy.get(i).lag();
+                    key = key * KEY_RADIX + (source >= 0 ? readers[i].applyAsInt(source) + 1 : 0);
+                }
+                Group group = groups.get(key);
+                if (group == null) {
+                    if (groups.size() >= maxGroups) {
+                        throw new IllegalArgumentException("分组数超过上限" + maxGroups + "，请减少分组字段");
+                    }
+                    group = new Group(key);
+                    groups.put(key, group);
+                }
+                group.add(history, row);
+            }
+            if (query.limit() > 0) {
+                if (periods.size() == query.limit()) {
+                    periods.removeFirst();
+                }
+                periods.addLast(history.period(row));
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("serverName", history.getServerName());
+        result.put(StatsSnapshot.DATA_VERSION, history.version());
+        result.put("fromPeriod", scanned > 0 ? history.period(from) : null);
+        result.put("toPeriod", scanned > 0 ? history.period(to - 1) : null);
+        result.put("scannedRows", scanned);
+        result.put("matchedRows", total.counts[COUNT]);
+        result.putAll(total.aggregates(query.select()));
+        if (readers.length > 0) {
+            List<Group> sorted = new ArrayList<>(groups.values());
+            sorted.sort(Comparator.comparingInt((Group group) -> group.counts[COUNT]).reversed());
+            List<Map<String, Object>> groupResults = new ArrayList<>();
+            for (Group group : sorted) {
+                Map<String, Object> groupResult = new LinkedHashMap<>();
+                groupResult.put("key", group.key(history, groupBy));
+                groupResult.putAll(group.aggregates(query.select()));
+                groupResults.add(groupResult);
+            }
+            result.put("groups", groupResults);
+        }
+        if (query.limit() > 0) {
+            List<Integer> newestFirst = new ArrayList<>(periods.size());
+            Iterator<Integer> iterator = periods.descendingIterator();
+            while (iterator.hasNext()) {
+                newestFirst.add(iterator.next());
+            }
+            result.put("periods", newestFirst);
+        }
+        return result;
+    }
+
+    private static boolean matches(IntPredicate[] predicates, int row) {
+        for (IntPredicate predicate : predicates) {
+            if (!predicate.test(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一个分组的计数
+     */
+    private static final class Group {
+
+        private final long key;
+        private final int[] counts = new int[7];
+        private long totalSum;
+
+        Group(long key) {
+            this.key = key;
+        }
+
+        void add(ServerHistory history, int row) {
+            int traits = history.traits(row);
+            counts[COUNT]++;
+            counts[HIT] += (traits & RowTraits.HIT) != 0 ? 1 : 0;
+            counts[MISS] += (traits & RowTraits.MISS) != 0 ? 1 : 0;
+            counts[KILLED] += (traits & RowTraits.KILLED) != 0 ? 1 : 0;
+            counts[PROFIT] += (traits & RowTraits.PROFIT) != 0 ? 1 : 0;
+            counts[LOSS] += (traits & RowTraits.LOSS) != 0 ? 1 : 0;
+            int totalNumber = history.totalNumber(row);
+            if (totalNumber != ServerHistory.NO_TOTAL) {
+                counts[TOTAL_ROWS]++;
+                totalSum += totalNumber;
+            }
+        }
+
+        // 按分组字段顺序还原取值，滞后的行不存在时为null
+        Map<String, Object> key(ServerHistory history, List<HistoryQuery.FieldRef> groupBy) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            long rest = key;
+            String[] decoded = new String[groupBy.size()];
+            for (int i = groupBy.size() - 1; i >= 0; i--) {
+                int digit = (int) (rest % KEY_RADIX);
+                rest /= KEY_RADIX;
+                decoded[i] = digit == 0 ? null : groupBy.get(i).field().decode(history, digit - 1);
+            }
+            for (int i = 0; i < decoded.length; i++) {
+                values.put(groupBy.get(i).label(), decoded[i]);
+            }
+            return values;
+        }
+
+        Map<String, Object> aggregates(List<HistoryQuery.Aggregate> select) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            int count = counts[COUNT];
+            for (HistoryQuery.Aggregate aggregate : select) {
+                Object value = switch (aggregate) {
+                    case COUNT -> count;
+                    case HIT_COUNT -> counts[HIT];
+                    case MISS_COUNT -> counts[MISS];
+                    case WIN_RATE -> Rates.format(Rates.percent(counts[HIT], count));
+                    case KILLED_COUNT -> counts[KILLED];
+                    case KILL_RATE -> Rates.format(Rates.percent(counts[KILLED], count));
+                    case PROFIT_COUNT -> counts[PROFIT];
+                    case LOSS_COUNT -> counts[LOSS];
+                    case PROFIT_RATE -> Rates.format(Rates.percent(counts[PROFIT], count));
+                    case AVG_TOTAL -> counts[TOTAL_ROWS] > 0
+                            ? String.format("%.2f", (double) totalSum / counts[TOTAL_ROWS]) : null;
+                };
+                values.put(aggregate.label(), value);
+            }
+            return values;
+        }
+    }
+}
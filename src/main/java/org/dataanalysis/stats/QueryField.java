@@ -0,0 +1,170 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.CategoricalColumn;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * 查询接口可用的字段
+ * 每个字段的取值都映射为[0, CODE_SPACE)内的小整数编码，编码0表示null，
+ * 过滤和分组只比较编码，不在逐行扫描时比较字符串
+ */
+public enum QueryField {
+
+    PREDICTION("prediction"),
+    OUTCOME("outcome"),
+    BETTING_RESULT("bettingResult"),
+    OPEN_RESULT("openResult"),
+    FINAL_RESULT("finalResult"),
+
+    /** 标记(sf444)，取值为数字 */
+    FLAG("flag") {
+        @Override
+        IntUnaryOperator reader(ServerHistory history) {
+            return row -> history.flag(row) + 1;
+        }
+
+        @Override
+        int codeOf(ServerHistory history, String value) {
+            return numericCode(value);
+        }
+
+        @Override
+        String decode(ServerHistory history, int code) {
+            return code == 0 ? null : String.valueOf(code - 1);
+        }
+    },
+
+    /** 是否被杀，取值为"1"或"0" */
+    KILLED("killed") {
+        @Override
+        IntUnaryOperator reader(ServerHistory history) {
+            return row -> history.has(row, RowTraits.KILLED) ? 2 : 1;
+        }
+
+        @Override
+        int codeOf(ServerHistory history, String value) {
+            return switch (value) {
+                case "1" -> 2;
+                case "0" -> 1;
+                default -> throw new IllegalArgumentException("killed只能取1或0: " + value);
+            };
+        }
+
+        @Override
+        String decode(ServerHistory history, int code) {
+            return code == 2 ? "1" : "0";
+        }
+    },
+
+    /** 开奖总和，取值为数字，支持"10..17"区间写法 */
+    TOTAL_NUMBER("totalNumber") {
+        @Override
+        IntUnaryOperator reader(ServerHistory history) {
+            return row -> {
+                int total = history.totalNumber(row);
+                if (total == ServerHistory.NO_TOTAL) {
+                    return 0;
+                }
+                return total >= 0 && total < OTHER_CODE - 1 ? total + 1 : OTHER_CODE;
+            };
+        }
+
+        @Override
+        int codeOf(ServerHistory history, String value) {
+            return numericCode(value);
+        }
+
+        @Override
+        String decode(ServerHistory history, int code) {
+            if (code == OTHER_CODE) {
+                return OTHER;
+            }
+            return code == 0 ? null : String.valueOf(code - 1);
+        }
+    };
+
+    /** 编码空间大小，分类列单字节编码最多255个取值，加上null */
+    static final int CODE_SPACE = 256;
+
+    /** 数值字段超出编码范围(负数或过大)的取值共用的编码，只用于分组，不能作为过滤条件 */
+    static final int OTHER_CODE = CODE_SPACE - 1;
+
+    /** OTHER_CODE分组显示的取值 */
+    static final String OTHER = "其他";
+
+    private final String label;
+
+    QueryField(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    /**
+     * 数值字段可以使用"a..b"区间写法
+     */
+    boolean numeric() {
+        return this == FLAG || this == TOTAL_NUMBER;
+    }
+
+    /**
+     * 解析时校验取值格式，分类列的取值随数据变化，不做校验
+     */
+    void validate(String value) {
+        if (numeric() || this == KILLED) {
+            codeOf(null, value);
+        }
+    }
+
+    /**
+     * 按行读取取值编码的函数，调用方需持有服务器读锁直到不再使用
+     */
+    IntUnaryOperator reader(ServerHistory history) {
+        CategoricalColumn column = history.category(label);
+        return column::codeAt;
+    }
+
+    /**
+     * 取值对应的编码，数据中从未出现的取值返回-1
+     */
+    int codeOf(ServerHistory history, String value) {
+        return history.category(label).code(value);
+    }
+
+    /**
+     * 将编码还原为取值
+     */
+    String decode(ServerHistory history, int code) {
+        return history.category(label).decode(code);
+    }
+
+    /**
+     * 按名称查找字段
+     */
+    public static QueryField of(String label) {
+        for (QueryField field : values()) {
+            if (field.label.equals(label)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("未知的查询字段: " + label + "，可用字段: "
+                + Arrays.stream(values()).map(QueryField::label).collect(Collectors.joining(",")));
+    }
+
+    private static int numericCode(String value) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("不是有效的数字: " + value);
+        }
+        return number >= 0 && number < OTHER_CODE - 1 ? number + 1 : -1;
+    }
+}
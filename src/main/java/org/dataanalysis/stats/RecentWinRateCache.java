@@ -0,0 +1,79 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.HistoryStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 最近N期胜率缓存
+ * 以 服务器/期数@数据版本 为键，超过容量时淘汰最久未使用的结果；
+ * 未命中时由前缀计数O(1)计算，定时任务每轮为常用期数预热
+ */
+@Component
+public class RecentWinRateCache {
+
+    @Value("${analysis.recent-win-rate.cache-size:64}")
+    private int maxEntries;
+
+    @Value("${analysis.recent-win-rate.prewarm:30,50,100,500,1000}")
+    private int[] prewarmCounts;
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    @Autowired
+    private WindowRates windowRates;
+
+    private final Map<String, Map<String, Object>> cache = new LinkedHashMap<String, Map<String, Object>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Object>> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * 获取最近recentCount期胜率
+     *
+     * @param serverName 服务器名称
+     * @param recentCount 期数
+     * @return 不可修改的结果，带有dataVersion
+     */
+    public Map<String, Object> get(String serverName, int recentCount) {
+        String key = key(serverName, recentCount, historyStore.version(serverName));
+        synchronized (cache) {
+            Map<String, Object> cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return compute(serverName, recentCount);
+    }
+
+    /**
+     * 为常用期数预热当前数据版本的结果
+     */
+    public void prewarm(String serverName) {
+        for (int recentCount : prewarmCounts) {
+            get(serverName, recentCount);
+        }
+    }
+
+    private Map<String, Object> compute(String serverName, int recentCount) {
+        Map<String, Object> result = Collections.unmodifiableMap(windowRates.recentWinRate(serverName, recentCount));
+        // 以实际计算所用的数据版本入缓存
+        String key = key(serverName, recentCount, (Long) result.get(StatsSnapshot.DATA_VERSION));
+        synchronized (cache) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    private static String key(String serverName, int recentCount, long dataVersion) {
+        return serverName + "/" + recentCount + "@" + dataVersion;
+    }
+}
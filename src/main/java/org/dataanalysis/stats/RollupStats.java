@@ -0,0 +1,98 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+import org.dataanalysis.store.SnapshotSection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 各服务器按创建时间的小时、天、周汇总
+ * 随数据变化事件增量更新，并作为附加分段随历史数据写入快照，重启后直接恢复，只补上快照之后的行；
+ * 按时间的图表只需读取几百个时间段，不再扫描原始数据
+ */
+@Component
+public class RollupStats extends HistoryIndexListener<TimeRollups> implements SnapshotSection {
+
+    // 单次查询最多返回的时间段个数
+    @Value("${analysis.rollups.max-buckets:1000}")
+    private int maxBuckets = 1000;
+
+    @Override
+    protected TimeRollups newIndex() {
+        return new TimeRollups();
+    }
+
+    @Override
+    public String sectionName() {
+        return "rollups";
+    }
+
+    @Override
+    public void writeSection(ServerHistory history, int rows, DataOutputStream out) throws IOException {
+        index(history).write(history, rows, out);
+    }
+
+    @Override
+    public boolean readSection(ServerHistory history, int rows, ByteBuffer in) {
+        TimeRollups index = newIndex();
+        index.read(in, rows);
+        putIndex(history, index);
+        return true;
+    }
+
+    /**
+     * 时间段[fromMillis, toMillis)内的汇总
+     *
+     * @param serverName 服务器名称
+     * @param granularity 时间粒度
+     * @param fromMillis 起始时间(含)，按UTC换算的本地时间毫秒数
+     * @param toMillis 结束时间(不含)
+     */
+    public Map<String, Object> rollups(String serverName, Granularity granularity, long fromMillis, long toMillis) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("serverName", serverName);
+        result.put("granularity", granularity.getCode());
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            List<Map<String, Object>> buckets = index(history).rollups(granularity, fromMillis, toMillis, maxBuckets);
+            result.put(StatsSnapshot.DATA_VERSION, history.version());
+            result.put("bucketCount", buckets.size());
+            result.put("buckets", buckets);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 解析查询时间，支持"2025-05-01"、"2025-05-01 08:00"和"2025-05-01T08:00:00"，格式错误时抛出IllegalArgumentException
+     *
+     * @param endOfDay 只有日期时是否取当天结束(即次日零点)，用于查询的结束时间
+     * @return 按UTC换算的本地时间毫秒数
+     */
+    public static long parseTime(String text, boolean endOfDay) {
+        String value = text.trim();
+        try {
+            if (value.length() <= 10) {
+                LocalDate date = LocalDate.parse(value);
+                return (endOfDay ? date.plusDays(1) : date).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+            String iso = value.replace(' ', 'T');
+            return LocalDateTime.parse(iso.length() == 16 ? iso + ":00" : iso).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("无法解析的时间: " + text + "，格式应为yyyy-MM-dd或yyyy-MM-dd HH:mm");
+        }
+    }
+}
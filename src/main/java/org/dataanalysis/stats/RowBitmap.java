@@ -0,0 +1,549 @@
+package org.dataanalysis.stats;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 行下标的压缩位图(Roaring结构)
+ * 行号按高16位分块，每块按基数选择容器：不超过4096个值时用有序char数组，否则用1024个long的位图，
+ * 稀疏取值只占2字节/行，密集取值固定8KB/块；交、并、差和基数都逐块进行，不需要展开成行列表
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public final class RowBitmap {
+
+    // 数组容器的最大基数，超过后转为位图容器
+    private static final int ARRAY_MAX = 4096;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public RowBitmap() {
+        this(4);
+    }
+
+    private RowBitmap(int capacity) {
+        keys = new char[capacity];
+        containers = new Container[capacity];
+    }
+
+    /**
+     * 由若干行号构建位图
+     */
+    public static RowBitmap of(int... rows) {
+        RowBitmap bitmap = new RowBitmap();
+        for (int row : rows) {
+            bitmap.add(row);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 包含区间[fromRow, toRow)全部行的位图，整块直接使用满位图容器
+     */
+    public static RowBitmap range(int fromRow, int toRow) {
+        RowBitmap bitmap = new RowBitmap();
+        int row = fromRow;
+        while (row < toRow) {
+            int blockEnd = Math.min(toRow, ((row >>> 16) + 1) << 16);
+            if ((row & 0xFFFF) == 0 && blockEnd - row == 1 << 16) {
+                BitmapContainer full = new BitmapContainer();
+                Arrays.fill(full.words, -1L);
+                full.cardinality = 1 << 16;
+                bitmap.append((char) (row >>> 16), full);
+            } else {
+                for (int r = row; r < blockEnd; r++) {
+                    bitmap.add(r);
+                }
+            }
+            row = blockEnd;
+        }
+        return bitmap;
+    }
+
+    public void add(int row) {
+        char key = (char) (row >>> 16);
+        int i = indexOf(key);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new ArrayContainer());
+        }
+        containers[i] = containers[i].add((char) row);
+    }
+
+    public void remove(int row) {
+        int i = indexOf((char) (row >>> 16));
+        if (i < 0) {
+            return;
+        }
+        Container container = containers[i].remove((char) row);
+        if (container.cardinality() == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        } else {
+            containers[i] = container;
+        }
+    }
+
+    public boolean contains(int row) {
+        int i = indexOf((char) (row >>> 16));
+        return i >= 0 && containers[i].contains((char) row);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+
+    /**
+     * 行区间[fromRow, toRow)内的行数
+     */
+    public int cardinality(int fromRow, int toRow) {
+        if (fromRow >= toRow) {
+            return 0;
+        }
+        return rank(toRow) - rank(fromRow);
+    }
+
+    /**
+     * 小于row的行数
+     */
+    public int rank(int row) {
+        int key = row >>> 16;
+        int total = 0;
+        for (int i = 0; i < size && keys[i] <= key; i++) {
+            total += keys[i] < key ? containers[i].cardinality() : containers[i].rank(row & 0xFFFF);
+        }
+        return total;
+    }
+
+    public RowBitmap and(RowBitmap other) {
+        RowBitmap result = new RowBitmap(Math.max(Math.min(size, other.size), 1));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 交集的基数，不生成中间位图
+     */
+    public int andCardinality(RowBitmap other) {
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                total += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    public RowBitmap or(RowBitmap other) {
+        RowBitmap result = new RowBitmap(Math.max(size + other.size, 1));
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public RowBitmap andNot(RowBitmap other) {
+        RowBitmap result = new RowBitmap(Math.max(size, 1));
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i]
+                    ? containers[i].andNot(other.containers[j]) : containers[i].copy();
+            if (container.cardinality() > 0) {
+                result.append(keys[i], container);
+            }
+        }
+        return result;
+    }
+
+    public RowBitmap copy() {
+        RowBitmap result = new RowBitmap(Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            result.append(keys[i], containers[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * 按行号升序遍历
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] rows = new int[cardinality()];
+        int[] next = {0};
+        forEach(row -> rows[next[0]++] = row);
+        return rows;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RowBitmap other && Arrays.equals(toArray(), other.toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return "RowBitmap" + Arrays.toString(toArray());
+    }
+
+    private int indexOf(char key) {
+        // 追加新行总是落在最后一块
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int i, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    private void append(char key, Container container) {
+        insert(size, key, container);
+    }
+
+    /**
+     * 一个65536行块内的容器，修改操作可能返回另一种容器
+     */
+    private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        /** 小于value(0-65536)的个数 */
+        abstract int rank(int value);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        abstract Container copy();
+
+        Container and(Container other) {
+            if (this instanceof BitmapContainer a && other instanceof BitmapContainer b) {
+                return a.combine(b, Op.AND);
+            }
+            // 至少一边是数组：遍历数组一侧逐个判断
+            ArrayContainer array = this instanceof ArrayContainer a ? a : (ArrayContainer) other;
+            Container probe = array == this ? other : this;
+            ArrayContainer result = new ArrayContainer();
+            for (int k = 0; k < array.cardinality; k++) {
+                if (probe.contains(array.values[k])) {
+                    result.appendUnchecked(array.values[k]);
+                }
+            }
+            return result;
+        }
+
+        int andCardinality(Container other) {
+            if (this instanceof BitmapContainer a && other instanceof BitmapContainer b) {
+                int total = 0;
+                for (int w = 0; w < a.words.length; w++) {
+                    total += Long.bitCount(a.words[w] & b.words[w]);
+                }
+                return total;
+            }
+            ArrayContainer array = this instanceof ArrayContainer a ? a : (ArrayContainer) other;
+            Container probe = array == this ? other : this;
+            int total = 0;
+            for (int k = 0; k < array.cardinality; k++) {
+                if (probe.contains(array.values[k])) {
+                    total++;
+                }
+            }
+            return total;
+        }
+
+        Container or(Container other) {
+            if (this instanceof BitmapContainer a && other instanceof BitmapContainer b) {
+                return a.combine(b, Op.OR);
+            }
+            // 以位图一侧(都是数组时任取一侧)为底，逐个加入数组一侧的取值
+            ArrayContainer array = other instanceof ArrayContainer b ? b : (ArrayContainer) this;
+            Container result = (array == other ? this : other).copy();
+            for (int k = 0; k < array.cardinality; k++) {
+                result = result.add(array.values[k]);
+            }
+            return result;
+        }
+
+        Container andNot(Container other) {
+            if (this instanceof BitmapContainer a && other instanceof BitmapContainer b) {
+                return a.combine(b, Op.AND_NOT);
+            }
+            if (this instanceof ArrayContainer array) {
+                ArrayContainer result = new ArrayContainer();
+                for (int k = 0; k < array.cardinality; k++) {
+                    if (!other.contains(array.values[k])) {
+                        result.appendUnchecked(array.values[k]);
+                    }
+                }
+                return result;
+            }
+            Container result = copy();
+            ArrayContainer array = (ArrayContainer) other;
+            for (int k = 0; k < array.cardinality; k++) {
+                result = result.remove(array.values[k]);
+            }
+            return result;
+        }
+    }
+
+    private enum Op {
+        AND, OR, AND_NOT
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        char[] values = new char[4];
+        int cardinality;
+
+        @Override
+        Container add(char value) {
+            if (cardinality == 0 || values[cardinality - 1] < value) {
+                if (cardinality == ARRAY_MAX) {
+                    return toBitmap().add(value);
+                }
+                appendUnchecked(value);
+                return this;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            ensureCapacity(cardinality + 1);
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int rank(int value) {
+            if (value > 0xFFFF) {
+                return cardinality;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) value);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int k = 0; k < cardinality; k++) {
+                action.accept(high | values[k]);
+            }
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer copy = new ArrayContainer();
+            copy.values = Arrays.copyOf(values, Math.max(cardinality, 4));
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        // 调用方保证value大于已有的全部取值且未超过容量上限
+        void appendUnchecked(char value) {
+            ensureCapacity(cardinality + 1);
+            values[cardinality++] = value;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(capacity, values.length * 2), ARRAY_MAX));
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int k = 0; k < cardinality; k++) {
+                bitmap.add(values[k]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        final long[] words = new long[1024];
+        int cardinality;
+
+        @Override
+        Container add(char value) {
+            long before = words[value >>> 6];
+            long after = before | (1L << value);
+            if (before != after) {
+                words[value >>> 6] = after;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long before = words[value >>> 6];
+            long after = before & ~(1L << value);
+            if (before != after) {
+                words[value >>> 6] = after;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int rank(int value) {
+            if (value > 0xFFFF) {
+                return cardinality;
+            }
+            int total = 0;
+            int word = value >>> 6;
+            for (int w = 0; w < word; w++) {
+                total += Long.bitCount(words[w]);
+            }
+            // 同一个word中低于value的位
+            return total + Long.bitCount(words[word] & ((1L << value) - 1));
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        Container copy() {
+            BitmapContainer copy = new BitmapContainer();
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        Container combine(BitmapContainer other, Op op) {
+            BitmapContainer result = new BitmapContainer();
+            int total = 0;
+            for (int w = 0; w < words.length; w++) {
+                long word = switch (op) {
+                    case AND -> words[w] & other.words[w];
+                    case OR -> words[w] | other.words[w];
+                    case AND_NOT -> words[w] & ~other.words[w];
+                };
+                result.words[w] = word;
+                total += Long.bitCount(word);
+            }
+            result.cardinality = total;
+            return total <= ARRAY_MAX ? result.toArray() : result;
+        }
+
+        private ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            forEach(0, row -> array.appendUnchecked((char) row));
+            return array;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.dataanalysis.stats;
+
+import java.util.Arrays;
+
+/**
+ * 单个服务器单种连续类型的游程索引
+ * 按行号升序保存每一段连续段的起始行和长度，已结束的连续段按长度分桶，
+ * 查询"长度不小于minLength的全部连续段"时从最长的桶开始直接切片，不需要重新扫描和排序
+ * 另外按连续段编号维护一张向左的稀疏表，sparse[k][i]为编号(i-2^k, i]内最长的连续段，
+ * 用于O(log N)查询任意行区间内的最长连续段
+ * 追加和撤回最新一行为O(log N)，非线程安全，由调用方持有对应服务器的锁
+ */
+public class RunIndex {
+
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private int runCount;
+    // 最后一段是否仍在延续(最新一行属于该连续段)
+    private boolean open;
+    // 已索引的行数
+    private int size;
+
+    // 已结束的连续段按长度分桶，桶内按行号升序
+    private int[][] buckets = new int[16][];
+    private int[] bucketSizes = new int[16];
+    private int maxClosedLength;
+
+    // 稀疏表，只有最后一段的长度会变化，所以每次只需更新编号最大的一列
+    private int[][] sparse = {new int[16]};
+
+    /**
+     * 已索引的行数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 连续段总数(含尚未结束的最后一段)
+     */
+    public int runCount() {
+        return runCount;
+    }
+
+    public int start(int run) {
+        return starts[run];
+    }
+
+    public int length(int run) {
+        return lengths[run];
+    }
+
+    /**
+     * 连续段最后一行的行号
+     */
+    public int end(int run) {
+        return starts[run] + lengths[run] - 1;
+    }
+
+    /**
+     * 追加末尾一行
+     *
+     * @param row 行号，必须等于已索引的行数
+     * @param value 该行是否属于此连续类型
+     */
+    public void append(int row, boolean value) {
+        if (row != size) {
+            throw new IllegalStateException("游程索引期望第" + size + "行，实际为第" + row + "行");
+        }
+        if (value) {
+            if (open) {
+                lengths[runCount - 1]++;
+                updateSparse(runCount - 1);
+            } else {
+                if (runCount == starts.length) {
+                    starts = Arrays.copyOf(starts, runCount * 2);
+                    lengths = Arrays.copyOf(lengths, runCount * 2);
+                }
+                starts[runCount] = row;
+                lengths[runCount] = 1;
+                runCount++;
+                open = true;
+                updateSparse(runCount - 1);
+            }
+        } else if (open) {
+            addToBucket(runCount - 1);
+            open = false;
+        }
+        size++;
+    }
+
+    /**
+     * 撤回最后一行
+     *
+     * @param row 行号，必须是最后一行
+     * @param value 该行撤回前是否属于此连续类型
+     */
+    public void retract(int row, boolean value) {
+        if (row != size - 1) {
+            throw new IllegalStateException("游程索引只能撤回最后一行，实际为第" + row + "行");
+        }
+        if (value) {
+            if (--lengths[runCount - 1] == 0) {
+                runCount--;
+                open = false;
+            } else {
+                updateSparse(runCount - 1);
+            }
+        } else if (!open && runCount > 0 && end(runCount - 1) == row - 1) {
+            // 该行结束了上一段连续段，撤回后上一段重新延续
+            removeLastFromBucket(runCount - 1);
+            open = true;
+        }
+        size--;
+    }
+
+    /**
+     * 长度不小于minLength的连续段，按长度从长到短，相同长度时最新的在前
+     *
+     * @return 连续段编号
+     */
+    public int[] runsAtLeast(int minLength) {
+        minLength = Math.max(minLength, 1);
+        int openRun = open ? runCount - 1 : -1;
+        int count = 0;
+        for (int length = minLength; length <= maxClosedLength; length++) {
+            count += bucketSizes[length];
+        }
+        if (openRun >= 0 && lengths[openRun] >= minLength) {
+            count++;
+        }
+
+        int[] result = new int[count];
+        int k = 0;
+        int top = Math.max(maxClosedLength, openRun >= 0 ? lengths[openRun] : 0);
+        for (int length = top; length >= minLength; length--) {
+            if (openRun >= 0 && lengths[openRun] == length) {
+                result[k++] = openRun;
+            }
+            if (length <= maxClosedLength) {
+                for (int i = bucketSizes[length] - 1; i >= 0; i--) {
+                    result[k++] = buckets[length][i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 最长的连续段，相同长度时取最新的一段，没有连续段时返回-1
+     */
+    public int longest() {
+        int best = -1;
+        if (maxClosedLength > 0) {
+            best = buckets[maxClosedLength][bucketSizes[maxClosedLength] - 1];
+        }
+        if (open && (best < 0 || lengths[runCount - 1] >= lengths[best])) {
+            best = runCount - 1;
+        }
+        return best;
+    }
+
+    /**
+     * 行区间[fromRow, toRow)内最长的连续段，跨越区间边界的连续段按截断后的长度计算，
+     * 相同长度时取最新的一段
+     *
+     * @return {长度, 起始行, 结束行}，区间内没有连续段时返回null
+     */
+    public int[] longestIn(int fromRow, int toRow) {
+        toRow = Math.min(toRow, size);
+        if (fromRow >= toRow || runCount == 0) {
+            return null;
+        }
+        // first为第一个结束行不早于fromRow的连续段，last为最后一个起始行早于toRow的连续段
+        int first = firstRunEndingAtOrAfter(fromRow);
+        int last = lastRunStartingBefore(toRow);
+        if (first > last) {
+            return null;
+        }
+
+        int[] best = clipped(last, fromRow, toRow);
+        if (last - 1 > first) {
+            int middle = rangeLongest(first + 1, last - 1);
+            if (lengths[middle] > best[0]) {
+                best = new int[]{lengths[middle], starts[middle], end(middle)};
+            }
+        }
+        if (first < last) {
+            int[] head = clipped(first, fromRow, toRow);
+            if (head[0] > best[0]) {
+                best = head;
+            }
+        }
+        return best;
+    }
+
+    private int[] clipped(int run, int fromRow, int toRow) {
+        int start = Math.max(starts[run], fromRow);
+        int end = Math.min(end(run), toRow - 1);
+        return new int[]{end - start + 1, start, end};
+    }
+
+    private int firstRunEndingAtOrAfter(int row) {
+        int low = 0;
+        int high = runCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(mid) < row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lastRunStartingBefore(int row) {
+        int low = 0;
+        int high = runCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    // 编号[from, to]内最长的连续段，相同长度时取编号较大(较新)的
+    private int rangeLongest(int from, int to) {
+        int level = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        return newer(sparse[level][to], sparse[level][from + (1 << level) - 1]);
+    }
+
+    private int newer(int a, int b) {
+        if (lengths[a] != lengths[b]) {
+            return lengths[a] > lengths[b] ? a : b;
+        }
+        return Math.max(a, b);
+    }
+
+    private void updateSparse(int run) {
+        if (run >= sparse[0].length) {
+            int capacity = sparse[0].length * 2;
+            for (int k = 0; k < sparse.length; k++) {
+                sparse[k] = Arrays.copyOf(sparse[k], capacity);
+            }
+        }
+        int levels = 32 - Integer.numberOfLeadingZeros(run + 1);
+        if (levels > sparse.length) {
+            int[][] grown = Arrays.copyOf(sparse, levels);
+            for (int k = sparse.length; k < levels; k++) {
+                grown[k] = new int[sparse[0].length];
+            }
+            sparse = grown;
+        }
+        sparse[0][run] = run;
+        for (int k = 1; k < levels; k++) {
+            sparse[k][run] = newer(sparse[k - 1][run], sparse[k - 1][run - (1 << (k - 1))]);
+        }
+    }
+
+    private void addToBucket(int run) {
+        int length = lengths[run];
+        if (length >= buckets.length) {
+            int capacity = Math.max(buckets.length * 2, length + 1);
+            buckets = Arrays.copyOf(buckets, capacity);
+            bucketSizes = Arrays.copyOf(bucketSizes, capacity);
+        }
+        int[] bucket = buckets[length];
+        if (bucket == null) {
+            bucket = new int[4];
+        } else if (bucketSizes[length] == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+        }
+        bucket[bucketSizes[length]++] = run;
+        buckets[length] = bucket;
+        maxClosedLength = Math.max(maxClosedLength, length);
+    }
+
+    private void removeLastFromBucket(int run) {
+        int length = lengths[run];
+        bucketSizes[length]--;
+        while (maxClosedLength > 0 && bucketSizes[maxClosedLength] == 0) {
+            maxClosedLength--;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+
+/**
+ * 单个服务器每种连续类型(连杀、连中、连错、连盈利、连亏损)的游程索引
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class RunIndexes implements HistoryIndex {
+
+    private static final RunType[] TYPES = RunType.values();
+
+    private final RunIndex[] runs = new RunIndex[TYPES.length];
+
+    public RunIndexes() {
+        for (int t = 0; t < runs.length; t++) {
+            runs[t] = new RunIndex();
+        }
+    }
+
+    /**
+     * 某种连续类型的游程索引
+     */
+    public RunIndex get(RunType type) {
+        return runs[type.ordinal()];
+    }
+
+    @Override
+    public int size() {
+        return runs[0].size();
+    }
+
+    @Override
+    public void rebuild(ServerHistory history) {
+        for (int t = 0; t < runs.length; t++) {
+            runs[t] = new RunIndex();
+        }
+        for (int row = 0; row < history.size(); row++) {
+            append(history, row);
+        }
+    }
+
+    @Override
+    public void append(ServerHistory history, int row) {
+        int traits = history.traits(row);
+        for (RunType type : TYPES) {
+            runs[type.ordinal()].append(row, type.matches(traits));
+        }
+    }
+
+    @Override
+    public void retract(ServerHistory history, int row) {
+        int traits = history.traits(row);
+        for (RunType type : TYPES) {
+            runs[type.ordinal()].retract(row, type.matches(traits));
+        }
+    }
+}
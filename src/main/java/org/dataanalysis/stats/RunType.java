@@ -0,0 +1,60 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+
+/**
+ * 连续段类型
+ */
+public enum RunType {
+
+    /** 连杀：杀号不为空 */
+    KILL("kill"),
+    /** 连中 */
+    HIT("hit"),
+    /** 连错：与历史最高连续统计一致，非"中"的记录都计入 */
+    MISS("miss"),
+    /** 连盈利 */
+    PROFIT("profit"),
+    /** 连亏损 */
+    LOSS("loss");
+
+    private final String code;
+
+    RunType(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * 该行是否属于此连续类型
+     */
+    public boolean matches(int traits) {
+        switch (this) {
+            case KILL:
+                return (traits & RowTraits.KILLED) != 0;
+            case HIT:
+                return (traits & RowTraits.HIT) != 0;
+            case MISS:
+                return (traits & RowTraits.HIT) == 0;
+            case PROFIT:
+                return (traits & RowTraits.PROFIT) != 0;
+            default:
+                return (traits & RowTraits.LOSS) != 0;
+        }
+    }
+
+    /**
+     * 按名称查找，忽略大小写，找不到时返回null
+     */
+    public static RunType fromCode(String code) {
+        for (RunType type : values()) {
+            if (type.code.equalsIgnoreCase(code)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+
+/**
+ * 单个服务器被杀、中、错、盈利、亏损序列的位集
+ * 第row行(按期号升序)对应第row位，一个long覆盖64期，模式匹配时一次运算处理64期
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class SequenceBits implements HistoryIndex {
+
+    /** 建立位集的特征 */
+    static final int[] MASKS = {RowTraits.KILLED, RowTraits.HIT, RowTraits.MISS, RowTraits.PROFIT, RowTraits.LOSS};
+
+    private long[][] bits = new long[MASKS.length][1];
+    private int size;
+
+    /**
+     * 已索引的行数
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    @Override
+    public void rebuild(ServerHistory history) {
+        int n = history.size();
+        bits = new long[MASKS.length][Math.max(1, (n + 63) >>> 6)];
+        size = 0;
+        for (int row = 0; row < n; row++) {
+            append(history, row);
+        }
+    }
+
+    /**
+     * 追加末尾一行
+     */
+    @Override
+    public void append(ServerHistory history, int row) {
+        if (row != size) {
+            throw new IllegalStateException(history.getServerName() + "：序列位集期望第" + size + "行，实际为第" + row + "行");
+        }
+        int word = row >>> 6;
+        if (word >= bits[0].length) {
+            int capacity = Math.max(word + 1, bits[0].length * 3 / 2 + 1);
+            for (int m = 0; m < MASKS.length; m++) {
+                long[] grown = new long[capacity];
+                System.arraycopy(bits[m], 0, grown, 0, bits[m].length);
+                bits[m] = grown;
+            }
+        }
+        int traits = history.traits(row);
+        for (int m = 0; m < MASKS.length; m++) {
+            if ((traits & MASKS[m]) != 0) {
+                bits[m][word] |= 1L << row;
+            }
+        }
+        size++;
+    }
+
+    /**
+     * 撤回最后一行
+     */
+    @Override
+    public void retract(ServerHistory history, int row) {
+        if (row != size - 1) {
+            throw new IllegalStateException("序列位集只能撤回最后一行，实际为第" + row + "行");
+        }
+        for (int m = 0; m < MASKS.length; m++) {
+            bits[m][row >>> 6] &= ~(1L << row);
+        }
+        size--;
+    }
+
+    /**
+     * 某个特征的位集，只读使用，size之后的位均为0
+     *
+     * @param traitMask MASKS中的一个特征
+     */
+    long[] words(int traitMask) {
+        for (int m = 0; m < MASKS.length; m++) {
+            if (MASKS[m] == traitMask) {
+                return bits[m];
+            }
+        }
+        throw new IllegalArgumentException("未建立位集的特征: " + traitMask);
+    }
+}
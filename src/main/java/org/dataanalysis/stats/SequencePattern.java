@@ -0,0 +1,200 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 期序列上的模式，按期号从早到晚书写，每个字符匹配一期：
+ * K 被杀，. 未被杀，H 中，M 错，P 盈利，L 亏损，? 任意一期；
+ * 字符后可跟 + (连续一期或多期)、{n} (恰好n期)、{n,} (至少n期)，
+ * 例如"KK.K"、"K{3,}M"(至少连续3期被杀后出现一期错)
+ * 匹配采用移位与(shift-and)的位并行方式，但并行的是期而不是模式位置：
+ * 每个模式元素对整段位集做一次"左移一位再与上该字符的位集"，64期一次运算；
+ * 带+的元素再用一次多字加法把匹配沿同一字符的连续段向后延伸
+ */
+public final class SequencePattern {
+
+    /** 模式展开后的元素个数上限 */
+    static final int MAX_ELEMENTS = 64;
+
+    private final String text;
+    private final char[] symbols;
+    private final boolean[] repeat;
+
+    private SequencePattern(String text, char[] symbols, boolean[] repeat) {
+        this.text = text;
+        this.symbols = symbols;
+        this.repeat = repeat;
+    }
+
+    /**
+     * 解析模式，格式错误时抛出IllegalArgumentException
+     */
+    public static SequencePattern parse(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("模式不能为空");
+        }
+        List<Character> symbols = new ArrayList<>();
+        List<Boolean> repeat = new ArrayList<>();
+        String pattern = text.replaceAll("\\s", "");
+        int i = 0;
+        while (i < pattern.length()) {
+            char symbol = pattern.charAt(i++);
+            if ("K.HMPL?".indexOf(symbol) < 0) {
+                throw new IllegalArgumentException("模式中不支持的字符: " + symbol + "，可用字符: K . H M P L ?");
+            }
+            int copies = 1;
+            boolean plus = false;
+            if (i < pattern.length() && pattern.charAt(i) == '+') {
+                plus = true;
+                i++;
+            } else if (i < pattern.length() && pattern.charAt(i) == '{') {
+                int close = pattern.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("模式中的{缺少}: " + text);
+                }
+                String body = pattern.substring(i + 1, close);
+                plus = body.endsWith(",");
+                try {
+                    copies = Integer.parseInt(plus ? body.substring(0, body.length() - 1) : body);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("模式中的重复次数无效: {" + body + "}");
+                }
+                if (copies < 1) {
+                    throw new IllegalArgumentException("模式中的重复次数至少为1: {" + body + "}");
+                }
+                i = close + 1;
+            }
+            if (symbols.size() + copies > MAX_ELEMENTS) {
+                throw new IllegalArgumentException("模式展开后超过" + MAX_ELEMENTS + "期");
+            }
+            for (int c = 0; c < copies; c++) {
+                symbols.add(symbol);
+                repeat.add(plus && c == copies - 1);
+            }
+        }
+        char[] symbolArray = new char[symbols.size()];
+        boolean[] repeatArray = new boolean[symbols.size()];
+        for (int e = 0; e < symbolArray.length; e++) {
+            symbolArray[e] = symbols.get(e);
+            repeatArray[e] = repeat.get(e);
+        }
+        return new SequencePattern(pattern, symbolArray, repeatArray);
+    }
+
+    public String text() {
+        return text;
+    }
+
+    /**
+     * 模式是否为固定长度(不含+和{n,})
+     */
+    public boolean fixedLength() {
+        for (boolean r : repeat) {
+            if (r) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 模式最少匹配的期数
+     */
+    public int minLength() {
+        return symbols.length;
+    }
+
+    /**
+     * 查找整个匹配都落在行区间[fromRow, toRow)内的全部匹配
+     *
+     * @return 匹配结束行的位集，第row位为1表示有一个匹配在第row行结束
+     */
+    long[] match(SequenceBits bits, int fromRow, int toRow) {
+        long[] current = new long[(toRow + 63) >>> 6];
+        if (fromRow >= toRow) {
+            return current;
+        }
+        int first = fromRow >>> 6;
+        int last = (toRow - 1) >>> 6;
+        long[] source = source(bits, symbols[0]);
+        long invert = symbols[0] == '.' ? -1L : 0;
+        for (int w = first; w <= last; w++) {
+            current[w] = source == null ? -1L : source[w] ^ invert;
+        }
+        current[first] &= windowMask(first, fromRow, toRow);
+        current[last] &= windowMask(last, fromRow, toRow);
+
+        for (int e = 1; e < symbols.length; e++) {
+            source = source(bits, symbols[e]);
+            invert = symbols[e] == '.' ? -1L : 0;
+            // 从高位字向低位字原地左移，低位字尚未被改写
+            for (int w = last; w > first; w--) {
+                long word = source == null ? -1L : source[w] ^ invert;
+                current[w] = ((current[w] << 1) | (current[w - 1] >>> 63)) & word;
+            }
+            current[first] = (current[first] << 1) & (source == null ? -1L : source[first] ^ invert);
+            current[first] &= windowMask(first, fromRow, toRow);
+            current[last] &= windowMask(last, fromRow, toRow);
+            if (repeat[e]) {
+                extend(current, source, invert, first, last, fromRow, toRow);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 把每个匹配沿同一字符的连续段向后延伸：段内第一个匹配位加到字符位集上，
+     * 进位会一直传播到连续段末尾，加法前后发生变化的位就是可以延伸到的位
+     */
+    private static void extend(long[] current, long[] source, long invert, int first, int last,
+                               int fromRow, int toRow) {
+        long carry = 0;
+        for (int w = first; w <= last; w++) {
+            long run = source == null ? -1L : source[w] ^ invert;
+            if (w == first || w == last) {
+                run &= windowMask(w, fromRow, toRow);
+            }
+            long seeds = current[w];
+            long partial = run + seeds;
+            long sum = partial + carry;
+            carry = Long.compareUnsigned(partial, run) < 0 || Long.compareUnsigned(sum, partial) < 0 ? 1 : 0;
+            current[w] = (run & (sum ^ run)) | seeds;
+        }
+    }
+
+    /**
+     * 字符对应的特征位集，?返回null表示任意一期，.使用被杀位集取反
+     */
+    static long[] source(SequenceBits bits, char symbol) {
+        return switch (symbol) {
+            case 'K', '.' -> bits.words(RowTraits.KILLED);
+            case 'H' -> bits.words(RowTraits.HIT);
+            case 'M' -> bits.words(RowTraits.MISS);
+            case 'P' -> bits.words(RowTraits.PROFIT);
+            case 'L' -> bits.words(RowTraits.LOSS);
+            default -> null;
+        };
+    }
+
+    /**
+     * 第w个字中位于行区间[fromRow, toRow)内的位
+     */
+    static long windowMask(int w, int fromRow, int toRow) {
+        long mask = -1L;
+        if (w == fromRow >>> 6) {
+            mask &= -1L << (fromRow & 63);
+        }
+        if (w == (toRow - 1) >>> 6) {
+            mask &= -1L >>> (63 - ((toRow - 1) & 63));
+        }
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,173 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.HistoryStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 统计结果的单飞加载
+ * 快照中缺少某项结果时，同一服务器、同一结果、同一数据版本只允许一个请求执行计算，
+ * 其余请求等待它的结果；等待超过配置的时间后返回上一次的旧结果，没有旧结果时继续等待
+ * 计算期间快照被更新的数据版本替换时同样返回旧结果，没有旧结果时按新的数据版本重新计算(最多MAX_ATTEMPTS次)；
+ * 不会返回null，得不到结果(数据版本持续变化、等待时被中断且没有旧结果)时抛出IllegalStateException
+ * 不属于快照的按需计算(如模拟结果缓存未命中)可以用call合并相同的并发计算
+ */
+@Component
+public class SingleFlight {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    // 计算期间快照被替换且没有旧结果时最多计算的次数
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Value("${analysis.single-flight.wait-ms:2000}")
+    private long waitMillis;
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    // 正在进行的计算，键为 服务器/结果@数据版本
+    private final Map<String, CompletableFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<>();
+
+    // 通过call进行的计算，键由调用方决定
+    private final Map<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    // 每项结果最近一次计算得到的值，等待超时时作为旧结果返回
+    private final Map<String, Map<String, Object>> lastResults = new ConcurrentHashMap<>();
+
+    /**
+     * 从快照读取结果，缺失时以单飞方式计算
+     *
+     * @param serverName 服务器名称
+     * @param snapshot 服务当前发布的快照
+     * @param key 缓存键
+     * @param calculation 计算并发布该项结果的方法
+     * @return 统计结果
+     */
+    public Map<String, Object> load(String serverName, AtomicReference<StatsSnapshot> snapshot,
+                                    String key, Runnable calculation) {
+        Map<String, Object> cached = snapshot.get().get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String resultKey = serverName + "/" + key;
+        // 第一次计算前创建，重新计算时沿用，已在等待的请求随最终结果一起完成
+        CompletableFuture<Map<String, Object>> mine = null;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                String flightKey = resultKey + "@" + historyStore.version(serverName);
+                CompletableFuture<Map<String, Object>> flight = mine != null ? mine : new CompletableFuture<>();
+                CompletableFuture<Map<String, Object>> existing = inFlight.putIfAbsent(flightKey, flight);
+                if (existing != null) {
+                    Map<String, Object> result = await(resultKey, existing);
+                    if (mine != null) {
+                        mine.complete(result);
+                    }
+                    return result;
+                }
+                mine = flight;
+                Map<String, Object> result;
+                try {
+                    result = calculate(snapshot, key, resultKey, calculation);
+                } finally {
+                    inFlight.remove(flightKey, mine);
+                }
+                if (result == null) {
+                    // 计算期间快照被更新的数据版本替换且没有旧结果，按新的数据版本重新计算
+                    result = snapshot.get().get(key);
+                }
+                if (result != null) {
+                    mine.complete(result);
+                    return result;
+                }
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new IllegalStateException(resultKey + "：数据版本持续变化，计算" + MAX_ATTEMPTS + "次仍未得到结果");
+                }
+            }
+        } catch (RuntimeException e) {
+            if (mine != null) {
+                mine.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 以单飞方式执行任意计算：同一个键同时只有一个调用执行计算，其余调用等待并共享它的结果
+     * 调用方需在计算内部再检查一次自己的缓存，避免在上一次计算刚结束时重复计算
+     *
+     * @param key 计算的键，相同的键表示相同的计算
+     * @param calculation 计算
+     * @return 计算结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String key, Supplier<T> calculation) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException(key + "：计算失败", e.getCause());
+            }
+        }
+        try {
+            T result = calculation.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, mine);
+        }
+    }
+
+    // 执行计算并从快照读取结果；计算期间快照被更新的数据版本替换时退回旧结果，没有旧结果时返回null
+    private Map<String, Object> calculate(AtomicReference<StatsSnapshot> snapshot, String key, String resultKey,
+                                          Runnable calculation) {
+        calculation.run();
+        Map<String, Object> result = snapshot.get().get(key);
+        if (result == null) {
+            return lastResults.get(resultKey);
+        }
+        lastResults.put(resultKey, result);
+        return result;
+    }
+
+    private Map<String, Object> await(String resultKey, CompletableFuture<Map<String, Object>> future) {
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Map<String, Object> stale = lastResults.get(resultKey);
+            if (stale != null) {
+                logger.debug("{}：等待计算超过{}毫秒，返回旧结果", resultKey, waitMillis);
+                return stale;
+            }
+            return future.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Map<String, Object> stale = lastResults.get(resultKey);
+            if (stale != null) {
+                return stale;
+            }
+            throw new IllegalStateException(resultKey + "：等待计算时被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(resultKey + "：计算失败", e.getCause());
+        }
+    }
+}
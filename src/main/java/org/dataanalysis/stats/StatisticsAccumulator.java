@@ -0,0 +1,394 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.ComprehensiveRates;
+import org.dataanalysis.stats.result.MaxStreakStats;
+import org.dataanalysis.stats.result.ResultDistribution;
+import org.dataanalysis.stats.result.StatsResult;
+import org.dataanalysis.stats.result.StreakStats;
+import org.dataanalysis.stats.result.WinRate;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单个服务器的增量统计累加器
+ * 按期号升序逐行应用，每次应用和撤回都是O(1)：计数和分布直接加减，最近N期用滑动窗口维护，
+ * 连续统计保存上一行应用前的状态，撤回最新一行时直接恢复
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class StatisticsAccumulator {
+
+    // 当前连续统计只看最近100期，与calculateConsecutiveStats的数据范围一致
+    static final int CONSECUTIVE_WINDOW = 100;
+
+    private final String serverName;
+    private final int recentCount;
+    private final int recentWindow;
+
+    // 已应用的行数
+    private int size;
+
+    // 全量计数
+    private final OutcomeCounts counts = new OutcomeCounts();
+
+    // 最近N期计数
+    private long recentCorrect;
+    private long recentIncorrect;
+
+    // 最近100期中的特殊值个数
+    private int outcomeSpecialInWindow;
+    private int betSpecialInWindow;
+
+    // 当前连续统计
+    private final TrailingStreak trailingCorrect = new TrailingStreak();
+    private final TrailingStreak trailingIncorrect = new TrailingStreak();
+    private final TrailingStreak trailingProfit = new TrailingStreak();
+    private final TrailingStreak trailingLoss = new TrailingStreak();
+
+    // 历史最高连续统计
+    private final LongestRun maxCorrect = new LongestRun();
+    private final LongestRun maxIncorrect = new LongestRun();
+    private final LongestRun maxProfit = new LongestRun();
+    private final LongestRun maxLoss = new LongestRun();
+
+    // 应用最新一行之前的连续统计状态，用于撤回
+    private final TrailingStreak[] undoTrailing = {new TrailingStreak(), new TrailingStreak(),
+            new TrailingStreak(), new TrailingStreak()};
+    private final LongestRun[] undoLongest = {new LongestRun(), new LongestRun(), new LongestRun(), new LongestRun()};
+    private boolean undoAvailable;
+
+    public StatisticsAccumulator(String serverName, int recentCount) {
+        this.serverName = serverName;
+        this.recentCount = recentCount;
+        this.recentWindow = Math.max(recentCount, 0);
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     * 调用方需持有该服务器的锁
+     */
+    public void rebuild(ServerHistory history) {
+        reset();
+        int n = history.size();
+        for (int i = 0; i < n; i++) {
+            apply(history, i);
+        }
+    }
+
+    /**
+     * 用覆盖前若干行的可合并摘要恢复状态，效果与对这些行逐行apply相同，但之后不能撤回摘要中的最后一行
+     * 调用方需持有该服务器的锁
+     *
+     * @param history 服务器历史数据
+     * @param segment 从第0行开始的统计摘要
+     */
+    void load(ServerHistory history, StatisticsSegment segment) {
+        if (segment.from != 0) {
+            throw new IllegalArgumentException(serverName + "：统计摘要必须从第0行开始，实际为第" + segment.from + "行");
+        }
+        reset();
+        int n = segment.to;
+        counts.copyFrom(segment.counts);
+
+        // 窗口统计只取决于末尾若干行，直接对这些行计数
+        if (recentWindow > 0) {
+            int[] recent = history.countAll(new int[]{RowTraits.HIT, RowTraits.MISS}, Math.max(n - recentWindow, 0), n);
+            recentCorrect = recent[0];
+            recentIncorrect = recent[1];
+        }
+        int[] specials = history.countAll(new int[]{RowTraits.OUTCOME_SPECIAL, RowTraits.BET_SPECIAL},
+                Math.max(n - CONSECUTIVE_WINDOW, 0), n);
+        outcomeSpecialInWindow = specials[0];
+        betSpecialInWindow = specials[1];
+
+        trailingCorrect.load(segment.trailingCorrect);
+        trailingIncorrect.load(segment.trailingIncorrect);
+        trailingProfit.load(segment.trailingProfit);
+        trailingLoss.load(segment.trailingLoss);
+        maxCorrect.load(history, segment.maxCorrect, n);
+        maxIncorrect.load(history, segment.maxIncorrect, n);
+        maxProfit.load(history, segment.maxProfit, n);
+        maxLoss.load(history, segment.maxLoss, n);
+        size = n;
+    }
+
+    /**
+     * 已应用的行数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 开奖总和直方图，调用方需持有对应服务器的锁且不得修改
+     */
+    TotalHistogram totals() {
+        return counts.totals;
+    }
+
+    /**
+     * 应用末尾新增的一行
+     *
+     * @param history 服务器历史数据
+     * @param row 行下标，必须等于已应用的行数
+     */
+    public void apply(ServerHistory history, int row) {
+        if (row != size) {
+            throw new IllegalStateException(serverName + "：增量统计期望第" + size + "行，实际为第" + row + "行");
+        }
+        int traits = history.traits(row);
+        counts.add(traits, history.totalNumber(row), 1);
+
+        if (recentWindow > 0) {
+            recentCorrect += bit(traits, RowTraits.HIT);
+            recentIncorrect += bit(traits, RowTraits.MISS);
+            if (row >= recentWindow) {
+                int leaving = history.traits(row - recentWindow);
+                recentCorrect -= bit(leaving, RowTraits.HIT);
+                recentIncorrect -= bit(leaving, RowTraits.MISS);
+            }
+        }
+        outcomeSpecialInWindow += bit(traits, RowTraits.OUTCOME_SPECIAL);
+        betSpecialInWindow += bit(traits, RowTraits.BET_SPECIAL);
+        if (row >= CONSECUTIVE_WINDOW) {
+            int leaving = history.traits(row - CONSECUTIVE_WINDOW);
+            outcomeSpecialInWindow -= bit(leaving, RowTraits.OUTCOME_SPECIAL);
+            betSpecialInWindow -= bit(leaving, RowTraits.BET_SPECIAL);
+        }
+
+        saveUndo();
+        boolean hit = (traits & RowTraits.HIT) != 0;
+        boolean outcomeSpecial = (traits & RowTraits.OUTCOME_SPECIAL) != 0;
+        boolean betSpecial = (traits & RowTraits.BET_SPECIAL) != 0;
+        boolean profit = (traits & RowTraits.PROFIT) != 0;
+        boolean loss = (traits & RowTraits.LOSS) != 0;
+        trailingCorrect.push(hit, outcomeSpecial);
+        trailingIncorrect.push((traits & RowTraits.MISS) != 0, outcomeSpecial);
+        trailingProfit.push(profit, betSpecial);
+        trailingLoss.push(loss, betSpecial);
+
+        // 连中与连错互斥：非"中"的记录都计入连错；盈利、亏损之外的结果同时中断连盈利和连亏损
+        int period = history.period(row);
+        maxCorrect.push(hit, period);
+        maxIncorrect.push(!hit, period);
+        maxProfit.push(profit, period);
+        maxLoss.push(loss, period);
+        size++;
+    }
+
+    /**
+     * 撤回最新一行，调用时该行仍是应用时的旧值
+     *
+     * @param history 服务器历史数据
+     * @param row 行下标，必须是最后应用的一行
+     */
+    public void retract(ServerHistory history, int row) {
+        if (row != size - 1 || !undoAvailable) {
+            throw new IllegalStateException(serverName + "：只能撤回最后应用的一行，实际为第" + row + "行");
+        }
+        int traits = history.traits(row);
+        counts.add(traits, history.totalNumber(row), -1);
+
+        if (recentWindow > 0) {
+            recentCorrect -= bit(traits, RowTraits.HIT);
+            recentIncorrect -= bit(traits, RowTraits.MISS);
+            if (row >= recentWindow) {
+                int returning = history.traits(row - recentWindow);
+                recentCorrect += bit(returning, RowTraits.HIT);
+                recentIncorrect += bit(returning, RowTraits.MISS);
+            }
+        }
+        outcomeSpecialInWindow -= bit(traits, RowTraits.OUTCOME_SPECIAL);
+        betSpecialInWindow -= bit(traits, RowTraits.BET_SPECIAL);
+        if (row >= CONSECUTIVE_WINDOW) {
+            int returning = history.traits(row - CONSECUTIVE_WINDOW);
+            outcomeSpecialInWindow += bit(returning, RowTraits.OUTCOME_SPECIAL);
+            betSpecialInWindow += bit(returning, RowTraits.BET_SPECIAL);
+        }
+
+        trailingCorrect.copyFrom(undoTrailing[0]);
+        trailingIncorrect.copyFrom(undoTrailing[1]);
+        trailingProfit.copyFrom(undoTrailing[2]);
+        trailingLoss.copyFrom(undoTrailing[3]);
+        maxCorrect.copyFrom(undoLongest[0]);
+        maxIncorrect.copyFrom(undoLongest[1]);
+        maxProfit.copyFrom(undoLongest[2]);
+        maxLoss.copyFrom(undoLongest[3]);
+        undoAvailable = false;
+        size--;
+    }
+
+    private void reset() {
+        size = 0;
+        counts.clear();
+        recentCorrect = 0;
+        recentIncorrect = 0;
+        outcomeSpecialInWindow = 0;
+        betSpecialInWindow = 0;
+        TrailingStreak empty = new TrailingStreak();
+        trailingCorrect.copyFrom(empty);
+        trailingIncorrect.copyFrom(empty);
+        trailingProfit.copyFrom(empty);
+        trailingLoss.copyFrom(empty);
+        LongestRun none = new LongestRun();
+        maxCorrect.copyFrom(none);
+        maxIncorrect.copyFrom(none);
+        maxProfit.copyFrom(none);
+        maxLoss.copyFrom(none);
+        undoAvailable = false;
+    }
+
+    private void saveUndo() {
+        undoTrailing[0].copyFrom(trailingCorrect);
+        undoTrailing[1].copyFrom(trailingIncorrect);
+        undoTrailing[2].copyFrom(trailingProfit);
+        undoTrailing[3].copyFrom(trailingLoss);
+        undoLongest[0].copyFrom(maxCorrect);
+        undoLongest[1].copyFrom(maxIncorrect);
+        undoLongest[2].copyFrom(maxProfit);
+        undoLongest[3].copyFrom(maxLoss);
+        undoAvailable = true;
+    }
+
+    private static int bit(int traits, int mask) {
+        return (traits & mask) != 0 ? 1 : 0;
+    }
+
+    // ---------------- 输出 ----------------
+
+    /**
+     * 当前状态对应的全部类型化统计结果，以StatisticsEngine中的缓存键为键
+     * 只做计数拷贝，不生成任何格式化字符串
+     */
+    public Map<String, StatsResult> results() {
+        int n = size;
+        Map<String, StatsResult> results = new HashMap<>();
+        results.put(StatisticsEngine.WIN_RATE, WinRate.overall(serverName, n, counts.correctCount, counts.incorrectCount));
+        results.put(StatisticsEngine.RECENT_WIN_RATE, WinRate.recent(serverName, recentCount,
+                Math.min(recentWindow, n), recentCorrect, recentIncorrect));
+        results.put(StatisticsEngine.RESULTS, resultDistribution(n, null));
+        results.put(StatisticsEngine.COMPREHENSIVE_RATE, new ComprehensiveRates(serverName, n, counts.correctCount,
+                counts.incorrectCount, counts.killedCount, counts.correctButKilledCount, counts.profitCount, counts.lossCount));
+        results.put(StatisticsEngine.CONSECUTIVE_STATS, new StreakStats(serverName,
+                trailingCorrect.count(outcomeSpecialInWindow), trailingIncorrect.count(outcomeSpecialInWindow),
+                trailingProfit.count(betSpecialInWindow), trailingLoss.count(betSpecialInWindow)));
+
+        Map<String, Integer> numberRangeDistribution = new HashMap<>();
+        int[] rangeCounts = counts.totals.bucketCounts(TotalBuckets.LEGACY);
+        for (int i = 0; i < rangeCounts.length; i++) {
+            if (rangeCounts[i] > 0) {
+                numberRangeDistribution.put(TotalBuckets.LEGACY.buckets().get(i).label(), rangeCounts[i]);
+            }
+        }
+        results.put(StatisticsEngine.DETAILED_RESULTS, resultDistribution(n, new ResultDistribution.Detail(
+                counts.killedSingleCount, counts.killedDoubleCount, counts.correctSinglePredictions, counts.correctDoublePredictions,
+                Collections.unmodifiableMap(numberRangeDistribution))));
+
+        results.put(StatisticsEngine.HISTORICAL_CONSECUTIVE_STATS, new MaxStreakStats(serverName, n,
+                maxCorrect.length(), maxIncorrect.length(), maxProfit.length(), maxLoss.length(),
+                maxCorrect.startPeriod(), maxIncorrect.startPeriod(), maxProfit.startPeriod(),
+                maxLoss.startPeriod()));
+        return results;
+    }
+
+    /**
+     * 当前状态对应的全部统计结果，结构与WinRateCalculator各方法的返回值一致
+     */
+    public Map<String, Map<String, Object>> toResults() {
+        Map<String, Map<String, Object>> results = new HashMap<>();
+        results().forEach((key, result) -> results.put(key, result.toMap()));
+        return results;
+    }
+
+    private ResultDistribution resultDistribution(int n, ResultDistribution.Detail detail) {
+        return new ResultDistribution(serverName, n, counts.singleCount, counts.doubleCount,
+                Collections.unmodifiableMap(counts.totals.toMap()), detail);
+    }
+
+    /**
+     * 从最新一期往前的连续统计：特殊值跳过，目标结果计数，其他结果结束
+     */
+    private static final class TrailingStreak {
+        // 未被中断的末尾行数(含特殊值)
+        int rows;
+        // 其中目标结果的行数
+        int hits;
+
+        void push(boolean hit, boolean special) {
+            if (hit) {
+                rows++;
+                hits++;
+            } else if (special) {
+                rows++;
+            } else {
+                rows = 0;
+                hits = 0;
+            }
+        }
+
+        // 只统计最近100期：整段超过100期时，窗口内全部是目标结果或特殊值
+        int count(int specialInWindow) {
+            return rows <= CONSECUTIVE_WINDOW ? hits : CONSECUTIVE_WINDOW - specialInWindow;
+        }
+
+        void load(StatisticsSegment.Tail tail) {
+            rows = tail.rows;
+            hits = tail.hits;
+        }
+
+        void copyFrom(TrailingStreak other) {
+            rows = other.rows;
+            hits = other.hits;
+        }
+    }
+
+    /**
+     * 历史最长连续段，相同长度时保留最新的一段，起始期号为该段最新一期
+     */
+    private static final class LongestRun {
+        // 尚未结束的末尾连续段
+        int runLength;
+        int runPeriod;
+        // 已结束连续段中的最长段
+        int bestLength;
+        int bestPeriod;
+
+        void push(boolean value, int period) {
+            if (value) {
+                runLength++;
+                runPeriod = period;
+            } else if (runLength > 0) {
+                if (runLength >= bestLength) {
+                    bestLength = runLength;
+                    bestPeriod = runPeriod;
+                }
+                runLength = 0;
+            }
+        }
+
+        int length() {
+            return runLength > 0 && runLength >= bestLength ? runLength : bestLength;
+        }
+
+        int startPeriod() {
+            return runLength > 0 && runLength >= bestLength ? runPeriod : bestPeriod;
+        }
+
+        void load(ServerHistory history, StatisticsSegment.Runs runs, int size) {
+            runLength = runs.suffix;
+            runPeriod = runs.suffix > 0 ? history.period(size - 1) : 0;
+            bestLength = runs.innerLength;
+            bestPeriod = runs.innerLength > 0 ? history.period(runs.innerNewestRow) : 0;
+        }
+
+        void copyFrom(LongestRun other) {
+            runLength = other.runLength;
+            runPeriod = other.runPeriod;
+            bestLength = other.bestLength;
+            bestPeriod = other.bestPeriod;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 融合统计引擎
+ * 对一个服务器的内存历史数据只做一次遍历，同时得到胜率、最近胜率、结果分布、综合胜率、
+ * 当前连续统计、详细结果和历史最高连续统计，输出与WinRateCalculator各方法相同结构的结果Map
+ * 具体累加逻辑在StatisticsAccumulator中，增量维护时也使用同一套逻辑；
+ * 数据量大时按行区间拆分成可合并的StatisticsSegment并行扫描
+ */
+@Component
+public class StatisticsEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsEngine.class);
+
+    // 并行扫描时每段的最小行数
+    private static final int MIN_LEAF_SIZE = 1024;
+
+    /** 基本胜率 */
+    public static final String WIN_RATE = "winRate";
+    /** 最近N期胜率 */
+    public static final String RECENT_WIN_RATE = "recentWinRate";
+    /** 结果分布 */
+    public static final String RESULTS = "results";
+    /** 综合胜率分析 */
+    public static final String COMPREHENSIVE_RATE = "comprehensiveRate";
+    /** 当前连续统计 */
+    public static final String CONSECUTIVE_STATS = "consecutiveStats";
+    /** 详细结果分析 */
+    public static final String DETAILED_RESULTS = "detailedResults";
+    /** 历史最高连续统计 */
+    public static final String HISTORICAL_CONSECUTIVE_STATS = "historicalConsecutiveStats";
+
+    // 期数达到该值时并行扫描，否则顺序扫描
+    @Value("${analysis.parallel.threshold:200000}")
+    private int parallelThreshold = 200000;
+
+    /**
+     * 一次遍历计算全部统计结果
+     *
+     * @param history 服务器内存历史数据
+     * @param recentCount 最近胜率的期数
+     * @return 以缓存键(winRate、results等)为键的各项统计结果
+     */
+    public Map<String, Map<String, Object>> calculateAll(ServerHistory history, int recentCount) {
+        return accumulate(history, recentCount).toResults();
+    }
+
+    /**
+     * 一次升序遍历构建增量统计累加器，之后可以逐行追加或撤回最新一行
+     *
+     * @param history 服务器内存历史数据
+     * @param recentCount 最近胜率的期数
+     * @return 已应用全部数据的累加器
+     */
+    public StatisticsAccumulator accumulate(ServerHistory history, int recentCount) {
+        history.lock().readLock().lock();
+        try {
+            return build(history, recentCount);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 构建已应用全部数据的累加器，调用方需持有该服务器的锁
+     * 数据量达到阈值时把区间拆分后在公共ForkJoinPool上并行扫描，再按顺序合并各段摘要；
+     * 最后一行总是逐行应用，保证之后仍可以撤回最新一期
+     */
+    public StatisticsAccumulator build(ServerHistory history, int recentCount) {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator(history.getServerName(), recentCount);
+        int n = history.size();
+        if (n < parallelThreshold || n < 2) {
+            accumulator.rebuild(history);
+            return accumulator;
+        }
+        int leafSize = Math.max(MIN_LEAF_SIZE, n / (ForkJoinPool.getCommonPoolParallelism() * 4));
+        StatisticsSegment segment = ForkJoinPool.commonPool().invoke(new SegmentTask(history, 0, n - 1, leafSize));
+        accumulator.load(history, segment);
+        accumulator.apply(history, n - 1);
+        logger.debug("{}：并行统计{}期，每段{}期", history.getServerName(), n, leafSize);
+        return accumulator;
+    }
+
+    /**
+     * 按行区间二分的并行扫描任务
+     */
+    private static final class SegmentTask extends RecursiveTask<StatisticsSegment> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ServerHistory history;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        SegmentTask(ServerHistory history, int from, int to, int leafSize) {
+            this.history = history;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected StatisticsSegment compute() {
+            if (to - from <= leafSize) {
+                return StatisticsSegment.scan(history, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            SegmentTask left = new SegmentTask(history, from, mid, leafSize);
+            left.fork();
+            StatisticsSegment right = new SegmentTask(history, mid, to, leafSize).compute();
+            return left.join().merge(right);
+        }
+    }
+}
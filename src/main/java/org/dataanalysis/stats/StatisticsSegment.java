@@ -0,0 +1,176 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+
+/**
+ * 一段连续行[from, to)的可合并统计摘要
+ * 计数直接相加；连续统计用前缀段、后缀段和内部最长段描述，相邻两段合并时把左段后缀与右段前缀拼接，
+ * 因此合并满足结合律，可以把大区间拆开并行扫描后再按顺序合并
+ * 最近N期这类窗口统计只取决于末尾若干行，在最终结果中直接计算，不放在摘要里
+ */
+final class StatisticsSegment {
+
+    final int from;
+    final int to;
+    final OutcomeCounts counts = new OutcomeCounts();
+
+    // 当前连续统计：连中、连错、连盈利、连亏损
+    final Tail trailingCorrect = new Tail();
+    final Tail trailingIncorrect = new Tail();
+    final Tail trailingProfit = new Tail();
+    final Tail trailingLoss = new Tail();
+
+    // 历史最高连续统计：中、非中、盈利、亏损
+    final Runs maxCorrect = new Runs();
+    final Runs maxIncorrect = new Runs();
+    final Runs maxProfit = new Runs();
+    final Runs maxLoss = new Runs();
+
+    private StatisticsSegment(int from, int to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * 顺序扫描一段行，调用方需持有该服务器的锁
+     */
+    static StatisticsSegment scan(ServerHistory history, int from, int to) {
+        StatisticsSegment segment = new StatisticsSegment(from, to);
+        for (int row = from; row < to; row++) {
+            int traits = history.traits(row);
+            segment.counts.add(traits, history.totalNumber(row), 1);
+
+            boolean hit = (traits & RowTraits.HIT) != 0;
+            boolean outcomeSpecial = (traits & RowTraits.OUTCOME_SPECIAL) != 0;
+            boolean betSpecial = (traits & RowTraits.BET_SPECIAL) != 0;
+            boolean profit = (traits & RowTraits.PROFIT) != 0;
+            boolean loss = (traits & RowTraits.LOSS) != 0;
+            segment.trailingCorrect.push(hit, outcomeSpecial);
+            segment.trailingIncorrect.push((traits & RowTraits.MISS) != 0, outcomeSpecial);
+            segment.trailingProfit.push(profit, betSpecial);
+            segment.trailingLoss.push(loss, betSpecial);
+
+            segment.maxCorrect.push(hit, row);
+            segment.maxIncorrect.push(!hit, row);
+            segment.maxProfit.push(profit, row);
+            segment.maxLoss.push(loss, row);
+        }
+        return segment;
+    }
+
+    /**
+     * 合并紧接在本段之后的一段，返回新的摘要，两段本身不变
+     */
+    StatisticsSegment merge(StatisticsSegment right) {
+        if (right.from != to) {
+            throw new IllegalArgumentException("只能合并相邻的两段: [" + from + ", " + to + ") 与 ["
+                    + right.from + ", " + right.to + ")");
+        }
+        StatisticsSegment merged = new StatisticsSegment(from, right.to);
+        merged.counts.copyFrom(counts);
+        merged.counts.merge(right.counts);
+        merged.trailingCorrect.merge(trailingCorrect, right.trailingCorrect);
+        merged.trailingIncorrect.merge(trailingIncorrect, right.trailingIncorrect);
+        merged.trailingProfit.merge(trailingProfit, right.trailingProfit);
+        merged.trailingLoss.merge(trailingLoss, right.trailingLoss);
+        merged.maxCorrect.merge(maxCorrect, right.maxCorrect, right.from);
+        merged.maxIncorrect.merge(maxIncorrect, right.maxIncorrect, right.from);
+        merged.maxProfit.merge(maxProfit, right.maxProfit, right.from);
+        merged.maxLoss.merge(maxLoss, right.maxLoss, right.from);
+        return merged;
+    }
+
+    int size() {
+        return to - from;
+    }
+
+    /**
+     * 末尾连续段摘要：最后一个中断行之后的行数(含特殊值)和其中目标结果的行数
+     */
+    static final class Tail {
+        int rows;
+        int hits;
+        // 段内是否出现过中断行
+        boolean broken;
+
+        void push(boolean hit, boolean special) {
+            if (hit) {
+                rows++;
+                hits++;
+            } else if (special) {
+                rows++;
+            } else {
+                rows = 0;
+                hits = 0;
+                broken = true;
+            }
+        }
+
+        void merge(Tail left, Tail right) {
+            if (right.broken) {
+                rows = right.rows;
+                hits = right.hits;
+                broken = true;
+            } else {
+                rows = left.rows + right.rows;
+                hits = left.hits + right.hits;
+                broken = left.broken;
+            }
+        }
+    }
+
+    /**
+     * 连续段摘要
+     * prefix/suffix为从段首/段尾开始的连续段长度，inner为除末尾连续段以外的最长段，
+     * 相同长度取最新的一段，newestRow是该段最新一行的下标
+     */
+    static final class Runs {
+        int rows;
+        int prefix;
+        int suffix;
+        int innerLength;
+        int innerNewestRow = -1;
+
+        void push(boolean value, int row) {
+            rows++;
+            if (value) {
+                if (prefix == rows - 1) {
+                    prefix++;
+                }
+                suffix++;
+            } else if (suffix > 0) {
+                close(suffix, row - 1);
+                suffix = 0;
+            }
+        }
+
+        void merge(Runs left, Runs right, int rightFrom) {
+            rows = left.rows + right.rows;
+            prefix = left.prefix == left.rows ? left.rows + right.prefix : left.prefix;
+            innerLength = left.innerLength;
+            innerNewestRow = left.innerNewestRow;
+            if (right.suffix == right.rows) {
+                // 右段整段连续，与左段后缀连成新的末尾连续段
+                suffix = left.suffix + right.rows;
+                return;
+            }
+            suffix = right.suffix;
+            // 左段后缀与右段前缀拼成一段已结束的连续段
+            int bridge = left.suffix + right.prefix;
+            if (bridge > 0) {
+                close(bridge, right.prefix > 0 ? rightFrom + right.prefix - 1 : rightFrom - 1);
+            }
+            if (right.innerLength > 0) {
+                close(right.innerLength, right.innerNewestRow);
+            }
+        }
+
+        private void close(int length, int newestRow) {
+            if (length > innerLength || (length == innerLength && newestRow > innerNewestRow)) {
+                innerLength = length;
+                innerNewestRow = newestRow;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.MapResult;
+import org.dataanalysis.stats.result.StatsResult;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 不可变的统计结果快照
+ * 同一个快照中的全部结果都来自同一个数据版本，服务通过一次原子引用替换发布新快照，
+ * 读取方拿到引用后无需加锁即可读到一致的结果
+ * 快照保存类型化结果，JSON序列化时才格式化比率；按Map读取时在第一次读取时转换并缓存，
+ * 转换出的每个结果Map中都带有dataVersion字段
+ */
+public final class StatsSnapshot {
+
+    /** 结果中的数据版本字段 */
+    public static final String DATA_VERSION = "dataVersion";
+
+    private final String serverName;
+    private final long dataVersion;
+    private final long createdAt;
+    private final Map<String, StatsResult> results;
+    // 已转换为Map的结果，随快照一起丢弃
+    private final Map<String, Map<String, Object>> formatted = new ConcurrentHashMap<>();
+
+    private StatsSnapshot(String serverName, long dataVersion, Map<String, StatsResult> results) {
+        this.serverName = serverName;
+        this.dataVersion = dataVersion;
+        this.createdAt = System.currentTimeMillis();
+        this.results = Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * 尚未计算过任何结果的空快照
+     */
+    public static StatsSnapshot empty(String serverName) {
+        return new StatsSnapshot(serverName, -1, new HashMap<>());
+    }
+
+    /**
+     * 由一次完整计算的全部结果构建快照
+     *
+     * @param serverName 服务器名称
+     * @param dataVersion 计算所用数据的版本
+     * @param results 以缓存键(winRate、results等)为键的各项统计结果
+     */
+    public static StatsSnapshot of(String serverName, long dataVersion, Map<String, StatsResult> results) {
+        return new StatsSnapshot(serverName, dataVersion, new HashMap<>(results));
+    }
+
+    /**
+     * 加入单项结果后的新快照
+     * 数据版本与当前快照相同时在其基础上追加；版本更新时丢弃旧版本的全部结果，避免新旧数据混在一起；
+     * 版本比当前快照旧时(计算期间已发布了更新的快照)丢弃该结果，返回当前快照
+     *
+     * @param key 缓存键
+     * @param result 统计结果
+     * @param version 计算所用数据的版本
+     */
+    public StatsSnapshot with(String key, StatsResult result, long version) {
+        if (version < dataVersion) {
+            return this;
+        }
+        Map<String, StatsResult> next = version == dataVersion ? new HashMap<>(results) : new HashMap<>();
+        next.put(key, result);
+        return new StatsSnapshot(serverName, version, next);
+    }
+
+    /**
+     * 加入以Map形式计算出的单项结果后的新快照
+     */
+    public StatsSnapshot with(String key, Map<String, Object> result, long version) {
+        return with(key, new MapResult(new HashMap<>(result)), version);
+    }
+
+    public boolean contains(String key) {
+        return results.containsKey(key);
+    }
+
+    /**
+     * 单项结果的Map形式，不存在时返回null
+     */
+    public Map<String, Object> get(String key) {
+        StatsResult result = results.get(key);
+        if (result == null) {
+            return null;
+        }
+        return formatted.computeIfAbsent(key, k -> freeze(result.toMap(), dataVersion));
+    }
+
+    /**
+     * 单项类型化结果，不存在或不是该类型(如单项计算得到的Map结果)时返回null
+     */
+    public <T extends StatsResult> T result(String key, Class<T> type) {
+        StatsResult result = results.get(key);
+        return type.isInstance(result) ? type.cast(result) : null;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public long getDataVersion() {
+        return dataVersion;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public Map<String, StatsResult> getResults() {
+        return results;
+    }
+
+    private static Map<String, Object> freeze(Map<String, Object> result, long dataVersion) {
+        Map<String, Object> copy = new HashMap<>(result);
+        copy.put(DATA_VERSION, dataVersion);
+        return Collections.unmodifiableMap(copy);
+    }
+}
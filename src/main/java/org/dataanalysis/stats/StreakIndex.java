@@ -0,0 +1,151 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 连续段索引
+ * 为每个服务器的每种连续类型(连杀、连中、连错、连盈利、连亏损)维护游程索引，随数据变化事件增量更新，
+ * 查询"至少N连"的历史记录时只需按长度切片
+ */
+@Component
+public class StreakIndex extends HistoryIndexListener<RunIndexes> {
+
+    @Override
+    protected RunIndexes newIndex() {
+        return new RunIndexes();
+    }
+
+    /**
+     * 长度不小于minStreak的全部连续段，按长度从长到短，相同长度时最新的在前
+     * startPeriod为连续段中最新的一期，endPeriod为最早的一期，periodDiff为最新期数减去endPeriod
+     *
+     * @param serverName 服务器名称
+     * @param type 连续类型
+     * @param minStreak 最小连续期数
+     */
+    public List<Map<String, Object>> streaksAtLeast(String serverName, RunType type, int minStreak) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            RunIndex runs = index(history).get(type);
+            Integer latestPeriod = history.latestPeriod();
+            List<Map<String, Object>> streaks = new ArrayList<>();
+            for (int run : runs.runsAtLeast(minStreak)) {
+                streaks.add(describe(history, runs, run, latestPeriod));
+            }
+            return streaks;
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 历史最长的连续段，相同长度时取最新的一段，没有时返回null
+     *
+     * @param serverName 服务器名称
+     * @param type 连续类型
+     */
+    public Map<String, Object> longest(String serverName, RunType type) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            RunIndex runs = index(history).get(type);
+            int run = runs.longest();
+            return run < 0 ? null : describe(history, runs, run, history.latestPeriod());
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 最近lastN期内最长的连续段，跨越窗口边界的连续段按窗口内的部分计算，没有时返回null
+     *
+     * @param serverName 服务器名称
+     * @param type 连续类型
+     * @param lastN 期数
+     * @param excludeLatest 是否排除最新一期(尚未开奖的预测数据)
+     */
+    public Map<String, Object> longestInLast(String serverName, RunType type, int lastN, boolean excludeLatest) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            int to = excludeLatest ? Math.max(history.size() - 1, 0) : history.size();
+            return describe(history, index(history).get(type).longestIn(Math.max(to - lastN, 0), to));
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 最近的第[fromN, toN)期(最新一期为第0期)内最长的连续段，用于不重叠的分段统计，没有时返回null
+     *
+     * @param serverName 服务器名称
+     * @param type 连续类型
+     * @param fromN 起始偏移(含)
+     * @param toN 结束偏移(不含)
+     */
+    public Map<String, Object> longestInSlice(String serverName, RunType type, int fromN, int toN) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            int n = history.size();
+            return describe(history, index(history).get(type).longestIn(Math.max(n - toN, 0), Math.max(n - fromN, 0)));
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 期号在[fromPeriod, toPeriod]之间最长的连续段，没有时返回null
+     *
+     * @param serverName 服务器名称
+     * @param type 连续类型
+     * @param fromPeriod 起始期号(含)
+     * @param toPeriod 结束期号(含)
+     */
+    public Map<String, Object> longestBetween(String serverName, RunType type, int fromPeriod, int toPeriod) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            int from = history.rowAtOrAfter(Math.min(fromPeriod, toPeriod));
+            int to = history.rowAtOrAfter(Math.max(fromPeriod, toPeriod) + 1);
+            return describe(history, index(history).get(type).longestIn(from, to));
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    private static Map<String, Object> describe(ServerHistory history, int[] run) {
+        if (run == null) {
+            return null;
+        }
+        Map<String, Object> streak = new HashMap<>();
+        Integer latestPeriod = history.latestPeriod();
+        streak.put("streakCount", run[0]);
+        streak.put("startPeriod", history.period(run[2]));
+        streak.put("endPeriod", history.period(run[1]));
+        if (latestPeriod != null) {
+            streak.put("periodDiff", latestPeriod - history.period(run[1]));
+        }
+        return streak;
+    }
+
+    private static Map<String, Object> describe(ServerHistory history, RunIndex runs, int run, Integer latestPeriod) {
+        Map<String, Object> streak = new HashMap<>();
+        int startPeriod = history.period(runs.end(run));
+        int endPeriod = history.period(runs.start(run));
+        streak.put("streakCount", runs.length(run));
+        streak.put("startPeriod", startPeriod);
+        streak.put("endPeriod", endPeriod);
+        if (latestPeriod != null) {
+            streak.put("periodDiff", latestPeriod - endPeriod);
+        }
+        return streak;
+    }
+}
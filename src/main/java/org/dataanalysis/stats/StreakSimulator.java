@@ -0,0 +1,247 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * 最长连续段的蒙特卡洛模拟
+ * 按服务器最近N期的实际出现率，生成大量同样长度的独立随机序列，统计每条序列最长连续段的分布，
+ * 用来判断实际出现的最长连杀、连错等是否罕见
+ * 出现率按千分之一取整分档，模拟结果按 服务器/类型/期数/分档/次数 缓存，与数据版本无关：
+ * 新数据只要不改变分档就直接复用
+ */
+@Component
+public class StreakSimulator {
+
+    /** 每个并行任务模拟的序列条数 */
+    static final int CHUNK = 4096;
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    @Autowired
+    private SingleFlight singleFlight;
+
+    // 单次请求最多模拟的序列条数
+    @Value("${analysis.simulation.max-runs:1000000}")
+    private int maxRuns = 1000000;
+
+    // 单次请求最多模拟的总期数(序列条数 * 期数)，超出时减少序列条数；模拟占用公共线程池的全部线程，上限决定单次请求的耗时
+    @Value("${analysis.simulation.max-periods:200000000}")
+    private long maxPeriods = 200000000L;
+
+    // 缓存的模拟结果个数
+    @Value("${analysis.simulation.cache-size:64}")
+    private int maxEntries = 64;
+
+    private final Map<String, long[]> cache = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * 模拟最近lastN期的最长连续段分布，并与实际值比较
+     *
+     * @param serverName 服务器名称
+     * @param type 连续类型
+     * @param lastN 期数
+     * @param runs 模拟的序列条数
+     * @param excludeLatest 是否排除最新一期(尚未开奖的预测数据)
+     */
+    public Map<String, Object> simulate(String serverName, RunType type, int lastN, int runs, boolean excludeLatest) {
+        ServerHistory history = historyStore.history(serverName);
+        int count = 0;
+        int observedMax = 0;
+        int horizon;
+        long version;
+        Integer fromPeriod = null;
+        Integer toPeriod = null;
+        history.lock().readLock().lock();
+        try {
+            version = history.version();
+            int to = excludeLatest ? Math.max(history.size() - 1, 0) : history.size();
+            int from = Math.max(to - Math.max(lastN, 0), 0);
+            horizon = to - from;
+            int streak = 0;
+            for (int row = from; row < to; row++) {
+                if (type.matches(history.traits(row))) {
+                    count++;
+                    streak++;
+                    observedMax = Math.max(observedMax, streak);
+                } else {
+                    streak = 0;
+                }
+            }
+            if (horizon > 0) {
+                fromPeriod = history.period(from);
+                toPeriod = history.period(to - 1);
+            }
+        } finally {
+            history.lock().readLock().unlock();
+        }
+
+        int periods = horizon;
+        int simulations = (int) Math.max(1, Math.min(Math.min(runs, maxRuns), maxPeriods / Math.max(periods, 1)));
+        int bucket = horizon > 0 ? (int) Math.round(count * 1000.0 / horizon) : 0;
+        String key = serverName + "/" + type.getCode() + "/" + horizon + "/" + bucket + "/" + simulations;
+        long[] histogram = cached(key);
+        boolean cached = histogram != null;
+        if (!cached) {
+            // 相同的并发请求只模拟一次，其余请求等待同一个结果
+            histogram = singleFlight.call("streak-simulation/" + key, () -> {
+                long[] existing = cached(key);
+                if (existing != null) {
+                    return existing;
+                }
+                long[] simulated = simulate(bucket / 1000.0, periods, simulations, key.hashCode());
+                synchronized (cache) {
+                    cache.put(key, simulated);
+                }
+                return simulated;
+            });
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("serverName", serverName);
+        result.put(StatsSnapshot.DATA_VERSION, version);
+        result.put("type", type.getCode());
+        result.put("fromPeriod", fromPeriod);
+        result.put("toPeriod", toPeriod);
+        result.put("periods", horizon);
+        result.put("observedRate", Rates.format(Rates.percent(count, horizon)));
+        result.put("simulatedRate", Rates.format(bucket / 10.0));
+        result.put("observedMaxStreak", observedMax);
+        result.put("simulations", simulations);
+        result.put("cached", cached);
+        result.putAll(summarize(histogram, observedMax));
+        return result;
+    }
+
+    private long[] cached(String key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    /**
+     * 模拟runs条长度为horizon、每期独立以rate概率出现的序列，返回最长连续段的直方图
+     * 序列拆成CHUNK条一组，每组使用由同一个种子依次拆分出的SplittableRandom，
+     * 因此结果只取决于种子，与并行调度无关
+     *
+     * @return histogram[k]为最长连续段恰好为k的序列条数
+     */
+    static long[] simulate(double rate, int horizon, int runs, long seed) {
+        long[] histogram = new long[horizon + 1];
+        if (rate <= 0 || rate >= 1 || horizon == 0) {
+            histogram[rate >= 1 ? horizon : 0] = runs;
+            return histogram;
+        }
+        int chunks = (runs + CHUNK - 1) / CHUNK;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int i = 0; i < chunks; i++) {
+            randoms[i] = root.split();
+        }
+        double logRate = Math.log(rate);
+        double logOther = Math.log(1 - rate);
+        return IntStream.range(0, chunks).parallel().collect(() -> new long[horizon + 1], (counts, chunk) -> {
+            SplittableRandom random = randoms[chunk];
+            int end = Math.min(runs, (chunk + 1) * CHUNK);
+            for (int i = chunk * CHUNK; i < end; i++) {
+                counts[maxStreak(random, rate, logRate, logOther, horizon)]++;
+            }
+        }, (a, b) -> {
+            for (int k = 0; k < a.length; k++) {
+                a[k] += b[k];
+            }
+        });
+    }
+
+    /**
+     * 生成一条序列的最长连续段
+     * 独立序列由交替出现的"出现段"和"不出现段"组成，段长服从几何分布，
+     * 按段而不是按期抽样，每条序列只需约 2 * horizon * rate * (1 - rate) 个随机数
+     */
+    private static int maxStreak(SplittableRandom random, double rate, double logRate, double logOther, int horizon) {
+        int position = 0;
+        int max = 0;
+        boolean matched = random.nextDouble() < rate;
+        while (position < horizon) {
+            // 段长为1加上继续出现的次数，继续的概率与本段类型相同
+            double extra = Math.floor(Math.log(1 - random.nextDouble()) / (matched ? logRate : logOther));
+            int length = extra >= horizon - position ? horizon - position : (int) extra + 1;
+            if (matched && length > max) {
+                max = length;
+            }
+            position += length;
+            matched = !matched;
+        }
+        return max;
+    }
+
+    /**
+     * 分布摘要：均值、分位数、不小于实际值的概率以及各长度的概率
+     */
+    static Map<String, Object> summarize(long[] histogram, int observedMax) {
+        long total = 0;
+        double sum = 0;
+        for (int k = 0; k < histogram.length; k++) {
+            total += histogram[k];
+            sum += (double) k * histogram[k];
+        }
+        List<Map<String, Object>> distribution = new ArrayList<>();
+        long atLeast = total;
+        long atLeastObserved = 0;
+        int median = -1;
+        int p95 = -1;
+        int p99 = -1;
+        long cumulative = 0;
+        for (int k = 0; k < histogram.length; k++) {
+            if (k == observedMax) {
+                atLeastObserved = atLeast;
+            }
+            cumulative += histogram[k];
+            if (median < 0 && cumulative * 2 >= total) {
+                median = k;
+            }
+            if (p95 < 0 && cumulative * 100 >= total * 95) {
+                p95 = k;
+            }
+            if (p99 < 0 && cumulative * 100 >= total * 99) {
+                p99 = k;
+            }
+            if (histogram[k] > 0) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("streak", k);
+                entry.put("count", histogram[k]);
+                entry.put("probability", Rates.format(Rates.percent(histogram[k], total)));
+                entry.put("atLeast", Rates.format(Rates.percent(atLeast, total)));
+                distribution.add(entry);
+            }
+            atLeast -= histogram[k];
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("expectedMaxStreak", total > 0 ? Math.round(sum / total * 100) / 100.0 : 0);
+        summary.put("medianMaxStreak", Math.max(median, 0));
+        summary.put("p95MaxStreak", Math.max(p95, 0));
+        summary.put("p99MaxStreak", Math.max(p99, 0));
+        // 模拟序列的最长连续段不小于实际值的概率，越小说明实际值越罕见
+        summary.put("probabilityAtLeastObserved", Rates.format(Rates.percent(atLeastObserved, total)));
+        summary.put("distribution", distribution);
+        return summary;
+    }
+}
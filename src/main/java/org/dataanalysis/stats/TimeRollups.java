@@ -0,0 +1,214 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 单个服务器按创建时间的小时、天、周汇总
+ * 每个时间段记录期数以及中、错、被杀、盈利、亏损的期数；数据按期号追加，创建时间基本递增，
+ * 追加或撤回一期只更新每个粒度的一个时间段；没有创建时间的行不计入
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class TimeRollups implements HistoryIndex {
+
+    // 每个时间段的计数
+    static final int TOTAL = 0;
+    static final int HIT = 1;
+    static final int MISS = 2;
+    static final int KILLED = 3;
+    static final int PROFIT = 4;
+    static final int LOSS = 5;
+    static final int METRICS = 6;
+
+    private static final Granularity[] GRANULARITIES = Granularity.values();
+
+    // [粒度] 时间段起点 -> 计数
+    private final List<TreeMap<Long, int[]>> buckets = new ArrayList<>();
+    private int size;
+
+    public TimeRollups() {
+        for (int i = 0; i < GRANULARITIES.length; i++) {
+            buckets.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * 已计入的行数
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    @Override
+    public void rebuild(ServerHistory history) {
+        for (TreeMap<Long, int[]> map : buckets) {
+            map.clear();
+        }
+        size = 0;
+        int n = history.size();
+        for (int row = 0; row < n; row++) {
+            append(history, row);
+        }
+    }
+
+    /**
+     * 追加末尾一行
+     */
+    @Override
+    public void append(ServerHistory history, int row) {
+        if (row != size) {
+            throw new IllegalStateException(history.getServerName() + "：时间汇总期望第" + size + "行，实际为第" + row + "行");
+        }
+        update(history, row, 1);
+        size++;
+    }
+
+    /**
+     * 撤回最后一行，调用时该行仍是旧值
+     */
+    @Override
+    public void retract(ServerHistory history, int row) {
+        if (row != size - 1) {
+            throw new IllegalStateException("时间汇总只能撤回最后一行，实际为第" + row + "行");
+        }
+        update(history, row, -1);
+        size--;
+    }
+
+    private void update(ServerHistory history, int row, int delta) {
+        long millis = history.createdAtMillis(row);
+        if (millis == ServerHistory.NO_TIME) {
+            return;
+        }
+        int traits = history.traits(row);
+        for (Granularity granularity : GRANULARITIES) {
+            TreeMap<Long, int[]> map = buckets.get(granularity.ordinal());
+            long start = granularity.bucketStart(millis);
+            int[] counts = map.computeIfAbsent(start, key -> new int[METRICS]);
+            add(counts, traits, delta);
+            if (counts[TOTAL] == 0) {
+                map.remove(start);
+            }
+        }
+    }
+
+    private static void add(int[] counts, int traits, int delta) {
+        counts[TOTAL] += delta;
+        if ((traits & RowTraits.HIT) != 0) {
+            counts[HIT] += delta;
+        } else if ((traits & RowTraits.MISS) != 0) {
+            counts[MISS] += delta;
+        }
+        if ((traits & RowTraits.KILLED) != 0) {
+            counts[KILLED] += delta;
+        }
+        if ((traits & RowTraits.PROFIT) != 0) {
+            counts[PROFIT] += delta;
+        } else if ((traits & RowTraits.LOSS) != 0) {
+            counts[LOSS] += delta;
+        }
+    }
+
+    /**
+     * 时间段[fromMillis, toMillis)内的汇总，按时间升序，超过limit个时只保留最近的limit个
+     */
+    public List<Map<String, Object>> rollups(Granularity granularity, long fromMillis, long toMillis, int limit) {
+        // 起始时间所在的时间段也包含在内，未指定起始时间时不取整以免溢出
+        long from = fromMillis == Long.MIN_VALUE ? fromMillis : granularity.bucketStart(fromMillis);
+        NavigableMap<Long, int[]> range = buckets.get(granularity.ordinal()).subMap(from, true, toMillis, false);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<Long, int[]> entry : range.descendingMap().entrySet()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(describe(granularity, entry.getKey(), entry.getValue()));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static Map<String, Object> describe(Granularity granularity, long start, int[] counts) {
+        Map<String, Object> bucket = new LinkedHashMap<>();
+        bucket.put("start", granularity.format(start));
+        bucket.put("totalCount", counts[TOTAL]);
+        bucket.put("hitCount", counts[HIT]);
+        bucket.put("missCount", counts[MISS]);
+        bucket.put("winRate", Rates.format(Rates.percent(counts[HIT], counts[HIT] + counts[MISS])));
+        bucket.put("killedCount", counts[KILLED]);
+        bucket.put("killRate", Rates.format(Rates.percent(counts[KILLED], counts[TOTAL])));
+        bucket.put("profitCount", counts[PROFIT]);
+        bucket.put("lossCount", counts[LOSS]);
+        bucket.put("profitRate", Rates.format(Rates.percent(counts[PROFIT], counts[PROFIT] + counts[LOSS])));
+        return bucket;
+    }
+
+    // ---------------- 快照读写 ----------------
+
+    /**
+     * 写出前rows行的汇总，rows为size-1时在输出中扣除最后一行的贡献，自身状态不变
+     */
+    public void write(ServerHistory history, int rows, DataOutputStream out) throws IOException {
+        if (rows != size && rows != size - 1) {
+            throw new IllegalStateException("时间汇总只能写出全部行或除最后一行外的行，实际为" + rows + "行");
+        }
+        long excludedMillis = rows < size ? history.createdAtMillis(size - 1) : ServerHistory.NO_TIME;
+        int excludedTraits = rows < size ? history.traits(size - 1) : 0;
+        for (Granularity granularity : GRANULARITIES) {
+            TreeMap<Long, int[]> map = buckets.get(granularity.ordinal());
+            long excluded = excludedMillis != ServerHistory.NO_TIME ? granularity.bucketStart(excludedMillis) : Long.MIN_VALUE;
+            int[] adjusted = null;
+            if (map.containsKey(excluded)) {
+                adjusted = map.get(excluded).clone();
+                add(adjusted, excludedTraits, -1);
+            }
+            int count = map.size() - (adjusted != null && adjusted[TOTAL] == 0 ? 1 : 0);
+            out.writeInt(count);
+            for (Map.Entry<Long, int[]> entry : map.entrySet()) {
+                int[] counts = entry.getKey() == excluded ? adjusted : entry.getValue();
+                if (counts[TOTAL] == 0) {
+                    continue;
+                }
+                out.writeLong(entry.getKey());
+                for (int value : counts) {
+                    out.writeInt(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从快照恢复前rows行的汇总
+     */
+    public void read(ByteBuffer in, int rows) {
+        for (Granularity granularity : GRANULARITIES) {
+            TreeMap<Long, int[]> map = buckets.get(granularity.ordinal());
+            map.clear();
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                long start = in.getLong();
+                int[] counts = new int[METRICS];
+                for (int m = 0; m < METRICS; m++) {
+                    counts[m] = in.getInt();
+                }
+                map.put(start, counts);
+            }
+        }
+        size = rows;
+    }
+}
@@ -0,0 +1,90 @@
+package org.dataanalysis.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 开奖总和的区间划分
+ * 写法为逗号分隔的区间，如"0-13,14-27"、"0-9,10-17,18+"，区间按书写顺序匹配，不能重叠；"18+"这样的开放区间没有上限
+ *
+ * @param buckets 全部区间
+ */
+public record TotalBuckets(List<Bucket> buckets) {
+
+    /** 详细结果分析原有的划分：0-10(含负数)、11-20、21-30、30+(即大于30) */
+    public static final TotalBuckets LEGACY = new TotalBuckets(List.of(
+            new Bucket("0-10", Integer.MIN_VALUE, 10), new Bucket("11-20", 11, 20),
+            new Bucket("21-30", 21, 30), new Bucket("30+", 31, Integer.MAX_VALUE)));
+
+    /** 最多的区间个数 */
+    static final int MAX_BUCKETS = TotalHistogram.SIZE;
+
+    /**
+     * 一个闭区间
+     *
+     * @param label 区间名称
+     * @param from 下限(含)
+     * @param to 上限(含)
+     */
+    public record Bucket(String label, int from, int to) {
+    }
+
+    /**
+     * 解析区间划分，格式错误或区间重叠时抛出IllegalArgumentException
+     */
+    public static TotalBuckets parse(String text) {
+        List<Bucket> buckets = new ArrayList<>();
+        for (String part : text.split(",")) {
+            String label = part.trim();
+            if (label.isEmpty()) {
+                continue;
+            }
+            int from;
+            int to;
+            try {
+                if (label.endsWith("+")) {
+                    from = Integer.parseInt(label.substring(0, label.length() - 1).trim());
+                    to = Integer.MAX_VALUE;
+                } else if (label.contains("-")) {
+                    String[] bounds = label.split("-", 2);
+                    from = Integer.parseInt(bounds[0].trim());
+                    to = Integer.parseInt(bounds[1].trim());
+                } else {
+                    from = Integer.parseInt(label);
+                    to = from;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无法解析的总和区间: " + label);
+            }
+            if (from < 0 || from > to) {
+                throw new IllegalArgumentException("总和区间无效: " + label);
+            }
+            for (Bucket bucket : buckets) {
+                if (from <= bucket.to() && bucket.from() <= to) {
+                    throw new IllegalArgumentException("总和区间重叠: " + bucket.label() + "与" + label);
+                }
+            }
+            buckets.add(new Bucket(label, from, to));
+        }
+        if (buckets.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个总和区间");
+        }
+        if (buckets.size() > MAX_BUCKETS) {
+            throw new IllegalArgumentException("总和区间最多" + MAX_BUCKETS + "个");
+        }
+        return new TotalBuckets(List.copyOf(buckets));
+    }
+
+    /**
+     * total所在区间的下标，不在任何区间时返回-1
+     */
+    public int indexOf(int total) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (total >= bucket.from() && total <= bucket.to()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,163 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 开奖总和的直方图
+ * 总和0到27使用固定的int[28]，逐行加减和合并都不装箱；
+ * 28到MAX_TOTAL的异常值计入按需分配的附加数组，负数和更大的值计入按需分配的outliers，保证分布与逐条统计一致
+ * 非线程安全
+ */
+public final class TotalHistogram {
+
+    /** 常规总和的个数(0到27) */
+    public static final int SIZE = 28;
+    /** 附加数组覆盖的最大总和 */
+    public static final int MAX_TOTAL = Byte.MAX_VALUE;
+
+    private final int[] counts = new int[SIZE];
+    // 总和28到MAX_TOTAL，出现时才分配
+    private int[] wide;
+    // 负数和大于MAX_TOTAL的总和 -> 期数，出现时才分配
+    private TreeMap<Integer, Integer> outliers;
+
+    /**
+     * 加上(delta=1)或减去(delta=-1)一行的总和，为ServerHistory.NO_TOTAL(null)时忽略
+     */
+    public void add(int total, int delta) {
+        if (total == ServerHistory.NO_TOTAL) {
+            return;
+        }
+        if (total < 0 || total > MAX_TOTAL) {
+            addOutlier(total, delta);
+        } else if (total < SIZE) {
+            counts[total] += delta;
+        } else {
+            if (wide == null) {
+                wide = new int[MAX_TOTAL + 1 - SIZE];
+            }
+            wide[total - SIZE] += delta;
+        }
+    }
+
+    private void addOutlier(int total, int delta) {
+        if (outliers == null) {
+            outliers = new TreeMap<>();
+        }
+        outliers.merge(total, delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    void merge(TotalHistogram other) {
+        for (int i = 0; i < SIZE; i++) {
+            counts[i] += other.counts[i];
+        }
+        if (other.wide != null) {
+            if (wide == null) {
+                wide = new int[other.wide.length];
+            }
+            for (int i = 0; i < wide.length; i++) {
+                wide[i] += other.wide[i];
+            }
+        }
+        if (other.outliers != null) {
+            other.outliers.forEach((total, count) -> addOutlier(total, count));
+        }
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+        wide = null;
+        outliers = null;
+    }
+
+    /**
+     * 总和为total的期数
+     */
+    public int count(int total) {
+        if (total < 0 || total > MAX_TOTAL) {
+            return outliers != null ? outliers.getOrDefault(total, 0) : 0;
+        }
+        if (total < SIZE) {
+            return counts[total];
+        }
+        return wide != null ? wide[total - SIZE] : 0;
+    }
+
+    /**
+     * 有总和的期数
+     */
+    public int total() {
+        int sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        if (wide != null) {
+            for (int count : wide) {
+                sum += count;
+            }
+        }
+        if (outliers != null) {
+            for (int count : outliers.values()) {
+                sum += count;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 出现过的总和 -> 期数，与WinRateCalculator的totalNumberDistribution一致
+     */
+    public Map<Integer, Integer> toMap() {
+        Map<Integer, Integer> distribution = new HashMap<>();
+        int limit = wide != null ? MAX_TOTAL : SIZE - 1;
+        for (int total = 0; total <= limit; total++) {
+            int count = count(total);
+            if (count != 0) {
+                distribution.put(total, count);
+            }
+        }
+        if (outliers != null) {
+            distribution.putAll(outliers);
+        }
+        return distribution;
+    }
+
+    /**
+     * 按区间划分汇总，一次遍历直方图
+     *
+     * @return 与layout中的区间一一对应的期数
+     */
+    public int[] bucketCounts(TotalBuckets layout) {
+        int[] result = new int[layout.buckets().size()];
+        int limit = wide != null ? MAX_TOTAL : SIZE - 1;
+        for (int total = 0; total <= limit; total++) {
+            int count = count(total);
+            if (count != 0) {
+                int bucket = layout.indexOf(total);
+                if (bucket >= 0) {
+                    result[bucket] += count;
+                }
+            }
+        }
+        if (outliers != null) {
+            outliers.forEach((total, count) -> {
+                int bucket = layout.indexOf(total);
+                if (bucket >= 0) {
+                    result[bucket] += count;
+                }
+            });
+        }
+        return result;
+    }
+
+    TotalHistogram copy() {
+        TotalHistogram copy = new TotalHistogram();
+        copy.merge(this);
+        return copy;
+    }
+}
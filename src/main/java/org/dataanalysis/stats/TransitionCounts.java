@@ -0,0 +1,166 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个服务器的状态转移计数表
+ * 对每种序列类型和每个阶数k(1到MAX_ORDER)，记录"前k期依次处于某些状态时，本期处于某状态"的次数；
+ * 前k期的状态组合按状态编号编码为k位的S进制数(较早的期在高位)，表格大小为S^k * S
+ * 追加或撤回一期只需更新每个类型、每个阶数的一个格子
+ * 非线程安全，由调用方持有对应服务器的锁
+ */
+public class TransitionCounts implements HistoryIndex {
+
+    /** 支持的最高阶数 */
+    public static final int MAX_ORDER = 4;
+
+    private static final TransitionType[] TYPES = TransitionType.values();
+
+    // [类型][阶数-1][前k期状态编码 * S + 本期状态]
+    private final int[][][] counts = new int[TYPES.length][MAX_ORDER][];
+    private int size;
+
+    public TransitionCounts() {
+        for (TransitionType type : TYPES) {
+            int states = type.getStates().size();
+            int contexts = 1;
+            for (int k = 1; k <= MAX_ORDER; k++) {
+                contexts *= states;
+                counts[type.ordinal()][k - 1] = new int[contexts * states];
+            }
+        }
+    }
+
+    /**
+     * 已计入的行数
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 用服务器的全部数据重建
+     */
+    @Override
+    public void rebuild(ServerHistory history) {
+        for (int[][] byOrder : counts) {
+            for (int[] table : byOrder) {
+                Arrays.fill(table, 0);
+            }
+        }
+        size = 0;
+        int n = history.size();
+        for (int row = 0; row < n; row++) {
+            append(history, row);
+        }
+    }
+
+    /**
+     * 追加末尾一行
+     */
+    @Override
+    public void append(ServerHistory history, int row) {
+        if (row != size) {
+            throw new IllegalStateException(history.getServerName() + "：转移计数期望第" + size + "行，实际为第" + row + "行");
+        }
+        update(history, row, 1);
+        size++;
+    }
+
+    /**
+     * 撤回最后一行，调用时该行仍是旧值
+     */
+    @Override
+    public void retract(ServerHistory history, int row) {
+        if (row != size - 1) {
+            throw new IllegalStateException("转移计数只能撤回最后一行，实际为第" + row + "行");
+        }
+        update(history, row, -1);
+        size--;
+    }
+
+    private void update(ServerHistory history, int row, int delta) {
+        int maxOrder = Math.min(MAX_ORDER, row);
+        for (TransitionType type : TYPES) {
+            int states = type.getStates().size();
+            int next = type.state(history.traits(row));
+            // 阶数加1时，更早的一期加在最高位
+            int context = 0;
+            int weight = 1;
+            for (int k = 1; k <= maxOrder; k++) {
+                context += type.state(history.traits(row - k)) * weight;
+                weight *= states;
+                counts[type.ordinal()][k - 1][context * states + next] += delta;
+            }
+        }
+    }
+
+    /**
+     * 某个类型、某个阶数的转移频率
+     *
+     * @param currentRow 当前所处状态取该行及之前k-1行，为负数时不输出当前状态
+     * @return states为状态列表，transitions为出现过的每个前k期状态组合及其下一期的状态分布，
+     *         current为当前状态组合及其下一期的状态分布
+     */
+    public Map<String, Object> transitions(ServerHistory history, TransitionType type, int order, int currentRow) {
+        int states = type.getStates().size();
+        int[] table = counts[type.ordinal()][order - 1];
+
+        List<Map<String, Object>> transitions = new ArrayList<>();
+        for (int context = 0; context < table.length / states; context++) {
+            Map<String, Object> transition = transition(type, table, context, order);
+            if ((Integer) transition.get("total") > 0) {
+                transitions.add(transition);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("states", type.getStates());
+        result.put("transitions", transitions);
+        if (currentRow >= order - 1) {
+            int context = 0;
+            for (int row = currentRow - order + 1; row <= currentRow; row++) {
+                context = context * states + type.state(history.traits(row));
+            }
+            Map<String, Object> current = transition(type, table, context, order);
+            current.put("period", history.period(currentRow));
+            result.put("current", current);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> transition(TransitionType type, int[] table, int context, int order) {
+        int states = type.getStates().size();
+        List<String> names = new ArrayList<>(order);
+        int rest = context;
+        for (int k = 0; k < order; k++) {
+            names.add(0, type.getStates().get(rest % states));
+            rest /= states;
+        }
+        int total = 0;
+        for (int next = 0; next < states; next++) {
+            total += table[context * states + next];
+        }
+        Map<String, Object> next = new LinkedHashMap<>();
+        for (int state = 0; state < states; state++) {
+            int count = table[context * states + state];
+            Map<String, Object> frequency = new LinkedHashMap<>();
+            frequency.put("count", count);
+            frequency.put("probability", Rates.format(Rates.percent(count, total)));
+            next.put(type.getStates().get(state), frequency);
+        }
+        Map<String, Object> transition = new LinkedHashMap<>();
+        transition.put("context", names);
+        transition.put("total", total);
+        transition.put("next", next);
+        return transition;
+    }
+}
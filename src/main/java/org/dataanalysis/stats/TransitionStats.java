@@ -0,0 +1,50 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 各服务器预测结果、被杀、投注结果的1到4阶状态转移统计
+ * 转移计数表随数据变化事件增量更新，每新增一期只更新常数个格子，查询时直接读取计数表，不再扫描历史数据
+ */
+@Component
+public class TransitionStats extends HistoryIndexListener<TransitionCounts> {
+
+    @Override
+    protected TransitionCounts newIndex() {
+        return new TransitionCounts();
+    }
+
+    /**
+     * 指定阶数的状态转移频率
+     *
+     * @param serverName 服务器名称
+     * @param types 序列类型
+     * @param order 阶数，1到TransitionCounts.MAX_ORDER
+     * @param excludeLatest 当前状态是否排除最新一期(尚未开奖的预测数据)
+     */
+    public Map<String, Object> transitions(String serverName, List<TransitionType> types, int order,
+                                           boolean excludeLatest) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("serverName", serverName);
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            TransitionCounts index = index(history);
+            int currentRow = history.size() - (excludeLatest ? 2 : 1);
+            result.put(StatsSnapshot.DATA_VERSION, history.version());
+            result.put("order", order);
+            result.put("totalRecords", history.size());
+            for (TransitionType type : types) {
+                result.put(type.getCode(), index.transitions(history, type, order, currentRow));
+            }
+        } finally {
+            history.lock().readLock().unlock();
+        }
+        return result;
+    }
+}
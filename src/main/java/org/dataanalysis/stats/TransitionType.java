@@ -0,0 +1,75 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+
+import java.util.List;
+
+/**
+ * 状态转移统计的序列类型，每一期按特征位归入一个状态
+ */
+public enum TransitionType {
+
+    /** 预测结果：中、错，其余(---、未知、空)归为其他 */
+    OUTCOME("outcome", List.of("中", "错", "其他")),
+    /** 是否被杀 */
+    KILL("kill", List.of("杀", "未杀")),
+    /** 投注结果，特殊值归为其他 */
+    BETTING("betting", List.of("命中盈利", "未命中盈利", "命中被杀", "未命中亏损", "其他"));
+
+    private final String code;
+    private final List<String> states;
+
+    TransitionType(String code, List<String> states) {
+        this.code = code;
+        this.states = states;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * 状态名称，下标即状态编号
+     */
+    public List<String> getStates() {
+        return states;
+    }
+
+    /**
+     * 该行所处的状态编号
+     */
+    public int state(int traits) {
+        switch (this) {
+            case OUTCOME:
+                if ((traits & RowTraits.HIT) != 0) {
+                    return 0;
+                }
+                return (traits & RowTraits.MISS) != 0 ? 1 : 2;
+            case KILL:
+                return (traits & RowTraits.KILLED) != 0 ? 0 : 1;
+            default:
+                if ((traits & RowTraits.HIT_PROFIT) != 0) {
+                    return 0;
+                }
+                if ((traits & RowTraits.MISS_PROFIT) != 0) {
+                    return 1;
+                }
+                if ((traits & RowTraits.HIT_KILLED) != 0) {
+                    return 2;
+                }
+                return (traits & RowTraits.MISS_LOSS) != 0 ? 3 : 4;
+        }
+    }
+
+    /**
+     * 按名称查找，忽略大小写，找不到时返回null
+     */
+    public static TransitionType fromCode(String code) {
+        for (TransitionType type : values()) {
+            if (type.code.equalsIgnoreCase(code)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,143 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.stats.result.WinRate;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任意窗口的被杀率、胜率和盈利率
+ * 为每个服务器维护前缀计数索引，随数据变化事件增量更新，任意最近N期的比率都是O(1)查询
+ */
+@Component
+public class WindowRates extends HistoryIndexListener<PrefixCounts> {
+
+    @Override
+    protected PrefixCounts newIndex() {
+        return new PrefixCounts();
+    }
+
+    /**
+     * 最近N期的被杀率(百分比)
+     *
+     * @param serverName 服务器名称
+     * @param window 期数，不足时取全部
+     * @param excludeLatest 是否排除最新一期(尚未开奖的预测数据)
+     */
+    public double killRate(String serverName, int window, boolean excludeLatest) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            PrefixCounts index = index(history);
+            int to = excludeLatest ? Math.max(history.size() - 1, 0) : history.size();
+            int from = Math.max(to - Math.max(window, 0), 0);
+            return rate(index.count(RowTraits.KILLED, from, to), to - from);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 一次查询多个窗口的被杀率、胜率和盈利率
+     *
+     * @param serverName 服务器名称
+     * @param windows 期数列表
+     * @param excludeLatest 是否排除最新一期(尚未开奖的预测数据)
+     */
+    public Map<String, Object> windowRates(String serverName, List<Integer> windows, boolean excludeLatest) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", serverName);
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            PrefixCounts index = index(history);
+            int to = excludeLatest ? Math.max(history.size() - 1, 0) : history.size();
+            List<Map<String, Object>> rates = new ArrayList<>();
+            for (Integer window : windows) {
+                int from = Math.max(to - Math.max(window, 0), 0);
+                int count = to - from;
+                int killed = index.count(RowTraits.KILLED, from, to);
+                int correct = index.count(RowTraits.HIT, from, to);
+                int incorrect = index.count(RowTraits.MISS, from, to);
+                int profit = index.count(RowTraits.PROFIT, from, to);
+                int loss = index.count(RowTraits.LOSS, from, to);
+
+                Map<String, Object> rate = new HashMap<>();
+                rate.put("window", window);
+                rate.put("count", count);
+                rate.put("killedCount", killed);
+                rate.put("correctCount", correct);
+                rate.put("incorrectCount", incorrect);
+                rate.put("profitCount", profit);
+                rate.put("lossCount", loss);
+                rate.put("killRate", String.format("%.2f%%", rate(killed, count)));
+                rate.put("winRate", String.format("%.2f%%", rate(correct, count)));
+                rate.put("profitRate", String.format("%.2f%%", rate(profit, count)));
+                rates.add(rate);
+            }
+            result.put("latestPeriod", history.latestPeriod());
+            result.put("excludeLatest", excludeLatest);
+            result.put("rates", rates);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * 最近N期胜率，结构与WinRateCalculator.calculateRecentWinRate一致，并带有计算所用的数据版本
+     *
+     * @param serverName 服务器名称
+     * @param recentCount 期数，不足时取全部
+     */
+    public Map<String, Object> recentWinRate(String serverName, int recentCount) {
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            PrefixCounts index = index(history);
+            int to = history.size();
+            int from = Math.max(to - Math.max(recentCount, 0), 0);
+            long correct = index.count(RowTraits.HIT, from, to);
+            long incorrect = index.count(RowTraits.MISS, from, to);
+
+            Map<String, Object> result = WinRate.recent(serverName, recentCount, to - from, correct, incorrect).toMap();
+            result.put(StatsSnapshot.DATA_VERSION, history.version());
+            return result;
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 某一期之前window期的杀率(百分比，两位小数，不含当期)，与KillPercentSeries的算法和舍入一致，
+     * 用于未配置为滑动窗口的期数；期号不存在或window小于1时返回null
+     */
+    public BigDecimal killPercentBefore(String serverName, int period, int window) {
+        if (window < 1) {
+            return null;
+        }
+        ServerHistory history = historyStore.history(serverName);
+        history.lock().readLock().lock();
+        try {
+            int row = history.indexOfPeriod(period);
+            if (row < 0) {
+                return null;
+            }
+            int from = Math.max(row - window, 0);
+            int killed = index(history).count(RowTraits.KILLED, from, row);
+            return BigDecimal.valueOf(KillPercentSeries.percentOf(killed, row - from), 2);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    private static double rate(int part, int total) {
+        return total > 0 ? (double) part / total * 100 : 0;
+    }
+}
@@ -0,0 +1,72 @@
+package org.dataanalysis.stats.backtest;
+
+import org.dataanalysis.stats.RunType;
+import org.dataanalysis.store.ServerHistory;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 回测用的只读数据
+ * 特征位在构造时复制一份，前缀计数和连续段长度按规则需要在绑定阶段(单线程)计算并缓存，
+ * 之后各个策略并行回放时只读取这些数组，不再访问服务器数据和锁
+ */
+public final class BacktestData {
+
+    private final int[] periods;
+    private final int[] traits;
+    private final Map<Integer, int[]> prefixes = new HashMap<>();
+    private final Map<RunType, int[]> streaks = new EnumMap<>(RunType.class);
+
+    /**
+     * 复制服务器的期号和特征位，调用方需持有读锁
+     */
+    public BacktestData(ServerHistory history) {
+        int n = history.size();
+        periods = new int[n];
+        traits = new int[n];
+        for (int row = 0; row < n; row++) {
+            periods[row] = history.period(row);
+            traits[row] = history.traits(row);
+        }
+    }
+
+    public int size() {
+        return traits.length;
+    }
+
+    public int period(int row) {
+        return periods[row];
+    }
+
+    public int traits(int row) {
+        return traits[row];
+    }
+
+    /**
+     * 前缀计数，prefix[i]为前i行中具有mask特征的行数
+     */
+    int[] prefix(int mask) {
+        return prefixes.computeIfAbsent(mask, m -> {
+            int[] prefix = new int[traits.length + 1];
+            for (int row = 0; row < traits.length; row++) {
+                prefix[row + 1] = prefix[row] + ((traits[row] & m) != 0 ? 1 : 0);
+            }
+            return prefix;
+        });
+    }
+
+    /**
+     * 连续段长度，streak[row]为截至第row行(含)该类型连续出现的期数
+     */
+    int[] streak(RunType type) {
+        return streaks.computeIfAbsent(type, t -> {
+            int[] streak = new int[traits.length];
+            for (int row = 0; row < traits.length; row++) {
+                streak[row] = t.matches(traits[row]) ? (row > 0 ? streak[row - 1] : 0) + 1 : 0;
+            }
+            return streak;
+        });
+    }
+}
@@ -0,0 +1,52 @@
+package org.dataanalysis.stats.backtest;
+
+import org.dataanalysis.stats.result.Rates;
+import org.dataanalysis.stats.result.StatsResult;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个策略的回测结果
+ *
+ * @param rule 策略文本
+ * @param bets 下注期数(含不结算的期)
+ * @param wins 赢的期数
+ * @param losses 输的期数
+ * @param profit 累计盈亏
+ * @param maxDrawdown 最大回撤：累计盈亏从历史高点回落的最大幅度
+ * @param longestLosingStreak 最长连输期数
+ * @param curve 盈亏曲线采样点(期号、累计盈亏)，只为需要展示的策略记录，其余为null
+ */
+public record BacktestResult(String rule, int bets, int wins, int losses, double profit, double maxDrawdown,
+                             int longestLosingStreak, List<Map<String, Object>> curve) implements StatsResult {
+
+    /**
+     * 胜率百分比(0-100)，分母为结算的期数
+     */
+    public double hitRate() {
+        return Rates.percent(wins, wins + losses);
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rule", rule);
+        result.put("bets", bets);
+        result.put("wins", wins);
+        result.put("losses", losses);
+        result.put("hitRate", Rates.format(hitRate()));
+        result.put("profit", round(profit));
+        result.put("maxDrawdown", round(maxDrawdown));
+        result.put("longestLosingStreak", longestLosingStreak);
+        if (curve != null) {
+            result.put("profitCurve", curve);
+        }
+        return result;
+    }
+
+    static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,164 @@
+package org.dataanalysis.stats.backtest;
+
+import org.dataanalysis.stats.StatsSnapshot;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * 策略回测
+ * 在读锁下把服务器的期号和特征位复制为BacktestData后立即释放锁，之后按策略逐期回放：
+ * 每一期只用之前的数据判断是否下注，再按结算方式计算输赢、累计盈亏和回撤；
+ * 参数扫描展开出的多个策略共享同一份数据，用并行流分摊到所有核心
+ */
+@Component
+public class Backtester {
+
+    @Autowired
+    private HistoryStore historyStore;
+
+    // 一次参数扫描最多展开的策略数
+    @Value("${analysis.backtest.max-strategies:1000}")
+    private int maxStrategies = 1000;
+
+    /**
+     * 回测策略或参数扫描，格式错误或策略过多时抛出IllegalArgumentException
+     *
+     * @param serverName 服务器名称
+     * @param template 策略文本，可包含参数扫描，写法见Strategy
+     * @param payoff 结算方式
+     * @param winAmount 赢一期的收益
+     * @param lossAmount 输一期的损失
+     * @param last 只回放最近N期，为null时回放全部
+     * @param excludeLatest 是否排除最新一期(尚未开奖的预测数据)
+     * @param top 返回收益最高的前几个策略
+     * @param curvePoints 收益最高的策略的盈亏曲线采样点数
+     */
+    public Map<String, Object> backtest(String serverName, String template, Payoff payoff, double winAmount,
+                                        double lossAmount, Integer last, boolean excludeLatest, int top,
+                                        int curvePoints) {
+        List<Strategy> strategies = new ArrayList<>();
+        for (String rule : Strategy.expand(template == null ? "" : template, maxStrategies)) {
+            strategies.add(Strategy.parse(rule));
+        }
+
+        ServerHistory history = historyStore.history(serverName);
+        BacktestData data;
+        long version;
+        history.lock().readLock().lock();
+        try {
+            data = new BacktestData(history);
+            version = history.version();
+        } finally {
+            history.lock().readLock().unlock();
+        }
+
+        Map<String, Object> result = run(data, strategies, payoff, winAmount, lossAmount, last, excludeLatest,
+                top, curvePoints);
+        result.put("serverName", serverName);
+        result.put(StatsSnapshot.DATA_VERSION, version);
+        return result;
+    }
+
+    /**
+     * 在已复制的数据上回测全部策略
+     */
+    static Map<String, Object> run(BacktestData data, List<Strategy> strategies, Payoff payoff, double winAmount,
+                                   double lossAmount, Integer last, boolean excludeLatest, int top,
+                                   int curvePoints) {
+        int to = excludeLatest ? Math.max(data.size() - 1, 0) : data.size();
+        int from = last != null ? Math.max(to - Math.max(last, 0), 0) : 0;
+
+        // 绑定在当前线程完成，前缀数组只计算一次，并行回放时只读
+        List<IntPredicate> rules = new ArrayList<>(strategies.size());
+        for (Strategy strategy : strategies) {
+            rules.add(strategy.bind(data));
+        }
+        IntPredicate always = row -> true;
+
+        List<BacktestResult> results = IntStream.range(0, strategies.size()).parallel()
+                .mapToObj(i -> replay(data, strategies.get(i).rule(), rules.get(i), payoff, winAmount, lossAmount,
+                        from, to, 0))
+                .sorted(Comparator.comparingDouble(BacktestResult::profit).reversed())
+                .toList();
+
+        Map<String, Object> output = new LinkedHashMap<>();
+        output.put("payoff", payoff.getCode());
+        output.put("fromPeriod", to > from ? data.period(from) : null);
+        output.put("toPeriod", to > from ? data.period(to - 1) : null);
+        output.put("periods", to - from);
+        output.put("strategyCount", strategies.size());
+        output.put("baseline", replay(data, "每期都下注", always, payoff, winAmount, lossAmount, from, to, 0).toMap());
+        if (!results.isEmpty()) {
+            // 收益最高的策略重放一次记录盈亏曲线
+            BacktestResult best = results.get(0);
+            int index = 0;
+            while (!strategies.get(index).rule().equals(best.rule())) {
+                index++;
+            }
+            output.put("best", replay(data, best.rule(), rules.get(index), payoff, winAmount, lossAmount,
+                    from, to, curvePoints).toMap());
+        }
+        List<Map<String, Object>> topResults = new ArrayList<>();
+        for (int i = 0; i < Math.min(top, results.size()); i++) {
+            topResults.add(results.get(i).toMap());
+        }
+        output.put("results", topResults);
+        return output;
+    }
+
+    /**
+     * 回放一个策略
+     *
+     * @param curvePoints 盈亏曲线采样点数，0表示不记录
+     */
+    static BacktestResult replay(BacktestData data, String rule, IntPredicate bet, Payoff payoff, double winAmount,
+                                 double lossAmount, int from, int to, int curvePoints) {
+        int bets = 0;
+        int wins = 0;
+        int losses = 0;
+        int losingStreak = 0;
+        int longestLosingStreak = 0;
+        double profit = 0;
+        double peak = 0;
+        double maxDrawdown = 0;
+        List<Map<String, Object>> curve = curvePoints > 0 ? new ArrayList<>() : null;
+        int step = Math.max(1, (to - from + curvePoints - 1) / Math.max(curvePoints, 1));
+
+        for (int row = from; row < to; row++) {
+            if (bet.test(row)) {
+                bets++;
+                int settled = payoff.settle(data.traits(row));
+                if (settled == Payoff.WIN) {
+                    wins++;
+                    profit += winAmount;
+                    losingStreak = 0;
+                } else if (settled == Payoff.LOSS) {
+                    losses++;
+                    profit -= lossAmount;
+                    losingStreak++;
+                    longestLosingStreak = Math.max(longestLosingStreak, losingStreak);
+                }
+                peak = Math.max(peak, profit);
+                maxDrawdown = Math.max(maxDrawdown, peak - profit);
+            }
+            if (curve != null && ((row - from) % step == step - 1 || row == to - 1)) {
+                Map<String, Object> point = new LinkedHashMap<>();
+                point.put("period", data.period(row));
+                point.put("profit", BacktestResult.round(profit));
+                curve.add(point);
+            }
+        }
+        return new BacktestResult(rule, bets, wins, losses, profit, maxDrawdown, longestLosingStreak, curve);
+    }
+}
@@ -0,0 +1,65 @@
+package org.dataanalysis.stats.backtest;
+
+import org.dataanalysis.store.RowTraits;
+
+/**
+ * 一次下注的结算方式
+ */
+public enum Payoff {
+
+    /** 与sf444的final_result一致：本期未被杀为中，被杀为输 */
+    KILL("kill"),
+    /** 按预测结果：中为赢，错为输，其余不结算 */
+    OUTCOME("outcome"),
+    /** 按投注结果：盈利为赢，亏损为输，其余不结算 */
+    BETTING("betting");
+
+    /** 赢 */
+    static final int WIN = 1;
+    /** 输 */
+    static final int LOSS = -1;
+    /** 不结算 */
+    static final int VOID = 0;
+
+    private final String code;
+
+    Payoff(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * 在该行下注的结算结果：WIN、LOSS或VOID
+     */
+    int settle(int traits) {
+        switch (this) {
+            case KILL:
+                return (traits & RowTraits.KILLED) != 0 ? LOSS : WIN;
+            case OUTCOME:
+                if ((traits & RowTraits.HIT) != 0) {
+                    return WIN;
+                }
+                return (traits & RowTraits.MISS) != 0 ? LOSS : VOID;
+            default:
+                if ((traits & RowTraits.PROFIT) != 0) {
+                    return WIN;
+                }
+                return (traits & RowTraits.LOSS) != 0 ? LOSS : VOID;
+        }
+    }
+
+    /**
+     * 按名称查找，忽略大小写，找不到时返回null
+     */
+    public static Payoff fromCode(String code) {
+        for (Payoff payoff : values()) {
+            if (payoff.code.equalsIgnoreCase(code)) {
+                return payoff;
+            }
+        }
+        return null;
+    }
+}
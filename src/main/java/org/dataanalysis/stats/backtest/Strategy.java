@@ -0,0 +1,199 @@
+package org.dataanalysis.stats.backtest;
+
+import org.dataanalysis.stats.RunType;
+import org.dataanalysis.store.RowTraits;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 下注策略：多个条件用分号分隔，全部满足时在本期下注，条件只使用本期之前的数据
+ * 条件写法为"指标 比较符 数值"，比较符支持 < <= > >= = !=，指标包括：
+ * killed(n) 前n期被杀的期数，killRate(n)/hitRate(n) 前n期的被杀率/中的比例(0-100)，
+ * streak(类型) 截至上一期的连续段长度，类型为kill、hit、miss、profit、loss；
+ * 前面不足n期时不下注。例如sf444的flag规则"上一期未被杀才下注"写作"killed(1)=0"
+ * 参数扫描：条件中的{a..b}、{a..b:步长}、{x,y,z}会展开为多个策略，
+ * 例如"killRate({30,50,100})<{30..60:10}"展开为12个策略
+ *
+ * @param rule 展开后的策略文本
+ * @param conditions 全部条件
+ */
+public record Strategy(String rule, List<Condition> conditions) {
+
+    private static final Pattern CONDITION = Pattern.compile(
+            "(killed|killRate|hitRate|streak)\\(\\s*(\\w+)\\s*\\)\\s*(<=|>=|!=|<|>|=)\\s*(-?\\d+(?:\\.\\d+)?)");
+    private static final Pattern SWEEP = Pattern.compile("\\{([^{}]*)}");
+
+    /**
+     * 解析一个不含参数扫描的策略，格式错误时抛出IllegalArgumentException
+     */
+    public static Strategy parse(String rule) {
+        List<Condition> conditions = new ArrayList<>();
+        for (String part : rule.split(";")) {
+            String text = part.trim();
+            if (text.isEmpty()) {
+                continue;
+            }
+            Matcher matcher = CONDITION.matcher(text);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("无法解析的条件: " + text
+                        + "，格式应为 killed(n)、killRate(n)、hitRate(n)或streak(类型) 加比较符和数值");
+            }
+            conditions.add(Condition.of(matcher.group(1), matcher.group(2), matcher.group(3),
+                    Double.parseDouble(matcher.group(4))));
+        }
+        return new Strategy(rule.trim(), List.copyOf(conditions));
+    }
+
+    /**
+     * 展开参数扫描，返回全部组合(按书写顺序，后面的参数变化最快)
+     *
+     * @param maxStrategies 组合个数上限，超出时抛出IllegalArgumentException
+     */
+    public static List<String> expand(String template, int maxStrategies) {
+        List<String> rules = new ArrayList<>();
+        rules.add(template);
+        while (true) {
+            List<String> expanded = new ArrayList<>();
+            boolean changed = false;
+            for (String rule : rules) {
+                Matcher matcher = SWEEP.matcher(rule);
+                if (!matcher.find()) {
+                    expanded.add(rule);
+                    continue;
+                }
+                changed = true;
+                for (String value : values(matcher.group(1))) {
+                    expanded.add(rule.substring(0, matcher.start()) + value + rule.substring(matcher.end()));
+                    if (expanded.size() > maxStrategies) {
+                        throw new IllegalArgumentException("参数扫描展开后超过" + maxStrategies + "个策略");
+                    }
+                }
+            }
+            rules = expanded;
+            if (!changed) {
+                return rules;
+            }
+        }
+    }
+
+    // {a..b}、{a..b:步长}或{x,y,z}
+    private static List<String> values(String body) {
+        List<String> values = new ArrayList<>();
+        if (!body.contains("..")) {
+            for (String value : body.split(",")) {
+                if (!value.isBlank()) {
+                    values.add(value.trim());
+                }
+            }
+        } else {
+            try {
+                String[] range = body.split(":", 2);
+                String[] bounds = range[0].split("\\.\\.", 2);
+                BigDecimal from = new BigDecimal(bounds[0].trim());
+                BigDecimal to = new BigDecimal(bounds[1].trim());
+                BigDecimal step = range.length > 1 ? new BigDecimal(range[1].trim()) : BigDecimal.ONE;
+                if (step.signum() <= 0) {
+                    throw new IllegalArgumentException("参数扫描的步长必须为正数: {" + body + "}");
+                }
+                for (BigDecimal value = from; value.compareTo(to) <= 0; value = value.add(step)) {
+                    values.add(value.stripTrailingZeros().toPlainString());
+                    if (values.size() > 10000) {
+                        throw new IllegalArgumentException("参数扫描区间过大: {" + body + "}");
+                    }
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("无法解析的参数扫描: {" + body + "}");
+            }
+        }
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("参数扫描没有取值: {" + body + "}");
+        }
+        return values;
+    }
+
+    /**
+     * 绑定到回测数据，得到"是否在第row行下注"的判断；在单线程中调用，会按需计算并缓存前缀数组
+     */
+    IntPredicate bind(BacktestData data) {
+        IntPredicate[] predicates = new IntPredicate[conditions.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = conditions.get(i).bind(data);
+        }
+        return row -> {
+            for (IntPredicate predicate : predicates) {
+                if (!predicate.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    /**
+     * 一个条件
+     *
+     * @param metric 指标名称
+     * @param window 窗口期数(killed、killRate、hitRate)
+     * @param type 连续段类型(streak)
+     * @param operator 比较符
+     * @param value 比较的数值
+     */
+    public record Condition(String metric, int window, RunType type, String operator, double value) {
+
+        static Condition of(String metric, String argument, String operator, double value) {
+            if ("streak".equals(metric)) {
+                RunType type = RunType.fromCode(argument);
+                if (type == null) {
+                    throw new IllegalArgumentException("未知的连续类型: " + argument);
+                }
+                return new Condition(metric, 0, type, operator, value);
+            }
+            int window;
+            try {
+                window = Integer.parseInt(argument);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(metric + "的窗口期数不是有效的数字: " + argument);
+            }
+            if (window < 1) {
+                throw new IllegalArgumentException(metric + "的窗口期数至少为1: " + argument);
+            }
+            return new Condition(metric, window, null, operator, value);
+        }
+
+        IntPredicate bind(BacktestData data) {
+            DoublePredicate compare = comparator();
+            switch (metric) {
+                case "streak": {
+                    int[] streak = data.streak(type);
+                    return row -> compare.test(row > 0 ? streak[row - 1] : 0);
+                }
+                case "killed": {
+                    int[] prefix = data.prefix(RowTraits.KILLED);
+                    return row -> row >= window && compare.test(prefix[row] - prefix[row - window]);
+                }
+                default: {
+                    int[] prefix = data.prefix("killRate".equals(metric) ? RowTraits.KILLED : RowTraits.HIT);
+                    double scale = 100.0 / window;
+                    return row -> row >= window && compare.test((prefix[row] - prefix[row - window]) * scale);
+                }
+            }
+        }
+
+        private DoublePredicate comparator() {
+            return switch (operator) {
+                case "<" -> actual -> actual < value;
+                case "<=" -> actual -> actual <= value;
+                case ">" -> actual -> actual > value;
+                case ">=" -> actual -> actual >= value;
+                case "=" -> actual -> actual == value;
+                default -> actual -> actual != value;
+            };
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.dataanalysis.stats.result;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 综合胜率分析结果，比率都由计数现算
+ *
+ * @param serverName 服务器名称
+ * @param totalRecords 总期数
+ * @param correctPredictionCount 中的期数
+ * @param incorrectPredictionCount 错的期数
+ * @param killedCount 被杀期数
+ * @param correctButKilledCount 中但被杀的期数
+ * @param profitCount 盈利期数(命中盈利+未命中盈利)
+ * @param lossCount 亏损期数(命中被杀+未命中亏损)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ComprehensiveRates(String serverName, int totalRecords, long correctPredictionCount,
+                                 long incorrectPredictionCount, long killedCount, long correctButKilledCount,
+                                 long profitCount, long lossCount) implements StatsResult {
+
+    static final String NO_DATA = "无有效记录数据";
+
+    /**
+     * 没有数据时的错误信息，有数据时为null
+     */
+    @JsonProperty("error")
+    public String error() {
+        return isEmpty() ? NO_DATA : null;
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return totalRecords == 0;
+    }
+
+    @JsonProperty("totalPredictionCount")
+    public int totalPredictionCount() {
+        return totalRecords;
+    }
+
+    /**
+     * 总体预测胜率：中÷总期数
+     */
+    @JsonProperty("predictionWinRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double predictionWinRate() {
+        return Rates.percent(correctPredictionCount, totalRecords);
+    }
+
+    /**
+     * 总体实际胜率：(中-中但被杀)÷总期数
+     */
+    @JsonProperty("actualWinRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double actualWinRate() {
+        return Rates.percent(correctPredictionCount - correctButKilledCount, totalRecords);
+    }
+
+    /**
+     * 被杀概率：被杀÷总期数
+     */
+    @JsonProperty("killedRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double killedRate() {
+        return Rates.percent(killedCount, totalRecords);
+    }
+
+    /**
+     * 预测命中被杀概率：中但被杀÷中
+     */
+    @JsonProperty("correctKilledRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double correctKilledRate() {
+        return Rates.percent(correctButKilledCount, correctPredictionCount);
+    }
+
+    @JsonProperty("profitRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double profitRate() {
+        return Rates.percent(profitCount, totalRecords);
+    }
+
+    @JsonProperty("lossRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double lossRate() {
+        return Rates.percent(lossCount, totalRecords);
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", serverName);
+        if (isEmpty()) {
+            result.put("error", NO_DATA);
+            return result;
+        }
+        result.put("totalRecords", totalRecords);
+        result.put("totalPredictionCount", totalRecords);
+        result.put("correctPredictionCount", correctPredictionCount);
+        result.put("incorrectPredictionCount", incorrectPredictionCount);
+        result.put("killedCount", killedCount);
+        result.put("correctButKilledCount", correctButKilledCount);
+        result.put("predictionWinRate", Rates.format(predictionWinRate()));
+        result.put("actualWinRate", Rates.format(actualWinRate()));
+        result.put("killedRate", Rates.format(killedRate()));
+        result.put("correctKilledRate", Rates.format(correctKilledRate()));
+        result.put("profitRate", Rates.format(profitRate()));
+        result.put("lossRate", Rates.format(lossRate()));
+        return result;
+    }
+}
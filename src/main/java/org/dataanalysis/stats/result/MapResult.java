@@ -0,0 +1,19 @@
+package org.dataanalysis.stats.result;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Map;
+
+/**
+ * 以Map形式计算出的结果(单项计算走WinRateCalculator时)，原样输出
+ *
+ * @param values 结果Map
+ */
+public record MapResult(Map<String, Object> values) implements StatsResult {
+
+    @JsonValue
+    @Override
+    public Map<String, Object> toMap() {
+        return values;
+    }
+}
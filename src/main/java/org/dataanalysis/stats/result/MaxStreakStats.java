@@ -0,0 +1,49 @@
+package org.dataanalysis.stats.result;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 历史最高连续统计及各自的开始期号
+ *
+ * @param serverName 服务器名称
+ * @param totalRecords 参与统计的期数，为0时表示没有数据
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MaxStreakStats(String serverName, @JsonIgnore int totalRecords,
+                             int maxConsecutiveCorrect, int maxConsecutiveIncorrect,
+                             int maxConsecutiveProfit, int maxConsecutiveLoss,
+                             int maxCorrectStartPeriod, int maxIncorrectStartPeriod,
+                             int maxProfitStartPeriod, int maxLossStartPeriod) implements StatsResult {
+
+    /**
+     * 没有数据时的错误信息，有数据时为null
+     */
+    @JsonProperty("error")
+    public String error() {
+        return totalRecords == 0 ? ComprehensiveRates.NO_DATA : null;
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", serverName);
+        if (totalRecords == 0) {
+            result.put("error", ComprehensiveRates.NO_DATA);
+            return result;
+        }
+        result.put("maxConsecutiveCorrect", maxConsecutiveCorrect);
+        result.put("maxConsecutiveIncorrect", maxConsecutiveIncorrect);
+        result.put("maxConsecutiveProfit", maxConsecutiveProfit);
+        result.put("maxConsecutiveLoss", maxConsecutiveLoss);
+        result.put("maxCorrectStartPeriod", maxCorrectStartPeriod);
+        result.put("maxIncorrectStartPeriod", maxIncorrectStartPeriod);
+        result.put("maxProfitStartPeriod", maxProfitStartPeriod);
+        result.put("maxLossStartPeriod", maxLossStartPeriod);
+        return result;
+    }
+}
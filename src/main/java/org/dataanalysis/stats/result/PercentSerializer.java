@@ -0,0 +1,24 @@
+package org.dataanalysis.stats.result;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * 将百分比数值(0-100)序列化为"12.34%"形式，与原有接口的比率字段格式一致
+ */
+public class PercentSerializer extends StdSerializer<Double> {
+
+    private static final long serialVersionUID = 1L;
+
+    public PercentSerializer() {
+        super(Double.class);
+    }
+
+    @Override
+    public void serialize(Double value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeString(Rates.format(value));
+    }
+}
@@ -0,0 +1,24 @@
+package org.dataanalysis.stats.result;
+
+/**
+ * 比率计算与格式化
+ */
+public final class Rates {
+
+    private Rates() {
+    }
+
+    /**
+     * 百分比数值(0-100)，分母为0时返回0
+     */
+    public static double percent(long part, long total) {
+        return total > 0 ? (double) part / total * 100 : 0;
+    }
+
+    /**
+     * 格式化为保留两位小数的百分比字符串，如"12.34%"
+     */
+    public static String format(double percent) {
+        return String.format("%.2f%%", percent);
+    }
+}
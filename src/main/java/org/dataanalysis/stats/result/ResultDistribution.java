@@ -0,0 +1,90 @@
+package org.dataanalysis.stats.result;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 开奖结果分布，detail不为null时即为详细结果分析
+ *
+ * @param serverName 服务器名称
+ * @param totalRecords 总期数
+ * @param singleCount 开单期数
+ * @param doubleCount 开双期数
+ * @param totalNumberDistribution 总和 -> 出现次数
+ * @param detail 杀号与预测匹配情况，仅详细结果分析才有
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ResultDistribution(String serverName, int totalRecords, long singleCount, long doubleCount,
+                                 Map<Integer, Integer> totalNumberDistribution,
+                                 @JsonUnwrapped Detail detail) implements StatsResult {
+
+    /**
+     * 详细结果分析中的附加计数
+     *
+     * @param killedSingleCount 开单且被杀的期数
+     * @param killedDoubleCount 开双且被杀的期数
+     * @param correctSinglePredictions 预测单且开单的期数
+     * @param correctDoublePredictions 预测双且开双的期数
+     * @param numberRangeDistribution 总和区间 -> 出现次数
+     */
+    public record Detail(long killedSingleCount, long killedDoubleCount, long correctSinglePredictions,
+                         long correctDoublePredictions, Map<String, Integer> numberRangeDistribution) {
+    }
+
+    @JsonProperty("singleRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double singleRate() {
+        return Rates.percent(singleCount, totalRecords);
+    }
+
+    @JsonProperty("doubleRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double doubleRate() {
+        return Rates.percent(doubleCount, totalRecords);
+    }
+
+    /**
+     * 开单被杀比例，没有详细数据时为null
+     */
+    @JsonProperty("killedSingleRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public Double killedSingleRate() {
+        return detail == null ? null : Rates.percent(detail.killedSingleCount(), singleCount);
+    }
+
+    /**
+     * 开双被杀比例，没有详细数据时为null
+     */
+    @JsonProperty("killedDoubleRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public Double killedDoubleRate() {
+        return detail == null ? null : Rates.percent(detail.killedDoubleCount(), doubleCount);
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", serverName);
+        result.put("totalRecords", totalRecords);
+        result.put("singleCount", singleCount);
+        result.put("doubleCount", doubleCount);
+        result.put("singleRate", Rates.format(singleRate()));
+        result.put("doubleRate", Rates.format(doubleRate()));
+        result.put("totalNumberDistribution", totalNumberDistribution);
+        if (detail != null) {
+            result.put("killedSingleCount", detail.killedSingleCount());
+            result.put("killedDoubleCount", detail.killedDoubleCount());
+            result.put("killedSingleRate", Rates.format(killedSingleRate()));
+            result.put("killedDoubleRate", Rates.format(killedDoubleRate()));
+            result.put("correctSinglePredictions", detail.correctSinglePredictions());
+            result.put("correctDoublePredictions", detail.correctDoublePredictions());
+            result.put("numberRangeDistribution", detail.numberRangeDistribution());
+        }
+        return result;
+    }
+}
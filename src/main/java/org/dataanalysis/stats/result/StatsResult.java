@@ -0,0 +1,16 @@
+package org.dataanalysis.stats.result;
+
+import java.util.Map;
+
+/**
+ * 类型化的统计结果
+ * 结果只保存原始计数和比率数值，百分比字符串在JSON序列化或转换为Map时才生成
+ */
+@FunctionalInterface
+public interface StatsResult {
+
+    /**
+     * 转换为原有接口返回的Map结构，比率字段格式化为"12.34%"
+     */
+    Map<String, Object> toMap();
+}
@@ -0,0 +1,28 @@
+package org.dataanalysis.stats.result;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 当前连续统计，从最新一期往前数
+ *
+ * @param serverName 服务器名称
+ * @param consecutiveCorrect 当前连中次数
+ * @param consecutiveIncorrect 当前连错次数
+ * @param consecutiveProfit 当前连续盈利次数
+ * @param consecutiveLoss 当前连续亏损次数
+ */
+public record StreakStats(String serverName, int consecutiveCorrect, int consecutiveIncorrect,
+                          int consecutiveProfit, int consecutiveLoss) implements StatsResult {
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", serverName);
+        result.put("consecutiveCorrect", consecutiveCorrect);
+        result.put("consecutiveIncorrect", consecutiveIncorrect);
+        result.put("consecutiveProfit", consecutiveProfit);
+        result.put("consecutiveLoss", consecutiveLoss);
+        return result;
+    }
+}
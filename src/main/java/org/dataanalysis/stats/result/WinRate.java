@@ -0,0 +1,63 @@
+package org.dataanalysis.stats.result;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 胜率结果，全量胜率的recentCount为null
+ *
+ * @param serverName 服务器名称
+ * @param recentCount 最近N期的N，全量胜率为null
+ * @param totalCount 参与统计的期数
+ * @param correctCount 中的期数
+ * @param incorrectCount 错的期数
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record WinRate(String serverName, Integer recentCount, int totalCount, long correctCount,
+                      long incorrectCount) implements StatsResult {
+
+    /**
+     * 全量胜率
+     */
+    public static WinRate overall(String serverName, int totalCount, int correctCount, int incorrectCount) {
+        return new WinRate(serverName, null, totalCount, correctCount, incorrectCount);
+    }
+
+    /**
+     * 最近N期胜率
+     */
+    public static WinRate recent(String serverName, int recentCount, int totalCount, long correctCount,
+                                 long incorrectCount) {
+        return new WinRate(serverName, recentCount, totalCount, correctCount, incorrectCount);
+    }
+
+    /**
+     * 胜率百分比(0-100)
+     */
+    @JsonProperty("winRate")
+    @JsonSerialize(using = PercentSerializer.class)
+    public double winRate() {
+        return Rates.percent(correctCount, totalCount);
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("serverName", serverName);
+        result.put("totalCount", totalCount);
+        if (recentCount == null) {
+            result.put("correctCount", (int) correctCount);
+            result.put("incorrectCount", (int) incorrectCount);
+        } else {
+            result.put("recentCount", recentCount);
+            result.put("correctCount", correctCount);
+            result.put("incorrectCount", incorrectCount);
+        }
+        result.put("winRate", Rates.format(winRate()));
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+package org.dataanalysis.store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字典编码的分类列
+ * 每行只保存一个字节的编码，编码0表示null，其余编码对应字典中的取值
+ */
+public class CategoricalColumn {
+
+    // 单字节编码最多容纳255个不同取值
+    private static final int MAX_VALUES = 255;
+
+    private byte[] codes;
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> lookup = new HashMap<>();
+
+    public CategoricalColumn(int capacity) {
+        this.codes = new byte[capacity];
+    }
+
+    /**
+     * 获取取值对应的编码，不存在时登记到字典中
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = lookup.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (values.size() >= MAX_VALUES) {
+            throw new IllegalStateException("分类列取值超过" + MAX_VALUES + "个，无法继续编码: " + value);
+        }
+        values.add(value);
+        int newCode = values.size();
+        lookup.put(value, newCode);
+        return newCode;
+    }
+
+    /**
+     * 查询取值对应的编码，字典中不存在时返回-1
+     */
+    public int code(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return lookup.getOrDefault(value, -1);
+    }
+
+    /**
+     * 将编码还原为取值
+     */
+    public String decode(int code) {
+        return code == 0 ? null : values.get(code - 1);
+    }
+
+    public int codeAt(int row) {
+        return codes[row] & 0xFF;
+    }
+
+    public String get(int row) {
+        return decode(codeAt(row));
+    }
+
+    public void set(int row, String value) {
+        codes[row] = (byte) encode(value);
+    }
+
+    /**
+     * 区间[from, to)内各取值出现的行数，null不计入
+     */
+    public Map<String, Integer> counts(int from, int to) {
+        int[] counts = CountKernels.get().countCodes(codes, from, to, values.size() + 1);
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int code = 1; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(values.get(code - 1), counts[code]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 字典中的所有取值(按编码顺序，编码为下标+1)
+     */
+    public List<String> values() {
+        return Collections.unmodifiableList(values);
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(capacity, codes.length * 2));
+        }
+    }
+
+    /**
+     * 在指定位置插入一行，后面的行整体后移
+     */
+    void insert(int row, int size, String value) {
+        ensureCapacity(size + 1);
+        System.arraycopy(codes, row, codes, row + 1, size - row);
+        set(row, value);
+    }
+
+    void write(DataOutputStream out, int size) throws IOException {
+        out.writeShort(values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+        out.write(codes, 0, size);
+    }
+
+    static CategoricalColumn read(ByteBuffer in, int size) {
+        CategoricalColumn column = new CategoricalColumn(Math.max(size, 16));
+        int valueCount = in.getShort() & 0xFFFF;
+        for (int i = 0; i < valueCount; i++) {
+            byte[] bytes = new byte[in.getShort() & 0xFFFF];
+            in.get(bytes);
+            column.encode(new String(bytes, StandardCharsets.UTF_8));
+        }
+        in.get(column.codes, 0, size);
+        return column;
+    }
+}
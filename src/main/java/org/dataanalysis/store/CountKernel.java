@@ -0,0 +1,27 @@
+package org.dataanalysis.store;
+
+/**
+ * 列式数据上的计数内核
+ * 特征位列和字典编码列都是定长数组，区间计数是纯粹的数据并行归约，
+ * 一次遍历同时算出多个计数，避免每个指标各扫一遍
+ */
+interface CountKernel {
+
+    /**
+     * 区间[from, to)内同时具有每个mask全部特征的行数
+     *
+     * @param traits 特征位列
+     * @param masks 要统计的特征组合
+     * @return 与masks一一对应的计数
+     */
+    int[] countMasks(int[] traits, int from, int to, int[] masks);
+
+    /**
+     * 区间[from, to)内字典编码列的取值分布
+     *
+     * @param codes 编码列
+     * @param codeCount 编码个数(含表示null的0)
+     * @return 下标为编码的计数
+     */
+    int[] countCodes(byte[] codes, int from, int to, int codeCount);
+}
@@ -0,0 +1,60 @@
+package org.dataanalysis.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 选择当前JVM可用的计数内核
+ * 启动参数包含--add-modules jdk.incubator.vector时使用向量内核，否则退回逐行计数；
+ * 设置系统属性dataanalysis.count-kernel=scalar可强制使用逐行计数
+ */
+final class CountKernels {
+
+    private static final Logger logger = LoggerFactory.getLogger(CountKernels.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    static final CountKernel SCALAR = new ScalarCountKernel();
+    static final CountKernel DEFAULT = select();
+
+    private CountKernels() {
+    }
+
+    /**
+     * 当前JVM使用的计数内核
+     */
+    static CountKernel get() {
+        return DEFAULT;
+    }
+
+    /**
+     * 向量内核，模块不可用时返回null
+     */
+    static CountKernel vector() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            // 反射加载，保证未启用模块时不会解析到向量API的类
+            return (CountKernel) Class.forName("org.dataanalysis.store.VectorCountKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("加载向量计数内核失败，使用逐行计数: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static CountKernel select() {
+        if ("scalar".equalsIgnoreCase(System.getProperty("dataanalysis.count-kernel"))) {
+            logger.info("已配置使用逐行计数内核");
+            return SCALAR;
+        }
+        CountKernel vector = vector();
+        if (vector == null) {
+            logger.info("未启用{}模块，使用逐行计数内核", VECTOR_MODULE);
+            return SCALAR;
+        }
+        logger.info("使用向量计数内核");
+        return vector;
+    }
+}
@@ -0,0 +1,70 @@
+package org.dataanalysis.store;
+
+/**
+ * 开奖号码的紧凑表示
+ * numbers字段在记录写入内存时解析一次，三个数字各占4位打包为一个short(第一位数字在最低4位)，
+ * 无法解析为三个0到9的数字时为NONE；统计时只做移位，不再解析字符串
+ */
+public final class DrawDigits {
+
+    /** 每期的数字个数 */
+    public static final int POSITIONS = 3;
+    /** 数字和的最大值 */
+    public static final int MAX_SUM = 27;
+    /** 无法解析 */
+    public static final short NONE = -1;
+
+    private DrawDigits() {
+    }
+
+    /**
+     * 解析开奖号码，支持"3+5+8"、"3,5,8"、"3 5 8"、"358"等写法，"="之后的总和部分忽略
+     */
+    public static short parse(String numbers) {
+        if (numbers == null) {
+            return NONE;
+        }
+        int end = numbers.indexOf('=');
+        if (end < 0) {
+            end = numbers.length();
+        }
+        int packed = 0;
+        int count = 0;
+        int groups = 0;
+        boolean inGroup = false;
+        for (int i = 0; i < end; i++) {
+            char c = numbers.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (count == POSITIONS) {
+                    return NONE;
+                }
+                packed |= (c - '0') << (4 * count++);
+                if (!inGroup) {
+                    groups++;
+                    inGroup = true;
+                }
+            } else {
+                inGroup = false;
+            }
+        }
+        // 三个单独的数字，或一组连写的三个数字
+        if (count != POSITIONS || (groups != POSITIONS && groups != 1)) {
+            return NONE;
+        }
+        return (short) packed;
+    }
+
+    /**
+     * 第position位(从0开始)的数字
+     */
+    public static int digit(short packed, int position) {
+        return (packed >> (4 * position)) & 0xF;
+    }
+
+    /**
+     * 三个数字之和
+     */
+    public static int sum(short packed) {
+        return (packed & 0xF) + ((packed >> 4) & 0xF) + ((packed >> 8) & 0xF);
+    }
+}
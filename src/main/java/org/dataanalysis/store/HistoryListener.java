@@ -0,0 +1,61 @@
+package org.dataanalysis.store;
+
+import org.dataanalysis.entity.HistoryRecord;
+
+/**
+ * 内存历史数据变化监听器
+ * 所有回调都在持有该服务器写锁的同步线程中执行，实现需保证每次回调为O(1)
+ */
+public interface HistoryListener {
+
+    /**
+     * 不做任何处理的监听器
+     */
+    HistoryListener NONE = new HistoryListener() {
+        @Override
+        public void onAppend(ServerHistory history, int row) {
+        }
+
+        @Override
+        public void onRetract(ServerHistory history, int row) {
+        }
+
+        @Override
+        public void onReload(ServerHistory history) {
+        }
+    };
+
+    /**
+     * 新的一期已写入末尾(或最新一期被覆盖后重新应用)
+     *
+     * @param history 服务器历史数据
+     * @param row 行下标，总是等于size-1
+     */
+    void onAppend(ServerHistory history, int row);
+
+    /**
+     * 最新一期即将被覆盖，需要撤回它之前的贡献，此时该行仍是旧值
+     *
+     * @param history 服务器历史数据
+     * @param row 行下标，总是等于size-1
+     */
+    void onRetract(ServerHistory history, int row);
+
+    /**
+     * 数据发生了无法增量处理的变化(更早的期号被修改、乱序插入、从快照恢复)，需要全量重建
+     *
+     * @param history 服务器历史数据
+     */
+    void onReload(ServerHistory history);
+
+    /**
+     * 同步的每条记录写入后调用，包括没有造成变化和随后统一重建的记录，供数据质量检查使用
+     *
+     * @param history 服务器历史数据
+     * @param record 写入的记录
+     * @param change 该记录造成的变化
+     * @param previousId 写入前该期号已有记录的id，期号原本不存在时为-1
+     */
+    default void onIngest(ServerHistory history, HistoryRecord record, ServerHistory.Change change, long previousId) {
+    }
+}
@@ -0,0 +1,419 @@
+package org.dataanalysis.store;
+
+import jakarta.annotation.PostConstruct;
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.repository.HistorySyncRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 内存历史数据仓库
+ * 启动时先从本地快照文件恢复各服务器的历史数据，再从数据库水位开始追平，
+ * 之后由定时任务增量同步，并在数据变化后重新写出快照
+ */
+@Component
+public class HistoryStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryStore.class);
+
+    private static final String HISTORY_SECTION_PREFIX = "history/";
+
+    @Value("${analysis.servers:sf1,sf3,sf4,sf5,sf6,sf7,sf444}")
+    private String[] servers;
+
+    @Value("${analysis.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    @Value("${analysis.snapshot.path:data/history-snapshot.bin}")
+    private String snapshotPath;
+
+    @Autowired
+    private HistorySyncRepository historySyncRepository;
+
+    private final Map<String, ServerHistory> histories = new ConcurrentHashMap<>();
+
+    // 上次写出快照时各服务器的数据版本
+    private final Map<String, Long> checkpointVersions = new ConcurrentHashMap<>();
+
+    private final List<HistoryListener> listeners = new CopyOnWriteArrayList<>();
+
+    // 从快照读出、尚未被对应监听器取走的附加分段，以"名称/服务器"为键
+    private final Map<String, ByteBuffer> restoredSections = new ConcurrentHashMap<>();
+
+    // 从快照恢复后各服务器未被撤回或重建过的前缀行数，附加分段只有完全落在该前缀内时才可用
+    private final Map<String, Integer> stablePrefixes = new ConcurrentHashMap<>();
+
+    // 启动时的同步先于监听器注册，其中同一期号id不同和乱序插入的记录暂存下来，监听器注册时补发onIngest，
+    // 应用启动完成(全部监听器已注册)后清空
+    private final Map<String, List<Ingest>> initialIngests = new ConcurrentHashMap<>();
+
+    // 启动时的恢复和首次同步是否已完成
+    private volatile boolean initialized;
+
+    /**
+     * 暂存的一次onIngest
+     */
+    private record Ingest(HistoryRecord record, ServerHistory.Change change, long previousId) {
+    }
+
+    // 把变化事件依次分发给所有监听器
+    private final HistoryListener dispatcher = new HistoryListener() {
+        @Override
+        public void onAppend(ServerHistory history, int row) {
+            for (HistoryListener listener : listeners) {
+                listener.onAppend(history, row);
+            }
+        }
+
+        @Override
+        public void onRetract(ServerHistory history, int row) {
+            stablePrefixes.computeIfPresent(history.getServerName(), (server, prefix) -> Math.min(prefix, row));
+            for (HistoryListener listener : listeners) {
+                listener.onRetract(history, row);
+            }
+        }
+
+        @Override
+        public void onReload(ServerHistory history) {
+            stablePrefixes.computeIfPresent(history.getServerName(), (server, prefix) -> 0);
+            for (HistoryListener listener : listeners) {
+                listener.onReload(history);
+            }
+        }
+
+        @Override
+        public void onIngest(ServerHistory history, HistoryRecord record, ServerHistory.Change change,
+                             long previousId) {
+            for (HistoryListener listener : listeners) {
+                listener.onIngest(history, record, change, previousId);
+            }
+        }
+    };
+
+    /**
+     * 启动时恢复快照并追平数据库
+     */
+    @PostConstruct
+    public void init() {
+        long startTime = System.currentTimeMillis();
+        restore();
+        logger.info("历史数据快照恢复完成，耗时{}毫秒", System.currentTimeMillis() - startTime);
+        syncAll();
+        initialized = true;
+        logger.info("历史数据追平完成，总耗时{}毫秒", System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 应用启动完成时监听器都已注册，不再需要暂存的启动同步记录
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        initialIngests.clear();
+    }
+
+    /**
+     * 获取服务器的内存历史数据，首次访问且没有快照时会从数据库全量加载
+     */
+    public ServerHistory history(String serverName) {
+        ServerHistory history = histories.get(serverName);
+        if (history == null) {
+            synchronized (this) {
+                history = histories.get(serverName);
+                if (history == null) {
+                    history = new ServerHistory(serverName);
+                    histories.put(serverName, history);
+                    sync(history);
+                }
+            }
+        }
+        return history;
+    }
+
+    /**
+     * 注册数据变化监听器，注册时会用已加载的数据对其做一次全量重建；
+     * 实现了SnapshotSection的监听器优先从快照中的分段恢复，再补上之后的行；
+     * 之后补发启动同步中暂存的重复和乱序记录
+     */
+    public void addListener(HistoryListener listener) {
+        synchronized (this) {
+            listeners.add(listener);
+            for (ServerHistory history : histories.values()) {
+                history.lock().writeLock().lock();
+                try {
+                    if (!(listener instanceof SnapshotSection section) || !restoreSection(section, history)) {
+                        listener.onReload(history);
+                    }
+                    for (Ingest ingest : initialIngests.getOrDefault(history.getServerName(), List.of())) {
+                        listener.onIngest(history, ingest.record(), ingest.change(), ingest.previousId());
+                    }
+                } finally {
+                    history.lock().writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    // 调用方持有写锁
+    private boolean restoreSection(SnapshotSection section, ServerHistory history) {
+        ByteBuffer payload = restoredSections.remove(section.sectionName() + "/" + history.getServerName());
+        if (payload == null) {
+            return false;
+        }
+        try {
+            int rows = payload.getInt();
+            if (section.rowIndependent()) {
+                if (!section.readSection(history, history.size(), payload.slice())) {
+                    return false;
+                }
+                logger.info("{}：{}从快照恢复", history.getServerName(), section.sectionName());
+                return true;
+            }
+            int stablePrefix = stablePrefixes.getOrDefault(history.getServerName(), 0);
+            if (rows > stablePrefix || rows > history.size() || !section.readSection(history, rows, payload.slice())) {
+                return false;
+            }
+            for (int row = rows; row < history.size(); row++) {
+                section.onAppend(history, row);
+            }
+            logger.info("{}：{}从快照恢复{}期，补充{}期", history.getServerName(), section.sectionName(), rows,
+                    history.size() - rows);
+            return true;
+        } catch (Exception e) {
+            logger.warn("{}：{}快照分段恢复失败，将全量重建: {}", history.getServerName(), section.sectionName(),
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 已配置的服务器名称
+     */
+    public String[] getServers() {
+        return servers.clone();
+    }
+
+    /**
+     * 是否为已配置的服务器
+     */
+    public boolean hasServer(String serverName) {
+        for (String server : servers) {
+            if (server.equals(serverName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按期号倒序获取全部记录(与findAll的顺序一致)
+     */
+    public List<HistoryRecord> findAll(String serverName) {
+        return history(serverName).toRecordsDescending(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 按期号倒序获取最近limit条记录
+     */
+    public List<HistoryRecord> findRecent(String serverName, int limit) {
+        return history(serverName).toRecordsDescending(limit);
+    }
+
+    /**
+     * 记录总数
+     */
+    public int count(String serverName) {
+        return history(serverName).size();
+    }
+
+    /**
+     * 服务器当前的数据版本，每次数据变化都会递增
+     */
+    public long version(String serverName) {
+        return history(serverName).version();
+    }
+
+    /**
+     * 具有指定特征的记录数
+     */
+    public int count(String serverName, int traitMask) {
+        ServerHistory history = history(serverName);
+        history.lock().readLock().lock();
+        try {
+            return history.count(traitMask);
+        } finally {
+            history.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * 增量同步所有服务器
+     */
+    public void syncAll() {
+        for (String server : servers) {
+            ServerHistory history = histories.computeIfAbsent(server, ServerHistory::new);
+            sync(history);
+        }
+    }
+
+    /**
+     * 从数据库水位开始增量同步一个服务器
+     */
+    private void sync(ServerHistory history) {
+        String serverName = history.getServerName();
+        try {
+            List<HistoryRecord> records;
+            Integer latestPeriod = history.latestPeriod();
+            if (latestPeriod == null) {
+                records = historySyncRepository.findAll(serverName);
+            } else {
+                records = historySyncRepository.findSince(serverName, history.maxId(),
+                        history.maxUpdatedAt(), latestPeriod);
+            }
+
+            int changed = 0;
+            history.lock().writeLock().lock();
+            try {
+                // 出现无法增量处理的变化后，本批剩余记录不再逐条通知，写完后统一重建
+                boolean reload = false;
+                for (HistoryRecord record : records) {
+                    int existing = record.getPeriod() != null ? history.indexOfPeriod(record.getPeriod()) : -1;
+                    long previousId = existing >= 0 ? history.id(existing) : -1;
+                    ServerHistory.Change change = history.upsert(record, reload ? HistoryListener.NONE : dispatcher);
+                    dispatcher.onIngest(history, record, change, previousId);
+                    if (!initialized && anomalous(record, change, previousId)) {
+                        initialIngests.computeIfAbsent(serverName, server -> new ArrayList<>())
+                                .add(new Ingest(record, change, previousId));
+                    }
+                    if (change == ServerHistory.Change.UPDATED || change == ServerHistory.Change.INSERTED) {
+                        reload = true;
+                    }
+                    if (change != ServerHistory.Change.NONE) {
+                        changed++;
+                    }
+                }
+                if (reload) {
+                    dispatcher.onReload(history);
+                }
+            } finally {
+                history.lock().writeLock().unlock();
+            }
+            if (changed > 0) {
+                logger.info("{}：同步历史数据{}条，变化{}条，当前共{}期", serverName, records.size(), changed, history.size());
+            }
+        } catch (Exception e) {
+            logger.error("{}：同步历史数据失败: {}", serverName, e.getMessage());
+        }
+    }
+
+    // 同一期号已有id不同的记录，或比最新期号更早的期号晚到
+    private static boolean anomalous(HistoryRecord record, ServerHistory.Change change, long previousId) {
+        long id = record.getId() != null ? record.getId() : 0L;
+        return change == ServerHistory.Change.INSERTED || (previousId >= 0 && id != previousId);
+    }
+
+    /**
+     * 数据有变化时写出快照
+     */
+    public void checkpoint() {
+        if (!snapshotEnabled) {
+            return;
+        }
+        boolean dirty = false;
+        for (ServerHistory history : histories.values()) {
+            Long checkpointed = checkpointVersions.get(history.getServerName());
+            if (checkpointed == null || checkpointed != history.version()) {
+                dirty = true;
+                break;
+            }
+        }
+        if (!dirty) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            Map<String, byte[]> sections = new LinkedHashMap<>();
+            Map<String, Long> versions = new LinkedHashMap<>();
+            for (ServerHistory history : histories.values()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(history.size() * 64, 1024));
+                Map<String, byte[]> extra = new LinkedHashMap<>();
+                history.lock().readLock().lock();
+                try {
+                    history.write(new DataOutputStream(bytes));
+                    versions.put(history.getServerName(), history.version());
+                    // 附加分段不含最新一期
+                    int rows = Math.max(history.size() - 1, 0);
+                    for (HistoryListener listener : listeners) {
+                        if (listener instanceof SnapshotSection section) {
+                            ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream(1024);
+                            DataOutputStream out = new DataOutputStream(sectionBytes);
+                            out.writeInt(rows);
+                            section.writeSection(history, rows, out);
+                            out.flush();
+                            extra.put(section.sectionName() + "/" + history.getServerName(), sectionBytes.toByteArray());
+                        }
+                    }
+                } finally {
+                    history.lock().readLock().unlock();
+                }
+                sections.put(HISTORY_SECTION_PREFIX + history.getServerName(), bytes.toByteArray());
+                sections.putAll(extra);
+            }
+            Path path = Paths.get(snapshotPath);
+            SnapshotFile.write(path, sections);
+            checkpointVersions.putAll(versions);
+            logger.info("历史数据快照已写入{}，耗时{}毫秒", path.toAbsolutePath(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            logger.warn("写入历史数据快照失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从快照文件恢复，快照不存在、版本不匹配或损坏时从空数据开始
+     */
+    private void restore() {
+        if (!snapshotEnabled) {
+            return;
+        }
+        Path path = Paths.get(snapshotPath);
+        try {
+            Map<String, ByteBuffer> sections = SnapshotFile.read(path);
+            for (Map.Entry<String, ByteBuffer> entry : sections.entrySet()) {
+                if (!entry.getKey().startsWith(HISTORY_SECTION_PREFIX)) {
+                    // 附加分段等对应的监听器注册时再恢复
+                    restoredSections.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                String serverName = entry.getKey().substring(HISTORY_SECTION_PREFIX.length());
+                ServerHistory history = ServerHistory.read(serverName, entry.getValue());
+                histories.put(serverName, history);
+                checkpointVersions.put(serverName, history.version());
+                stablePrefixes.put(serverName, history.size());
+                logger.info("{}：从快照恢复{}期历史数据，最新期号{}", serverName, history.size(), history.latestPeriod());
+            }
+        } catch (Exception e) {
+            histories.clear();
+            checkpointVersions.clear();
+            restoredSections.clear();
+            stablePrefixes.clear();
+            logger.warn("读取历史数据快照{}失败，将从数据库全量加载: {}", path.toAbsolutePath(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.dataanalysis.store;
+
+/**
+ * 杀号位掩码
+ * kill_number在记录写入内存时解析一次，压缩为16位掩码：第0到9位对应被杀的数字0到9，
+ * 第15位表示被杀但杀号中没有数字(例如"杀")；统计被杀个数只需对掩码做popcount
+ */
+public final class KillMask {
+
+    /** 杀号中出现的数字个数上限，未被杀个数按每期10个数字计算 */
+    public static final int DIGITS = 10;
+    /** 数字0到9 */
+    public static final int DIGIT_BITS = (1 << DIGITS) - 1;
+    /** 被杀但杀号中没有数字 */
+    public static final int NON_DIGIT = 1 << 15;
+
+    private KillMask() {
+    }
+
+    /**
+     * 解析杀号，逗号、空格分隔或连续书写的数字都按数字取位，重复的数字只计一次；
+     * 为null或空串时返回0
+     */
+    public static short parse(String killNumber) {
+        if (killNumber == null || killNumber.isEmpty()) {
+            return 0;
+        }
+        int mask = 0;
+        for (int i = 0; i < killNumber.length(); i++) {
+            char c = killNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mask |= 1 << (c - '0');
+            }
+        }
+        return (short) (mask != 0 ? mask : NON_DIGIT);
+    }
+
+    /**
+     * 被杀的个数：数字个数，没有数字的杀号计为1
+     */
+    public static int killCount(short mask) {
+        return Integer.bitCount(mask & (DIGIT_BITS | NON_DIGIT));
+    }
+}
@@ -0,0 +1,88 @@
+package org.dataanalysis.store;
+
+/**
+ * 行特征位
+ * 在记录写入内存时一次性计算，统计时只需要做位运算，不再反复比较字符串
+ */
+public final class RowTraits {
+
+    /** outcome = 中 */
+    public static final int HIT = 1;
+    /** outcome = 错 */
+    public static final int MISS = 1 << 1;
+    /** outcome为特殊值(---、未知、空串、null) */
+    public static final int OUTCOME_SPECIAL = 1 << 2;
+    /** kill_number非空，即本期被杀 */
+    public static final int KILLED = 1 << 3;
+    /** betting_result = 命中盈利 */
+    public static final int HIT_PROFIT = 1 << 4;
+    /** betting_result = 未命中盈利 */
+    public static final int MISS_PROFIT = 1 << 5;
+    /** betting_result = 命中被杀 */
+    public static final int HIT_KILLED = 1 << 6;
+    /** betting_result = 未命中亏损 */
+    public static final int MISS_LOSS = 1 << 7;
+    /** 盈利(命中盈利或未命中盈利) */
+    public static final int PROFIT = 1 << 8;
+    /** 亏损(命中被杀或未命中亏损) */
+    public static final int LOSS = 1 << 9;
+    /** betting_result为特殊值(未知、空串、null) */
+    public static final int BET_SPECIAL = 1 << 10;
+    /** open_result = 单 */
+    public static final int OPEN_SINGLE = 1 << 11;
+    /** open_result = 双 */
+    public static final int OPEN_DOUBLE = 1 << 12;
+    /** prediction = 单 */
+    public static final int PRED_SINGLE = 1 << 13;
+    /** prediction = 双 */
+    public static final int PRED_DOUBLE = 1 << 14;
+
+    private RowTraits() {
+    }
+
+    /**
+     * 根据一行记录的原始字段计算特征位
+     */
+    public static int compute(String outcome, String bettingResult, String openResult,
+                              String prediction, String killNumber) {
+        int traits = 0;
+
+        if ("中".equals(outcome)) {
+            traits |= HIT;
+        } else if ("错".equals(outcome)) {
+            traits |= MISS;
+        } else if (outcome == null || outcome.isEmpty() || "---".equals(outcome) || "未知".equals(outcome)) {
+            traits |= OUTCOME_SPECIAL;
+        }
+
+        if (killNumber != null && !killNumber.isEmpty()) {
+            traits |= KILLED;
+        }
+
+        if ("命中盈利".equals(bettingResult)) {
+            traits |= HIT_PROFIT | PROFIT;
+        } else if ("未命中盈利".equals(bettingResult)) {
+            traits |= MISS_PROFIT | PROFIT;
+        } else if ("命中被杀".equals(bettingResult)) {
+            traits |= HIT_KILLED | LOSS;
+        } else if ("未命中亏损".equals(bettingResult)) {
+            traits |= MISS_LOSS | LOSS;
+        } else if (bettingResult == null || bettingResult.isEmpty() || "未知".equals(bettingResult)) {
+            traits |= BET_SPECIAL;
+        }
+
+        if ("单".equals(openResult)) {
+            traits |= OPEN_SINGLE;
+        } else if ("双".equals(openResult)) {
+            traits |= OPEN_DOUBLE;
+        }
+
+        if ("单".equals(prediction)) {
+            traits |= PRED_SINGLE;
+        } else if ("双".equals(prediction)) {
+            traits |= PRED_DOUBLE;
+        }
+
+        return traits;
+    }
+}
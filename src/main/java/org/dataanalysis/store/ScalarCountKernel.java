@@ -0,0 +1,30 @@
+package org.dataanalysis.store;
+
+/**
+ * 逐行计数的内核，在没有启用jdk.incubator.vector模块时使用，也作为向量内核的正确性基准
+ */
+final class ScalarCountKernel implements CountKernel {
+
+    @Override
+    public int[] countMasks(int[] traits, int from, int to, int[] masks) {
+        int[] counts = new int[masks.length];
+        for (int i = from; i < to; i++) {
+            int row = traits[i];
+            for (int k = 0; k < masks.length; k++) {
+                if ((row & masks[k]) == masks[k]) {
+                    counts[k]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public int[] countCodes(byte[] codes, int from, int to, int codeCount) {
+        int[] counts = new int[codeCount];
+        for (int i = from; i < to; i++) {
+            counts[codes[i] & 0xFF]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,628 @@
+package org.dataanalysis.store;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.entity.Sf444HistoryRecord;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 单个服务器的内存历史数据(列式存储)
+ * 行按期号升序排列，下标0为最早的一期，下标size-1为最新的一期
+ */
+public class ServerHistory {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** 时间字段为null时的毫秒值 */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    /** 开奖总和为null时的取值，总和本身可以是任意int */
+    public static final int NO_TOTAL = Integer.MIN_VALUE;
+
+    /**
+     * 一次写入对数据造成的变化
+     */
+    public enum Change {
+        /** 数据没有变化 */
+        NONE,
+        /** 在末尾追加了新的一期 */
+        APPENDED,
+        /** 最新一期被更新(例如预测行回填了开奖结果) */
+        UPDATED_LATEST,
+        /** 更早的某一期被更新 */
+        UPDATED,
+        /** 乱序到达的旧期号被插入到中间位置 */
+        INSERTED
+    }
+
+    private final String serverName;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile int size;
+    private int[] periods = new int[INITIAL_CAPACITY];
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] traits = new int[INITIAL_CAPACITY];
+    private int[] totalNumbers = new int[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private long[] createdAt = new long[INITIAL_CAPACITY];
+    private long[] updatedAt = new long[INITIAL_CAPACITY];
+    private String[] numbers = new String[INITIAL_CAPACITY];
+    private short[] drawDigits = new short[INITIAL_CAPACITY];
+    private String[] killNumbers = new String[INITIAL_CAPACITY];
+    private short[] killMasks = new short[INITIAL_CAPACITY];
+    private CategoricalColumn prediction = new CategoricalColumn(INITIAL_CAPACITY);
+    private CategoricalColumn outcome = new CategoricalColumn(INITIAL_CAPACITY);
+    private CategoricalColumn bettingResult = new CategoricalColumn(INITIAL_CAPACITY);
+    private CategoricalColumn openResult = new CategoricalColumn(INITIAL_CAPACITY);
+    private CategoricalColumn finalResult = new CategoricalColumn(INITIAL_CAPACITY);
+
+    private final Map<Integer, Integer> periodIndex = new HashMap<>();
+
+    // sf444表额外包含flag和final_result字段
+    private boolean extended;
+
+    // 同步水位：已读取的最大id和最大更新时间
+    private long maxId;
+    private long maxUpdatedAt = NO_TIME;
+
+    // 数据版本号，每次数据变化加1
+    private volatile long version;
+
+    public ServerHistory(String serverName) {
+        this.serverName = serverName;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public ReadWriteLock lock() {
+        return lock;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public long maxId() {
+        return maxId;
+    }
+
+    /**
+     * 已同步的最大更新时间，没有数据时返回null
+     */
+    public LocalDateTime maxUpdatedAt() {
+        return fromMillis(maxUpdatedAt);
+    }
+
+    /**
+     * 最新一期的期号，没有数据时返回null
+     */
+    public Integer latestPeriod() {
+        int n = size;
+        return n == 0 ? null : periods[n - 1];
+    }
+
+    public boolean isExtended() {
+        return extended;
+    }
+
+    // ---------------- 行读取 ----------------
+
+    public int period(int row) {
+        return periods[row];
+    }
+
+    public long id(int row) {
+        return ids[row];
+    }
+
+    public int traits(int row) {
+        return traits[row];
+    }
+
+    /**
+     * 判断该行是否同时具有mask中的全部特征
+     */
+    public boolean has(int row, int mask) {
+        return (traits[row] & mask) == mask;
+    }
+
+    /**
+     * 开奖总和，为null时返回NO_TOTAL
+     */
+    public int totalNumber(int row) {
+        return totalNumbers[row];
+    }
+
+    /**
+     * 标记字段(仅sf444)，为null时返回-1
+     */
+    public int flag(int row) {
+        return flags[row];
+    }
+
+    public String numbers(int row) {
+        return numbers[row];
+    }
+
+    /**
+     * 打包的开奖数字，无法解析时为DrawDigits.NONE
+     */
+    public short drawDigits(int row) {
+        return drawDigits[row];
+    }
+
+    public String killNumber(int row) {
+        return killNumbers[row];
+    }
+
+    /**
+     * 杀号位掩码，见KillMask
+     */
+    public short killMask(int row) {
+        return killMasks[row];
+    }
+
+    public String prediction(int row) {
+        return prediction.get(row);
+    }
+
+    public String outcome(int row) {
+        return outcome.get(row);
+    }
+
+    public String bettingResult(int row) {
+        return bettingResult.get(row);
+    }
+
+    public String openResult(int row) {
+        return openResult.get(row);
+    }
+
+    public String finalResult(int row) {
+        return finalResult.get(row);
+    }
+
+    public LocalDateTime createdAt(int row) {
+        return fromMillis(createdAt[row]);
+    }
+
+    /**
+     * 创建时间的毫秒数，本地时间按UTC换算，按整小时、整天切分时无需考虑时区；为null时返回NO_TIME
+     */
+    public long createdAtMillis(int row) {
+        return createdAt[row];
+    }
+
+    public LocalDateTime updatedAt(int row) {
+        return fromMillis(updatedAt[row]);
+    }
+
+    /**
+     * 根据期号查找行下标，不存在时返回-1
+     */
+    public int indexOfPeriod(int period) {
+        Integer row = periodIndex.get(period);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * 第一个期号不小于period的行下标，全部小于period时返回size
+     */
+    public int rowAtOrAfter(int period) {
+        int row = Arrays.binarySearch(periods, 0, size, period);
+        return row >= 0 ? row : -row - 1;
+    }
+
+    /**
+     * 统计具有mask中全部特征的行数
+     */
+    public int count(int mask) {
+        return countAll(new int[]{mask}, 0, size)[0];
+    }
+
+    /**
+     * 一次遍历统计区间[fromRow, toRow)内具有每个mask全部特征的行数
+     *
+     * @param masks 特征组合，如HIT、HIT|KILLED
+     * @return 与masks一一对应的计数
+     */
+    public int[] countAll(int[] masks, int fromRow, int toRow) {
+        checkRange(fromRow, toRow);
+        return CountKernels.get().countMasks(traits, fromRow, toRow, masks);
+    }
+
+    /**
+     * 区间[fromRow, toRow)内各分类列的取值分布，null取值不计入
+     *
+     * @return 列名(prediction、outcome、bettingResult、openResult、finalResult) -> 取值 -> 行数
+     */
+    public Map<String, Map<String, Integer>> categoryCounts(int fromRow, int toRow) {
+        checkRange(fromRow, toRow);
+        Map<String, Map<String, Integer>> result = new LinkedHashMap<>();
+        result.put("prediction", prediction.counts(fromRow, toRow));
+        result.put("outcome", outcome.counts(fromRow, toRow));
+        result.put("bettingResult", bettingResult.counts(fromRow, toRow));
+        result.put("openResult", openResult.counts(fromRow, toRow));
+        result.put("finalResult", finalResult.counts(fromRow, toRow));
+        return result;
+    }
+
+    /**
+     * 按列名获取分类列，列名同categoryCounts，仅供只读使用(按行读取编码、查询取值编码)
+     */
+    public CategoricalColumn category(String name) {
+        return switch (name) {
+            case "prediction" -> prediction;
+            case "outcome" -> outcome;
+            case "bettingResult" -> bettingResult;
+            case "openResult" -> openResult;
+            case "finalResult" -> finalResult;
+            default -> throw new IllegalArgumentException("未知的分类列: " + name);
+        };
+    }
+
+    private void checkRange(int fromRow, int toRow) {
+        if (fromRow < 0 || toRow > size || fromRow > toRow) {
+            throw new IndexOutOfBoundsException("行区间[" + fromRow + ", " + toRow + ")超出范围，共" + size + "行");
+        }
+    }
+
+    /**
+     * 将一行还原为实体对象
+     */
+    public HistoryRecord toRecord(int row) {
+        HistoryRecord record;
+        if (extended) {
+            Sf444HistoryRecord sf444Record = new Sf444HistoryRecord();
+            sf444Record.setFlag(flags[row] < 0 ? null : (int) flags[row]);
+            sf444Record.setFinalResult(finalResult.get(row));
+            record = sf444Record;
+        } else {
+            record = new HistoryRecord();
+        }
+        record.setId(ids[row]);
+        record.setPeriod(periods[row]);
+        record.setNumbers(numbers[row]);
+        record.setPrediction(prediction.get(row));
+        record.setOutcome(outcome.get(row));
+        record.setTotalNumber(totalNumbers[row] == NO_TOTAL ? null : totalNumbers[row]);
+        record.setKillNumber(killNumbers[row]);
+        record.setBettingResult(bettingResult.get(row));
+        record.setOpenResult(openResult.get(row));
+        record.setCreatedAt(fromMillis(createdAt[row]));
+        record.setUpdatedAt(fromMillis(updatedAt[row]));
+        record.setServerName(serverName);
+        return record;
+    }
+
+    /**
+     * 按期号倒序(最新的在前)获取最近limit条记录
+     */
+    public List<HistoryRecord> toRecordsDescending(int limit) {
+        lock.readLock().lock();
+        try {
+            int n = size;
+            int count = Math.min(Math.max(limit, 0), n);
+            List<HistoryRecord> records = new ArrayList<>(count);
+            for (int i = n - 1; i >= n - count; i--) {
+                records.add(toRecord(i));
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------------- 写入 ----------------
+
+    /**
+     * 写入一条数据库记录，已存在的期号会被覆盖
+     * 调用方需持有写锁
+     *
+     * @param record 数据库记录
+     * @return 数据变化类型
+     */
+    public Change upsert(HistoryRecord record) {
+        return upsert(record, HistoryListener.NONE);
+    }
+
+    /**
+     * 写入一条数据库记录并通知监听器
+     * 追加新期号时通知onAppend；覆盖最新一期时先onRetract撤回旧值再onAppend重新应用；
+     * 修改更早的期号或乱序插入无法增量处理，由调用方在整批写入后通知onReload
+     * 调用方需持有写锁
+     *
+     * @param record 数据库记录
+     * @param listener 变化监听器
+     * @return 数据变化类型
+     */
+    public Change upsert(HistoryRecord record, HistoryListener listener) {
+        if (record.getPeriod() == null) {
+            return Change.NONE;
+        }
+        int period = record.getPeriod();
+        long id = record.getId() != null ? record.getId() : 0L;
+        advanceWatermark(record);
+
+        Integer existing = periodIndex.get(period);
+        if (existing != null) {
+            int row = existing;
+            // 同一期号出现多条记录时以id较大的为准
+            if (id < ids[row] || sameAs(row, record)) {
+                return Change.NONE;
+            }
+            boolean latest = row == size - 1;
+            if (latest) {
+                listener.onRetract(this, row);
+            }
+            writeRow(row, record);
+            version++;
+            if (latest) {
+                listener.onAppend(this, row);
+                return Change.UPDATED_LATEST;
+            }
+            return Change.UPDATED;
+        }
+
+        int n = size;
+        ensureCapacity(n + 1);
+        if (n == 0 || period > periods[n - 1]) {
+            writeRow(n, record);
+            periodIndex.put(period, n);
+            size = n + 1;
+            version++;
+            listener.onAppend(this, n);
+            return Change.APPENDED;
+        }
+
+        // 乱序到达，找到插入位置后整体后移
+        int row = Arrays.binarySearch(periods, 0, n, period);
+        row = -row - 1;
+        shift(row, n);
+        writeRow(row, record);
+        size = n + 1;
+        for (int i = row; i <= n; i++) {
+            periodIndex.put(periods[i], i);
+        }
+        version++;
+        return Change.INSERTED;
+    }
+
+    private void writeRow(int row, HistoryRecord record) {
+        periods[row] = record.getPeriod();
+        ids[row] = record.getId() != null ? record.getId() : 0L;
+        numbers[row] = record.getNumbers();
+        drawDigits[row] = DrawDigits.parse(record.getNumbers());
+        killNumbers[row] = record.getKillNumber();
+        killMasks[row] = KillMask.parse(record.getKillNumber());
+        totalNumbers[row] = totalNumberOf(record);
+        createdAt[row] = toMillis(record.getCreatedAt());
+        updatedAt[row] = toMillis(record.getUpdatedAt());
+        prediction.set(row, record.getPrediction());
+        outcome.set(row, record.getOutcome());
+        bettingResult.set(row, record.getBettingResult());
+        openResult.set(row, record.getOpenResult());
+        if (record instanceof Sf444HistoryRecord sf444Record) {
+            extended = true;
+            flags[row] = sf444Record.getFlag() != null ? sf444Record.getFlag().byteValue() : -1;
+            finalResult.set(row, sf444Record.getFinalResult());
+        } else {
+            flags[row] = -1;
+            finalResult.set(row, null);
+        }
+        traits[row] = RowTraits.compute(record.getOutcome(), record.getBettingResult(),
+                record.getOpenResult(), record.getPrediction(), record.getKillNumber());
+    }
+
+    private boolean sameAs(int row, HistoryRecord record) {
+        if (ids[row] != (record.getId() != null ? record.getId() : 0L)
+                || updatedAt[row] != toMillis(record.getUpdatedAt())
+                || !Objects.equals(numbers[row], record.getNumbers())
+                || !Objects.equals(killNumbers[row], record.getKillNumber())
+                || !Objects.equals(outcome.get(row), record.getOutcome())
+                || !Objects.equals(bettingResult.get(row), record.getBettingResult())
+                || !Objects.equals(openResult.get(row), record.getOpenResult())
+                || !Objects.equals(prediction.get(row), record.getPrediction())
+                || totalNumbers[row] != totalNumberOf(record)) {
+            return false;
+        }
+        if (record instanceof Sf444HistoryRecord sf444Record) {
+            return flags[row] == (sf444Record.getFlag() != null ? sf444Record.getFlag().byteValue() : -1)
+                    && Objects.equals(finalResult.get(row), sf444Record.getFinalResult());
+        }
+        return true;
+    }
+
+    private static int totalNumberOf(HistoryRecord record) {
+        return record.getTotalNumber() != null ? record.getTotalNumber() : NO_TOTAL;
+    }
+
+    private void advanceWatermark(HistoryRecord record) {
+        if (record.getId() != null && record.getId() > maxId) {
+            maxId = record.getId();
+        }
+        long updated = toMillis(record.getUpdatedAt());
+        if (updated > maxUpdatedAt) {
+            maxUpdatedAt = updated;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= periods.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, periods.length * 2);
+        periods = Arrays.copyOf(periods, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        traits = Arrays.copyOf(traits, newCapacity);
+        totalNumbers = Arrays.copyOf(totalNumbers, newCapacity);
+        flags = Arrays.copyOf(flags, newCapacity);
+        createdAt = Arrays.copyOf(createdAt, newCapacity);
+        updatedAt = Arrays.copyOf(updatedAt, newCapacity);
+        numbers = Arrays.copyOf(numbers, newCapacity);
+        drawDigits = Arrays.copyOf(drawDigits, newCapacity);
+        killNumbers = Arrays.copyOf(killNumbers, newCapacity);
+        killMasks = Arrays.copyOf(killMasks, newCapacity);
+        prediction.ensureCapacity(newCapacity);
+        outcome.ensureCapacity(newCapacity);
+        bettingResult.ensureCapacity(newCapacity);
+        openResult.ensureCapacity(newCapacity);
+        finalResult.ensureCapacity(newCapacity);
+    }
+
+    private void shift(int row, int n) {
+        int length = n - row;
+        System.arraycopy(periods, row, periods, row + 1, length);
+        System.arraycopy(ids, row, ids, row + 1, length);
+        System.arraycopy(traits, row, traits, row + 1, length);
+        System.arraycopy(totalNumbers, row, totalNumbers, row + 1, length);
+        System.arraycopy(flags, row, flags, row + 1, length);
+        System.arraycopy(createdAt, row, createdAt, row + 1, length);
+        System.arraycopy(updatedAt, row, updatedAt, row + 1, length);
+        System.arraycopy(numbers, row, numbers, row + 1, length);
+        System.arraycopy(drawDigits, row, drawDigits, row + 1, length);
+        System.arraycopy(killNumbers, row, killNumbers, row + 1, length);
+        System.arraycopy(killMasks, row, killMasks, row + 1, length);
+        prediction.insert(row, n, null);
+        outcome.insert(row, n, null);
+        bettingResult.insert(row, n, null);
+        openResult.insert(row, n, null);
+        finalResult.insert(row, n, null);
+    }
+
+    // ---------------- 快照读写 ----------------
+
+    /**
+     * 以列为单位写出全部数据，调用方需持有读锁
+     */
+    void write(DataOutputStream out) throws IOException {
+        int n = size;
+        out.writeInt(n);
+        out.writeBoolean(extended);
+        out.writeLong(maxId);
+        out.writeLong(maxUpdatedAt);
+        out.writeLong(version);
+        for (int i = 0; i < n; i++) {
+            out.writeInt(periods[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeLong(ids[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeLong(createdAt[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeLong(updatedAt[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeInt(totalNumbers[i]);
+        }
+        out.write(flags, 0, n);
+        prediction.write(out, n);
+        outcome.write(out, n);
+        bettingResult.write(out, n);
+        openResult.write(out, n);
+        finalResult.write(out, n);
+        writeStrings(out, numbers, n);
+        writeStrings(out, killNumbers, n);
+    }
+
+    /**
+     * 从快照中恢复数据，数值列直接从映射缓冲区批量读取
+     */
+    static ServerHistory read(String serverName, ByteBuffer in) {
+        ServerHistory history = new ServerHistory(serverName);
+        int n = in.getInt();
+        history.ensureCapacity(Math.max(n, INITIAL_CAPACITY));
+        history.extended = in.get() != 0;
+        history.maxId = in.getLong();
+        history.maxUpdatedAt = in.getLong();
+        history.version = in.getLong();
+        in.asIntBuffer().get(history.periods, 0, n);
+        in.position(in.position() + n * Integer.BYTES);
+        in.asLongBuffer().get(history.ids, 0, n);
+        in.position(in.position() + n * Long.BYTES);
+        in.asLongBuffer().get(history.createdAt, 0, n);
+        in.position(in.position() + n * Long.BYTES);
+        in.asLongBuffer().get(history.updatedAt, 0, n);
+        in.position(in.position() + n * Long.BYTES);
+        in.asIntBuffer().get(history.totalNumbers, 0, n);
+        in.position(in.position() + n * Integer.BYTES);
+        in.get(history.flags, 0, n);
+        history.prediction = CategoricalColumn.read(in, n);
+        history.outcome = CategoricalColumn.read(in, n);
+        history.bettingResult = CategoricalColumn.read(in, n);
+        history.openResult = CategoricalColumn.read(in, n);
+        history.finalResult = CategoricalColumn.read(in, n);
+        history.prediction.ensureCapacity(history.periods.length);
+        history.outcome.ensureCapacity(history.periods.length);
+        history.bettingResult.ensureCapacity(history.periods.length);
+        history.openResult.ensureCapacity(history.periods.length);
+        history.finalResult.ensureCapacity(history.periods.length);
+        readStrings(in, history.numbers, n);
+        readStrings(in, history.killNumbers, n);
+
+        // 特征位、杀号掩码、开奖数字和期号索引不落盘，恢复时根据原始列重新计算
+        for (int i = 0; i < n; i++) {
+            history.traits[i] = RowTraits.compute(history.outcome.get(i), history.bettingResult.get(i),
+                    history.openResult.get(i), history.prediction.get(i), history.killNumbers[i]);
+            history.killMasks[i] = KillMask.parse(history.killNumbers[i]);
+            history.drawDigits[i] = DrawDigits.parse(history.numbers[i]);
+            history.periodIndex.put(history.periods[i], i);
+        }
+        history.size = n;
+        return history;
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            if (values[i] == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static void readStrings(ByteBuffer in, String[] values, int n) {
+        for (int i = 0; i < n; i++) {
+            int length = in.getInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                in.get(bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return millis == NO_TIME ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,114 @@
+package org.dataanalysis.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内存映射快照文件
+ * 文件由文件头和若干命名分段组成，写入时先写临时文件再原子替换，读取时直接映射到内存
+ *
+ * 文件结构：
+ * magic(int) | formatVersion(int) | createdAt(long) | sectionCount(int) |
+ * [nameLength(short) | name(UTF-8) | payloadLength(int) | payload] ...
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x44415348;
+
+    /**
+     * 快照格式版本，任何分段的布局发生变化时都需要加1，旧版本的文件会被忽略
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_BYTES = Integer.BYTES * 3 + Long.BYTES;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * 写入快照
+     *
+     * @param path 快照文件路径
+     * @param sections 分段名称和内容
+     */
+    public static void write(Path path, Map<String, byte[]> sections) throws IOException {
+        long totalBytes = HEADER_BYTES;
+        for (Map.Entry<String, byte[]> entry : sections.entrySet()) {
+            totalBytes += Short.BYTES + entry.getKey().getBytes(StandardCharsets.UTF_8).length
+                    + Integer.BYTES + entry.getValue().length;
+        }
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IOException("快照文件超过2GB，无法映射: " + totalBytes);
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, totalBytes);
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putInt(sections.size());
+            for (Map.Entry<String, byte[]> entry : sections.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                buffer.putShort((short) name.length);
+                buffer.put(name);
+                buffer.putInt(entry.getValue().length);
+                buffer.put(entry.getValue());
+            }
+            buffer.force();
+        }
+
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照
+     *
+     * @param path 快照文件路径
+     * @return 分段名称和对应的只读缓冲区；文件不存在或版本不匹配时返回空Map
+     */
+    public static Map<String, ByteBuffer> read(Path path) throws IOException {
+        Map<String, ByteBuffer> sections = new LinkedHashMap<>();
+        if (!Files.isRegularFile(path)) {
+            return sections;
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return sections;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return sections;
+        }
+        buffer.getLong();
+        int sectionCount = buffer.getInt();
+        for (int i = 0; i < sectionCount; i++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            int length = buffer.getInt();
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            sections.put(new String(name, StandardCharsets.UTF_8), payload);
+        }
+        return sections;
+    }
+}
@@ -0,0 +1,39 @@
+package org.dataanalysis.store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 随历史数据一起写入快照的附加分段，由需要持久化自身状态的监听器实现
+ * 分段只覆盖除最新一期以外的行：最新一期常被开奖结果覆盖，不写入快照，恢复后与之后新增的行一起通过onAppend补上；
+ * 快照之后更早的行发生过撤回或重建时，分段作废，退回onReload全量重建
+ */
+public interface SnapshotSection extends HistoryListener {
+
+    /**
+     * 分段名称，快照中以"名称/服务器"为键
+     */
+    String sectionName();
+
+    /**
+     * 写出前rows行对应的状态，调用方持有读锁，rows为size-1或size
+     */
+    void writeSection(ServerHistory history, int rows, DataOutputStream out) throws IOException;
+
+    /**
+     * 从快照恢复前rows行对应的状态，调用方持有写锁
+     *
+     * @return 是否恢复成功，失败时调用方会调用onReload
+     */
+    boolean readSection(ServerHistory history, int rows, ByteBuffer in);
+
+    /**
+     * 分段是否只保存无法从历史数据重建的状态(例如同步时得到的计数)
+     * 为true时不论快照之后的行是否被撤回或重建都会恢复，readSection收到的rows为当前的全部行数，
+     * 由实现自行根据当前数据重建与行有关的部分，恢复后不再补发onAppend
+     */
+    default boolean rowIndependent() {
+        return false;
+    }
+}
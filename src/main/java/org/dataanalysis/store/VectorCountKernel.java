@@ -0,0 +1,90 @@
+package org.dataanalysis.store;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于Vector API的计数内核
+ * 项目中只有这个类引用jdk.incubator.vector，运行时未加--add-modules jdk.incubator.vector时不会被加载
+ */
+final class VectorCountKernel implements CountKernel {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    // 编码个数超过该值时逐个编码比较不再划算，直接逐行计数
+    private static final int MAX_VECTOR_CODES = 16;
+    // 字节通道累加前最多处理的块数，避免通道计数溢出
+    private static final int BYTE_LANE_LIMIT = 127;
+
+    private final ScalarCountKernel scalar = new ScalarCountKernel();
+
+    @Override
+    public int[] countMasks(int[] traits, int from, int to, int[] masks) {
+        // 每个mask一个通道累加器：命中的通道加1，最后一次性归约
+        IntVector one = IntVector.broadcast(INTS, 1);
+        IntVector[] acc = new IntVector[masks.length];
+        IntVector[] maskVectors = new IntVector[masks.length];
+        for (int k = 0; k < masks.length; k++) {
+            acc[k] = IntVector.zero(INTS);
+            maskVectors[k] = IntVector.broadcast(INTS, masks[k]);
+        }
+
+        int i = from;
+        int bound = from + INTS.loopBound(to - from);
+        for (; i < bound; i += INTS.length()) {
+            IntVector rows = IntVector.fromArray(INTS, traits, i);
+            for (int k = 0; k < masks.length; k++) {
+                VectorMask<Integer> hit = rows.and(maskVectors[k]).eq(maskVectors[k]);
+                acc[k] = acc[k].add(one, hit);
+            }
+        }
+
+        int[] counts = scalar.countMasks(traits, i, to, masks);
+        for (int k = 0; k < masks.length; k++) {
+            counts[k] += acc[k].reduceLanes(VectorOperators.ADD);
+        }
+        return counts;
+    }
+
+    @Override
+    public int[] countCodes(byte[] codes, int from, int to, int codeCount) {
+        if (codeCount > MAX_VECTOR_CODES) {
+            return scalar.countCodes(codes, from, to, codeCount);
+        }
+        int i = from;
+        int bound = from + BYTES.loopBound(to - from);
+        int[] counts = new int[codeCount];
+        while (i < bound) {
+            // 在字节通道里累加若干块后再展开到int，减少归约次数
+            int blockEnd = Math.min(bound, i + BYTE_LANE_LIMIT * BYTES.length());
+            for (int c = 0; c < codeCount; c++) {
+                ByteVector code = ByteVector.broadcast(BYTES, (byte) c);
+                ByteVector acc = ByteVector.zero(BYTES);
+                for (int j = i; j < blockEnd; j += BYTES.length()) {
+                    VectorMask<Byte> hit = ByteVector.fromArray(BYTES, codes, j).eq(code);
+                    acc = acc.add((byte) 1, hit);
+                }
+                counts[c] += widenedSum(acc);
+            }
+            i = blockEnd;
+        }
+        int[] tail = scalar.countCodes(codes, i, to, codeCount);
+        for (int c = 0; c < codeCount; c++) {
+            counts[c] += tail[c];
+        }
+        return counts;
+    }
+
+    // 字节通道直接归约会溢出，按四段转换成int后再求和
+    private static int widenedSum(ByteVector acc) {
+        int sum = 0;
+        for (int part = 0; part < 4; part++) {
+            sum += ((IntVector) acc.convert(VectorOperators.B2I, part)).reduceLanes(VectorOperators.ADD);
+        }
+        return sum;
+    }
+}
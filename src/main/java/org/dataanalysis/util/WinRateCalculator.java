@@ -1,6 +1,13 @@
 package org.dataanalysis.util;
 
 import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.stats.TotalBuckets;
+import org.dataanalysis.stats.TotalHistogram;
+import org.dataanalysis.stats.result.ComprehensiveRates;
+import org.dataanalysis.stats.result.MaxStreakStats;
+import org.dataanalysis.stats.result.ResultDistribution;
+import org.dataanalysis.stats.result.StreakStats;
+import org.dataanalysis.stats.result.WinRate;
 import org.springframework.stereotype.Component;
 import lombok.extern.slf4j.Slf4j;
 
@@ -23,16 +30,7 @@ public class WinRateCalculator {
      * @return 胜率统计结果
      */
     public Map<String, Object> calculateWinRate(String serverName, int total, int correct, int incorrect) {
-        double winRate = total > 0 ? (double) correct / total * 100 : 0;
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("serverName", serverName);
-        result.put("totalCount", total);
-        result.put("correctCount", correct);
-        result.put("incorrectCount", incorrect);
-        result.put("winRate", String.format("%.2f%%", winRate));
-        
-        return result;
+        return WinRate.overall(serverName, total, correct, incorrect).toMap();
     }
     
     /**
@@ -54,17 +52,7 @@ public class WinRateCalculator {
                 .filter(record -> "错".equals(record.getOutcome()))
                 .count();
         
-        double winRate = total > 0 ? (double) correct / total * 100 : 0;
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("serverName", serverName);
-        result.put("recentCount", recentCount);
-        result.put("totalCount", total);
-        result.put("correctCount", correct);
-        result.put("incorrectCount", incorrect);
-        result.put("winRate", String.format("%.2f%%", winRate));
-        
-        return result;
+        return WinRate.recent(serverName, recentCount, total, correct, incorrect).toMap();
     }
     
     /**
@@ -75,6 +63,11 @@ public class WinRateCalculator {
      * @return 结果分析统计
      */
     public Map<String, Object> analyzeResults(String serverName, List<HistoryRecord> allRecords) {
+        return resultDistribution(serverName, allRecords, null).toMap();
+    }
+
+    private ResultDistribution resultDistribution(String serverName, List<HistoryRecord> allRecords,
+                                                  ResultDistribution.Detail detail) {
         // 统计单双分布
         long singleCount = allRecords.stream()
                 .filter(record -> "单".equals(record.getOpenResult()))
@@ -85,27 +78,19 @@ public class WinRateCalculator {
                 .count();
         
         // 统计总和分布
-        Map<Integer, Integer> totalNumberDistribution = new HashMap<>();
-        allRecords.forEach(record -> {
-            Integer totalNumber = record.getTotalNumber();
-            if (totalNumber != null) {
-                totalNumberDistribution.put(totalNumber, 
-                        totalNumberDistribution.getOrDefault(totalNumber, 0) + 1);
+        return new ResultDistribution(serverName, allRecords.size(), singleCount, doubleCount,
+                totalHistogram(allRecords).toMap(), detail);
+    }
+
+    // 总和直方图，逐条累加不装箱，超出常规范围的总和也按原值计数
+    private static TotalHistogram totalHistogram(List<HistoryRecord> allRecords) {
+        TotalHistogram histogram = new TotalHistogram();
+        for (HistoryRecord record : allRecords) {
+            if (record.getTotalNumber() != null) {
+                histogram.add(record.getTotalNumber(), 1);
             }
-        });
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("serverName", serverName);
-        result.put("totalRecords", allRecords.size());
-        result.put("singleCount", singleCount);
-        result.put("doubleCount", doubleCount);
-        result.put("singleRate", String.format("%.2f%%", 
-                allRecords.size() > 0 ? (double) singleCount / allRecords.size() * 100 : 0));
-        result.put("doubleRate", String.format("%.2f%%", 
-                allRecords.size() > 0 ? (double) doubleCount / allRecords.size() * 100 : 0));
-        result.put("totalNumberDistribution", totalNumberDistribution);
-        
-        return result;
+        }
+        return histogram;
     }
     
     /**
@@ -117,16 +102,9 @@ public class WinRateCalculator {
      */
     public Map<String, Object> comprehensiveRateAnalysis(String serverName, List<HistoryRecord> records) {
         if (records == null || records.isEmpty()) {
-            Map<String, Object> emptyResult = new HashMap<>();
-            emptyResult.put("serverName", serverName);
-            emptyResult.put("error", "无有效记录数据");
-            return emptyResult;
+            return new ComprehensiveRates(serverName, 0, 0, 0, 0, 0, 0, 0).toMap();
         }
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("serverName", serverName);
-        result.put("totalRecords", records.size());
-        
         // 基础计数
         int totalCount = records.size();
         
@@ -172,41 +150,12 @@ public class WinRateCalculator {
                 .filter(record -> "未命中亏损".equals(record.getBettingResult()))
                 .count();
         
-        // ------- 计算各种胜率和概率 -------
-        
-        // 1. 总体预测胜率：总命中次数÷总预测次数
-        double predictionWinRate = totalCount > 0 ? (double) correctCount / totalCount * 100 : 0;
-        
-        // 2. 总体胜率：（命中次数-被杀次数）/总预测次数
-        double actualWinRate = totalCount > 0 ? (double) (correctCount - correctButKilledCount) / totalCount * 100 : 0;
-        
-        // 3. 被杀概率：杀的次数/总次数
-        double killedRate = totalCount > 0 ? (double) killedCount / totalCount * 100 : 0;
-        
-        // 4. 预测必杀概率：预测中被杀/预测中次数
-        double correctKilledRate = correctCount > 0 ? (double) correctButKilledCount / correctCount * 100 : 0;
-        
-        // 5. 盈利比：（未命中盈利+命中盈利）/总次数
-        double profitRate = totalCount > 0 ? (double) (hitProfitCount + missButProfitCount) / totalCount * 100 : 0;
-        
-        // 6. 亏损比： （未命中亏损+命中被杀）/总次数
-        double lossRate = totalCount > 0 ? (double) (missAndLossCount + hitButKilledCount) / totalCount * 100 : 0;
-        
-        // 将计算结果添加到返回Map
-        result.put("totalPredictionCount", totalCount);
-        result.put("correctPredictionCount", correctCount);
-        result.put("incorrectPredictionCount", incorrectCount);
-        result.put("killedCount", killedCount);
-        result.put("correctButKilledCount", correctButKilledCount);
-        
-        result.put("predictionWinRate", String.format("%.2f%%", predictionWinRate));  // 总体预测胜率
-        result.put("actualWinRate", String.format("%.2f%%", actualWinRate));          // 总体实际胜率(排除被杀)
-        result.put("killedRate", String.format("%.2f%%", killedRate));                // 被杀概率
-        result.put("correctKilledRate", String.format("%.2f%%", correctKilledRate));  // 预测命中被杀概率
-        result.put("profitRate", String.format("%.2f%%", profitRate));                // 盈利比例
-        result.put("lossRate", String.format("%.2f%%", lossRate));                    // 亏损比例
-        
-        return result;
+        // 各种胜率和概率由结果对象按计数现算：
+        // 预测胜率=中÷总数，实际胜率=(中-中但被杀)÷总数，被杀概率=被杀÷总数，
+        // 预测必杀概率=中但被杀÷中，盈利比=(命中盈利+未命中盈利)÷总数，亏损比=(未命中亏损+命中被杀)÷总数
+        return new ComprehensiveRates(serverName, totalCount, correctCount, incorrectCount, killedCount,
+                correctButKilledCount, hitProfitCount + missButProfitCount,
+                missAndLossCount + hitButKilledCount).toMap();
     }
     
     /**
@@ -231,9 +180,6 @@ public class WinRateCalculator {
      * @return 连续性统计结果
      */
     public Map<String, Object> calculateConsecutiveStats(String serverName, List<HistoryRecord> records) {
-        Map<String, Object> result = new HashMap<>();
-        result.put("serverName", serverName);
-        
         // 默认值设置
         int consecutiveCorrect = 0;
         int consecutiveIncorrect = 0;
@@ -243,11 +189,7 @@ public class WinRateCalculator {
         // 空记录处理
         if (records == null || records.isEmpty()) {
             log.debug(serverName + ": 没有数据记录");
-            result.put("consecutiveCorrect", consecutiveCorrect);       
-            result.put("consecutiveIncorrect", consecutiveIncorrect);   
-            result.put("consecutiveProfit", consecutiveProfit);      
-            result.put("consecutiveLoss", consecutiveLoss);        
-            return result;
+            return new StreakStats(serverName, 0, 0, 0, 0).toMap();
         }
 
         log.debug(serverName + ": 收到" + records.size() + "条记录进行连续统计");
@@ -376,16 +318,11 @@ public class WinRateCalculator {
         log.debug(serverName + ": 数据中出现的outcome值：" + outcomeValues);
         log.debug(serverName + ": 数据中出现的bettingResult值：" + bettingResultValues);
         
-        // 存储连续统计结果
-        result.put("consecutiveCorrect", consecutiveCorrect);       // 当前连中次数
-        result.put("consecutiveIncorrect", consecutiveIncorrect);   // 当前连错次数
-        result.put("consecutiveProfit", consecutiveProfit);         // 当前连续盈利次数
-        result.put("consecutiveLoss", consecutiveLoss);             // 当前连续亏损次数
-        
         log.debug(serverName + ": 计算结果 - 连中:" + consecutiveCorrect + ", 连错:" + 
                     consecutiveIncorrect + ", 连盈利:" + consecutiveProfit + ", 连亏损:" + consecutiveLoss);
         
-        return result;
+        return new StreakStats(serverName, consecutiveCorrect, consecutiveIncorrect,
+                consecutiveProfit, consecutiveLoss).toMap();
     }
     
     /**
@@ -396,8 +333,6 @@ public class WinRateCalculator {
      * @return 扩展的结果分析统计
      */
     public Map<String, Object> analyzeDetailedResults(String serverName, List<HistoryRecord> allRecords) {
-        Map<String, Object> result = analyzeResults(serverName, allRecords);
-        
         // 杀号情况统计
         long killedSingleCount = allRecords.stream()
                 .filter(record -> "单".equals(record.getOpenResult()) 
@@ -422,39 +357,18 @@ public class WinRateCalculator {
                         && "双".equals(record.getOpenResult()))
                 .count();
         
-        // 数字分段统计（可根据需要调整区间）
+        // 数字分段统计，区间由总和直方图汇总得到
         Map<String, Integer> numberRangeDistribution = new HashMap<>();
-        allRecords.forEach(record -> {
-            Integer totalNumber = record.getTotalNumber();
-            if (totalNumber != null) {
-                String range;
-                if (totalNumber <= 10) {
-                    range = "0-10";
-                } else if (totalNumber <= 20) {
-                    range = "11-20";
-                } else if (totalNumber <= 30) {
-                    range = "21-30";
-                } else {
-                    range = "30+";
-                }
-                numberRangeDistribution.put(range, 
-                        numberRangeDistribution.getOrDefault(range, 0) + 1);
+        int[] rangeCounts = totalHistogram(allRecords).bucketCounts(TotalBuckets.LEGACY);
+        for (int i = 0; i < rangeCounts.length; i++) {
+            if (rangeCounts[i] > 0) {
+                numberRangeDistribution.put(TotalBuckets.LEGACY.buckets().get(i).label(), rangeCounts[i]);
             }
-        });
-        
-        // 添加新的统计数据到结果
-        result.put("killedSingleCount", killedSingleCount);
-        result.put("killedDoubleCount", killedDoubleCount);
-        result.put("killedSingleRate", String.format("%.2f%%", 
-                (long)result.get("singleCount") > 0 ? (double)killedSingleCount / (long)result.get("singleCount") * 100 : 0));
-        result.put("killedDoubleRate", String.format("%.2f%%", 
-                (long)result.get("doubleCount") > 0 ? (double)killedDoubleCount / (long)result.get("doubleCount") * 100 : 0));
-        
-        result.put("correctSinglePredictions", correctSinglePredictions);
-        result.put("correctDoublePredictions", correctDoublePredictions);
-        result.put("numberRangeDistribution", numberRangeDistribution);
+        }
         
-        return result;
+        ResultDistribution.Detail detail = new ResultDistribution.Detail(killedSingleCount, killedDoubleCount,
+                correctSinglePredictions, correctDoublePredictions, numberRangeDistribution);
+        return resultDistribution(serverName, allRecords, detail).toMap();
     }
     
     /**
@@ -466,15 +380,9 @@ public class WinRateCalculator {
      */
     public Map<String, Object> findHistoricalConsecutiveStats(String serverName, List<HistoryRecord> allRecords) {
         if (allRecords == null || allRecords.isEmpty()) {
-            Map<String, Object> emptyResult = new HashMap<>();
-            emptyResult.put("serverName", serverName);
-            emptyResult.put("error", "无有效记录数据");
-            return emptyResult;
+            return new MaxStreakStats(serverName, 0, 0, 0, 0, 0, 0, 0, 0, 0).toMap();
         }
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("serverName", serverName);
-        
         // 初始化最大连续计数
         int maxConsecutiveCorrect = 0;
         int maxConsecutiveIncorrect = 0;
@@ -533,6 +441,12 @@ public class WinRateCalculator {
             
             // 检查是否是新的连盈利序列开始
             if ("命中盈利".equals(record.getBettingResult()) || "未命中盈利".equals(record.getBettingResult())) {
+                // 更新最大连亏损记录
+                if (currentConsecutiveLoss > maxConsecutiveLoss) {
+                    maxConsecutiveLoss = currentConsecutiveLoss;
+                    maxLossStartPeriod = lossStartPeriod;
+                }
+
                 if (currentConsecutiveProfit == 0) {
                     profitStartPeriod = record.getPeriod();
                 }
@@ -586,18 +500,8 @@ public class WinRateCalculator {
             }
         }
         
-        // 存储历史最高连续统计结果
-        result.put("maxConsecutiveCorrect", maxConsecutiveCorrect);       // 历史最高连中次数
-        result.put("maxConsecutiveIncorrect", maxConsecutiveIncorrect);   // 历史最高连错次数
-        result.put("maxConsecutiveProfit", maxConsecutiveProfit);         // 历史最高连续盈利次数
-        result.put("maxConsecutiveLoss", maxConsecutiveLoss);             // 历史最高连续亏损次数
-        
-        // 存储历史最高连续统计的开始期号
-        result.put("maxCorrectStartPeriod", maxCorrectStartPeriod);
-        result.put("maxIncorrectStartPeriod", maxIncorrectStartPeriod);
-        result.put("maxProfitStartPeriod", maxProfitStartPeriod);
-        result.put("maxLossStartPeriod", maxLossStartPeriod);
-        
-        return result;
+        return new MaxStreakStats(serverName, allRecords.size(),
+                maxConsecutiveCorrect, maxConsecutiveIncorrect, maxConsecutiveProfit, maxConsecutiveLoss,
+                maxCorrectStartPeriod, maxIncorrectStartPeriod, maxProfitStartPeriod, maxLossStartPeriod).toMap();
     }
 } 
\ No newline at end of file
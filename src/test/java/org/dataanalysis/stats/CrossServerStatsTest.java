@@ -0,0 +1,108 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CrossServerStatsTest {
+
+    private static final String[] SERVERS = {"sf1", "sf3", "sf4"};
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void incrementalMatricesMatchRebuildAndScan() {
+        HistoryStore store = store(new int[]{0, 37, 500}, new int[]{1500, 1400, 900});
+        CrossServerStats stats = stats(store);
+
+        // 追加新期号、覆盖最新一期都走增量路径
+        ServerHistory sf3 = store.history("sf3");
+        List<HistoryRecord> extra = StatisticsEngineTest.randomHistory(60, 8).toRecordsDescending(60);
+        for (int i = extra.size() - 1; i >= 0; i--) {
+            HistoryRecord record = extra.get(i);
+            record.setPeriod(3200000 + 1437 + (59 - i));
+            upsert(sf3, record, stats);
+        }
+        HistoryRecord latest = sf3.toRecord(sf3.size() - 1);
+        latest.setId(latest.getId() + 1000);
+        latest.setOutcome("中");
+        latest.setKillNumber("杀");
+        upsert(sf3, latest, stats);
+
+        Map<String, Object> incremental = stats.correlations(List.of(50, 700), false);
+        Map<String, Object> rebuilt = stats(store).correlations(List.of(50, 700), false);
+        assertEquals(rebuilt.get("overall"), incremental.get("overall"));
+        assertEquals(rebuilt.get("windows"), incremental.get("windows"));
+
+        Map<String, Object> overall = (Map<String, Object>) incremental.get("overall");
+        int coHit = 0;
+        int common = 0;
+        ServerHistory sf1 = store.history("sf1");
+        int sf3Hits = 0;
+        // 全部历史的矩阵不含各服务器的最新一期
+        for (int row = 0; row < sf3.size() - 1; row++) {
+            sf3Hits += sf3.has(row, RowTraits.HIT) ? 1 : 0;
+            int other = sf1.indexOfPeriod(sf3.period(row));
+            if (other >= 0 && other < sf1.size() - 1) {
+                common++;
+                coHit += sf1.has(other, RowTraits.HIT) && sf3.has(row, RowTraits.HIT) ? 1 : 0;
+            }
+        }
+        assertEquals(common, ((List<List<Object>>) overall.get("commonPeriods")).get(0).get(1));
+        assertEquals(coHit, ((List<List<Object>>) overall.get("coHit")).get(1).get(0));
+        assertEquals(sf3Hits, ((List<List<Object>>) overall.get("coHit")).get(1).get(1));
+        assertEquals(1.0, ((List<List<Object>>) overall.get("hitCorrelation")).get(2).get(2));
+    }
+
+    @Test
+    void phiMatchesDefinition() {
+        assertEquals(1.0, CrossServerStats.phi(10, 0, 0, 10));
+        assertEquals(-1.0, CrossServerStats.phi(0, 5, 5, 0));
+        assertEquals(0.0, CrossServerStats.phi(5, 5, 5, 5));
+        assertEquals(null, CrossServerStats.phi(0, 0, 3, 4));
+    }
+
+    private static void upsert(ServerHistory history, HistoryRecord record, CrossServerStats stats) {
+        history.lock().writeLock().lock();
+        try {
+            history.upsert(record, stats);
+        } finally {
+            history.lock().writeLock().unlock();
+        }
+    }
+
+    private static CrossServerStats stats(HistoryStore store) {
+        CrossServerStats stats = new CrossServerStats();
+        ReflectionTestUtils.setField(stats, "historyStore", store);
+        ReflectionTestUtils.setField(stats, "servers", SERVERS);
+        stats.init();
+        return stats;
+    }
+
+    // 各服务器从不同期号开始，期数也不同
+    private static HistoryStore store(int[] offsets, int[] sizes) {
+        HistoryStore store = new HistoryStore();
+        ReflectionTestUtils.setField(store, "servers", SERVERS);
+        @SuppressWarnings("unchecked")
+        Map<String, ServerHistory> histories = (Map<String, ServerHistory>) ReflectionTestUtils.getField(store, "histories");
+        for (int s = 0; s < SERVERS.length; s++) {
+            List<HistoryRecord> records = StatisticsEngineTest.randomHistory(sizes[s], s + 1).toRecordsDescending(sizes[s]);
+            ServerHistory history = new ServerHistory(SERVERS[s]);
+            for (int i = records.size() - 1; i >= 0; i--) {
+                HistoryRecord record = records.get(i);
+                record.setPeriod(record.getPeriod() + offsets[s]);
+                record.setServerName(SERVERS[s]);
+                history.upsert(record);
+            }
+            histories.put(SERVERS[s], history);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,119 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.repository.HistorySyncRepository;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataQualityTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void initialLoadAnomaliesAreCountedOnce() throws Exception {
+        // 期号103有id 3和id 9两条记录，102在最新期号之后才到达
+        List<HistoryRecord> table = new ArrayList<>(List.of(
+                record(1, 100), record(2, 101), record(9, 103), record(3, 103), record(4, 104)));
+        HistoryStore store = store(table);
+        store.init();
+        DataQuality quality = quality(store);
+
+        assertEquals(1L, quality.summary().get("duplicateCount"));
+
+        // 之后的每次同步都会重新读到期号103的两条记录
+        table.add(record(10, 102));
+        store.syncAll();
+        store.syncAll();
+        Map<String, Object> summary = quality.summary();
+        assertEquals(1L, summary.get("duplicateCount"));
+        assertEquals(1L, summary.get("outOfOrderCount"));
+
+        // 重复和乱序计数随快照分段恢复
+        ServerHistory history = store.history("sf1");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        quality.writeSection(history, history.size() - 1, new DataOutputStream(bytes));
+        DataQuality restored = new DataQuality();
+        ReflectionTestUtils.setField(restored, "historyStore", store);
+        assertTrue(restored.readSection(history, history.size() - 1, ByteBuffer.wrap(bytes.toByteArray())));
+        assertEquals(summary, restored.summary());
+    }
+
+    @Test
+    void countersSurviveRestartWithOutOfOrderCatchUp() {
+        List<HistoryRecord> table = new ArrayList<>(List.of(
+                record(1, 100), record(2, 101), record(9, 103), record(3, 103), record(4, 104)));
+        HistoryStore store = store(table);
+        ReflectionTestUtils.setField(store, "snapshotEnabled", true);
+        ReflectionTestUtils.setField(store, "snapshotPath", tempDir.resolve("snapshot.bin").toString());
+        store.init();
+        DataQuality quality = quality(store);
+        table.add(record(10, 102));
+        store.syncAll();
+        store.checkpoint();
+
+        // 重启追平时插入了更早的期号，快照之后的行已不稳定，计数仍然从快照恢复
+        table.add(record(11, 99));
+        HistoryStore restarted = store(table);
+        ReflectionTestUtils.setField(restarted, "snapshotEnabled", true);
+        ReflectionTestUtils.setField(restarted, "snapshotPath", tempDir.resolve("snapshot.bin").toString());
+        restarted.init();
+        Map<String, Object> summary = quality(restarted).summary();
+        assertEquals(1L, summary.get("duplicateCount"));
+        assertEquals(2L, summary.get("outOfOrderCount"));
+
+        restarted.onApplicationReady();
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(restarted, "initialIngests")).isEmpty());
+    }
+
+    private static HistoryStore store(List<HistoryRecord> table) {
+        HistorySyncRepository repository = new HistorySyncRepository() {
+            @Override
+            public List<HistoryRecord> findAll(String serverName) {
+                return List.copyOf(table);
+            }
+
+            @Override
+            public List<HistoryRecord> findSince(String serverName, long maxId, LocalDateTime updatedSince,
+                                                 int fromPeriod) {
+                return table.stream()
+                        .filter(r -> r.getId() > maxId || r.getPeriod() >= fromPeriod)
+                        .sorted((a, b) -> Integer.compare(a.getPeriod(), b.getPeriod()))
+                        .toList();
+            }
+        };
+        HistoryStore store = new HistoryStore();
+        ReflectionTestUtils.setField(store, "servers", new String[]{"sf1"});
+        ReflectionTestUtils.setField(store, "historySyncRepository", repository);
+        return store;
+    }
+
+    private static DataQuality quality(HistoryStore store) {
+        DataQuality quality = new DataQuality();
+        ReflectionTestUtils.setField(quality, "historyStore", store);
+        quality.init();
+        return quality;
+    }
+
+    private static HistoryRecord record(long id, int period) {
+        HistoryRecord record = new HistoryRecord();
+        record.setId(id);
+        record.setPeriod(period);
+        return record;
+    }
+}
@@ -0,0 +1,93 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.DrawDigits;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DigitFrequenciesTest {
+
+    @Test
+    void parsesCommonNumberFormats() {
+        short packed = DrawDigits.parse("3+5+8=16");
+        assertEquals(3, DrawDigits.digit(packed, 0));
+        assertEquals(5, DrawDigits.digit(packed, 1));
+        assertEquals(8, DrawDigits.digit(packed, 2));
+        assertEquals(16, DrawDigits.sum(packed));
+        assertEquals(packed, DrawDigits.parse("3,5,8"));
+        assertEquals(packed, DrawDigits.parse("358"));
+        assertEquals(DrawDigits.NONE, DrawDigits.parse(null));
+        assertEquals(DrawDigits.NONE, DrawDigits.parse("3+5"));
+        assertEquals(DrawDigits.NONE, DrawDigits.parse("12+5+8"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void incrementalTablesMatchScan() {
+        Random random = new Random(21);
+        ServerHistory history = new ServerHistory("sf1");
+        DigitFrequencies frequencies = new DigitFrequencies(50);
+        for (int i = 0; i < 400; i++) {
+            HistoryRecord record = new HistoryRecord();
+            record.setId((long) i + 1);
+            record.setPeriod(3200000 + i);
+            if (random.nextInt(10) > 0) {
+                record.setNumbers(random.nextInt(10) + "+" + random.nextInt(10) + "+" + random.nextInt(10));
+            }
+            history.upsert(record);
+            frequencies.append(history, i);
+        }
+        for (int row = 399; row >= 390; row--) {
+            frequencies.retract(history, row);
+        }
+        for (int row = 390; row < 400; row++) {
+            frequencies.append(history, row);
+        }
+
+        DigitFrequencies rebuilt = new DigitFrequencies(50);
+        rebuilt.rebuild(history);
+        assertEquals(rebuilt.frequencies(history, 3), frequencies.frequencies(history, 3));
+
+        Map<String, Object> result = frequencies.frequencies(history, 3);
+        List<List<Integer>> heatmap = (List<List<Integer>>) result.get("heatmap");
+        List<Map<String, Object>> digits = (List<Map<String, Object>>) result.get("digits");
+        int latest = history.size() - 1;
+        while (history.drawDigits(latest) == DrawDigits.NONE) {
+            latest--;
+        }
+        for (int digit = 0; digit < 10; digit++) {
+            int recent = 0;
+            int last = -1;
+            for (int row = 0; row < history.size(); row++) {
+                short packed = history.drawDigits(row);
+                if (packed == DrawDigits.NONE) {
+                    continue;
+                }
+                for (int position = 0; position < DrawDigits.POSITIONS; position++) {
+                    if (DrawDigits.digit(packed, position) == digit) {
+                        last = row;
+                        recent += row >= history.size() - 50 ? 1 : 0;
+                    }
+                }
+            }
+            for (int position = 0; position < DrawDigits.POSITIONS; position++) {
+                int expected = 0;
+                for (int row = 0; row < history.size(); row++) {
+                    short packed = history.drawDigits(row);
+                    if (packed != DrawDigits.NONE && DrawDigits.digit(packed, position) == digit) {
+                        expected++;
+                    }
+                }
+                assertEquals(expected, heatmap.get(position).get(digit));
+            }
+            assertEquals(recent, digits.get(digit).get("recentCount"));
+            assertEquals(latest - last, digits.get(digit).get("omission"));
+        }
+    }
+}
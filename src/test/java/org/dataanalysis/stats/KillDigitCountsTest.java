@@ -0,0 +1,71 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.KillMask;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KillDigitCountsTest {
+
+    private static final String[] KILL_NUMBERS = {null, "", "杀", "3", "1,5,7", "2 4", "089", "1,1"};
+
+    @Test
+    void parsesEverySeparatorStyle() {
+        assertEquals(0, KillMask.parse(null));
+        assertEquals(0, KillMask.parse(""));
+        assertEquals(KillMask.NON_DIGIT, KillMask.parse("杀") & 0xFFFF);
+        assertEquals(0b10100010, KillMask.parse("1,5,7"));
+        assertEquals(0b10100010, KillMask.parse("1 5  7"));
+        assertEquals(0b10100010, KillMask.parse("157"));
+        assertEquals(1, KillMask.killCount(KillMask.parse("杀")));
+        assertEquals(3, KillMask.killCount(KillMask.parse("0,8,9")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void incrementalCountsMatchScan() {
+        Random random = new Random(3);
+        ServerHistory history = new ServerHistory("sf1");
+        KillDigitCounts counts = new KillDigitCounts();
+        for (int i = 0; i < 500; i++) {
+            HistoryRecord record = new HistoryRecord();
+            record.setId((long) i + 1);
+            record.setPeriod(3200000 + i);
+            record.setKillNumber(KILL_NUMBERS[random.nextInt(KILL_NUMBERS.length)]);
+            history.upsert(record);
+            counts.append(history, i);
+        }
+        counts.retract(history, 499);
+        counts.append(history, 499);
+
+        Map<String, Object> data = KillNumberStats.killNumberData(history, counts);
+        long totalKilled = 0;
+        List<Integer> killCounts = (List<Integer>) data.get("killCounts");
+        for (int row = 0; row < history.size(); row++) {
+            String killNumber = history.killNumber(row);
+            int expected = killNumber == null || killNumber.isEmpty() ? 0
+                    : killNumber.chars().anyMatch(Character::isDigit)
+                    ? (int) killNumber.chars().filter(Character::isDigit).distinct().count() : 1;
+            assertEquals(expected, killCounts.get(history.size() - 1 - row));
+            totalKilled += expected;
+        }
+        assertEquals(totalKilled, data.get("totalKilled"));
+        for (int digit = 0; digit < KillMask.DIGITS; digit++) {
+            char c = (char) ('0' + digit);
+            int expected = 0;
+            for (int row = 0; row < history.size(); row++) {
+                String killNumber = history.killNumber(row);
+                if (killNumber != null && killNumber.indexOf(c) >= 0) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, counts.digitCount(digit));
+        }
+    }
+}
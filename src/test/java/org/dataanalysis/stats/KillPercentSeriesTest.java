@@ -0,0 +1,125 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KillPercentSeriesTest {
+
+    private static final int[] WINDOWS = {30, 50, 100, 7};
+
+    @Test
+    void matchesMigrationAlgorithm() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(600, 21);
+        KillPercentSeries series = new KillPercentSeries(WINDOWS);
+        series.rebuild(history);
+
+        // 反复撤回并重新应用最新一期，结果不变
+        series.retract(history, 599);
+        series.append(history, 599);
+
+        for (int row = 0; row < history.size(); row++) {
+            for (int w = 0; w < WINDOWS.length; w++) {
+                assertEquals(migrationPercent(history, row, WINDOWS[w]),
+                        BigDecimal.valueOf(series.basisPoints(w, row), 2), "row " + row + " window " + WINDOWS[w]);
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unconfiguredWindowsFallBackToPrefixCounts() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(400, 23);
+        HistoryStore historyStore = new HistoryStore();
+        ReflectionTestUtils.setField(historyStore, "servers", new String[]{"sf444"});
+        ((Map<String, ServerHistory>) ReflectionTestUtils.getField(historyStore, "histories")).put("sf444", history);
+        WindowRates windowRates = new WindowRates();
+        ReflectionTestUtils.setField(windowRates, "historyStore", historyStore);
+        KillPercentWindows windows = new KillPercentWindows();
+        ReflectionTestUtils.setField(windows, "historyStore", historyStore);
+        ReflectionTestUtils.setField(windows, "windowRates", windowRates);
+        ReflectionTestUtils.setField(windows, "windows", new int[]{30});
+
+        for (int row = 0; row < history.size(); row += 7) {
+            int period = history.period(row);
+            assertEquals(migrationPercent(history, row, 30), windows.percent("sf444", period, 30));
+            assertEquals(migrationPercent(history, row, 50), windows.percent("sf444", period, 50));
+            assertEquals(migrationPercent(history, row, 100), windows.percent("sf444", period, 100));
+        }
+    }
+
+    @Test
+    void invalidWindowsFailFast() {
+        assertThrows(IllegalArgumentException.class, () -> new KillPercentSeries(new int[]{30, 0}));
+        assertThrows(IllegalArgumentException.class, () -> new KillPercentSeries(new int[]{-5}));
+        assertThrows(IllegalArgumentException.class, () -> new KillPercentSeries(new int[]{30, 50, 30}));
+        assertThrows(IllegalArgumentException.class, () -> new KillPercentSeries(new int[0]));
+        assertArrayEquals(new int[]{7, 30, 100}, KillPercentSeries.validateWindows(new int[]{100, 7, 30}));
+
+        KillPercentWindows windows = new KillPercentWindows();
+        ReflectionTestUtils.setField(windows, "windows", new int[]{50, 0});
+        assertThrows(IllegalArgumentException.class, windows::init);
+    }
+
+    @Test
+    void countsDigitKillNumbersAsKilled() {
+        // sf1-sf7的杀号为杀掉的数字而不是"杀"
+        Random random = new Random(32);
+        ServerHistory history = new ServerHistory("sf1");
+        for (int i = 0; i < 300; i++) {
+            HistoryRecord record = new HistoryRecord();
+            record.setId((long) i + 1);
+            record.setPeriod(3200000 + i);
+            record.setOutcome("中");
+            int kind = random.nextInt(3);
+            record.setKillNumber(kind == 0 ? null : kind == 1 ? "" : random.nextInt(10) + "," + random.nextInt(10));
+            history.upsert(record);
+        }
+        KillPercentSeries series = new KillPercentSeries(WINDOWS);
+        series.rebuild(history);
+
+        int killed = 0;
+        for (int row = 0; row < history.size(); row++) {
+            for (int w = 0; w < WINDOWS.length; w++) {
+                assertEquals(migrationPercent(history, row, WINDOWS[w]),
+                        BigDecimal.valueOf(series.basisPoints(w, row), 2), "row " + row + " window " + WINDOWS[w]);
+            }
+            String killNumber = history.killNumber(row);
+            killed += killNumber != null && !killNumber.isEmpty() ? 1 : 0;
+        }
+        assertTrue(killed > 0);
+        assertTrue(series.nextBasisPoints(0) > 0);
+    }
+
+    // 迁移程序中的算法：前n期(不含当期)中被杀(杀号不为空)的比例
+    private static BigDecimal migrationPercent(ServerHistory history, int row, int n) {
+        int killCount = 0;
+        int totalCount = 0;
+        for (int i = row - 1; i >= 0 && totalCount < n; i--) {
+            String killNumber = history.killNumber(i);
+            if (killNumber != null && !killNumber.isEmpty()) {
+                killCount++;
+            }
+            totalCount++;
+        }
+        if (totalCount == 0) {
+            return BigDecimal.valueOf(0, 2);
+        }
+        return new BigDecimal(killCount)
+                .divide(new BigDecimal(totalCount), 4, RoundingMode.HALF_UP)
+                .multiply(new BigDecimal(100))
+                .setScale(2, RoundingMode.HALF_UP);
+    }
+}
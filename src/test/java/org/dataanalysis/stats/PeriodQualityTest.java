@@ -0,0 +1,88 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeriodQualityTest {
+
+    @Test
+    void missingCountAndGapsMatchScan() {
+        Random random = new Random(50);
+        PeriodQuality quality = new PeriodQuality(10);
+        TreeSet<Integer> seen = new TreeSet<>();
+        for (int i = 0; i < 2000; i++) {
+            int period = 3200000 + random.nextInt(3000);
+            quality.add(period, true);
+            seen.add(period);
+
+            long expected = seen.last() - seen.first() + 1 - seen.size();
+            assertEquals(expected, quality.missingCount());
+        }
+        List<Map<String, Object>> gaps = quality.gaps(Integer.MAX_VALUE);
+        long total = 0;
+        int previousFrom = Integer.MAX_VALUE;
+        for (Map<String, Object> gap : gaps) {
+            int from = (Integer) gap.get("fromPeriod");
+            int to = (Integer) gap.get("toPeriod");
+            // 最新的缺口在前，区间两端之外都已出现
+            assertTrue(from < previousFrom);
+            assertTrue(seen.contains(from - 1) && seen.contains(to + 1));
+            assertTrue(seen.subSet(from, true, to, true).isEmpty());
+            total += (Integer) gap.get("count");
+            previousFrom = from;
+        }
+        assertEquals(quality.missingCount(), total);
+        assertEquals(3, quality.gaps(3).size());
+        assertTrue(quality.recentAnomalies().size() <= 10);
+    }
+
+    @Test
+    void rebuildKeepsDuplicateAndOrderCounters() {
+        ServerHistory history = new ServerHistory("sf1");
+        for (int period : new int[]{100, 101, 104, 105, 200}) {
+            HistoryRecord record = new HistoryRecord();
+            record.setId((long) period);
+            record.setPeriod(period);
+            history.upsert(record);
+        }
+        PeriodQuality quality = new PeriodQuality(5);
+        quality.rebuild(history);
+        assertEquals(96, quality.missingCount());
+        assertEquals(0, quality.recentAnomalies().size());
+
+        assertTrue(quality.duplicate(104, 999, 104));
+        // 每次同步都会再读到id较小的那条
+        assertFalse(quality.duplicate(104, 104, 999));
+        assertFalse(quality.duplicate(104, 104, 999));
+        quality.outOfOrder(102, 102, 200);
+        quality.add(102, true);
+        assertEquals(95, quality.missingCount());
+        quality.rebuild(history);
+        assertEquals(96, quality.missingCount());
+        assertEquals(1, quality.duplicateCount());
+        assertEquals(1, quality.outOfOrderCount());
+        assertEquals(PeriodQuality.OUT_OF_ORDER, quality.recentAnomalies().get(0).get("type"));
+
+        List<Map<String, Object>> gaps = quality.gaps(10);
+        assertEquals(2, gaps.size());
+        assertEquals(106, gaps.get(0).get("fromPeriod"));
+        assertEquals(199, gaps.get(0).get("toPeriod"));
+        assertEquals(102, gaps.get(1).get("fromPeriod"));
+        assertEquals(2, gaps.get(1).get("count"));
+
+        quality.add(300, true);
+        assertEquals(195, quality.missingCount());
+        assertEquals(PeriodQuality.GAP, quality.recentAnomalies().get(0).get("type"));
+        assertEquals(99, quality.recentAnomalies().get(0).get("count"));
+    }
+}
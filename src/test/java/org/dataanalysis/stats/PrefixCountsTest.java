@@ -0,0 +1,44 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PrefixCountsTest {
+
+    @Test
+    void windowCountsMatchScan() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(1200, 3);
+        PrefixCounts index = new PrefixCounts();
+        index.rebuild(history);
+
+        int n = history.size();
+        for (int mask : PrefixCounts.MASKS) {
+            for (int window : new int[]{0, 1, 30, 50, 100, 650, 1000, 5000}) {
+                int from = Math.max(n - window, 0);
+                int expected = 0;
+                for (int i = from; i < n; i++) {
+                    if (history.has(i, mask)) {
+                        expected++;
+                    }
+                }
+                assertEquals(expected, index.count(mask, from, n));
+            }
+        }
+    }
+
+    @Test
+    void retractThenAppendOverwritesLatest() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(10, 4);
+        PrefixCounts index = new PrefixCounts();
+        index.rebuild(history);
+        int before = index.count(RowTraits.KILLED, 0, 10);
+
+        index.retract(history, 9);
+        assertEquals(9, index.size());
+        index.append(history, 9);
+        assertEquals(before, index.count(RowTraits.KILLED, 0, 10));
+    }
+}
@@ -0,0 +1,83 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryEngineTest {
+
+    private final QueryEngine engine = new QueryEngine();
+    private final ServerHistory history = StatisticsEngineTest.randomHistory(3000, 5);
+
+    @Test
+    void laggedConditionsMatchScan() {
+        HistoryQuery query = HistoryQuery.parse("killed@1=1;killed@2=1;totalNumber=10..17", null,
+                "count,hitCount,winRate", null, null, null, false, 3);
+        Map<String, Object> result = engine.execute(history, query);
+
+        int count = 0;
+        int hits = 0;
+        int newest = -1;
+        for (int row = 2; row < history.size(); row++) {
+            int total = history.totalNumber(row);
+            if (history.has(row - 1, RowTraits.KILLED) && history.has(row - 2, RowTraits.KILLED)
+                    && total >= 10 && total <= 17) {
+                count++;
+                hits += history.has(row, RowTraits.HIT) ? 1 : 0;
+                newest = history.period(row);
+            }
+        }
+        assertEquals(count, result.get("count"));
+        assertEquals(hits, result.get("hitCount"));
+        assertEquals(String.format("%.2f%%", (double) hits / count * 100), result.get("winRate"));
+        assertEquals(3, ((List<?>) result.get("periods")).size());
+        assertEquals(newest, ((List<?>) result.get("periods")).get(0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void groupsPartitionMatchedRows() {
+        HistoryQuery query = HistoryQuery.parse("outcome!=中", "openResult,killed@1", "count",
+                history.period(100), history.period(1999), null, false, 0);
+        Map<String, Object> result = engine.execute(history, query);
+
+        assertEquals(1900, result.get("scannedRows"));
+        int missing = 0;
+        int expected = 0;
+        for (int row = 100; row < 2000; row++) {
+            if (!"中".equals(history.outcome(row))) {
+                expected++;
+                missing += history.openResult(row) == null ? 1 : 0;
+            }
+        }
+        assertEquals(expected, result.get("matchedRows"));
+        List<Map<String, Object>> groups = (List<Map<String, Object>>) result.get("groups");
+        assertEquals(expected, groups.stream().mapToInt(g -> (Integer) g.get("count")).sum());
+        assertEquals(missing, groups.stream()
+                .filter(g -> ((Map<String, Object>) g.get("key")).get("openResult") == null)
+                .mapToInt(g -> (Integer) g.get("count")).sum());
+    }
+
+    @Test
+    void rejectsInvalidQueries() {
+        ReflectionTestUtils.setField(engine, "maxRows", 100);
+        HistoryQuery all = HistoryQuery.parse(null, null, null, null, null, null, false, 0);
+        assertThrows(IllegalArgumentException.class, () -> engine.execute(history, all));
+        assertEquals(100, engine.execute(history,
+                HistoryQuery.parse(null, null, null, null, null, 100, true, 0)).get("scannedRows"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> HistoryQuery.parse("unknown=1", null, null, null, null, null, false, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> HistoryQuery.parse("killed=2", null, null, null, null, null, false, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> HistoryQuery.parse(null, null, "median", null, null, null, false, 0));
+    }
+}
@@ -0,0 +1,57 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.ServerHistory;
+import org.dataanalysis.util.WinRateCalculator;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RecentWinRateCacheTest {
+
+    @Test
+    void windowsAreCachedSeparatelyWithLruEviction() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(1500, 8);
+        RecentWinRateCache cache = cache(history, 2);
+        WinRateCalculator calculator = new WinRateCalculator();
+
+        for (int count : new int[]{30, 50, 100, 500, 1000, 5000}) {
+            Map<String, Object> expected = new HashMap<>(calculator.calculateRecentWinRate("sf1",
+                    history.toRecordsDescending(count), count));
+            expected.put(StatsSnapshot.DATA_VERSION, history.version());
+            assertEquals(expected, cache.get("sf1", count));
+        }
+
+        // 容量为2：访问过的30保留，最久未使用的50被淘汰
+        RecentWinRateCache lru = cache(history, 2);
+        Map<String, Object> w30 = lru.get("sf1", 30);
+        Map<String, Object> w50 = lru.get("sf1", 50);
+        assertSame(w30, lru.get("sf1", 30));
+        lru.get("sf1", 100);
+        assertSame(w30, lru.get("sf1", 30));
+        assertNotSame(w50, lru.get("sf1", 50));
+    }
+
+    private static RecentWinRateCache cache(ServerHistory history, int maxEntries) {
+        HistoryStore historyStore = new HistoryStore();
+        ReflectionTestUtils.setField(historyStore, "servers", new String[]{"sf1"});
+        @SuppressWarnings("unchecked")
+        Map<String, ServerHistory> histories = (Map<String, ServerHistory>) ReflectionTestUtils.getField(historyStore, "histories");
+        histories.put("sf1", history);
+
+        WindowRates windowRates = new WindowRates();
+        ReflectionTestUtils.setField(windowRates, "historyStore", historyStore);
+
+        RecentWinRateCache cache = new RecentWinRateCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(cache, "historyStore", historyStore);
+        ReflectionTestUtils.setField(cache, "windowRates", windowRates);
+        return cache;
+    }
+}
@@ -0,0 +1,182 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.HistoryStore;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowBitmapTest {
+
+    @Test
+    void operationsMatchBitSet() {
+        Random random = new Random(3);
+        // 稀疏、密集和跨块的组合，覆盖数组容器与位图容器之间的转换
+        int[][] shapes = {{200_000, 50}, {200_000, 2}, {70_000, 1}};
+        for (int[] shape : shapes) {
+            int rows = shape[0];
+            BitSet expectedA = new BitSet();
+            BitSet expectedB = new BitSet();
+            RowBitmap a = new RowBitmap();
+            RowBitmap b = new RowBitmap();
+            for (int row = 0; row < rows; row++) {
+                if (random.nextInt(shape[1]) == 0) {
+                    a.add(row);
+                    expectedA.set(row);
+                }
+                if (random.nextInt(3) == 0) {
+                    b.add(row);
+                    expectedB.set(row);
+                }
+            }
+            // 删除一部分，让位图容器退回数组容器
+            for (int k = 0; k < 3000; k++) {
+                int row = random.nextInt(rows);
+                a.remove(row);
+                expectedA.clear(row);
+            }
+
+            assertArrayEquals(expectedA.stream().toArray(), a.toArray());
+            assertEquals(expectedA.cardinality(), a.cardinality());
+
+            BitSet and = (BitSet) expectedA.clone();
+            and.and(expectedB);
+            assertArrayEquals(and.stream().toArray(), a.and(b).toArray());
+            assertEquals(and.cardinality(), a.andCardinality(b));
+
+            BitSet or = (BitSet) expectedA.clone();
+            or.or(expectedB);
+            assertArrayEquals(or.stream().toArray(), a.or(b).toArray());
+
+            BitSet andNot = (BitSet) expectedA.clone();
+            andNot.andNot(expectedB);
+            assertArrayEquals(andNot.stream().toArray(), a.andNot(b).toArray());
+
+            int from = rows / 3;
+            int to = rows - 17;
+            assertEquals(expectedA.get(from, to).cardinality(), a.cardinality(from, to));
+        }
+    }
+
+    @Test
+    void outOfOrderAddsStaySorted() {
+        RowBitmap bitmap = RowBitmap.of(70_000, 5, 3, 65_536, 5);
+        assertArrayEquals(new int[]{3, 5, 65_536, 70_000}, bitmap.toArray());
+        assertTrue(bitmap.contains(65_536));
+        bitmap.remove(65_536);
+        bitmap.remove(70_000);
+        assertFalse(bitmap.contains(70_000));
+        assertEquals(2, bitmap.cardinality());
+        assertEquals(1, bitmap.rank(4));
+
+        RowBitmap range = RowBitmap.range(65_530, 200_000);
+        assertEquals(200_000 - 65_530, range.cardinality());
+        assertEquals(2, range.andCardinality(RowBitmap.of(3, 65_531, 131_072)));
+    }
+
+    @Test
+    void categoryFiltersMatchScan() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(5000, 21);
+        CategoryBitmaps index = new CategoryBitmaps();
+        index.rebuild(history);
+
+        Map<String, List<String>> filters = Map.of(CategoryBitmaps.KILLED, List.of("1"),
+                CategoryBitmaps.OPEN_RESULT, List.of("单"));
+        int expected = 0;
+        for (int row = 0; row < history.size(); row++) {
+            if (history.has(row, RowTraits.KILLED | RowTraits.OPEN_SINGLE)) {
+                expected++;
+            }
+        }
+        assertEquals(expected, index.count(filters));
+        assertEquals(expected, index.select(filters).cardinality());
+        assertEquals(history.count(RowTraits.HIT) + history.count(RowTraits.MISS),
+                index.count(Map.of(CategoryBitmaps.OUTCOME, List.of("中", "错"))));
+        assertEquals(history.size(), index.count(Map.of()));
+
+        // 撤回最新一行
+        int last = history.size() - 1;
+        boolean lastMatched = index.select(filters).contains(last);
+        index.retract(history, last);
+        assertEquals(expected - (lastMatched ? 1 : 0), index.count(filters));
+        assertEquals(last, index.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void staleIndexIsRebuiltOnceAndCached() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(300, 17);
+        HistoryStore historyStore = new HistoryStore();
+        ReflectionTestUtils.setField(historyStore, "servers", new String[]{"sf1"});
+        ((Map<String, ServerHistory>) ReflectionTestUtils.getField(historyStore, "histories")).put("sf1", history);
+        BitmapIndex bitmapIndex = new BitmapIndex();
+        ReflectionTestUtils.setField(bitmapIndex, "historyStore", historyStore);
+        Map<String, HistoryIndex> indexes = (Map<String, HistoryIndex>) ReflectionTestUtils.getField(bitmapIndex, "indexes");
+
+        // 没有注册监听器，查询时建立的索引写回缓存，之后的查询直接使用
+        assertEquals(history.size(), bitmapIndex.count("sf1", Map.of()));
+        HistoryIndex first = indexes.get("sf1");
+        assertEquals(history.size(), first.size());
+        bitmapIndex.count("sf1", Map.of());
+        assertSame(first, indexes.get("sf1"));
+
+        // 漏掉了追加事件，行数不一致时重建一次
+        HistoryRecord record = new HistoryRecord();
+        record.setId((long) history.size() + 1);
+        record.setPeriod(history.period(history.size() - 1) + 1);
+        history.upsert(record);
+        assertEquals(history.size(), bitmapIndex.count("sf1", Map.of()));
+        HistoryIndex rebuilt = indexes.get("sf1");
+        assertFalse(first == rebuilt);
+        assertEquals(history.size(), rebuilt.size());
+        bitmapIndex.count("sf1", Map.of());
+        assertSame(rebuilt, indexes.get("sf1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pagesComeFromTheSameRowsAsTotals() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(700, 13);
+        HistoryStore historyStore = new HistoryStore();
+        ReflectionTestUtils.setField(historyStore, "servers", new String[]{"sf1"});
+        ((Map<String, ServerHistory>) ReflectionTestUtils.getField(historyStore, "histories")).put("sf1", history);
+        BitmapIndex bitmapIndex = new BitmapIndex();
+        ReflectionTestUtils.setField(bitmapIndex, "historyStore", historyStore);
+
+        Map<String, List<String>> filters = Map.of(CategoryBitmaps.OUTCOME, List.of("中"));
+        List<Integer> expected = new ArrayList<>();
+        for (int row = history.size() - 1; row >= 0; row--) {
+            if (history.has(row, RowTraits.HIT)) {
+                expected.add(history.period(row));
+            }
+        }
+        List<Integer> paged = new ArrayList<>();
+        for (int page = 0; ; page++) {
+            BitmapIndex.RowPage rows = bitmapIndex.page("sf1", filters, page, 100);
+            assertEquals(expected.size(), rows.totalRows());
+            if (rows.records().isEmpty()) {
+                break;
+            }
+            rows.records().forEach(record -> paged.add(record.getPeriod()));
+        }
+        assertEquals(expected, paged);
+
+        BitmapIndex.RowPage all = bitmapIndex.page("sf1", Map.of(), 0, Integer.MAX_VALUE);
+        assertEquals(history.size(), all.totalRows());
+        assertEquals(history.latestPeriod(), all.records().get(0).getPeriod());
+        assertEquals(0, bitmapIndex.page("sf1", Map.of(), 3, Integer.MAX_VALUE).records().size());
+    }
+}
@@ -0,0 +1,104 @@
+package org.dataanalysis.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RunIndexTest {
+
+    @Test
+    void runsMatchScanAfterAppendAndRetract() {
+        Random random = new Random(11);
+        List<Boolean> values = new ArrayList<>();
+        RunIndex index = new RunIndex();
+        for (int row = 0; row < 3000; row++) {
+            boolean value = random.nextInt(3) > 0;
+            values.add(value);
+            index.append(row, value);
+            // 模拟最新一期被真实结果覆盖
+            if (random.nextBoolean()) {
+                index.retract(row, value);
+                value = random.nextBoolean();
+                values.set(row, value);
+                index.append(row, value);
+            }
+            if (row % 97 == 0) {
+                int[] all = expectedLengths(values, 1);
+                int[] longest = index.longestIn(0, row + 1);
+                assertEquals(all.length == 0 ? 0 : all[0], longest == null ? 0 : longest[0]);
+                for (int minLength = 1; minLength <= 8; minLength++) {
+                    assertArrayEquals(expectedLengths(values, minLength), lengths(index, index.runsAtLeast(minLength)));
+                }
+            }
+        }
+        int longest = index.longest();
+        assertEquals(expectedLengths(values, 1)[0], index.length(longest));
+    }
+
+    @Test
+    void longestInRangeMatchesScan() {
+        Random random = new Random(17);
+        List<Boolean> values = new ArrayList<>();
+        RunIndex index = new RunIndex();
+        for (int row = 0; row < 2000; row++) {
+            boolean value = random.nextInt(4) > 0;
+            values.add(value);
+            index.append(row, value);
+        }
+        for (int q = 0; q < 3000; q++) {
+            int from = random.nextInt(values.size());
+            int to = from + random.nextInt(values.size() - from + 1);
+            int[] expected = null;
+            int length = 0;
+            // 倒序扫描，相同长度时保留最新的一段
+            for (int i = to - 1; i >= from - 1; i--) {
+                if (i >= from && values.get(i)) {
+                    length++;
+                } else {
+                    if (length > 0 && (expected == null || length > expected[0])) {
+                        expected = new int[]{length, i + 1, i + length};
+                    }
+                    length = 0;
+                }
+            }
+            assertArrayEquals(expected, index.longestIn(from, to), "[" + from + ", " + to + ")");
+        }
+    }
+
+    // 倒序扫描得到的连续段，按长度稳定排序(相同长度时最新的在前)
+    private static int[] expectedLengths(List<Boolean> values, int minLength) {
+        List<int[]> runs = new ArrayList<>();
+        int length = 0;
+        for (int i = values.size() - 1; i >= -1; i--) {
+            if (i >= 0 && values.get(i)) {
+                length++;
+            } else {
+                if (length >= minLength) {
+                    runs.add(new int[]{length, i + 1});
+                }
+                length = 0;
+            }
+        }
+        runs.sort((a, b) -> b[0] - a[0]);
+        int[] result = new int[runs.size() * 2];
+        for (int i = 0; i < runs.size(); i++) {
+            result[2 * i] = runs.get(i)[0];
+            result[2 * i + 1] = runs.get(i)[1];
+        }
+        return result;
+    }
+
+    private static int[] lengths(RunIndex index, int[] runs) {
+        int[] result = new int[runs.length * 2];
+        for (int i = 0; i < runs.length; i++) {
+            result[2 * i] = index.length(runs[i]);
+            result[2 * i + 1] = index.start(runs[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.RowTraits;
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SequencePatternTest {
+
+    @Test
+    void bitParallelMatchesScan() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(1000, 41);
+        SequenceBits bits = new SequenceBits();
+        bits.rebuild(history);
+        String[] patterns = {"K", "KK.K", "K{3,}M", "H+", "?K?", ".+K{2}", "PL+P", "K{5}", "M{2,}H+"};
+        int[][] windows = {{0, 1000}, {0, 999}, {63, 64}, {64, 700}, {1, 129}, {500, 500}};
+        for (String text : patterns) {
+            SequencePattern pattern = SequencePattern.parse(text);
+            for (int[] window : windows) {
+                assertArrayEquals(scan(history, text, window[0], window[1]),
+                        toRows(pattern.match(bits, window[0], window[1]), window[1]), text);
+            }
+        }
+    }
+
+    @Test
+    void reportsMatchesAndNextPeriod() {
+        ServerHistory history = new ServerHistory("sf1");
+        String kills = "KK.KKK.KK.K";
+        for (int i = 0; i < kills.length(); i++) {
+            HistoryRecord record = new HistoryRecord();
+            record.setId((long) i + 1);
+            record.setPeriod(100 + i);
+            record.setKillNumber(kills.charAt(i) == 'K' ? "杀" : null);
+            record.setOutcome(i % 2 == 0 ? "中" : "错");
+            history.upsert(record);
+        }
+        SequenceBits bits = new SequenceBits();
+        bits.rebuild(history);
+
+        Map<String, Object> result = PatternIndex.search(history, bits, SequencePattern.parse("K."), null, false, 10);
+        assertEquals(3, result.get("matchCount"));
+        Map<?, ?> newest = (Map<?, ?>) ((List<?>) result.get("matches")).get(0);
+        assertEquals(108, newest.get("startPeriod"));
+        assertEquals(109, newest.get("endPeriod"));
+        assertEquals(110, newest.get("nextPeriod"));
+        assertEquals(true, newest.get("nextKilled"));
+        assertEquals("中", newest.get("nextOutcome"));
+        Map<?, ?> next = (Map<?, ?>) result.get("next");
+        assertEquals(3, next.get("count"));
+        assertEquals(3, next.get("killedCount"));
+        assertEquals(2, ((Map<?, ?>) PatternIndex.search(history, bits, SequencePattern.parse("K."), null, true, 10)
+                .get("next")).get("count"));
+
+        // 撤回最新一期后结果随之变化
+        bits.retract(history, kills.length() - 1);
+        assertArrayEquals(scan(history, "K.", 0, kills.length() - 1),
+                toRows(SequencePattern.parse("K.").match(bits, 0, kills.length() - 1), kills.length() - 1));
+    }
+
+    @Test
+    void rejectsInvalidPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> SequencePattern.parse("KX"));
+        assertThrows(IllegalArgumentException.class, () -> SequencePattern.parse("K{0}"));
+        assertThrows(IllegalArgumentException.class, () -> SequencePattern.parse("K{3"));
+        assertThrows(IllegalArgumentException.class, () -> SequencePattern.parse("K{65}"));
+        assertThrows(IllegalArgumentException.class, () -> SequencePattern.parse(" "));
+    }
+
+    // 逐期动态规划：reach[r]表示模式前e个元素可以在第r行结束
+    private static int[] scan(ServerHistory history, String text, int from, int to) {
+        SequencePattern parsed = SequencePattern.parse(text);
+        String expanded = expand(text);
+        boolean[] reach = new boolean[history.size()];
+        for (int e = 0; e < parsed.minLength(); e++) {
+            boolean[] next = new boolean[history.size()];
+            char symbol = expanded.charAt(e * 2);
+            boolean repeat = expanded.charAt(e * 2 + 1) == '+';
+            for (int r = from; r < to; r++) {
+                boolean previous = e == 0 || (r > from && reach[r - 1]) || (repeat && r > from && next[r - 1]);
+                next[r] = previous && accepts(history, symbol, r);
+            }
+            reach = next;
+        }
+        boolean[] ends = reach;
+        return IntStream.range(0, history.size()).filter(r -> ends[r]).toArray();
+    }
+
+    // 展开为"字符+是否重复"的两字符序列，与SequencePattern.parse的展开规则一致
+    private static String expand(String text) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char symbol = text.charAt(i);
+            if (i + 1 < text.length() && text.charAt(i + 1) == '+') {
+                out.append(symbol).append('+');
+                i++;
+            } else if (i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                int close = text.indexOf('}', i);
+                String body = text.substring(i + 2, close);
+                boolean plus = body.endsWith(",");
+                int copies = Integer.parseInt(plus ? body.substring(0, body.length() - 1) : body);
+                for (int c = 0; c < copies; c++) {
+                    out.append(symbol).append(plus && c == copies - 1 ? '+' : '-');
+                }
+                i = close;
+            } else {
+                out.append(symbol).append('-');
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean accepts(ServerHistory history, char symbol, int row) {
+        return switch (symbol) {
+            case 'K' -> history.has(row, RowTraits.KILLED);
+            case '.' -> !history.has(row, RowTraits.KILLED);
+            case 'H' -> history.has(row, RowTraits.HIT);
+            case 'M' -> history.has(row, RowTraits.MISS);
+            case 'P' -> history.has(row, RowTraits.PROFIT);
+            case 'L' -> history.has(row, RowTraits.LOSS);
+            default -> true;
+        };
+    }
+
+    private static int[] toRows(long[] words, int to) {
+        return IntStream.range(0, to)
+                .filter(r -> (words[r >>> 6] & (1L << r)) != 0).toArray();
+    }
+}
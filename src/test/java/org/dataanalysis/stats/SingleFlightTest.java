@@ -0,0 +1,196 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.HistoryStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentMissesRunOneCalculation() throws Exception {
+        SingleFlight singleFlight = singleFlight(5000);
+        AtomicReference<StatsSnapshot> snapshot = new AtomicReference<>(StatsSnapshot.empty("sf1"));
+        AtomicInteger calculations = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return singleFlight.load("sf1", snapshot, StatisticsEngine.WIN_RATE, () -> {
+                        calculations.incrementAndGet();
+                        sleep(200);
+                        snapshot.updateAndGet(s -> s.with(StatisticsEngine.WIN_RATE, Map.of("winRate", "50.00%"), 0));
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<Map<String, Object>> future : futures) {
+                assertEquals("50.00%", future.get().get("winRate"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calculations.get());
+    }
+
+    @Test
+    void boundedWaitFallsBackToStaleResult() throws Exception {
+        SingleFlight singleFlight = singleFlight(50);
+        AtomicReference<StatsSnapshot> snapshot = new AtomicReference<>(StatsSnapshot.empty("sf1"));
+        singleFlight.load("sf1", snapshot, StatisticsEngine.WIN_RATE,
+                () -> snapshot.set(snapshot.get().with(StatisticsEngine.WIN_RATE, Map.of("winRate", "old"), 0)));
+        // 模拟数据变化后快照中的结果被作废
+        snapshot.set(StatsSnapshot.empty("sf1"));
+
+        CountDownLatch started = new CountDownLatch(1);
+        Thread leader = new Thread(() -> singleFlight.load("sf1", snapshot, StatisticsEngine.WIN_RATE, () -> {
+            started.countDown();
+            sleep(500);
+            snapshot.set(snapshot.get().with(StatisticsEngine.WIN_RATE, Map.of("winRate", "new"), 0));
+        }));
+        leader.start();
+        started.await();
+        assertEquals("old", singleFlight.load("sf1", snapshot, StatisticsEngine.WIN_RATE, () -> {
+            throw new AssertionError("不应重复计算");
+        }).get("winRate"));
+        leader.join();
+    }
+
+    @Test
+    void replacedSnapshotWithoutStaleResultIsRetried() {
+        SingleFlight singleFlight = singleFlight(50);
+        AtomicReference<StatsSnapshot> snapshot = new AtomicReference<>(StatsSnapshot.empty("sf1"));
+        AtomicInteger calculations = new AtomicInteger();
+        Map<String, Object> result = singleFlight.load("sf1", snapshot, StatisticsEngine.WIN_RATE, () -> {
+            if (calculations.incrementAndGet() == 1) {
+                // 计算期间发布了更新版本的快照，旧版本的结果被丢弃
+                snapshot.set(StatsSnapshot.of("sf1", 1, Map.of()));
+                snapshot.updateAndGet(s -> s.with(StatisticsEngine.WIN_RATE, Map.of("winRate", "old"), 0));
+            } else {
+                snapshot.updateAndGet(s -> s.with(StatisticsEngine.WIN_RATE, Map.of("winRate", "new"), 1));
+            }
+        });
+        assertEquals("new", result.get("winRate"));
+        assertEquals(2, calculations.get());
+    }
+
+    @Test
+    void continuouslyReplacedSnapshotGivesUpAfterBoundedRetries() {
+        SingleFlight singleFlight = singleFlight(50);
+        AtomicReference<StatsSnapshot> snapshot = new AtomicReference<>(StatsSnapshot.empty("sf1"));
+        AtomicInteger calculations = new AtomicInteger();
+        assertThrows(IllegalStateException.class, () -> singleFlight.load("sf1", snapshot, StatisticsEngine.WIN_RATE,
+                () -> snapshot.set(StatsSnapshot.of("sf1", calculations.incrementAndGet(), Map.of()))));
+        assertEquals(3, calculations.get());
+    }
+
+    @Test
+    void interruptedWaitWithoutStaleResultThrows() throws Exception {
+        SingleFlight singleFlight = singleFlight(5000);
+        AtomicReference<StatsSnapshot> snapshot = new AtomicReference<>(StatsSnapshot.empty("sf1"));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread leader = new Thread(() -> singleFlight.load("sf1", snapshot, StatisticsEngine.WIN_RATE, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            snapshot.updateAndGet(s -> s.with(StatisticsEngine.WIN_RATE, Map.of("winRate", "50.00%"), 0));
+        }));
+        leader.start();
+        started.await();
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                singleFlight.load("sf1", snapshot, StatisticsEngine.WIN_RATE, () -> {
+                    throw new AssertionError("不应重复计算");
+                });
+            } catch (Throwable e) {
+                failure.set(e);
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        waiter.start();
+        waiter.interrupt();
+        waiter.join();
+        release.countDown();
+        leader.join();
+
+        assertInstanceOf(IllegalStateException.class, failure.get());
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void concurrentCallsWithSameKeyShareOneResult() throws Exception {
+        SingleFlight singleFlight = singleFlight(50);
+        AtomicInteger calculations = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return singleFlight.call("streak-simulation/sf1", () -> {
+                        calculations.incrementAndGet();
+                        sleep(200);
+                        return new long[]{1, 2, 3};
+                    });
+                }));
+            }
+            start.countDown();
+            long[] first = futures.get(0).get();
+            for (Future<long[]> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calculations.get());
+    }
+
+    private static SingleFlight singleFlight(long waitMillis) {
+        HistoryStore historyStore = new HistoryStore();
+        ReflectionTestUtils.setField(historyStore, "servers", new String[]{"sf1"});
+        ReflectionTestUtils.setField(historyStore, "historySyncRepository", null);
+        // 没有数据库时同步失败，服务器保持空数据、版本为0
+        historyStore.history("sf1");
+
+        SingleFlight singleFlight = new SingleFlight();
+        ReflectionTestUtils.setField(singleFlight, "waitMillis", waitMillis);
+        ReflectionTestUtils.setField(singleFlight, "historyStore", historyStore);
+        return singleFlight;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.store.HistoryListener;
+import org.dataanalysis.store.ServerHistory;
+import org.dataanalysis.util.WinRateCalculator;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StatisticsEngineTest {
+
+    private static final String[] OUTCOMES = {"中", "错", "---", "未知", "", null};
+    private static final String[] BETTING_RESULTS = {"命中盈利", "未命中盈利", "命中被杀", "未命中亏损", "未知", null};
+    private static final String[] OPEN_RESULTS = {"单", "双", null};
+    /** randomHistory第一行的创建时间(周一晚上)，之后每行间隔1到5分钟 */
+    static final LocalDateTime START = LocalDateTime.of(2025, 4, 28, 22, 30);
+
+    private final StatisticsEngine engine = new StatisticsEngine();
+    private final WinRateCalculator calculator = new WinRateCalculator();
+
+    @Test
+    void fusedResultsMatchWinRateCalculator() {
+        for (int size : new int[]{0, 1, 7, 150, 3000}) {
+            ServerHistory history = randomHistory(size, size * 31L + 7);
+            List<HistoryRecord> all = history.toRecordsDescending(Integer.MAX_VALUE);
+            List<HistoryRecord> recent = history.toRecordsDescending(100);
+            int correct = (int) all.stream().filter(r -> "中".equals(r.getOutcome())).count();
+            int incorrect = (int) all.stream().filter(r -> "错".equals(r.getOutcome())).count();
+
+            Map<String, Map<String, Object>> fused = engine.calculateAll(history, 100);
+
+            assertEquals(calculator.calculateWinRate("sf1", all.size(), correct, incorrect),
+                    fused.get(StatisticsEngine.WIN_RATE));
+            assertEquals(calculator.calculateRecentWinRate("sf1", recent, 100),
+                    fused.get(StatisticsEngine.RECENT_WIN_RATE));
+            assertEquals(calculator.analyzeResults("sf1", all), fused.get(StatisticsEngine.RESULTS));
+            assertEquals(calculator.comprehensiveRateAnalysis("sf1", all),
+                    fused.get(StatisticsEngine.COMPREHENSIVE_RATE));
+            assertEquals(calculator.calculateConsecutiveStats("sf1", recent),
+                    fused.get(StatisticsEngine.CONSECUTIVE_STATS));
+            assertEquals(calculator.analyzeDetailedResults("sf1", all),
+                    fused.get(StatisticsEngine.DETAILED_RESULTS));
+            assertEquals(calculator.findHistoricalConsecutiveStats("sf1", all),
+                    fused.get(StatisticsEngine.HISTORICAL_CONSECUTIVE_STATS));
+        }
+    }
+
+    @Test
+    void outOfRangeTotalsKeepBaselineCounts() {
+        List<HistoryRecord> all = new ArrayList<>();
+        for (Integer total : new Integer[]{-3, -3, 5, 10, 30, 31, 127, 128, 200, null}) {
+            HistoryRecord record = new HistoryRecord();
+            record.setTotalNumber(total);
+            all.add(record);
+        }
+
+        assertEquals(Map.of(-3, 2, 5, 1, 10, 1, 30, 1, 31, 1, 127, 1, 128, 1, 200, 1),
+                calculator.analyzeResults("sf1", all).get("totalNumberDistribution"));
+        // 原有划分把负数计入0-10，大于30的全部计入30+
+        assertEquals(Map.of("0-10", 4, "21-30", 1, "30+", 4),
+                calculator.analyzeDetailedResults("sf1", all).get("numberRangeDistribution"));
+
+        // 内存数据按原值保存总和，统计结果与逐条计数一致
+        ServerHistory history = new ServerHistory("sf1");
+        for (int i = 0; i < all.size(); i++) {
+            all.get(i).setId((long) i + 1);
+            all.get(i).setPeriod(1000 + i);
+            history.upsert(all.get(i));
+        }
+        assertEquals(all.get(8).getTotalNumber(), history.toRecordsDescending(2).get(1).getTotalNumber());
+        Map<String, Map<String, Object>> fused = engine.calculateAll(history, 100);
+        List<HistoryRecord> stored = history.toRecordsDescending(Integer.MAX_VALUE);
+        assertEquals(calculator.analyzeResults("sf1", stored), fused.get(StatisticsEngine.RESULTS));
+        assertEquals(calculator.analyzeDetailedResults("sf1", stored), fused.get(StatisticsEngine.DETAILED_RESULTS));
+    }
+
+    @Test
+    void incrementalAppendAndRetractMatchFullPass() {
+        ServerHistory source = randomHistory(400, 99);
+        ServerHistory history = new ServerHistory("sf1");
+        StatisticsAccumulator accumulator = new StatisticsAccumulator("sf1", 100);
+        HistoryListener listener = new HistoryListener() {
+            @Override
+            public void onAppend(ServerHistory h, int row) {
+                accumulator.apply(h, row);
+            }
+
+            @Override
+            public void onRetract(ServerHistory h, int row) {
+                accumulator.retract(h, row);
+            }
+
+            @Override
+            public void onReload(ServerHistory h) {
+                accumulator.rebuild(h);
+            }
+        };
+
+        Random random = new Random(5);
+        for (int i = 0; i < source.size(); i++) {
+            // 先写入待开奖的预测行，再用真实结果覆盖最新一期
+            HistoryRecord pending = source.toRecord(i);
+            pending.setOutcome("---");
+            pending.setBettingResult("未知");
+            pending.setKillNumber(null);
+            assertEquals(ServerHistory.Change.APPENDED, history.upsert(pending, listener));
+            assertEquals(engine.calculateAll(history, 100), accumulator.toResults());
+
+            HistoryRecord settled = source.toRecord(i);
+            if (random.nextInt(4) > 0) {
+                assertEquals(ServerHistory.Change.UPDATED_LATEST, history.upsert(settled, listener));
+            }
+            assertEquals(engine.calculateAll(history, 100), accumulator.toResults());
+        }
+    }
+
+    @Test
+    void parallelBuildMatchesSequential() {
+        StatisticsEngine parallel = new StatisticsEngine();
+        ReflectionTestUtils.setField(parallel, "parallelThreshold", 1);
+        for (int size : new int[]{1, 2, 150, 20000}) {
+            ServerHistory history = randomHistory(size, size * 17L + 3);
+            StatisticsAccumulator merged = parallel.build(history, 100);
+            assertEquals(engine.calculateAll(history, 100), merged.toResults());
+
+            // 最后一行仍可撤回
+            StatisticsAccumulator sequential = new StatisticsAccumulator("sf1", 100);
+            sequential.rebuild(history);
+            merged.retract(history, size - 1);
+            sequential.retract(history, size - 1);
+            assertEquals(sequential.toResults(), merged.toResults());
+        }
+    }
+
+    @Test
+    void segmentsMergeAtAnySplit() {
+        ServerHistory history = randomHistory(3000, 11);
+        StatisticsAccumulator whole = new StatisticsAccumulator("sf1", 100);
+        whole.rebuild(history);
+
+        Random random = new Random(13);
+        for (int round = 0; round < 50; round++) {
+            // 随机切成若干段(允许空段和单行段)后从左到右合并
+            StatisticsSegment merged = StatisticsSegment.scan(history, 0, 0);
+            int from = 0;
+            while (from < history.size()) {
+                int to = Math.min(history.size(), from + random.nextInt(random.nextBoolean() ? 3 : 400));
+                merged = merged.merge(StatisticsSegment.scan(history, from, to));
+                from = to;
+            }
+            StatisticsAccumulator loaded = new StatisticsAccumulator("sf1", 100);
+            loaded.load(history, merged);
+            assertEquals(whole.toResults(), loaded.toResults());
+        }
+    }
+
+    /**
+     * 供各统计测试共用的随机历史数据，包含全部中错、投注结果、开奖结果、杀号和创建时间
+     */
+    public static ServerHistory randomHistory(int size, long seed) {
+        Random random = new Random(seed);
+        // 创建时间使用单独的随机序列，不影响其余字段
+        Random clock = new Random(~seed);
+        LocalDateTime time = START;
+        ServerHistory history = new ServerHistory("sf1");
+        for (int i = 0; i < size; i++) {
+            HistoryRecord record = new HistoryRecord();
+            record.setId((long) i + 1);
+            record.setPeriod(3200000 + i);
+            // 连续段更长一些，便于覆盖连中、连错等统计
+            record.setOutcome(random.nextInt(10) < 8 ? (random.nextBoolean() ? "中" : "错")
+                    : OUTCOMES[random.nextInt(OUTCOMES.length)]);
+            record.setBettingResult(BETTING_RESULTS[random.nextInt(BETTING_RESULTS.length)]);
+            record.setOpenResult(OPEN_RESULTS[random.nextInt(OPEN_RESULTS.length)]);
+            record.setPrediction(OPEN_RESULTS[random.nextInt(OPEN_RESULTS.length)]);
+            record.setKillNumber(random.nextInt(3) == 0 ? "杀" : null);
+            record.setTotalNumber(random.nextInt(10) == 0 ? null : random.nextInt(28));
+            record.setServerName("sf1");
+            record.setCreatedAt(time);
+            time = time.plusMinutes(1 + clock.nextInt(5));
+            history.upsert(record);
+        }
+        return history;
+    }
+}
@@ -0,0 +1,56 @@
+package org.dataanalysis.stats;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dataanalysis.stats.result.ComprehensiveRates;
+import org.dataanalysis.stats.result.WinRate;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsSnapshotTest {
+
+    @Test
+    void resultsCarryVersionAndStayConsistent() {
+        WinRate winRate = WinRate.overall("sf1", 4, 2, 2);
+        StatsSnapshot snapshot = StatsSnapshot.of("sf1", 3, Map.of(StatisticsEngine.WIN_RATE, winRate));
+        assertEquals(3L, snapshot.get(StatisticsEngine.WIN_RATE).get(StatsSnapshot.DATA_VERSION));
+        assertEquals("50.00%", snapshot.get(StatisticsEngine.WIN_RATE).get("winRate"));
+        assertSame(winRate, snapshot.result(StatisticsEngine.WIN_RATE, WinRate.class));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.get(StatisticsEngine.WIN_RATE).put("x", 1));
+
+        // 同一版本追加，更新的版本丢弃旧结果
+        StatsSnapshot sameVersion = snapshot.with(StatisticsEngine.RESULTS, new HashMap<>(), 3);
+        assertTrue(sameVersion.contains(StatisticsEngine.WIN_RATE));
+        StatsSnapshot newVersion = sameVersion.with(StatisticsEngine.RESULTS, new HashMap<>(), 4);
+        assertFalse(newVersion.contains(StatisticsEngine.WIN_RATE));
+        assertEquals(4L, newVersion.getDataVersion());
+        assertTrue(snapshot.contains(StatisticsEngine.WIN_RATE));
+        assertNull(newVersion.result(StatisticsEngine.RESULTS, WinRate.class));
+
+        // 旧版本的单项结果晚于新快照完成时被丢弃
+        assertSame(newVersion, newVersion.with(StatisticsEngine.WIN_RATE, winRate, 3));
+    }
+
+    @Test
+    void ratesAreFormattedOnlyWhenSerialized() throws Exception {
+        ComprehensiveRates rates = new ComprehensiveRates("sf1", 3, 2, 1, 1, 1, 2, 1);
+        assertEquals(200.0 / 3, rates.predictionWinRate(), 1e-9);
+
+        JsonNode json = new ObjectMapper().valueToTree(rates);
+        assertEquals("66.67%", json.get("predictionWinRate").asText());
+        assertEquals("33.33%", json.get("actualWinRate").asText());
+        assertEquals("50.00%", json.get("correctKilledRate").asText());
+        assertEquals(3, json.get("totalPredictionCount").asInt());
+        assertFalse(json.has("error"));
+        assertEquals(rates.toMap().get("lossRate"), json.get("lossRate").asText());
+    }
+}
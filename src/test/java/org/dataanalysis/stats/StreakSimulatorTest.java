@@ -0,0 +1,74 @@
+package org.dataanalysis.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreakSimulatorTest {
+
+    @Test
+    void distributionMatchesExactRecurrence() {
+        double rate = 0.35;
+        int horizon = 300;
+        int runs = 200000;
+        long[] histogram = StreakSimulator.simulate(rate, horizon, runs, 42);
+
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        assertEquals(runs, total);
+        // P(最长连续段 < L)：按"当前连续段长度"的状态做动态规划
+        for (int limit = 1; limit <= 12; limit++) {
+            double below = probabilityBelow(rate, horizon, limit);
+            long simulatedBelow = 0;
+            for (int k = 0; k < limit; k++) {
+                simulatedBelow += histogram[k];
+            }
+            assertEquals(below, (double) simulatedBelow / runs, 0.005, "limit " + limit);
+        }
+    }
+
+    @Test
+    void sameSeedGivesSameHistogram() {
+        long[] first = StreakSimulator.simulate(0.5, 1000, 50000, 7);
+        long[] second = StreakSimulator.simulate(0.5, 1000, 50000, 7);
+        assertArrayEquals(first, second);
+        assertEquals(100, StreakSimulator.simulate(0, 10, 100, 1)[0]);
+        assertEquals(100, StreakSimulator.simulate(1, 10, 100, 1)[10]);
+    }
+
+    @Test
+    void summaryReportsProbabilityOfObservedStreak() {
+        long[] histogram = {0, 10, 50, 30, 10};
+        Map<String, Object> summary = StreakSimulator.summarize(histogram, 3);
+        assertEquals("40.00%", summary.get("probabilityAtLeastObserved"));
+        assertEquals(2, summary.get("medianMaxStreak"));
+        assertEquals(4, summary.get("p95MaxStreak"));
+        assertEquals(4, ((List<?>) summary.get("distribution")).size());
+    }
+
+    private static double probabilityBelow(double rate, int horizon, int limit) {
+        double[] state = new double[limit];
+        state[0] = 1;
+        for (int step = 0; step < horizon; step++) {
+            double[] next = new double[limit];
+            for (int run = 0; run < limit; run++) {
+                next[0] += state[run] * (1 - rate);
+                if (run + 1 < limit) {
+                    next[run + 1] += state[run] * rate;
+                }
+            }
+            state = next;
+        }
+        double sum = 0;
+        for (double p : state) {
+            sum += p;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,71 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimeRollupsTest {
+
+    @Test
+    void bucketsMatchScan() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(3000, 4);
+        TimeRollups rollups = new TimeRollups();
+        for (int row = 0; row < history.size(); row++) {
+            rollups.append(history, row);
+        }
+        rollups.retract(history, history.size() - 1);
+        rollups.append(history, history.size() - 1);
+
+        for (Granularity granularity : Granularity.values()) {
+            List<Map<String, Object>> buckets = rollups.rollups(granularity, Long.MIN_VALUE, Long.MAX_VALUE, 100000);
+            int total = 0;
+            for (Map<String, Object> bucket : buckets) {
+                String start = (String) bucket.get("start");
+                int expected = 0;
+                int killed = 0;
+                for (int row = 0; row < history.size(); row++) {
+                    if (granularity.format(granularity.bucketStart(history.createdAtMillis(row))).equals(start)) {
+                        expected++;
+                        killed += history.killNumber(row) != null ? 1 : 0;
+                    }
+                }
+                assertEquals(expected, bucket.get("totalCount"), granularity + " " + start);
+                assertEquals(killed, bucket.get("killedCount"));
+                total += expected;
+            }
+            assertEquals(history.size(), total);
+        }
+        // 2025-04-28是周一
+        assertEquals("2025-04-28", Granularity.WEEK.format(Granularity.WEEK.bucketStart(
+                RollupStats.parseTime("2025-05-04 23:59", false))));
+        assertEquals(2, rollups.rollups(Granularity.DAY, RollupStats.parseTime("2025-04-29", false),
+                RollupStats.parseTime("2025-04-30", true), 1000).size());
+    }
+
+    @Test
+    void snapshotWithoutLatestRowRestoresAfterReplay() throws Exception {
+        ServerHistory history = StatisticsEngineTest.randomHistory(2000, 9);
+        TimeRollups rollups = new TimeRollups();
+        rollups.rebuild(history);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        rollups.write(history, history.size() - 1, out);
+        out.flush();
+
+        TimeRollups restored = new TimeRollups();
+        restored.read(ByteBuffer.wrap(bytes.toByteArray()), history.size() - 1);
+        restored.append(history, history.size() - 1);
+        for (Granularity granularity : Granularity.values()) {
+            assertEquals(rollups.rollups(granularity, Long.MIN_VALUE, Long.MAX_VALUE, 100000),
+                    restored.rollups(granularity, Long.MIN_VALUE, Long.MAX_VALUE, 100000));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TotalHistogramTest {
+
+    @Test
+    void bucketsMatchScan() {
+        Random random = new Random(8);
+        TotalHistogram histogram = new TotalHistogram();
+        Map<Integer, Integer> expected = new HashMap<>();
+        int[] values = new int[1000];
+        for (int i = 0; i < values.length; i++) {
+            // 少量超出0到27的异常总和
+            values[i] = random.nextInt(50) == 0 ? 28 + random.nextInt(20) : random.nextInt(28);
+            histogram.add(values[i], 1);
+            expected.merge(values[i], 1, Integer::sum);
+        }
+        histogram.add(ServerHistory.NO_TOTAL, 1);
+        assertEquals(expected, histogram.toMap());
+        assertEquals(values.length, histogram.total());
+
+        TotalBuckets layout = TotalBuckets.parse("0-9, 10-17 ,18+");
+        int[] scanned = new int[3];
+        int[] legacy = new int[4];
+        for (int value : values) {
+            scanned[value <= 9 ? 0 : value <= 17 ? 1 : 2]++;
+            legacy[value <= 10 ? 0 : value <= 20 ? 1 : value <= 30 ? 2 : 3]++;
+        }
+        assertArrayEquals(scanned, histogram.bucketCounts(layout));
+        assertArrayEquals(legacy, histogram.bucketCounts(TotalBuckets.LEGACY));
+
+        TotalHistogram merged = new TotalHistogram();
+        merged.merge(histogram);
+        merged.add(values[0], -1);
+        assertEquals(values.length - 1, merged.total());
+        assertEquals(histogram.count(values[0]) - 1, merged.count(values[0]));
+    }
+
+    @Test
+    void outliersAreCountedByValue() {
+        TotalHistogram histogram = new TotalHistogram();
+        for (int total : new int[]{-3, -3, 5, 200, 300, 300}) {
+            histogram.add(total, 1);
+        }
+        histogram.add(300, -1);
+        assertEquals(Map.of(-3, 2, 5, 1, 200, 1, 300, 1), histogram.toMap());
+        assertEquals(5, histogram.total());
+        assertEquals(2, histogram.count(-3));
+        // 原有划分把负数计入0-10，"18+"这样的开放区间没有上限
+        assertArrayEquals(new int[]{3, 0, 0, 2}, histogram.bucketCounts(TotalBuckets.LEGACY));
+        assertArrayEquals(new int[]{1, 0, 2}, histogram.bucketCounts(TotalBuckets.parse("0-9,10-17,18+")));
+
+        TotalHistogram merged = histogram.copy();
+        merged.add(-3, -2);
+        assertEquals(3, merged.total());
+        assertEquals(0, merged.count(-3));
+        assertEquals(2, histogram.count(-3));
+    }
+
+    @Test
+    void rejectsInvalidLayouts() {
+        assertThrows(IllegalArgumentException.class, () -> TotalBuckets.parse("0-13,13-27"));
+        assertThrows(IllegalArgumentException.class, () -> TotalBuckets.parse("10-5"));
+        assertThrows(IllegalArgumentException.class, () -> TotalBuckets.parse("a-b"));
+        assertThrows(IllegalArgumentException.class, () -> TotalBuckets.parse(" , "));
+        assertEquals(2, TotalBuckets.parse("0-13,14-27").buckets().size());
+    }
+}
@@ -0,0 +1,70 @@
+package org.dataanalysis.stats;
+
+import org.dataanalysis.store.ServerHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransitionCountsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void countsMatchScanForEveryOrder() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(2000, 17);
+        TransitionCounts counts = new TransitionCounts();
+        counts.rebuild(history);
+
+        for (TransitionType type : TransitionType.values()) {
+            int states = type.getStates().size();
+            for (int order = 1; order <= TransitionCounts.MAX_ORDER; order++) {
+                Map<String, Object> result = counts.transitions(history, type, order, history.size() - 1);
+                int seen = 0;
+                for (Map<String, Object> transition : (List<Map<String, Object>>) result.get("transitions")) {
+                    List<String> context = (List<String>) transition.get("context");
+                    Map<String, Map<String, Object>> next = (Map<String, Map<String, Object>>) transition.get("next");
+                    for (int state = 0; state < states; state++) {
+                        int expected = 0;
+                        for (int row = order; row < history.size(); row++) {
+                            if (matches(history, type, context, row) && type.state(history.traits(row)) == state) {
+                                expected++;
+                            }
+                        }
+                        assertEquals(expected, next.get(type.getStates().get(state)).get("count"));
+                    }
+                    seen += (Integer) transition.get("total");
+                }
+                assertEquals(history.size() - order, seen);
+            }
+        }
+    }
+
+    @Test
+    void appendAndRetractMatchRebuild() {
+        ServerHistory history = StatisticsEngineTest.randomHistory(300, 3);
+        TransitionCounts counts = new TransitionCounts();
+        counts.rebuild(history);
+        TransitionCounts expected = new TransitionCounts();
+        expected.rebuild(history);
+
+        counts.retract(history, 299);
+        counts.retract(history, 298);
+        counts.append(history, 298);
+        counts.append(history, 299);
+        for (TransitionType type : TransitionType.values()) {
+            assertEquals(expected.transitions(history, type, 3, 299), counts.transitions(history, type, 3, 299));
+        }
+    }
+
+    private static boolean matches(ServerHistory history, TransitionType type, List<String> context, int row) {
+        for (int k = 0; k < context.size(); k++) {
+            int previous = row - context.size() + k;
+            if (!type.getStates().get(type.state(history.traits(previous))).equals(context.get(k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
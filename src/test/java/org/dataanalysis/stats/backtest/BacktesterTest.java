@@ -0,0 +1,75 @@
+package org.dataanalysis.stats.backtest;
+
+import org.dataanalysis.stats.StatisticsEngineTest;
+import org.dataanalysis.store.RowTraits;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BacktesterTest {
+
+    @Test
+    void sweepExpandsEveryCombination() {
+        List<String> rules = Strategy.expand("killRate({30,50,100})<{30..60:10};streak(hit)>={1..2}", 1000);
+        assertEquals(24, rules.size());
+        assertEquals("killRate(30)<30;streak(hit)>=1", rules.get(0));
+        assertEquals("killRate(100)<60;streak(hit)>=2", rules.get(23));
+        assertThrows(IllegalArgumentException.class, () -> Strategy.expand("killed({1..100})<{1..100}", 1000));
+        assertThrows(IllegalArgumentException.class, () -> Strategy.parse("killed(0)=0"));
+    }
+
+    @Test
+    void flagRuleMatchesBruteForceReplay() {
+        BacktestData data = new BacktestData(StatisticsEngineTest.randomHistory(3000, 5));
+        Strategy flag = Strategy.parse("killed(1)=0");
+        BacktestResult result = Backtester.replay(data, flag.rule(), flag.bind(data), Payoff.KILL, 1, 2,
+                0, data.size(), 0);
+
+        int bets = 0;
+        int wins = 0;
+        double profit = 0;
+        double peak = 0;
+        double maxDrawdown = 0;
+        for (int row = 1; row < data.size(); row++) {
+            if ((data.traits(row - 1) & RowTraits.KILLED) == 0) {
+                bets++;
+                boolean killed = (data.traits(row) & RowTraits.KILLED) != 0;
+                wins += killed ? 0 : 1;
+                profit += killed ? -2 : 1;
+                peak = Math.max(peak, profit);
+                maxDrawdown = Math.max(maxDrawdown, peak - profit);
+            }
+        }
+        assertEquals(bets, result.bets());
+        assertEquals(wins, result.wins());
+        assertEquals(bets - wins, result.losses());
+        assertEquals(profit, result.profit(), 1e-9);
+        assertEquals(maxDrawdown, result.maxDrawdown(), 1e-9);
+    }
+
+    @Test
+    void parallelSweepMatchesSequentialReplay() {
+        BacktestData data = new BacktestData(StatisticsEngineTest.randomHistory(5000, 11));
+        List<Strategy> strategies = new ArrayList<>();
+        for (String rule : Strategy.expand("killRate({10,20,50})<{20..50:10};streak(kill)<{1..3}", 1000)) {
+            strategies.add(Strategy.parse(rule));
+        }
+        Map<String, Object> output = Backtester.run(data, strategies, Payoff.OUTCOME, 1, 1, 4000, true,
+                strategies.size(), 0);
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> results = (List<Map<String, Object>>) output.get("results");
+        assertEquals(strategies.size(), results.size());
+        for (Map<String, Object> actual : results) {
+            Strategy strategy = Strategy.parse((String) actual.get("rule"));
+            BacktestResult expected = Backtester.replay(data, strategy.rule(), strategy.bind(data), Payoff.OUTCOME,
+                    1, 1, data.size() - 1 - 4000, data.size() - 1, 0);
+            assertEquals(expected.toMap(), actual);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.dataanalysis.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class CountKernelsTest {
+
+    private static final int[] MASKS = {RowTraits.HIT, RowTraits.MISS, RowTraits.KILLED,
+            RowTraits.HIT | RowTraits.KILLED, RowTraits.PROFIT, RowTraits.LOSS,
+            RowTraits.OPEN_SINGLE | RowTraits.KILLED, RowTraits.PRED_DOUBLE | RowTraits.OPEN_DOUBLE};
+
+    @Test
+    void vectorKernelMatchesScalar() {
+        CountKernel vector = CountKernels.vector();
+        // 测试运行时带有--add-modules jdk.incubator.vector
+        assertNotNull(vector);
+
+        Random random = new Random(7);
+        int[] traits = new int[100_003];
+        byte[] codes = new byte[traits.length];
+        for (int i = 0; i < traits.length; i++) {
+            traits[i] = random.nextInt(1 << 15);
+            codes[i] = (byte) random.nextInt(6);
+        }
+
+        // 包含空区间、不满一个向量的区间和未对齐的起点
+        int[][] ranges = {{0, 0}, {0, 5}, {3, 70}, {0, traits.length}, {17, traits.length - 9}};
+        for (int[] range : ranges) {
+            assertArrayEquals(CountKernels.SCALAR.countMasks(traits, range[0], range[1], MASKS),
+                    vector.countMasks(traits, range[0], range[1], MASKS));
+            assertArrayEquals(CountKernels.SCALAR.countCodes(codes, range[0], range[1], 6),
+                    vector.countCodes(codes, range[0], range[1], 6));
+            // 编码很多时退回逐行计数
+            assertArrayEquals(CountKernels.SCALAR.countCodes(codes, range[0], range[1], 40),
+                    vector.countCodes(codes, range[0], range[1], 40));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.dataanalysis.store;
+
+import org.dataanalysis.entity.HistoryRecord;
+import org.dataanalysis.entity.Sf444HistoryRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerHistoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void upsertKeepsPeriodOrder() {
+        ServerHistory history = new ServerHistory("sf1");
+        assertEquals(ServerHistory.Change.APPENDED, history.upsert(record(1, 100, "中", "杀")));
+        assertEquals(ServerHistory.Change.APPENDED, history.upsert(record(2, 102, "错", null)));
+        assertEquals(ServerHistory.Change.INSERTED, history.upsert(record(3, 101, "中", null)));
+        assertEquals(ServerHistory.Change.NONE, history.upsert(record(3, 101, "中", null)));
+
+        HistoryRecord updated = record(2, 102, "中", null);
+        updated.setUpdatedAt(LocalDateTime.of(2025, 1, 1, 0, 0, 5));
+        assertEquals(ServerHistory.Change.UPDATED_LATEST, history.upsert(updated));
+
+        assertEquals(3, history.size());
+        assertEquals(100, history.period(0));
+        assertEquals(101, history.period(1));
+        assertEquals(102, history.period(2));
+        assertEquals(2, history.indexOfPeriod(102));
+        assertTrue(history.has(0, RowTraits.HIT | RowTraits.KILLED));
+        assertEquals(3, history.count(RowTraits.HIT));
+        assertEquals(3, history.maxId());
+    }
+
+    @Test
+    void snapshotRoundTrip() throws Exception {
+        ServerHistory history = new ServerHistory("sf444");
+        for (int i = 0; i < 2000; i++) {
+            Sf444HistoryRecord record = new Sf444HistoryRecord();
+            record.setId((long) i + 1);
+            record.setPeriod(3000000 + i);
+            record.setNumbers(i % 10 + "+" + i % 7 + "+" + i % 3);
+            record.setPrediction(i % 2 == 0 ? "单" : "双");
+            record.setOutcome(i % 3 == 0 ? "错" : "中");
+            // 包括超出byte范围的异常总和和null
+            record.setTotalNumber(i % 97 == 0 ? null : i % 101 == 0 ? 200 + i : i % 28 - (i % 89 == 0 ? 30 : 0));
+            record.setKillNumber(i % 5 == 0 ? "杀" : null);
+            record.setBettingResult(i % 4 == 0 ? "未命中亏损" : "命中盈利");
+            record.setOpenResult(i % 2 == 1 ? "单" : "双");
+            record.setFlag(i % 2);
+            record.setFinalResult(i % 2 == 1 ? "中" : null);
+            record.setCreatedAt(LocalDateTime.of(2025, 1, 1, 0, 0).plusMinutes(i));
+            history.upsert(record);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        history.write(new DataOutputStream(bytes));
+        Path path = tempDir.resolve("snapshot.bin");
+        SnapshotFile.write(path, Map.of("history/sf444", bytes.toByteArray()));
+
+        Map<String, ByteBuffer> sections = SnapshotFile.read(path);
+        ServerHistory restored = ServerHistory.read("sf444", sections.get("history/sf444"));
+
+        assertEquals(history.size(), restored.size());
+        assertEquals(history.version(), restored.version());
+        assertEquals(history.maxId(), restored.maxId());
+        assertEquals(history.count(RowTraits.KILLED), restored.count(RowTraits.KILLED));
+        assertEquals(history.categoryCounts(0, 2000), restored.categoryCounts(0, 2000));
+        assertEquals(Map.of("单", 1000, "双", 1000), restored.categoryCounts(0, 2000).get("openResult"));
+        assertEquals(400, restored.countAll(new int[]{RowTraits.KILLED, RowTraits.HIT}, 0, 2000)[0]);
+        for (int i = 0; i < history.size(); i++) {
+            assertEquals(history.toRecord(i), restored.toRecord(i));
+        }
+        assertEquals(1999, restored.indexOfPeriod(3001999));
+        assertEquals(ServerHistory.NO_TOTAL, restored.totalNumber(0));
+        assertEquals(301, restored.totalNumber(101));
+        assertEquals(-25, restored.totalNumber(89));
+    }
+
+    @Test
+    void missingSnapshotReadsEmpty() throws Exception {
+        assertTrue(SnapshotFile.read(tempDir.resolve("absent.bin")).isEmpty());
+        assertNull(new ServerHistory("sf1").latestPeriod());
+    }
+
+    private static HistoryRecord record(long id, int period, String outcome, String killNumber) {
+        HistoryRecord record = new HistoryRecord();
+        record.setId(id);
+        record.setPeriod(period);
+        record.setOutcome(outcome);
+        record.setKillNumber(killNumber);
+        record.setUpdatedAt(LocalDateTime.of(2025, 1, 1, 0, 0));
+        return record;
+    }
+}